@@ -0,0 +1,88 @@
+package org.demo.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.model.Incident;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares ways of writing a page of incidents as the GET endpoints send it:
+ * <ul>
+ *     <li>{@code jackson}: serializing the list, as the controllers did before {@link IncidentJsonCache}</li>
+ *     <li>{@code fragments}: writing the cached JSON of each incident between brackets and commas</li>
+ *     <li>{@code array}: concatenating the cached JSON into one array, as for pages</li>
+ *     <li>{@code gzipCached}: the gzipped page cached while the store is unchanged</li>
+ *     <li>{@code gzipFresh}: gzipping the page after every change</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncidentJsonBenchmark {
+
+    @Param({"100", "1000"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private IncidentJsonCache jsonCache;
+    private List<Incident> page;
+    private long changeCount;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build(); // Configured like the one of the HTTP message converters
+        jsonCache = new IncidentJsonCache(objectMapper, 64L << 20, 8 << 10, 16L << 20);
+        Instant now = Instant.now();
+        page = IntStream.rangeClosed(1, pageSize)
+                .mapToObj(i -> Incident.builder().id((long) i).title("Disk usage above threshold on db-" + i)
+                        .description("Disk usage on db-" + i + " has been above 90% for 15 minutes, check the backup jobs")
+                        .status(Incident.Status.OPEN).version(1L).occurrences(1L).lastOccurredAt(now).build())
+                .toList();
+        jsonCache.array(page);
+    }
+
+    @Benchmark
+    public void jackson() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), page);
+    }
+
+    @Benchmark
+    public void fragments() throws IOException {
+        jsonCache.writeArray(page.iterator(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public byte[] array() {
+        return jsonCache.array(page);
+    }
+
+    @Benchmark
+    public IncidentJsonCache.ListBody gzipCached() {
+        return jsonCache.list("page", 0, () -> page, true);
+    }
+
+    @Benchmark
+    public IncidentJsonCache.ListBody gzipFresh() {
+        return jsonCache.list("page", ++changeCount, () -> page, true);
+    }
+}
@@ -0,0 +1,94 @@
+package org.demo.controller;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.demo.model.Incident;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the JSON and {@link IncidentSmile Smile} encodings of the API on a single incident and on a batch of
+ * {@value #BATCH_SIZE}, as a producer posts them. Batches are decoded one incident at a time, like the Smile batch
+ * endpoint does. The encoded sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"json", "smile"})
+    private String format;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private Incident incident;
+    private List<Incident> batch;
+    private byte[] encodedIncident;
+    private byte[] encodedBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = format.equals("smile") ? IncidentSmile.createMapper() : Jackson2ObjectMapperBuilder.json().build();
+        writer = mapper.writer();
+        reader = mapper.readerFor(Incident.class);
+        Instant now = Instant.now();
+        batch = IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> Incident.builder().id((long) i + 1).title("Disk usage above threshold on db-" + i)
+                        .description("Disk usage on db-" + i + " has been above 90% for 15 minutes, check the backup jobs")
+                        .status(Incident.Status.values()[i % 3]).version(1L).occurrences(1L).lastOccurredAt(now).build())
+                .toList();
+        incident = batch.get(0);
+        encodedIncident = writer.writeValueAsBytes(incident);
+        encodedBatch = writer.writeValueAsBytes(batch);
+        System.out.printf("%n%s: %d bytes per incident, %d bytes per batch of %d%n", format, encodedIncident.length,
+                encodedBatch.length, BATCH_SIZE);
+    }
+
+    @Benchmark
+    public byte[] encodeSingle() throws IOException {
+        return writer.writeValueAsBytes(incident);
+    }
+
+    @Benchmark
+    public Incident decodeSingle() throws IOException {
+        return reader.readValue(encodedIncident);
+    }
+
+    @Benchmark
+    public byte[] encodeBatch() throws IOException {
+        return writer.writeValueAsBytes(batch);
+    }
+
+    @Benchmark
+    public void decodeBatch(Blackhole blackhole) throws IOException {
+        try (MappingIterator<Incident> incidents = reader.readValues(encodedBatch)) {
+            while (incidents.hasNext()) {
+                blackhole.consume(incidents.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.demo.model.Incident;
+import org.demo.service.IncidentService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures what logging costs the {@link IncidentService} hot paths, writing every line to {@code /dev/null}
+ * with the console pattern so each flush is a real write call:
+ * <ul>
+ *     <li>{@code sync-debug}: synchronous appender with incident contents logged, like the service used to at INFO</li>
+ *     <li>{@code sync}: synchronous appender at INFO</li>
+ *     <li>{@code async}: the configuration of {@code logback-spring.xml}, an async appender and the rate limit</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final int STORE_SIZE = 10_000;
+
+    @Param({"sync-debug", "sync", "async"})
+    public String mode;
+
+    private IncidentService service;
+    private long[] ids;
+    private final AtomicLong uniqueSequence = new AtomicLong();
+    private final SplittableRandom random = new SplittableRandom();
+
+    @Setup
+    public void setUp() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setName("FILE");
+        file.setFile("/dev/null");
+        file.setEncoder(encoder);
+        file.start();
+
+        Appender<ILoggingEvent> appender = file;
+        if (mode.equals("async")) {
+            RateLimitingTurboFilter filter = new RateLimitingTurboFilter();
+            filter.setLoggerPrefix("org.demo.service");
+            filter.setMessagesPerSecond(20);
+            filter.start();
+            context.addTurboFilter(filter);
+
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setName("ASYNC");
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.addAppender(file);
+            async.start();
+            appender = async;
+        }
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(appender);
+        if (mode.equals("sync-debug")) {
+            context.getLogger(IncidentService.class).setLevel(Level.DEBUG);
+        }
+
+        service = new IncidentService();
+        ids = new long[STORE_SIZE];
+        for (int i = 0; i < STORE_SIZE; i++) {
+            ids[i] = service.createIncident(incident("Incident " + i)).getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+    }
+
+    @Benchmark
+    public Optional<Incident> getById() {
+        return service.getIncidentById(ids[random.nextInt(STORE_SIZE)]);
+    }
+
+    @Benchmark
+    public Optional<Incident> getMissing() {
+        return service.getIncidentById(Long.MAX_VALUE - random.nextInt(STORE_SIZE));
+    }
+
+    @Benchmark
+    public Incident create() {
+        return service.createIncident(incident("Created " + uniqueSequence.incrementAndGet()));
+    }
+
+    @Benchmark
+    public Optional<Incident> update() {
+        long id = ids[random.nextInt(STORE_SIZE)];
+        return service.updateIncident(id, new Incident(id, "Updated " + id, "Description", Incident.Status.IN_PROGRESS));
+    }
+
+    private static Incident incident(String title) {
+        return new Incident(null, title, "Description of " + title, Incident.Status.OPEN);
+    }
+}
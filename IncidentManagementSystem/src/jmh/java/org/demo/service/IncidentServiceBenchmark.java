@@ -0,0 +1,229 @@
+package org.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.demo.event.IncidentEventBus;
+import org.demo.model.Incident;
+import org.demo.model.SearchHit;
+import org.demo.persistence.IncidentJournal;
+import org.demo.repository.InMemoryIncidentRepository;
+import org.demo.repository.IncidentRepository;
+import org.demo.repository.OffHeapIncidentRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures the {@link IncidentService} hot paths against a store pre-populated with {@code storeSize} incidents.
+ * The store is rebuilt before every iteration so benchmarks that grow it do not skew later iterations.
+ * Thread counts are varied by {@link ThreadScalingRunner}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncidentServiceBenchmark {
+
+    // Cached incidents that every thread reads in the cache hit benchmark, far fewer than the cache holds
+    private static final int HOT_SET_SIZE = 64;
+    // Incidents in the time range of the creation time benchmarks, the last ones created
+    private static final int RECENT_SIZE = 100;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        // With more incidents than the cache holds, random reads mostly fall back to the repository
+        @Param({"1000", "10000", "100000"})
+        public int storeSize;
+
+        // Compare with e.g. -p shards=1,16 and -Djmh.threads=1,2,4,8,16,32,64 for write scaling curves
+        @Param({"1"})
+        public int shards;
+
+        // The shipped default; compare with e.g. -p deduplication=exact,normalized,simhash for the cost of a deduplication check
+        @Param({"exact"})
+        public String deduplication;
+
+        // Compare with e.g. -p engine=heap,off-heap -p cache=0,64MB for what the cache saves on reads
+        @Param({"heap"})
+        public String engine;
+
+        @Param({"64MB"})
+        public String cache;
+
+        // Characters added to the descriptions of the stored incidents, e.g. -p padding=0,2000 for stack traces
+        @Param({"0"})
+        public int padding;
+
+        public IncidentService service;
+        public long[] ids;
+        // Creation time of the oldest of the last RECENT_SIZE incidents created
+        public Instant recentSince;
+        public final AtomicLong uniqueSequence = new AtomicLong();
+
+        @Setup(Level.Iteration)
+        public void populate() {
+            DeduplicationStrategy strategy = switch (deduplication) {
+                case "exact" -> new ExactDeduplication();
+                case "normalized" -> new NormalizedDeduplication();
+                case "simhash" -> new SimHashDeduplication(10, 2);
+                default -> throw new IllegalArgumentException("Unknown deduplication " + deduplication);
+            };
+            IncidentRepository repository = switch (engine) {
+                case "heap" -> new InMemoryIncidentRepository();
+                case "off-heap" -> new OffHeapIncidentRepository(64 << 20);
+                default -> throw new IllegalArgumentException("Unknown engine " + engine);
+            };
+            service = new IncidentService(repository, IncidentJournal.NONE,
+                    new SimpleMeterRegistry(), new IncidentEventBus(), shards,
+                    new DeduplicationPolicy(strategy, Duration.ofHours(1), 8, Clock.systemUTC()),
+                    new CachePolicy(DataSize.parse(cache).toBytes(), Duration.ofMinutes(10)));
+            ids = new long[storeSize];
+            for (int i = 0; i < storeSize; i++) {
+                Incident incident = incident("Incident " + i);
+                ids[i] = service.createIncident(padding == 0 ? incident
+                        : incident.toBuilder().description(incident.getDescription() + " " + "x".repeat(padding)).build()).getId();
+            }
+            recentSince = service.getIncidentById(ids[storeSize - Math.min(RECENT_SIZE, storeSize)]).orElseThrow().getCreatedAt();
+            // Leave the hot set as the most recently read entries
+            for (int i = 0; i < HOT_SET_SIZE; i++) {
+                service.getIncidentById(ids[i]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private final SplittableRandom random = new SplittableRandom();
+        private int slot;
+        private int slotStride;
+        private boolean closed;
+
+        @Setup(Level.Iteration)
+        public void setUp(Store store, ThreadParams threads) {
+            // Each thread deletes and recreates incidents only in its own slots of the id array
+            slot = threads.getThreadIndex();
+            slotStride = threads.getThreadCount();
+        }
+
+        long anyId(Store store) {
+            return store.ids[random.nextInt(store.ids.length)];
+        }
+
+        long hotId(Store store) {
+            return store.ids[random.nextInt(Math.min(HOT_SET_SIZE, store.ids.length))];
+        }
+
+        int nextSlot(Store store) {
+            int current = slot;
+            slot += slotStride;
+            if (slot >= store.ids.length) {
+                slot = current % slotStride;
+            }
+            return current;
+        }
+
+        Incident.Status nextStatus() {
+            closed = !closed;
+            return closed ? Incident.Status.CLOSED : Incident.Status.IN_PROGRESS;
+        }
+    }
+
+    static Incident incident(String title) {
+        return new Incident(null, title, "Description of " + title, null);
+    }
+
+    @Benchmark
+    public Incident createIncident(Store store) {
+        return store.service.createIncident(incident("New incident " + store.uniqueSequence.incrementAndGet()));
+    }
+
+    @Benchmark
+    public Incident createDuplicateIncident(Store store, Worker worker) {
+        int i = worker.random.nextInt(store.storeSize);
+        return store.service.createIncident(incident("Incident " + i));
+    }
+
+    @Benchmark
+    public Optional<Incident> getIncidentByIdCacheHit(Store store, Worker worker) {
+        return store.service.getIncidentById(worker.hotId(store));
+    }
+
+    @Benchmark
+    public Optional<Incident> getIncidentByIdCacheMiss(Store store, Worker worker) {
+        return store.service.getIncidentById(worker.anyId(store));
+    }
+
+    @Benchmark
+    public Optional<Incident> updateIncident(Store store, Worker worker) {
+        int i = worker.random.nextInt(store.storeSize);
+        Incident update = new Incident(null, "Incident " + i, "Description of Incident " + i, worker.nextStatus());
+        return store.service.updateIncident(store.ids[i], update);
+    }
+
+    /**
+     * Deletes an incident and creates it again so the store keeps its size.
+     * Subtracting the cost of {@link #createIncident} gives the cost of the delete.
+     */
+    @Benchmark
+    public Incident deleteIncident(Store store, Worker worker) {
+        int i = worker.nextSlot(store);
+        store.service.deleteIncident(store.ids[i]);
+        Incident recreated = store.service.createIncident(incident("Incident " + i));
+        store.ids[i] = recreated.getId();
+        return recreated;
+    }
+
+    // Intersects the posting list of one incident's number with that of a word every incident contains
+    @Benchmark
+    public List<SearchHit> searchRareWord(Store store, Worker worker) {
+        return store.service.searchIncidents("incident " + worker.random.nextInt(store.storeSize), 0, 10);
+    }
+
+    // Scores every incident for the first page, the worst case of a search
+    @Benchmark
+    public List<SearchHit> searchCommonWord(Store store) {
+        return store.service.searchIncidents("description", 0, 100);
+    }
+
+    // Reads the last incidents created from the creation time index
+    @Benchmark
+    public List<Incident> getIncidentsCreatedBetween(Store store) {
+        return store.service.getIncidentsCreatedBetween(store.recentSince, null, null, RECENT_SIZE, null);
+    }
+
+    // Finds the same incidents by checking the creation time of every incident, as callers did without the index
+    @Benchmark
+    public List<Incident> scanIncidentsCreatedBetween(Store store) {
+        try (Stream<Incident> incidents = store.service.streamIncidents(null, null)) {
+            return incidents.filter(incident -> !incident.getCreatedAt().isBefore(store.recentSince)).limit(RECENT_SIZE).toList();
+        }
+    }
+
+    @Benchmark
+    public List<Incident> getAllIncidents(Store store) {
+        return store.service.getAllIncidents();
+    }
+}
@@ -0,0 +1,56 @@
+package org.demo.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TagStripper} with the regex it replaces on descriptions with and without tags.
+ * Run with {@code -prof gc} to compare allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagStripperBenchmark {
+
+    @Param({"plain", "tagged"})
+    private String kind;
+
+    @Param({"64", "4096"})
+    private int length;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        String fragment = kind.equals("plain") ? "Disk usage above threshold on db-1. " : "<b>Disk usage</b> above <i>threshold</i> on db-1. ";
+        StringBuilder builder = new StringBuilder(length + fragment.length());
+        while (builder.length() < length) {
+            builder.append(fragment);
+        }
+        input = builder.substring(0, length);
+    }
+
+    @Benchmark
+    public String regex() {
+        return input.replaceAll("<[^>]*>", "").trim();
+    }
+
+    @Benchmark
+    public String tagStripper() {
+        return TagStripper.strip(input);
+    }
+}
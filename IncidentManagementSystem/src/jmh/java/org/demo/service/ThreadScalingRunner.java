@@ -0,0 +1,60 @@
+package org.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Runs the selected benchmarks once per thread count and merges the JMH JSON results into one file,
+ * where each entry carries its {@code threads} and {@code params} so results can be compared across commits.
+ *
+ * <p>Thread counts come from {@code -Djmh.threads=1,4,16} and the output file from {@code -Djmh.result};
+ * all arguments are passed to JMH as usual, e.g. {@code IncidentServiceBenchmark -p storeSize=1000}.
+ */
+public final class ThreadScalingRunner {
+
+    private ThreadScalingRunner() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args.length == 0 ? new String[]{"IncidentServiceBenchmark"} : args);
+        int[] threadCounts = Arrays.stream(System.getProperty("jmh.threads", "1,4,16").split(","))
+                .mapToInt(count -> Integer.parseInt(count.trim()))
+                .toArray();
+        Path result = Path.of(System.getProperty("jmh.result", "target/jmh-result.json"));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        ArrayNode merged = objectMapper.createArrayNode();
+        for (int threads : threadCounts) {
+            File partial = File.createTempFile("jmh-threads-" + threads + "-", ".json");
+            try {
+                Options options = new OptionsBuilder()
+                        .parent(commandLine)
+                        .threads(threads)
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(partial.getPath())
+                        .build();
+                new Runner(options).run();
+                merged.addAll((ArrayNode) objectMapper.readTree(partial));
+            } finally {
+                Files.deleteIfExists(partial.toPath());
+            }
+        }
+
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(result.toFile(), merged);
+        System.out.println("Results for threads " + Arrays.toString(threadCounts) + " written to " + result);
+    }
+}
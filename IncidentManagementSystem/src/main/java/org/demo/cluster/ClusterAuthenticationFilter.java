@@ -0,0 +1,48 @@
+package org.demo.cluster;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Only lets other nodes of the cluster call the {@code /internal/cluster} endpoints and send requests marked as
+ * forwarded, which skip routing: they have to present the shared secret of the cluster, which
+ * {@link ClusterClient} sends with every request.
+ */
+public class ClusterAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String INTERNAL_PATH = "/internal/cluster";
+
+    private final byte[] secret;
+
+    /**
+     * @param secret The shared secret of the cluster.
+     */
+    public ClusterAuthenticationFilter(String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(ClusterClient.FORWARDED_HEADER) == null
+                && !request.getRequestURI().substring(request.getContextPath().length()).startsWith(INTERNAL_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String presented = request.getHeader(ClusterClient.SECRET_HEADER);
+        // Compared in constant time, so the secret cannot be guessed from how long a rejection takes
+        if (presented == null || !MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8))) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
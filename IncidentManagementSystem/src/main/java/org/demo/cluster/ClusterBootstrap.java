@@ -0,0 +1,59 @@
+package org.demo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Makes this node a member of the cluster once it accepts requests, either by joining through a seed node or
+ * by taking the configured members as the cluster.
+ */
+public class ClusterBootstrap {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterBootstrap.class);
+
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final String self;
+    private final List<String> members;
+    private final String seed;
+
+    /**
+     * @param self Base URL of this node, or null to use http://localhost with the server port.
+     * @param members Base URLs of the nodes of a statically configured cluster.
+     * @param seed Base URL of a running node to join, or null to use the configured members.
+     */
+    public ClusterBootstrap(ClusterMembership membership, ClusterClient client, String self, List<String> members, String seed) {
+        this.membership = membership;
+        this.client = client;
+        this.self = self;
+        this.members = members;
+        this.seed = seed;
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        membership.setSelf(self != null ? self : "http://localhost:" + event.getWebServer().getPort());
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        String node = membership.getSelf();
+        if (seed != null && !seed.equals(node)) {
+            // The seed sends the new member list to every member, this node included, before answering
+            client.exchange(seed, "POST", "/internal/cluster/join?node=" + node, null, null);
+            logger.info("Joined the cluster through {} as {}", seed, node);
+        } else {
+            Set<String> nodes = new LinkedHashSet<>(members);
+            nodes.add(node);
+            membership.update(nodes);
+            logger.info("Started the cluster as {} with members {}", node, membership.getRing().getMembers());
+        }
+    }
+}
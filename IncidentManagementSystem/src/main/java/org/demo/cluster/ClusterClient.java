@@ -0,0 +1,116 @@
+package org.demo.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends requests to the other nodes of the cluster.
+ */
+public class ClusterClient {
+
+    /**
+     * Marks a request already routed by a node, so the receiving node serves it from its own store.
+     */
+    public static final String FORWARDED_HEADER = "X-Incident-Forwarded";
+
+    /**
+     * Carries the shared secret of the cluster, which {@link ClusterAuthenticationFilter} checks.
+     */
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final String secret;
+
+    /**
+     * @param timeout Timeout of requests to other nodes.
+     * @param secret The shared secret of the cluster, sent with every request.
+     */
+    public ClusterClient(ObjectMapper objectMapper, Duration timeout, String secret) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.secret = secret;
+    }
+
+    /**
+     * Sends a request to a node, marked as forwarded and carrying the shared secret.
+     *
+     * @param node Base URL of the node.
+     * @param method The HTTP method.
+     * @param pathAndQuery The path of the request, with its query string if any.
+     * @param headers Headers to send along.
+     * @param body The request body, or null for none.
+     * @return The response, completed exceptionally when the node cannot be reached.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> send(String node, String method, String pathAndQuery,
+                                                        Map<String, String> headers, byte[] body) {
+        return httpClient.sendAsync(request(node, method, pathAndQuery, headers, body), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Sends a request without a body to a node, like {@link #send}, and completes once the response headers are read,
+     * so a long response body can be read while it arrives. The body must be closed once read.
+     *
+     * @param node Base URL of the node.
+     * @param method The HTTP method.
+     * @param pathAndQuery The path of the request, with its query string if any.
+     * @param headers Headers to send along.
+     * @return The response, completed exceptionally when the node cannot be reached.
+     */
+    public CompletableFuture<HttpResponse<InputStream>> sendForStream(String node, String method, String pathAndQuery,
+                                                                      Map<String, String> headers) {
+        return httpClient.sendAsync(request(node, method, pathAndQuery, headers, null), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private HttpRequest request(String node, String method, String pathAndQuery, Map<String, String> headers, byte[] body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + pathAndQuery))
+                .timeout(timeout)
+                .header(FORWARDED_HEADER, "true")
+                .header(SECRET_HEADER, secret)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(request::header);
+        return request.build();
+    }
+
+    /**
+     * Sends a JSON request to a node and waits for a successful response.
+     *
+     * @param node Base URL of the node.
+     * @param method The HTTP method.
+     * @param path The path of the request.
+     * @param body The object sent as JSON, or null for none.
+     * @param responseType The type of the response body, or null to ignore it.
+     * @return The response body, or null if no type was given.
+     * @throws ClusterException If the node cannot be reached or does not answer with a 2xx status.
+     */
+    public <T> T exchange(String node, String method, String path, Object body, TypeReference<T> responseType) {
+        try {
+            byte[] json = body == null ? null : objectMapper.writeValueAsBytes(body);
+            HttpResponse<byte[]> response = send(node, method, path, Map.of("Content-Type", "application/json",
+                    "Accept", "application/json"), json).join();
+            if (response.statusCode() / 100 != 2) {
+                throw new ClusterException(method + " " + node + path + " answered " + response.statusCode());
+            }
+            return responseType == null ? null : objectMapper.readValue(response.body(), responseType);
+        } catch (IOException e) {
+            throw new ClusterException(method + " " + node + path + " failed", e);
+        } catch (RuntimeException e) {
+            if (e instanceof ClusterException) {
+                throw e;
+            }
+            throw new ClusterException(method + " " + node + path + " failed", e);
+        }
+    }
+}
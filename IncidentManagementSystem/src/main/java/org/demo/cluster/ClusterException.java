@@ -0,0 +1,20 @@
+package org.demo.cluster;
+
+import java.io.Serial;
+
+/**
+ * Thrown when another node of the cluster cannot be reached or rejects a request.
+ */
+public class ClusterException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public ClusterException(String message) {
+        super(message);
+    }
+
+    public ClusterException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
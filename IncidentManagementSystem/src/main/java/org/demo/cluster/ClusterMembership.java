@@ -0,0 +1,102 @@
+package org.demo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This node's view of the cluster: its own URL and the ring of all nodes.
+ * Until the node knows its URL and members, the ring is empty and every request is served locally.
+ */
+public class ClusterMembership {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final int shards;
+    private final int replicas;
+    private final int virtualNodes;
+    private volatile String self;
+    private volatile HashRing ring;
+
+    /**
+     * @param shards Number of shards the incidents are partitioned into, the most nodes that can own any.
+     * @param replicas Number of followers of each shard besides its owner.
+     * @param virtualNodes Number of ring positions per node.
+     */
+    public ClusterMembership(int shards, int replicas, int virtualNodes) {
+        this.shards = shards;
+        this.replicas = replicas;
+        this.virtualNodes = virtualNodes;
+        this.ring = new HashRing(List.of(), virtualNodes);
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public void setSelf(String self) {
+        this.self = self;
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * Replaces the members of the cluster.
+     * Nodes beyond the number of shards are accepted, but only store copies of shards owned by others.
+     *
+     * @param members Base URLs of all nodes, this one included.
+     * @return The ring before the change, to find the shards that moved.
+     */
+    public synchronized HashRing update(Collection<String> members) {
+        HashRing previous = ring;
+        ring = new HashRing(members, virtualNodes);
+        if (ring.getMembers().size() > shards) {
+            logger.warn("{} nodes share {} shards, so some own none; set incident.store.shards to at least the number of nodes",
+                    ring.getMembers().size(), shards);
+        }
+        return previous;
+    }
+
+    /**
+     * Adds nodes to the current members.
+     *
+     * @param nodes Base URLs of the nodes to add.
+     * @return All members including the new ones.
+     */
+    public synchronized List<String> withMembers(Collection<String> nodes) {
+        Set<String> members = new LinkedHashSet<>(ring.getMembers());
+        members.addAll(nodes);
+        return List.copyOf(members);
+    }
+
+    /**
+     * @param shard The index of the shard.
+     * @return The nodes holding the shard in the given ring, its owner first.
+     */
+    public List<String> replicasOf(HashRing ring, int shard) {
+        return ring.replicasOf(shard, 1 + replicas);
+    }
+
+    /**
+     * @param shard The index of the shard.
+     * @return The nodes currently holding the shard, its owner first.
+     */
+    public List<String> replicasOf(int shard) {
+        return replicasOf(ring, shard);
+    }
+
+    /**
+     * @param shard The index of the shard.
+     * @return Whether this node currently owns the shard, which is also the case while the ring is empty.
+     */
+    public boolean isOwner(int shard) {
+        List<String> nodes = replicasOf(shard);
+        return nodes.isEmpty() || nodes.get(0).equals(self);
+    }
+}
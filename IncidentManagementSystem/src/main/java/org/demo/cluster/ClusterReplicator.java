@@ -0,0 +1,345 @@
+package org.demo.cluster;
+
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.model.Incident;
+import org.demo.service.IncidentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Copies the changes of this node to the followers of their shards, and shards to nodes that start holding them.
+ *
+ * <p>Changes are taken from the change feed, in the order they were applied, and sent asynchronously to the
+ * request that made them: the changes delivered together are sent to each follower as one batch. Followers only
+ * apply a copy newer than the one they hold. A batch a follower does not accept after a few attempts is kept and
+ * sent again ahead of its later changes, which wait behind it, from a background thread; past a bound, the changes
+ * kept are replaced by a resend of their shards. If this node falls too far behind the feed, every shard it owns is
+ * sent to its followers again.
+ */
+public class ClusterReplicator implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterReplicator.class);
+
+    private static final int TRANSFER_CHUNK_SIZE = 500;
+    // Changes sent to a follower in one request, well below the lag at which the feed asks for a resync
+    private static final int BATCH_SIZE = 256;
+    private static final int SEND_ATTEMPTS = 3;
+    private static final Duration FIRST_BACKOFF = Duration.ofMillis(100);
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+    // Changes kept per unreachable follower before they are replaced by a resend of their shards
+    private static final int MAX_UNSENT = 10_000;
+
+    private final IncidentService incidentService;
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final ScheduledExecutorService retries;
+    // Guards the fields below and orders the requests to each follower, so a deletion never overtakes an earlier change.
+    // A lock rather than a monitor, as the calls to the followers would pin a virtual thread to its carrier
+    private final ReentrantLock sendLock = new ReentrantLock();
+    // Follower -> changes it has not accepted yet, in the order they were applied
+    private final Map<String, List<IncidentEvent>> unsent = new HashMap<>();
+    // Follower -> shards to send it in full, as changes of them were lost
+    private final Map<String, Set<Integer>> staleShards = new HashMap<>();
+    private volatile IncidentEventBus.Subscription subscription;
+    private volatile boolean resyncPending;
+    private volatile boolean closed;
+
+    public ClusterReplicator(IncidentService incidentService, ClusterMembership membership, ClusterClient client) {
+        this.incidentService = incidentService;
+        this.membership = membership;
+        this.client = client;
+        this.retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-replication-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = RETRY_INTERVAL.toMillis();
+        retries.scheduleWithFixedDelay(this::retryUnsent, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        subscribe();
+    }
+
+    private void subscribe() {
+        subscription = incidentService.subscribeToChanges(null, new IncidentEventBus.Listener() {
+            // Only accessed by the delivery thread of the subscription
+            private final List<IncidentEvent> batch = new ArrayList<>(BATCH_SIZE);
+
+            @Override
+            public void onEvent(IncidentEvent event) {
+                batch.add(event);
+                if (batch.size() == BATCH_SIZE) {
+                    replicate(batch);
+                }
+            }
+
+            @Override
+            public void onCaughtUp() {
+                replicate(batch);
+            }
+
+            @Override
+            public void onResync(long sequence) {
+                batch.clear(); // Covered by resending the shards
+                resyncPending = true;
+            }
+
+            @Override
+            public void onClose() {
+                if (closed) {
+                    return;
+                }
+                replicate(batch);
+                // Subscribe again before resending the shards, so no change falls between the two
+                subscribe();
+                if (resyncPending) {
+                    resyncPending = false;
+                    logger.warn("Replication fell behind the change feed, resending owned shards to their followers");
+                    resendOwnedShards();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends a batch of changes to the followers of their shards and clears it. A follower with changes still unsent
+     * only has the batch queued behind them, so an unreachable follower does not hold up the change feed.
+     */
+    private void replicate(List<IncidentEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, List<IncidentEvent>> byFollower = new LinkedHashMap<>();
+        for (IncidentEvent event : batch) {
+            int shard = incidentService.shardIndexOf(event.incidentId());
+            if (event.type() == IncidentEvent.Type.ARCHIVED && !membership.isOwner(shard)) {
+                continue; // A follower archiving its own copy, which its owner archives as well
+            }
+            for (String node : membership.replicasOf(shard)) {
+                if (!node.equals(membership.getSelf())) {
+                    byFollower.computeIfAbsent(node, key -> new ArrayList<>()).add(event);
+                }
+            }
+        }
+        batch.clear();
+        sendLock.lock();
+        try {
+            for (Map.Entry<String, List<IncidentEvent>> entry : byFollower.entrySet()) {
+                String node = entry.getKey();
+                if (unsent.containsKey(node) || staleShards.containsKey(node) || !send(node, entry.getValue(), SEND_ATTEMPTS)) {
+                    keepUnsent(node, entry.getValue());
+                }
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Sends changes to a follower, in batches, trying each batch up to the given number of times with a doubling pause.
+     * Must be called holding the send lock.
+     *
+     * @return Whether the follower accepted all changes.
+     */
+    private boolean send(String node, List<IncidentEvent> events, int attempts) {
+        for (int from = 0; from < events.size(); from += BATCH_SIZE) {
+            List<IncidentEvent> part = events.subList(from, Math.min(events.size(), from + BATCH_SIZE));
+            if (!post(node, "/internal/cluster/replicate", part, attempts)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean post(String node, String path, Object body, int attempts) {
+        Duration backoff = FIRST_BACKOFF;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                client.exchange(node, "POST", path, body, null);
+                return true;
+            } catch (ClusterException e) {
+                if (attempt >= attempts || closed) {
+                    logger.warn("Could not send {} to {} after {} attempts: {}", path, node, attempt, e.getMessage());
+                    return false;
+                }
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = backoff.multipliedBy(2);
+        }
+    }
+
+    /**
+     * Queues changes a follower did not accept. Past {@link #MAX_UNSENT}, only deletions and archivals are kept, which
+     * a shard sent in full would not carry, and the shards of creates and updates are marked to be sent in full instead.
+     * Must be called holding the send lock.
+     */
+    private void keepUnsent(String node, List<IncidentEvent> events) {
+        List<IncidentEvent> queued = unsent.computeIfAbsent(node, key -> new ArrayList<>());
+        queued.addAll(events);
+        if (queued.size() > MAX_UNSENT) {
+            Set<Integer> shards = staleShards.computeIfAbsent(node, key -> new TreeSet<>());
+            for (Iterator<IncidentEvent> iterator = queued.iterator(); iterator.hasNext(); ) {
+                IncidentEvent event = iterator.next();
+                if (event.type() == IncidentEvent.Type.CREATED || event.type() == IncidentEvent.Type.UPDATED) {
+                    shards.add(incidentService.shardIndexOf(event.incidentId()));
+                    iterator.remove();
+                }
+            }
+            logger.warn("{} changes queued for {}, which will be sent shards {} in full", queued.size(), node, shards);
+        }
+    }
+
+    /**
+     * Sends what followers missed, one attempt per follower: first the shards to send in full, then the changes kept,
+     * stopping at the first failure. Followers that left the cluster are forgotten.
+     */
+    private void retryUnsent() {
+        sendLock.lock();
+        try {
+            Set<String> nodes = new HashSet<>(unsent.keySet());
+            nodes.addAll(staleShards.keySet());
+            for (String node : nodes) {
+                if (closed) {
+                    return;
+                }
+                if (!membership.getRing().getMembers().contains(node)) {
+                    unsent.remove(node);
+                    staleShards.remove(node);
+                    continue;
+                }
+                Set<Integer> shards = staleShards.getOrDefault(node, Set.of());
+                for (Iterator<Integer> iterator = shards.iterator(); iterator.hasNext(); ) {
+                    int shard = iterator.next();
+                    if (membership.isOwner(shard) && membership.replicasOf(shard).contains(node)
+                            && !transfer(shard, node, 1)) {
+                        break;
+                    }
+                    iterator.remove();
+                }
+                if (shards.isEmpty()) {
+                    staleShards.remove(node);
+                    List<IncidentEvent> events = unsent.get(node);
+                    if (events != null && send(node, events, 1)) {
+                        unsent.remove(node);
+                        logger.info("Sent {} queued changes to {}", events.size(), node);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to send queued changes to followers", e);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the shards that moved between two rings from this node to the nodes that newly hold them.
+     * Each shard is sent by the first of its previous holders that is still a member. Shards this node no longer
+     * holds are dropped from its store, so lists gathered from all nodes do not return stale copies.
+     *
+     * @param previous The ring before the membership changed.
+     * @param current The ring after the membership changed.
+     */
+    public void rebalance(HashRing previous, HashRing current) {
+        String self = membership.getSelf();
+        int moved = 0;
+        int dropped = 0;
+        for (int shard = 0; shard < incidentService.getShardCount(); shard++) {
+            List<String> before = membership.replicasOf(previous, shard);
+            List<String> after = membership.replicasOf(current, shard);
+            String sender = before.stream().filter(current.getMembers()::contains).findFirst().orElse(null);
+            List<String> targets = after.stream().filter(node -> !before.contains(node)).toList();
+            if (self.equals(sender) && !targets.isEmpty()) {
+                transfer(shard, targets);
+                moved++;
+            }
+            if (before.contains(self) && !after.contains(self)) {
+                drop(shard);
+                dropped++;
+            }
+        }
+        logger.info("Cluster members changed to {}, sent {} shards to their new holders and dropped {}",
+                current.getMembers(), moved, dropped);
+    }
+
+    private void resendOwnedShards() {
+        for (int shard = 0; shard < incidentService.getShardCount(); shard++) {
+            if (membership.isOwner(shard)) {
+                List<String> followers = membership.replicasOf(shard).stream()
+                        .filter(node -> !node.equals(membership.getSelf()))
+                        .toList();
+                transfer(shard, followers);
+            }
+        }
+    }
+
+    // Sends a shard to each target, marking it to be sent again to targets that do not accept it. Changes wait for
+    // the transfer, so a deletion is not overtaken by the copy read before it
+    private void transfer(int shard, List<String> targets) {
+        sendLock.lock();
+        try {
+            for (String node : targets) {
+                if (!transfer(shard, node, SEND_ATTEMPTS)) {
+                    staleShards.computeIfAbsent(node, key -> new TreeSet<>()).add(shard);
+                }
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private boolean transfer(int shard, String node, int attempts) {
+        long lastId = incidentService.getLastId(shard);
+        try (Stream<Incident> incidents = incidentService.streamShard(shard)) {
+            Iterator<Incident> iterator = incidents.iterator();
+            do {
+                List<Incident> chunk = new ArrayList<>(TRANSFER_CHUNK_SIZE);
+                while (iterator.hasNext() && chunk.size() < TRANSFER_CHUNK_SIZE) {
+                    chunk.add(iterator.next());
+                }
+                if (!post(node, "/internal/cluster/shards/" + shard, new ShardTransfer(lastId, chunk), attempts)) {
+                    return false;
+                }
+            } while (iterator.hasNext());
+        }
+        return true;
+    }
+
+    private void drop(int shard) {
+        List<Long> ids;
+        try (Stream<Incident> incidents = incidentService.streamShard(shard)) {
+            ids = incidents.map(Incident::getId).toList();
+        }
+        ids.forEach(incidentService::applyReplicaDeletion);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        retries.shutdownNow();
+        IncidentEventBus.Subscription current = subscription;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,734 @@
+package org.demo.cluster;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.demo.controller.IncidentController;
+import org.demo.controller.IncidentJsonCache;
+import org.demo.controller.IncidentSmile;
+import org.demo.model.Incident;
+import org.demo.service.IncidentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Routes requests of the incident API to the node owning the incidents they concern.
+ *
+ * <ul>
+ *     <li>Creates go to the owner of the new incident's shard, so duplicates are found wherever they are sent.</li>
+ *     <li>Reads, updates and deletes of one incident, archived incidents included, go to the owner of its ID's
+ *     shard. Reads fall back to the followers when the owner cannot be reached.</li>
+ *     <li>Batches are split by owner and the results put back in the order of the batch.</li>
+ *     <li>Lists are read from the owner of each shard, or a follower when it cannot be reached, and merged while
+ *     they are written. The archive, searches and status counts are gathered from every node and merged.</li>
+ * </ul>
+ * Requests already routed by another node, the NDJSON stream and the change feed are served from this node's store.
+ * Bodies are read and written as JSON or as {@link IncidentSmile Smile}, as the client sent and accepts them.
+ */
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRoutingFilter.class);
+
+    private static final String BASE_PATH = "/api/incidents";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    // Request headers passed on to the node serving the request, and response headers passed back
+    private static final List<String> REQUEST_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT,
+            HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH);
+    private static final List<String> RESPONSE_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG,
+            HttpHeaders.VARY, IncidentController.NEXT_CURSOR_HEADER);
+
+    private final IncidentService incidentService;
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper smileMapper;
+
+    public ClusterRoutingFilter(IncidentService incidentService, ClusterMembership membership, ClusterClient client,
+                                ObjectMapper objectMapper, ObjectMapper smileMapper) {
+        this.incidentService = incidentService;
+        this.membership = membership;
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.smileMapper = smileMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(ClusterClient.FORWARDED_HEADER) != null
+                || membership.getRing().getMembers().isEmpty()
+                || !path(request).startsWith(BASE_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = path(request);
+        String method = request.getMethod();
+        String subPath = path.substring(BASE_PATH.length());
+
+        if (subPath.isEmpty() && method.equals("POST")) {
+            byte[] body = request.getInputStream().readAllBytes();
+            Incident incident = readOrNull(mapperFor(request.getContentType()), body, Incident.class);
+            HttpServletRequest replayable = new CachedBodyRequest(request, body);
+            if (incident == null || incident.getTitle() == null) {
+                chain.doFilter(replayable, response); // Rejected by validation wherever it is served
+            } else {
+                route(incidentService.shardIndexOf(incident), replayable, body, response, chain);
+            }
+        } else if (subPath.isEmpty() && method.equals("GET") && !acceptsNdjson(request)) {
+            gatherIncidents(request, response);
+        } else if (subPath.equals("/archive") && method.equals("GET")) {
+            gatherArchive(request, response);
+        } else if (subPath.equals("/stats") && method.equals("GET")) {
+            gatherStats(request, response);
+        } else if (subPath.equals("/search") && method.equals("GET")) {
+            gatherSearch(request, response, chain);
+        } else if (subPath.equals("/batch")) {
+            splitBatch(request, response, chain);
+        } else if (subPath.matches("(/archive)?/\\d{1,18}")) {
+            // Archived incidents stay with the shard they were archived from
+            long id = Long.parseLong(subPath.substring(subPath.lastIndexOf('/') + 1));
+            if (id <= 0) {
+                chain.doFilter(request, response);
+                return;
+            }
+            byte[] body = request.getInputStream().readAllBytes();
+            route(incidentService.shardIndexOf(id), new CachedBodyRequest(request, body), body, response, chain);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Serves a request on the owner of a shard, or on a follower for reads when the owner cannot be reached.
+     */
+    private void route(int shard, HttpServletRequest request, byte[] body, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        List<String> nodes = membership.replicasOf(shard);
+        List<String> candidates = request.getMethod().equals("GET") ? nodes : nodes.subList(0, 1);
+        for (String node : candidates) {
+            if (node.equals(membership.getSelf())) {
+                chain.doFilter(request, response);
+                return;
+            }
+            try {
+                HttpResponse<byte[]> forwarded = client.send(node, request.getMethod(), pathAndQuery(request),
+                        requestHeaders(request), body.length == 0 ? null : body).join();
+                copy(forwarded, response);
+                return;
+            } catch (CompletionException e) {
+                logger.warn("Node {} owning shard {} cannot be reached: {}", node, shard, e.getMessage());
+            }
+        }
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The node holding the incident cannot be reached");
+    }
+
+    /**
+     * Reads the incidents matching the query from the owner of each shard, or from a follower of the shards whose owner
+     * cannot be reached, and merges them in ID order, or in creation time order for a time range. Each node answers
+     * with the cached JSON of its incidents a line at a time, which is copied to the client as it is merged, so the
+     * list of all incidents is never held in memory. Pages are merged from a page of each node.
+     */
+    private void gatherIncidents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean byCreation = request.getParameter("since") != null || request.getParameter("until") != null;
+        boolean paged = request.getParameter("after") != null || request.getParameter("limit") != null
+                || request.getParameter("status") != null || byCreation;
+        List<HttpResponse<InputStream>> nodeResponses = readShards(request.getQueryString(), !paged);
+        List<LineReader> readers = new ArrayList<>();
+        try {
+            for (HttpResponse<InputStream> nodeResponse : nodeResponses) {
+                if (nodeResponse.statusCode() != HttpServletResponse.SC_OK) {
+                    // Invalid parameters are rejected by every node alike
+                    try (InputStream body = nodeResponse.body()) {
+                        response.setStatus(nodeResponse.statusCode());
+                        nodeResponse.headers().firstValue(HttpHeaders.CONTENT_TYPE).ifPresent(response::setContentType);
+                        body.transferTo(response.getOutputStream());
+                    }
+                    return;
+                }
+            }
+            for (HttpResponse<InputStream> nodeResponse : nodeResponses) {
+                readers.add(new LineReader(nodeResponse));
+            }
+            Iterator<Line> lines = merge(readers, byCreation);
+
+            if (!paged) {
+                write(request, response, lines, true);
+                return;
+            }
+            int pageSize = request.getParameter("limit") == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(request.getParameter("limit"));
+            List<Line> page = new ArrayList<>(Math.min(pageSize, 64));
+            while (page.size() < pageSize && lines.hasNext()) {
+                page.add(lines.next());
+            }
+            if (page.size() == pageSize) {
+                Line last = page.get(pageSize - 1);
+                response.setHeader(IncidentController.NEXT_CURSOR_HEADER, String.valueOf(last.id()));
+                if (byCreation && last.createdAt() != null) {
+                    response.setHeader(IncidentController.NEXT_SINCE_HEADER, last.createdAt().toString());
+                }
+            }
+            write(request, response, page.iterator(), false);
+        } finally {
+            for (HttpResponse<InputStream> nodeResponse : nodeResponses) {
+                nodeResponse.body().close();
+            }
+        }
+    }
+
+    /**
+     * Asks the owner of each shard for the incidents of its shards matching the query, and a follower for the shards
+     * of owners that cannot be reached. Shards none of whose holders can be reached are left out.
+     *
+     * @param queryString The query string of the request, or null.
+     * @param gzip Whether to ask for gzipped responses, for lists of all incidents.
+     * @return The responses, with their bodies still to be read.
+     */
+    private List<HttpResponse<InputStream>> readShards(String queryString, boolean gzip) {
+        Map<String, String> headers = gzip
+                ? Map.of(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE, HttpHeaders.ACCEPT_ENCODING, "gzip")
+                : Map.of(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE);
+        List<HttpResponse<InputStream>> responses = new ArrayList<>();
+        Set<String> unreachable = new HashSet<>();
+        List<Integer> shards = IntStream.range(0, incidentService.getShardCount()).boxed().toList();
+        while (!shards.isEmpty()) {
+            Map<String, List<Integer>> shardsByNode = new LinkedHashMap<>();
+            for (int shard : shards) {
+                membership.replicasOf(shard).stream().filter(node -> !unreachable.contains(node)).findFirst().ifPresentOrElse(
+                        node -> shardsByNode.computeIfAbsent(node, key -> new ArrayList<>()).add(shard),
+                        () -> logger.warn("No node holding shard {} can be reached, listing incidents without it", shard));
+            }
+            Map<String, CompletableFuture<HttpResponse<InputStream>>> futures = new LinkedHashMap<>();
+            shardsByNode.forEach((node, nodeShards) -> futures.put(node, client.sendForStream(node, "GET",
+                    "/internal/cluster/incidents?shards=" + nodeShards.stream().map(String::valueOf).collect(Collectors.joining(","))
+                            + (queryString == null ? "" : "&" + queryString), headers)));
+            List<Integer> retry = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<HttpResponse<InputStream>>> entry : futures.entrySet()) {
+                try {
+                    responses.add(entry.getValue().join());
+                } catch (CompletionException e) {
+                    logger.warn("Node {} cannot be reached while listing incidents: {}", entry.getKey(), e.getMessage());
+                    unreachable.add(entry.getKey());
+                    retry.addAll(shardsByNode.get(entry.getKey()));
+                }
+            }
+            shards = retry;
+        }
+        return responses;
+    }
+
+    // Merges the ascending lines of every node with a heap of their smallest unread lines
+    private static Iterator<Line> merge(List<LineReader> readers, boolean byCreation) throws IOException {
+        Comparator<Line> order = byCreation
+                ? Comparator.comparing(Line::createdAt, Comparator.nullsFirst(Comparator.naturalOrder())).thenComparingLong(Line::id)
+                : Comparator.comparingLong(Line::id);
+        PriorityQueue<Line> heads = new PriorityQueue<>(Math.max(readers.size(), 1), order);
+        for (LineReader reader : readers) {
+            Line line = reader.next(byCreation);
+            if (line != null) {
+                heads.add(line);
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Line next() {
+                Line line = heads.poll();
+                if (line == null) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    Line following = line.reader().next(byCreation);
+                    if (following != null) {
+                        heads.add(following);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return line;
+            }
+        };
+    }
+
+    /**
+     * Writes merged lines as a JSON array, copying the JSON of each incident as the node sent it and gzipping a list of
+     * all incidents for clients accepting it, or as a Smile array if the client accepts Smile.
+     */
+    private void write(HttpServletRequest request, HttpServletResponse response, Iterator<Line> lines, boolean all)
+            throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setHeader(HttpHeaders.VARY, IncidentController.LIST_VARY);
+        if (IncidentSmile.includes(request.getHeader(HttpHeaders.ACCEPT))) {
+            response.setContentType(IncidentSmile.MEDIA_TYPE_VALUE);
+            try (JsonGenerator generator = smileMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.writeStartArray();
+                while (lines.hasNext()) {
+                    smileMapper.writeValue(generator, objectMapper.readValue(lines.next().json(), Incident.class));
+                }
+                generator.writeEndArray();
+            }
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        boolean gzip = all && IncidentJsonCache.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        try (OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream()) {
+            out.write('[');
+            for (boolean first = true; lines.hasNext(); first = false) {
+                if (!first) {
+                    out.write(',');
+                }
+                out.write(lines.next().json());
+            }
+            out.write(']');
+        }
+    }
+
+    /**
+     * Asks every node for a page of its archive and merges the pages in ID order. Nodes archive the copies they hold
+     * as followers as well, so incidents are deduplicated by ID, keeping the newest version.
+     */
+    private void gatherArchive(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<Long, Incident> merged = new HashMap<>();
+        for (HttpResponse<byte[]> nodeResponse : fanOut("GET", pathAndQuery(request))) {
+            if (nodeResponse.statusCode() != HttpServletResponse.SC_OK) {
+                copy(nodeResponse, response); // Invalid parameters are rejected by every node alike
+                return;
+            }
+            for (Incident incident : objectMapper.readValue(nodeResponse.body(), new TypeReference<List<Incident>>() {
+            })) {
+                merged.merge(incident.getId(), incident, (a, b) -> version(a) >= version(b) ? a : b);
+            }
+        }
+
+        List<Incident> incidents = new ArrayList<>(merged.values());
+        incidents.sort(Comparator.comparing(Incident::getId));
+        int pageSize = request.getParameter("limit") == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(request.getParameter("limit"));
+        if (incidents.size() > pageSize) {
+            incidents = incidents.subList(0, pageSize);
+        }
+        if (incidents.size() == pageSize) {
+            response.setHeader(IncidentController.NEXT_CURSOR_HEADER, String.valueOf(incidents.get(pageSize - 1).getId()));
+        }
+        write(request, response, incidents);
+    }
+
+    /**
+     * Asks every node for the best search matches in the shards it owns and merges them by score. Ranks depend on
+     * the page, so every node returns its matches up to the end of the requested page, a page of at most
+     * {@link IncidentService#MAX_PAGE_SIZE} at a time. Each node scores with the word statistics of its own store,
+     * which are close across nodes as every node holds a similar share of the incidents.
+     */
+    private void gatherSearch(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String query = request.getParameter("q");
+        int offset;
+        int pageSize;
+        try {
+            offset = request.getParameter("offset") == null ? 0 : Integer.parseInt(request.getParameter("offset"));
+            pageSize = request.getParameter("limit") == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(request.getParameter("limit"));
+        } catch (NumberFormatException e) {
+            chain.doFilter(request, response); // Rejected wherever it is served
+            return;
+        }
+        if (query == null || offset < 0 || offset > IncidentService.MAX_SEARCH_OFFSET
+                || pageSize <= 0 || pageSize > IncidentService.MAX_PAGE_SIZE) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        int wanted = offset + pageSize;
+        List<JsonNode> hits = new ArrayList<>();
+        boolean more = true;
+        for (int from = 0; from < wanted && more; from += IncidentService.MAX_PAGE_SIZE) {
+            int limit = Math.min(IncidentService.MAX_PAGE_SIZE, wanted - from);
+            more = false;
+            for (HttpResponse<byte[]> nodeResponse : fanOut("GET", "/internal/cluster/search?q="
+                    + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&offset=" + from + "&limit=" + limit)) {
+                if (nodeResponse.statusCode() != HttpServletResponse.SC_OK) {
+                    copy(nodeResponse, response);
+                    return;
+                }
+                JsonNode nodeHits = objectMapper.readTree(nodeResponse.body());
+                more |= nodeHits.size() == limit;
+                nodeHits.forEach(hits::add);
+            }
+        }
+
+        hits.sort(Comparator.<JsonNode>comparingDouble(hit -> hit.get("score").asDouble())
+                .thenComparingLong(hit -> hit.get("incident").get("id").asLong())
+                .reversed());
+        List<JsonNode> page = hits.subList(Math.min(offset, hits.size()), Math.min(wanted, hits.size()));
+        if (page.size() == pageSize) {
+            response.setHeader(IncidentController.NEXT_OFFSET_HEADER, String.valueOf(wanted));
+        }
+        write(request, response, page);
+    }
+
+    /**
+     * Adds up the incidents per status of the shards each node owns.
+     */
+    private void gatherStats(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<Incident.Status, Long> counts = new EnumMap<>(Incident.Status.class);
+        for (HttpResponse<byte[]> nodeResponse : fanOut("GET", "/internal/cluster/stats")) {
+            if (nodeResponse.statusCode() == HttpServletResponse.SC_OK) {
+                Map<Incident.Status, Long> nodeCounts = objectMapper.readValue(nodeResponse.body(),
+                        new TypeReference<Map<Incident.Status, Long>>() {
+                        });
+                nodeCounts.forEach((status, count) -> counts.merge(status, count, Long::sum));
+            }
+        }
+        write(request, response, counts);
+    }
+
+    /**
+     * Splits a batch into one batch per owning node and puts the results back in the order of the original batch.
+     * A Smile stream of new incidents may be longer than a batch, as its owners create it a batch at a time; it is
+     * split a batch at a time as well.
+     */
+    private void splitBatch(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        byte[] body = request.getInputStream().readAllBytes();
+        ObjectMapper mapper = mapperFor(request.getContentType());
+        boolean stream = mapper == smileMapper && request.getMethod().equals("POST");
+        ArrayNode array = stream ? readSequenceOrNull(body)
+                : readOrNull(mapper, body, JsonNode.class) instanceof ArrayNode items ? items : null;
+        if (array == null || array.isEmpty() || (!stream && array.size() > IncidentService.MAX_BATCH_SIZE)) {
+            chain.doFilter(new CachedBodyRequest(request, body), response); // Rejected wherever it is served
+            return;
+        }
+
+        JsonNode[] results = new JsonNode[array.size()];
+        for (int from = 0; from < array.size(); from += IncidentService.MAX_BATCH_SIZE) {
+            if (!splitBatch(request, response, mapper, array, from, Math.min(array.size(), from + IncidentService.MAX_BATCH_SIZE), results)) {
+                return;
+            }
+        }
+        write(request, response, results);
+    }
+
+    /**
+     * Sends the items {@code from} to {@code to} of a batch to their owners and stores their results.
+     *
+     * @return False if a node failed the batch and the response is already written.
+     */
+    private boolean splitBatch(HttpServletRequest request, HttpServletResponse response, ObjectMapper mapper, ArrayNode array,
+                               int from, int to, JsonNode[] results) throws IOException {
+        Map<String, List<Integer>> indexesByNode = new LinkedHashMap<>();
+        for (int index = from; index < to; index++) {
+            Integer shard = batchItemShard(request.getMethod(), array.get(index));
+            List<String> nodes = shard == null ? List.of() : membership.replicasOf(shard);
+            String node = nodes.isEmpty() ? membership.getSelf() : nodes.get(0);
+            indexesByNode.computeIfAbsent(node, key -> new ArrayList<>()).add(index);
+        }
+
+        Map<String, CompletableFuture<HttpResponse<byte[]>>> responses = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : indexesByNode.entrySet()) {
+            ArrayNode part = mapper.createArrayNode();
+            entry.getValue().forEach(index -> part.add(array.get(index)));
+            responses.put(entry.getKey(), client.send(entry.getKey(), request.getMethod(), pathAndQuery(request),
+                    requestHeaders(request), mapper.writeValueAsBytes(part)));
+        }
+
+        for (Map.Entry<String, CompletableFuture<HttpResponse<byte[]>>> entry : responses.entrySet()) {
+            HttpResponse<byte[]> nodeResponse;
+            try {
+                nodeResponse = entry.getValue().join();
+            } catch (CompletionException e) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Node " + entry.getKey() + " cannot be reached");
+                return false;
+            }
+            if (nodeResponse.statusCode() != HttpServletResponse.SC_OK) {
+                copy(nodeResponse, response);
+                return false;
+            }
+            List<Integer> indexes = indexesByNode.get(entry.getKey());
+            ObjectMapper resultMapper = mapperFor(nodeResponse.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse(null));
+            for (JsonNode result : resultMapper.readTree(nodeResponse.body())) {
+                int index = indexes.get(result.get("index").asInt());
+                ((ObjectNode) result).put("index", index);
+                results[index] = result;
+            }
+        }
+        return true;
+    }
+
+    // The shard deciding where a batch item is served, or null when it is invalid and served anywhere
+    private Integer batchItemShard(String method, JsonNode item) {
+        if (method.equals("DELETE")) {
+            return item.canConvertToLong() && item.asLong() > 0 ? incidentService.shardIndexOf(item.asLong()) : null;
+        }
+        if (method.equals("PUT")) {
+            JsonNode id = item.get("id");
+            return id != null && id.canConvertToLong() && id.asLong() > 0 ? incidentService.shardIndexOf(id.asLong()) : null;
+        }
+        JsonNode title = item.get("title");
+        if (title == null || !title.isTextual()) {
+            return null;
+        }
+        JsonNode description = item.get("description");
+        return incidentService.shardIndexOf(new Incident(null, title.asText(),
+                description == null || description.isNull() ? null : description.asText(), null));
+    }
+
+    // Sends the same request to every member, this node included
+    private List<HttpResponse<byte[]>> fanOut(String method, String pathAndQuery) {
+        List<CompletableFuture<HttpResponse<byte[]>>> futures = new ArrayList<>();
+        for (String node : membership.getRing().getMembers()) {
+            futures.add(client.send(node, method, pathAndQuery, Map.of(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE), null));
+        }
+        List<HttpResponse<byte[]>> responses = new ArrayList<>();
+        for (CompletableFuture<HttpResponse<byte[]>> future : futures) {
+            try {
+                responses.add(future.join());
+            } catch (CompletionException e) {
+                // Followers of the node's shards still return most of its incidents
+                logger.warn("Node cannot be reached while gathering {}: {}", pathAndQuery, e.getMessage());
+            }
+        }
+        return responses;
+    }
+
+    private static long version(Incident incident) {
+        return incident.getVersion() == null ? 0 : incident.getVersion();
+    }
+
+    private static boolean acceptsNdjson(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE);
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static String pathAndQuery(HttpServletRequest request) {
+        return request.getQueryString() == null ? path(request) : path(request) + "?" + request.getQueryString();
+    }
+
+    private static Map<String, String> requestHeaders(HttpServletRequest request) {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : REQUEST_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return headers;
+    }
+
+    private static void copy(HttpResponse<byte[]> from, HttpServletResponse to) throws IOException {
+        to.setStatus(from.statusCode());
+        for (String name : RESPONSE_HEADERS) {
+            from.headers().firstValue(name).ifPresent(value -> to.setHeader(name, value));
+        }
+        to.getOutputStream().write(from.body());
+    }
+
+    // Writes a merged response as Smile if the client accepts it, and as JSON otherwise
+    private void write(HttpServletRequest request, HttpServletResponse response, Object body) throws IOException {
+        boolean smile = IncidentSmile.includes(request.getHeader(HttpHeaders.ACCEPT));
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(smile ? IncidentSmile.MEDIA_TYPE_VALUE : MediaType.APPLICATION_JSON_VALUE);
+        (smile ? smileMapper : objectMapper).writeValue(response.getOutputStream(), body);
+    }
+
+    // The mapper reading a body of the given content type
+    private ObjectMapper mapperFor(String contentType) {
+        return IncidentSmile.includes(contentType) ? smileMapper : objectMapper;
+    }
+
+    private static <T> T readOrNull(ObjectMapper mapper, byte[] body, Class<T> type) {
+        try {
+            return mapper.readValue(body, type);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Reads a Smile array or sequence of values, or returns null if it is malformed
+    private ArrayNode readSequenceOrNull(byte[] body) {
+        ArrayNode items = smileMapper.createArrayNode();
+        try (MappingIterator<JsonNode> values = smileMapper.readerFor(JsonNode.class).readValues(body)) {
+            values.forEachRemaining(items::add);
+            return items;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The JSON of one incident as a node sent it, with what it is ordered by.
+     *
+     * @param createdAt The creation time, only read when ordering by it.
+     */
+    private record Line(byte[] json, long id, Instant createdAt, LineReader reader) {
+    }
+
+    /**
+     * Reads the lines of a node's newline-delimited JSON response one at a time.
+     */
+    private final class LineReader {
+
+        private final InputStream input;
+
+        LineReader(HttpResponse<InputStream> response) throws IOException {
+            boolean gzipped = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).map("gzip"::equalsIgnoreCase).orElse(false);
+            InputStream body = gzipped ? new GZIPInputStream(response.body(), 8192) : response.body();
+            this.input = new BufferedInputStream(body, 8192);
+        }
+
+        /**
+         * @return The next line, or null at the end of the response.
+         */
+        Line next(boolean byCreation) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            for (int b = input.read(); b != '\n'; b = input.read()) {
+                if (b < 0) {
+                    if (line.size() == 0) {
+                        return null;
+                    }
+                    break;
+                }
+                line.write(b);
+            }
+            byte[] json = line.toByteArray();
+            if (byCreation) {
+                Incident incident = objectMapper.readValue(json, Incident.class);
+                return new Line(json, incident.getId(), incident.getCreatedAt(), this);
+            }
+            return new Line(json, id(json), null, this);
+        }
+
+        // Reads the ID of an incident without binding the rest of it
+        private long id(byte[] json) throws IOException {
+            try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+                parser.nextToken();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    if (name.equals("id")) {
+                        return parser.getLongValue();
+                    }
+                    parser.skipChildren();
+                }
+            }
+            throw new IOException("Incident without an ID: " + new String(json, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * A request whose body was already read, so it can still be served locally.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // The whole body is already in memory, so the listener is told right away that it can all be read
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    Objects.requireNonNull(listener, "listener");
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            listener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
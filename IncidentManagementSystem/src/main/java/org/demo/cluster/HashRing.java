@@ -0,0 +1,91 @@
+package org.demo.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring assigning the shards of the incident store to the nodes of a cluster.
+ *
+ * <p>Every node takes {@code virtualNodes} positions on the ring. A shard is owned by the node at the first position
+ * clockwise from the shard's own position, and replicated to the next distinct nodes after it. When a node joins,
+ * it only takes over the shards falling just before its positions, about one in every {@code n} shards.
+ */
+public final class HashRing {
+
+    private final List<String> members;
+    private final NavigableMap<Long, String> positions = new TreeMap<>();
+
+    /**
+     * @param members Base URLs of the nodes.
+     * @param virtualNodes Number of positions per node.
+     */
+    public HashRing(Collection<String> members, int virtualNodes) {
+        this.members = members.stream().distinct().sorted().toList();
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                positions.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @return Base URLs of the nodes, sorted.
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * Finds the nodes holding a shard, its owner first.
+     *
+     * @param shard The index of the shard.
+     * @param count The number of nodes wanted, the owner included.
+     * @return Up to {@code count} distinct nodes, or an empty list when the ring has no nodes.
+     */
+    public List<String> replicasOf(int shard, int count) {
+        int wanted = Math.min(count, members.size());
+        List<String> replicas = new ArrayList<>(wanted);
+        if (wanted == 0) {
+            return replicas;
+        }
+        long position = hash("shard-" + shard);
+        for (Map.Entry<Long, String> entry : positions.tailMap(position, true).entrySet()) {
+            if (add(replicas, entry.getValue(), wanted)) {
+                return replicas;
+            }
+        }
+        for (String member : positions.values()) {
+            if (add(replicas, member, wanted)) {
+                return replicas;
+            }
+        }
+        return replicas;
+    }
+
+    private static boolean add(List<String> replicas, String member, int wanted) {
+        if (!replicas.contains(member)) {
+            replicas.add(member);
+        }
+        return replicas.size() == wanted;
+    }
+
+    // 64-bit FNV-1a with a final avalanche, so nearby names land far apart on the ring
+    static long hash(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,14 @@
+package org.demo.cluster;
+
+import org.demo.model.Incident;
+
+import java.util.List;
+
+/**
+ * Part of a shard sent to a node that starts holding it.
+ *
+ * @param lastId The largest ID handed out for the shard, so its new owner continues after it.
+ * @param incidents Incidents of the shard.
+ */
+public record ShardTransfer(long lastId, List<Incident> incidents) {
+}
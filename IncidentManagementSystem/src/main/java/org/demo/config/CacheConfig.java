@@ -0,0 +1,21 @@
+package org.demo.config;
+
+import org.demo.service.CachePolicy;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({CacheProperties.class, StoreProperties.class})
+public class CacheConfig {
+
+    @Bean
+    public CachePolicy cachePolicy(CacheProperties properties, StoreProperties store) {
+        boolean enabled = switch (properties.mode()) {
+            case AUTO -> store.engine() != StoreProperties.Engine.HEAP;
+            case ON -> true;
+            case OFF -> false;
+        };
+        return enabled ? new CachePolicy(properties.maximumWeight().toBytes(), properties.expireAfterAccess()) : CachePolicy.DISABLED;
+    }
+}
@@ -0,0 +1,29 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Settings of the cache of incidents in front of the storage engine.
+ *
+ * @param mode Whether incidents are cached.
+ * @param maximumWeight Most heap taken by cached incidents, estimated from their text, across all shards.
+ * @param expireAfterAccess How long an unused incident stays cached, 0 for no limit.
+ */
+@ConfigurationProperties(prefix = "incident.cache")
+public record CacheProperties(
+        @DefaultValue("auto") Mode mode,
+        @DefaultValue("64MB") DataSize maximumWeight,
+        @DefaultValue("10m") Duration expireAfterAccess) {
+
+    public enum Mode {
+        // Cache in front of the off-heap and file engines, which decode incidents on every read, but not in
+        // front of the heap engine, which already holds them as objects
+        AUTO,
+        ON,
+        OFF
+    }
+}
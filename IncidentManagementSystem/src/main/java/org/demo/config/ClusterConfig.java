@@ -0,0 +1,73 @@
+package org.demo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.cluster.ClusterAuthenticationFilter;
+import org.demo.cluster.ClusterBootstrap;
+import org.demo.cluster.ClusterClient;
+import org.demo.cluster.ClusterMembership;
+import org.demo.cluster.ClusterReplicator;
+import org.demo.cluster.ClusterRoutingFilter;
+import org.demo.service.IncidentService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ClusterProperties.class)
+@ConditionalOnProperty(prefix = "incident.cluster", name = "enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterConfig {
+
+    @Bean
+    public ClusterMembership clusterMembership(ClusterProperties properties, IncidentService incidentService) {
+        // Nodes joining later are only warned about, as they are not known yet
+        if (properties.members().size() > incidentService.getShardCount()) {
+            throw new IllegalStateException("incident.store.shards must be at least the number of incident.cluster.members, "
+                    + "as every shard has a single owner");
+        }
+        return new ClusterMembership(incidentService.getShardCount(), properties.replicas(), properties.virtualNodes());
+    }
+
+    @Bean
+    public ClusterClient clusterClient(ObjectMapper objectMapper, ClusterProperties properties) {
+        return new ClusterClient(objectMapper, properties.timeout(), properties.secret());
+    }
+
+    @Bean
+    public ClusterReplicator clusterReplicator(IncidentService incidentService, ClusterMembership membership,
+                                               ClusterClient client) {
+        return new ClusterReplicator(incidentService, membership, client);
+    }
+
+    @Bean
+    public ClusterBootstrap clusterBootstrap(ClusterMembership membership, ClusterClient client, ClusterProperties properties) {
+        return new ClusterBootstrap(membership, client, properties.self(), properties.members(), properties.seed());
+    }
+
+    @Bean
+    public FilterRegistrationBean<ClusterAuthenticationFilter> clusterAuthenticationFilter(ClusterProperties properties) {
+        FilterRegistrationBean<ClusterAuthenticationFilter> registration = new FilterRegistrationBean<>(
+                new ClusterAuthenticationFilter(properties.secret()));
+        registration.addUrlPatterns("/internal/cluster/*", "/api/incidents", "/api/incidents/*");
+        // Ahead of routing, which serves requests marked as forwarded locally
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<ClusterRoutingFilter> clusterRoutingFilter(IncidentService incidentService,
+                                                                             ClusterMembership membership,
+                                                                             ClusterClient client,
+                                                                             ObjectMapper objectMapper,
+                                                                             MappingJackson2SmileHttpMessageConverter smileConverter) {
+        FilterRegistrationBean<ClusterRoutingFilter> registration = new FilterRegistrationBean<>(
+                new ClusterRoutingFilter(incidentService, membership, client, objectMapper, smileConverter.getObjectMapper()));
+        registration.addUrlPatterns("/api/incidents", "/api/incidents/*");
+        return registration;
+    }
+}
@@ -0,0 +1,38 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the cluster mode, where several nodes partition the incidents between them.
+ *
+ * @param enabled Whether this node is part of a cluster, otherwise it serves all incidents itself.
+ * @param self Base URL other nodes reach this node at, http://localhost with the server port when not set.
+ * @param members Base URLs of the nodes of a statically configured cluster.
+ * @param seed Base URL of a running node to join on startup, instead of configuring the members.
+ * @param replicas Number of followers each shard's changes are replicated to, besides its owner.
+ * @param virtualNodes Number of positions each node takes on the consistent-hash ring.
+ * @param timeout Timeout of requests to other nodes.
+ * @param secret Shared secret every node of the cluster presents to the others, required in cluster mode as the
+ *               internal endpoints are served on the public port.
+ */
+@ConfigurationProperties(prefix = "incident.cluster")
+public record ClusterProperties(
+        @DefaultValue("false") boolean enabled,
+        String self,
+        @DefaultValue List<String> members,
+        String seed,
+        @DefaultValue("1") int replicas,
+        @DefaultValue("64") int virtualNodes,
+        @DefaultValue("5s") Duration timeout,
+        String secret) {
+
+    public ClusterProperties {
+        if (enabled && (secret == null || secret.isBlank())) {
+            throw new IllegalArgumentException("incident.cluster.secret must be set in cluster mode");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.demo.config;
+
+import org.demo.service.DeduplicationPolicy;
+import org.demo.service.DeduplicationStrategy;
+import org.demo.service.ExactDeduplication;
+import org.demo.service.NormalizedDeduplication;
+import org.demo.service.SimHashDeduplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+@EnableConfigurationProperties(DeduplicationProperties.class)
+public class DeduplicationConfig {
+
+    @Bean
+    public DeduplicationStrategy deduplicationStrategy(DeduplicationProperties properties) {
+        return switch (properties.strategy()) {
+            case EXACT -> new ExactDeduplication();
+            case NORMALIZED -> new NormalizedDeduplication();
+            case SIMHASH -> new SimHashDeduplication(properties.maxDistance(), properties.shingleSize());
+        };
+    }
+
+    @Bean
+    public DeduplicationPolicy deduplicationPolicy(DeduplicationStrategy strategy, DeduplicationProperties properties) {
+        return new DeduplicationPolicy(strategy, properties.window(), properties.candidates(), Clock.systemUTC());
+    }
+}
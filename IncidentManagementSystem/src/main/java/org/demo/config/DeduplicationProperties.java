@@ -0,0 +1,30 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the deduplication of new incidents.
+ *
+ * @param strategy How incidents are compared.
+ * @param window How long after its last occurrence an open incident absorbs duplicates, 0 for no limit.
+ * @param candidates Most incidents compared per fingerprint, which bounds the cost of a check.
+ * @param maxDistance Largest number of differing SimHash bits, out of 64, of similar descriptions.
+ * @param shingleSize Number of words per shingle hashed into the SimHash.
+ */
+@ConfigurationProperties(prefix = "incident.dedup")
+public record DeduplicationProperties(
+        @DefaultValue("exact") Strategy strategy,
+        @DefaultValue("1h") Duration window,
+        @DefaultValue("8") int candidates,
+        @DefaultValue("10") int maxDistance,
+        @DefaultValue("2") int shingleSize) {
+
+    public enum Strategy {
+        EXACT,
+        NORMALIZED,
+        SIMHASH
+    }
+}
@@ -0,0 +1,18 @@
+package org.demo.config;
+
+import org.demo.event.IncidentEventBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(EventProperties.class)
+public class EventConfig {
+
+    @Bean
+    public IncidentEventBus incidentEventBus(EventProperties properties,
+                                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        return new IncidentEventBus(properties.ringSize(), properties.maxLag(), virtualThreads);
+    }
+}
@@ -0,0 +1,20 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the incident change feed.
+ *
+ * @param ringSize Number of recent events kept for clients resuming with Last-Event-ID.
+ * @param maxLag Number of events a subscriber may fall behind before it is told to resync and disconnected.
+ * @param timeout How long an event stream stays open before the client has to reconnect.
+ */
+@ConfigurationProperties(prefix = "incident.events")
+public record EventProperties(
+        @DefaultValue("4096") int ringSize,
+        @DefaultValue("1024") int maxLag,
+        @DefaultValue("30m") Duration timeout) {
+}
@@ -0,0 +1,20 @@
+package org.demo.config;
+
+import org.demo.persistence.IncidentJournal;
+import org.demo.persistence.WriteAheadLog;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(JournalProperties.class)
+public class JournalConfig {
+
+    @Bean
+    public IncidentJournal incidentJournal(JournalProperties properties) {
+        if (!properties.enabled()) {
+            return IncidentJournal.NONE;
+        }
+        return new WriteAheadLog(properties.directory(), properties.fsync(), properties.snapshotInterval());
+    }
+}
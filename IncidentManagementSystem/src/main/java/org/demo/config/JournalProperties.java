@@ -0,0 +1,23 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the write-ahead log that makes the incident store survive restarts.
+ *
+ * @param enabled Whether incidents are journaled to disk, otherwise they only live in memory.
+ * @param directory Directory holding the log segments and snapshots.
+ * @param fsync Whether writes wait for the log to be forced to disk, rather than only written to the file.
+ * @param snapshotInterval How often a snapshot is written so older log segments can be deleted.
+ */
+@ConfigurationProperties(prefix = "incident.journal")
+public record JournalProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("data/journal") Path directory,
+        @DefaultValue("true") boolean fsync,
+        @DefaultValue("5m") Duration snapshotInterval) {
+}
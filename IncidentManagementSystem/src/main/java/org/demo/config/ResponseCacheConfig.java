@@ -0,0 +1,18 @@
+package org.demo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.controller.IncidentJsonCache;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ResponseCacheProperties.class)
+public class ResponseCacheConfig {
+
+    @Bean
+    public IncidentJsonCache incidentJsonCache(ObjectMapper objectMapper, ResponseCacheProperties properties) {
+        return new IncidentJsonCache(objectMapper, properties.maximumWeight().toBytes(),
+                properties.gzipThreshold().toBytes(), properties.gzipMaximumWeight().toBytes());
+    }
+}
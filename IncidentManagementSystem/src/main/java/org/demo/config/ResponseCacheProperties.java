@@ -0,0 +1,19 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings of the cache of JSON sent by the incident GET endpoints.
+ *
+ * @param maximumWeight Most heap taken by the JSON of cached incidents, 0 to serialize incidents on every read.
+ * @param gzipThreshold Smallest list, in bytes of JSON, sent gzipped to clients accepting it.
+ * @param gzipMaximumWeight Most heap taken by gzipped lists, 0 to compress them on every read.
+ */
+@ConfigurationProperties(prefix = "incident.response-cache")
+public record ResponseCacheProperties(
+        @DefaultValue("32MB") DataSize maximumWeight,
+        @DefaultValue("8KB") DataSize gzipThreshold,
+        @DefaultValue("16MB") DataSize gzipMaximumWeight) {
+}
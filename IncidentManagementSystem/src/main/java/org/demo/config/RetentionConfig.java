@@ -0,0 +1,32 @@
+package org.demo.config;
+
+import org.demo.controller.IncidentJsonCache;
+import org.demo.persistence.FileIncidentArchive;
+import org.demo.persistence.IncidentArchive;
+import org.demo.service.IncidentRetention;
+import org.demo.service.IncidentService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(RetentionProperties.class)
+public class RetentionConfig {
+
+    @Bean
+    public IncidentArchive incidentArchive(RetentionProperties properties) {
+        if (!properties.enabled()) {
+            return IncidentArchive.NONE;
+        }
+        return new FileIncidentArchive(properties.directory(), properties.segmentSize().toBytes());
+    }
+
+    @Bean(initMethod = "start")
+    @ConditionalOnProperty(prefix = "incident.retention", name = "enabled", havingValue = "true")
+    public IncidentRetention incidentRetention(IncidentService incidentService, RetentionProperties properties,
+                                               IncidentJsonCache jsonCache) {
+        return new IncidentRetention(incidentService, properties.maxAge(), properties.interval(), properties.batchSize(),
+                properties.pause(), jsonCache::evict);
+    }
+}
@@ -0,0 +1,30 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the retention that moves closed incidents from the store to the archive.
+ *
+ * @param enabled Whether closed incidents are archived, and the archive is read by the archive endpoints.
+ * @param maxAge How long an incident stays in the store after it was closed.
+ * @param interval Time between two sweeps over the closed incidents.
+ * @param batchSize Closed incidents examined per batch of a sweep.
+ * @param pause Time between two batches of a sweep.
+ * @param directory Directory holding the archive segments.
+ * @param segmentSize Size after which the archive starts a new segment file.
+ */
+@ConfigurationProperties(prefix = "incident.retention")
+public record RetentionProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("30d") Duration maxAge,
+        @DefaultValue("1m") Duration interval,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("20ms") Duration pause,
+        @DefaultValue("data/archive") Path directory,
+        @DefaultValue("64MB") DataSize segmentSize) {
+}
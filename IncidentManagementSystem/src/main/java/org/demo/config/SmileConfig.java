@@ -0,0 +1,34 @@
+package org.demo.config;
+
+import org.demo.controller.IncidentSmile;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Reads and writes {@link IncidentSmile the Smile encoding} of the API in both flavors.
+ */
+@Configuration
+public class SmileConfig {
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter() {
+        // Replaces the converter Spring adds with a default mapper for Smile on the classpath
+        return new MappingJackson2SmileHttpMessageConverter(IncidentSmile.createMapper());
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public CodecCustomizer smileCodecCustomizer() {
+        // Without media types given, the codecs would only handle JSON
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(IncidentSmile.createMapper(), IncidentSmile.MEDIA_TYPE));
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(IncidentSmile.createMapper(), IncidentSmile.MEDIA_TYPE));
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package org.demo.config;
+
+import org.demo.repository.FileIncidentRepository;
+import org.demo.repository.InMemoryIncidentRepository;
+import org.demo.repository.IncidentRepository;
+import org.demo.repository.OffHeapIncidentRepository;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(StoreProperties.class)
+public class StoreConfig {
+
+    @Bean
+    public IncidentRepository incidentRepository(StoreProperties properties) {
+        int slabSize = Math.toIntExact(properties.slabSize().toBytes());
+        return switch (properties.engine()) {
+            case HEAP -> new InMemoryIncidentRepository();
+            case OFF_HEAP -> new OffHeapIncidentRepository(slabSize);
+            case FILE -> new FileIncidentRepository(properties.file(), slabSize);
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package org.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the storage engine holding the incidents.
+ *
+ * @param engine Which engine stores the incidents.
+ * @param slabSize Size of each buffer of the off-heap and file engines, a power of two.
+ * @param file File backing the file engine.
+ */
+@ConfigurationProperties(prefix = "incident.store")
+public record StoreProperties(
+        @DefaultValue("heap") Engine engine,
+        @DefaultValue("64MB") DataSize slabSize,
+        @DefaultValue("data/store/incidents.dat") Path file) {
+
+    public enum Engine {
+        HEAP,
+        OFF_HEAP,
+        FILE
+    }
+}
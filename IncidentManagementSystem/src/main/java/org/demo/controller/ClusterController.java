@@ -0,0 +1,168 @@
+package org.demo.controller;
+
+import org.demo.cluster.ClusterClient;
+import org.demo.cluster.ClusterMembership;
+import org.demo.cluster.ClusterReplicator;
+import org.demo.cluster.HashRing;
+import org.demo.cluster.ShardTransfer;
+import org.demo.event.IncidentEvent;
+import org.demo.model.Incident;
+import org.demo.model.SearchHit;
+import org.demo.service.IncidentService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Endpoints the nodes of a cluster call on each other, only present in cluster mode.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "incident.cluster", name = "enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/internal/cluster")
+public class ClusterController {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final IncidentService incidentService;
+    private final ClusterMembership membership;
+    private final ClusterReplicator replicator;
+    private final ClusterClient client;
+    private final IncidentJsonCache jsonCache;
+    // Serializes joins, so each sends the members including those of the joins before it
+    private final ReentrantLock joinLock = new ReentrantLock();
+
+    public ClusterController(IncidentService incidentService, ClusterMembership membership,
+                             ClusterReplicator replicator, ClusterClient client, IncidentJsonCache jsonCache) {
+        this.incidentService = incidentService;
+        this.membership = membership;
+        this.replicator = replicator;
+        this.client = client;
+        this.jsonCache = jsonCache;
+    }
+
+    // Get the members of the cluster as seen by this node
+    @GetMapping("/members")
+    public ResponseEntity<List<String>> getMembers() {
+        return ResponseEntity.ok(membership.getRing().getMembers());
+    }
+
+    // Add a node to the cluster: every member, the new one included, is sent the new member list and
+    // has sent the shards that moved by the time this returns
+    @PostMapping("/join")
+    public ResponseEntity<List<String>> join(@RequestParam String node) {
+        // A lock rather than a monitor, as the calls to the members would pin a virtual thread to its carrier
+        joinLock.lock();
+        try {
+            List<String> members = membership.withMembers(List.of(node));
+            for (String member : members) {
+                if (member.equals(membership.getSelf())) {
+                    setMembers(members);
+                } else {
+                    client.exchange(member, "PUT", "/internal/cluster/members", members, null);
+                }
+            }
+            return ResponseEntity.ok(members);
+        } finally {
+            joinLock.unlock();
+        }
+    }
+
+    // Replace the members of the cluster and send the shards that moved away from this node
+    @PutMapping("/members")
+    public ResponseEntity<Void> setMembers(@RequestBody List<String> members) {
+        HashRing previous = membership.update(members);
+        replicator.rebalance(previous, membership.getRing());
+        return ResponseEntity.noContent().build();
+    }
+
+    // Apply changes made by the owner of their shards
+    @PostMapping("/replicate")
+    public ResponseEntity<Void> replicate(@RequestBody List<IncidentEvent> events) {
+        for (IncidentEvent event : events) {
+            switch (event.type()) {
+                case DELETED -> {
+                    incidentService.applyReplicaDeletion(event.incidentId());
+                    jsonCache.evict(event.incidentId());
+                }
+                case ARCHIVED -> {
+                    incidentService.applyReplicaArchival(event.incident());
+                    jsonCache.evict(event.incidentId());
+                }
+                default -> incidentService.applyReplica(event.incident());
+            }
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // Receive part of a shard this node starts holding
+    @PostMapping("/shards/{shard}")
+    public ResponseEntity<Void> receiveShard(@PathVariable int shard, @RequestBody ShardTransfer transfer) {
+        incidentService.advanceShard(shard, transfer.lastId());
+        transfer.incidents().forEach(incidentService::applyReplica);
+        return ResponseEntity.noContent().build();
+    }
+
+    // List the incidents of the given shards as newline-delimited JSON, in ID order or in creation time order for a
+    // time range: all of them, written while iterating the store, or a page when a cursor, limit, status filter or time
+    // range is given. Each line is the cached JSON of an incident, and the lines are gzipped when the caller accepts it
+    @GetMapping("/incidents")
+    public ResponseEntity<Void> listShards(@RequestParam List<Integer> shards,
+                                           @RequestParam(required = false) Long after,
+                                           @RequestParam(required = false) Integer limit,
+                                           @RequestParam(required = false) Incident.Status status,
+                                           @RequestParam(required = false) Instant since,
+                                           @RequestParam(required = false) Instant until,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                           HttpServletResponse response) throws IOException {
+        if (!IncidentController.isValidLimit(limit)) {
+            return ResponseEntity.badRequest().build();
+        }
+        IntPredicate shardFilter = Set.copyOf(shards)::contains;
+        boolean byCreation = since != null || until != null;
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        // A page is read before the response is committed, so invalid parameters are still rejected
+        Stream<Incident> incidents = after == null && limit == null && status == null && !byCreation
+                ? incidentService.streamIncidents(null, null, shardFilter)
+                : byCreation
+                ? incidentService.getIncidentsCreatedBetween(since, until, after, pageSize, status, shardFilter).stream()
+                : incidentService.getIncidents(after, pageSize, status, shardFilter).stream();
+        boolean gzip = IncidentJsonCache.acceptsGzip(acceptEncoding);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        try (incidents; OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream()) {
+            jsonCache.writeLines(incidents.iterator(), out);
+        }
+        return null; // The response is already written
+    }
+
+    // Count the incidents per status in the shards this node owns
+    @GetMapping("/stats")
+    public ResponseEntity<Map<Incident.Status, Long>> getOwnedStats() {
+        return ResponseEntity.ok(incidentService.getStatusCounts(membership::isOwner));
+    }
+
+    // Search the incidents of the shards this node owns, best matches first
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchHit>> searchOwned(@RequestParam String q, @RequestParam int offset,
+                                                       @RequestParam int limit) {
+        return ResponseEntity.ok(incidentService.searchIncidents(q, offset, limit, membership::isOwner));
+    }
+}
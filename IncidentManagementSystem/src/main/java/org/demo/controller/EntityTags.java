@@ -0,0 +1,42 @@
+package org.demo.controller;
+
+import org.demo.model.Incident;
+
+/**
+ * Maps incident versions to HTTP entity tags and back, shared by the servlet and reactive controllers.
+ * The JSON and Smile encodings of a version differ byte for byte, so each has its own strong entity tag.
+ */
+final class EntityTags {
+
+    private static final String SMILE_SUFFIX = "-smile";
+
+    private EntityTags() {
+    }
+
+    static String eTag(Incident incident) {
+        return "\"" + incident.getVersion() + "\"";
+    }
+
+    static String smileETag(Incident incident) {
+        return "\"" + incident.getVersion() + SMILE_SUFFIX + "\"";
+    }
+
+    // The version named by an If-Match header: null for a missing header or "*", and -1, which never
+    // matches, for anything other than a single strong entity tag of either encoding holding a version
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return -1L;
+        }
+        try {
+            String version = tag.substring(1, tag.length() - 1);
+            return Long.parseLong(version.endsWith(SMILE_SUFFIX)
+                    ? version.substring(0, version.length() - SMILE_SUFFIX.length()) : version);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
@@ -1,50 +1,301 @@
 package org.demo.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.model.BatchItemResult;
 import org.demo.model.Incident;
+import org.demo.model.SearchHit;
 import org.demo.service.IncidentService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.demo.controller.EntityTags.eTag;
+import static org.demo.controller.EntityTags.expectedVersion;
+import static org.demo.controller.EntityTags.smileETag;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/incidents")
 public class IncidentController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-After";
+    public static final String NEXT_SINCE_HEADER = "X-Next-Since";
+    public static final String NEXT_OFFSET_HEADER = "X-Next-Offset";
+    // Vary of every list response: the encoding follows Accept, and JSON is gzipped for clients accepting it
+    public static final String LIST_VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final IncidentService incidentService;
+    private final IncidentJsonCache jsonCache;
+    private final ObjectReader smileReader;
+    private final ObjectWriter smileWriter;
+    private final Duration eventStreamTimeout;
 
-    public IncidentController(IncidentService incidentService) {
+    public IncidentController(IncidentService incidentService, IncidentJsonCache jsonCache,
+                              MappingJackson2SmileHttpMessageConverter smileConverter,
+                              @Value("${incident.events.timeout:30m}") Duration eventStreamTimeout) {
         this.incidentService = incidentService;
+        this.jsonCache = jsonCache;
+        this.smileReader = smileConverter.getObjectMapper().readerFor(Incident.class);
+        this.smileWriter = smileConverter.getObjectMapper().writerFor(Incident.class);
+        this.eventStreamTimeout = eventStreamTimeout;
     }
 
     // Create a new incident
     @PostMapping
     public ResponseEntity<Incident> createIncident(@Valid @RequestBody Incident incident) {
         Incident createdIncident = incidentService.createIncident(incident);
-        return ResponseEntity.status(201).body(createdIncident);
+        return ResponseEntity.status(201).eTag(eTag(createdIncident)).body(createdIncident);
+    }
+
+    // Create several incidents at once, reporting the outcome of each
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchItemResult>> createIncidents(@RequestBody List<Incident> incidents) {
+        return ResponseEntity.ok(incidentService.createIncidents(incidents));
+    }
+
+    // Create incidents from a Smile array or sequence of any length, decoded one at a time and created a batch at a time
+    @PostMapping(path = "/batch", consumes = IncidentSmile.MEDIA_TYPE_VALUE)
+    public ResponseEntity<List<BatchItemResult>> createIncidentsFromSmile(InputStream body) throws IOException {
+        try (MappingIterator<Incident> incidents = smileReader.readValues(body)) {
+            return ResponseEntity.ok(incidentService.createIncidents(incidents));
+        }
+    }
+
+    // Update several incidents at once, each identified by its ID
+    @PutMapping("/batch")
+    public ResponseEntity<List<BatchItemResult>> updateIncidents(@RequestBody List<Incident> incidents) {
+        return ResponseEntity.ok(incidentService.updateIncidents(incidents));
     }
 
-    // Get all incidents
+    // Delete several incidents at once by their IDs
+    @DeleteMapping("/batch")
+    public ResponseEntity<List<BatchItemResult>> deleteIncidents(@RequestBody List<Long> ids) {
+        List<BatchItemResult> results = incidentService.deleteIncidents(ids);
+        jsonCache.evictDeleted(results);
+        return ResponseEntity.ok(results);
+    }
+
+    // Get all incidents, or a page of them when a cursor, limit, status filter or creation time range is given, as the
+    // cached JSON of each incident. All incidents are written while iterating the store, gzipped on the fly when the
+    // client accepts it; large pages are sent gzipped, from a cached copy while nothing changed.
     @GetMapping
-    public ResponseEntity<List<Incident>> getAllIncidents() {
-        List<Incident> incidents = incidentService.getAllIncidents();
-        return ResponseEntity.ok(incidents);
+    public ResponseEntity<byte[]> getAllIncidents(@RequestParam(required = false) Long after,
+                                                  @RequestParam(required = false) Integer limit,
+                                                  @RequestParam(required = false) Incident.Status status,
+                                                  @RequestParam(required = false) Instant since,
+                                                  @RequestParam(required = false) Instant until,
+                                                  @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                  HttpServletResponse response) throws IOException {
+        boolean gzip = IncidentJsonCache.acceptsGzip(acceptEncoding);
+        boolean byCreation = since != null || until != null;
+        if (after == null && limit == null && status == null && !byCreation) {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setHeader(HttpHeaders.VARY, LIST_VARY);
+            if (gzip) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            try (Stream<Incident> incidents = incidentService.streamIncidents(null, null);
+                 OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream()) {
+                jsonCache.writeArray(incidents.iterator(), out);
+            }
+            return null; // The response is already written, without holding the store in memory
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        String query = (byCreation ? since + "|" + until + "|" : "") + after + "|" + pageSize + "|" + status;
+        IncidentJsonCache.ListBody page = jsonCache.list(query, incidentService.changeCount(),
+                () -> page(since, until, after, pageSize, status), gzip);
+        ResponseEntity.BodyBuilder builder = jsonList(page);
+        if (page.size() == pageSize) {
+            nextPage(builder, page.last(), byCreation);
+        }
+        return builder.body(page.bytes());
     }
 
-    // Get a specific incident by ID
-    @GetMapping("/{id}")
-    public ResponseEntity<Incident> getIncidentById(@PathVariable Long id) {
-        return incidentService.getIncidentById(id)
+    // Get all incidents, or a page of them when a cursor, limit, status filter or creation time range is given,
+    // encoded as Smile. All incidents are written while iterating the store
+    @GetMapping(produces = IncidentSmile.MEDIA_TYPE_VALUE)
+    public ResponseEntity<List<Incident>> getAllIncidentsAsSmile(@RequestParam(required = false) Long after,
+                                                                 @RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) Incident.Status status,
+                                                                 @RequestParam(required = false) Instant since,
+                                                                 @RequestParam(required = false) Instant until,
+                                                                 HttpServletResponse response) throws IOException {
+        boolean byCreation = since != null || until != null;
+        if (after == null && limit == null && status == null && !byCreation) {
+            response.setContentType(IncidentSmile.MEDIA_TYPE_VALUE);
+            response.setHeader(HttpHeaders.VARY, LIST_VARY);
+            try (Stream<Incident> incidents = incidentService.streamIncidents(null, null);
+                 SequenceWriter array = smileWriter.writeValuesAsArray(response.getOutputStream())) {
+                for (Iterator<Incident> iterator = incidents.iterator(); iterator.hasNext(); ) {
+                    array.write(iterator.next());
+                }
+            }
+            return null; // The response is already written, without holding the store in memory
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        List<Incident> page = page(since, until, after, pageSize, status);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().header(HttpHeaders.VARY, LIST_VARY);
+        if (page.size() == pageSize) {
+            nextPage(builder, page.get(page.size() - 1), byCreation);
+        }
+        return builder.body(page);
+    }
+
+    // Stream incidents as newline-delimited JSON, written one at a time while iterating the store
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamIncidents(@RequestParam(required = false) Long after,
+                                                                 @RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) Incident.Status status) {
+        // Rejected before the response is committed, after which a failure can only cut the stream short
+        if (!isValidLimit(limit)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (Stream<Incident> incidents = incidentService.streamIncidents(after, status)) {
+                jsonCache.writeLines((limit == null ? incidents : incidents.limit(limit)).iterator(), outputStream);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).header(HttpHeaders.VARY, LIST_VARY).body(body);
+    }
+
+    // Search titles and descriptions for all words of q, best matches first, a page at a time
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchHit>> searchIncidents(@RequestParam String q,
+                                                           @RequestParam(defaultValue = "0") int offset,
+                                                           @RequestParam(required = false) Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        List<SearchHit> hits = incidentService.searchIncidents(q, offset, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (hits.size() == pageSize) {
+            response.header(NEXT_OFFSET_HEADER, String.valueOf(offset + pageSize));
+        }
+        return response.body(hits);
+    }
+
+    // Get a page of archived incidents in ID order, read from the archive rather than the store
+    @GetMapping("/archive")
+    public ResponseEntity<List<Incident>> getArchivedIncidents(@RequestParam(required = false) Long after,
+                                                               @RequestParam(required = false) Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        List<Incident> page = incidentService.getArchivedIncidents(after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return response.body(page);
+    }
+
+    // Get an archived incident by ID
+    @GetMapping("/archive/{id}")
+    public ResponseEntity<Incident> getArchivedIncidentById(@PathVariable Long id) {
+        return incidentService.getArchivedIncident(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
-    // Update an incident
+    // Get the number of incidents per status
+    @GetMapping("/stats")
+    public ResponseEntity<Map<Incident.Status, Long>> getIncidentStats() {
+        return ResponseEntity.ok(incidentService.getStatusCounts());
+    }
+
+    // Stream created, updated, deleted and archived incidents as server-sent events, resuming after Last-Event-ID when given.
+    // A "resync" event means changes were missed and the client has to reload the incidents.
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(eventStreamTimeout.toMillis());
+        IncidentEventBus.Subscription subscription = incidentService.subscribeToChanges(lastEventId, new IncidentEventBus.Listener() {
+            @Override
+            public void onEvent(IncidentEvent event) throws IOException {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.sequence()))
+                        .name(event.type().name().toLowerCase())
+                        .data(event, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onResync(long sequence) throws IOException {
+                emitter.send(SseEmitter.event().id(String.valueOf(sequence)).name("resync").data(sequence));
+            }
+
+            @Override
+            public void onClose() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        return emitter;
+    }
+
+    // Get a specific incident by ID as its cached JSON, or 304 without a body when If-None-Match names its current version
+    @GetMapping("/{id}")
+    public ResponseEntity<byte[]> getIncidentById(@PathVariable Long id, WebRequest request, HttpServletResponse response) {
+        Optional<Incident> incident = incidentService.getIncidentById(id);
+        if (incident.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        // Set before the check, so a 304 response varies with Accept as well
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(eTag(incident.get()))) {
+            return null; // The 304 response is already complete
+        }
+        return ResponseEntity.ok().eTag(eTag(incident.get())).contentType(MediaType.APPLICATION_JSON)
+                .body(jsonCache.json(incident.get()));
+    }
+
+    // Get a specific incident by ID encoded as Smile, or 304 without a body when If-None-Match names its current version
+    @GetMapping(path = "/{id}", produces = IncidentSmile.MEDIA_TYPE_VALUE)
+    public ResponseEntity<Incident> getIncidentByIdAsSmile(@PathVariable Long id, WebRequest request,
+                                                           HttpServletResponse response) {
+        Optional<Incident> incident = incidentService.getIncidentById(id);
+        if (incident.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(smileETag(incident.get()))) {
+            return null; // The 304 response is already complete
+        }
+        return ResponseEntity.ok().eTag(smileETag(incident.get())).body(incident.get());
+    }
+
+    // Update an incident, only if it is still at the version named by If-Match when the header is given
     @PutMapping("/{id}")
-    public ResponseEntity<Incident> updateIncident(@PathVariable Long id, @Valid @RequestBody Incident incident) {
-        return incidentService.updateIncident(id, incident)
-                .map(ResponseEntity::ok)
+    public ResponseEntity<Incident> updateIncident(@PathVariable Long id, @Valid @RequestBody Incident incident,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return incidentService.updateIncident(id, incident, expectedVersion(ifMatch))
+                .map(updated -> ResponseEntity.ok().eTag(eTag(updated)).body(updated))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -52,8 +303,40 @@ public class IncidentController {
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteIncident(@PathVariable Long id) {
         if (incidentService.deleteIncident(id)) {
+            jsonCache.evict(id);
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
     }
+
+    // A page in ID order, or in creation time order when a time range is given
+    private List<Incident> page(Instant since, Instant until, Long after, int limit, Incident.Status status) {
+        return since != null || until != null
+                ? incidentService.getIncidentsCreatedBetween(since, until, after, limit, status)
+                : incidentService.getIncidents(after, limit, status);
+    }
+
+    // Whether a page size is absent or within 1 and IncidentService.MAX_PAGE_SIZE
+    static boolean isValidLimit(Integer limit) {
+        return limit == null || (limit >= 1 && limit <= IncidentService.MAX_PAGE_SIZE);
+    }
+
+    // The cursor of the page after a full one: the last ID, and its creation time when paging through a time range
+    static void nextPage(ResponseEntity.HeadersBuilder<?> response, Incident last, boolean byCreation) {
+        response.header(NEXT_CURSOR_HEADER, String.valueOf(last.getId()));
+        if (byCreation && last.getCreatedAt() != null) {
+            response.header(NEXT_SINCE_HEADER, last.getCreatedAt().toString());
+        }
+    }
+
+    // A JSON list response, which varies with Accept as well as Accept-Encoding, as large lists are gzipped for
+    // clients accepting it
+    private static ResponseEntity.BodyBuilder jsonList(IncidentJsonCache.ListBody list) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, LIST_VARY);
+        if (list.gzipped()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response;
+    }
 }
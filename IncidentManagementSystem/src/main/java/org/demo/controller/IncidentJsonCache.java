@@ -0,0 +1,266 @@
+package org.demo.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.demo.model.BatchItemResult;
+import org.demo.model.Incident;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The JSON of incidents as sent by the {@code /api/incidents} GET endpoints, shared by the servlet and reactive
+ * controllers.
+ *
+ * <p>Each incident version is serialized once; its UTF-8 bytes are cached under its ID together with the version
+ * they encode, so a newer version is serialized again on its first read and the bytes of a stale version are never
+ * sent. Lists are built by writing the cached bytes of their incidents between brackets and commas, without
+ * serializing anything. Pages large enough to be worth compressing are also kept gzipped, keyed by their query and
+ * the {@link org.demo.service.IncidentService#changeCount() change count} they were read at, for clients accepting
+ * gzip. Lists of all incidents are only ever streamed, as holding them would take memory growing with the store.
+ */
+public class IncidentJsonCache {
+
+    static final byte[] ARRAY_START = {'['};
+    static final byte[] ARRAY_END = {']'};
+    static final byte[] SEPARATOR = {','};
+    static final byte[] NEWLINE = {'\n'};
+
+    // Heap taken by a cached entry besides its bytes: cache node, boxed key, entry and array header
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final ObjectWriter writer;
+    private final long gzipThreshold;
+    // Incident ID -> JSON of the last version read, or null when incidents are serialized on every read
+    private final Cache<Long, Fragment> fragments;
+    // Query -> gzipped JSON array, or null when lists are compressed on every read
+    private final Cache<String, ListBody> gzippedLists;
+
+    /**
+     * @param objectMapper The object mapper of the HTTP message converters, so cached bytes match their output.
+     * @param maximumWeight Most heap taken by cached incidents, 0 to serialize incidents on every read.
+     * @param gzipThreshold Smallest list, in bytes of JSON, sent gzipped to clients accepting it.
+     * @param gzipMaximumWeight Most heap taken by gzipped lists, 0 to compress them on every read.
+     */
+    public IncidentJsonCache(ObjectMapper objectMapper, long maximumWeight, long gzipThreshold, long gzipMaximumWeight) {
+        this.writer = objectMapper.writerFor(Incident.class);
+        this.gzipThreshold = gzipThreshold;
+        this.fragments = maximumWeight <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Long id, Fragment fragment) -> ENTRY_OVERHEAD + fragment.json().length)
+                .executor(Runnable::run)
+                .build();
+        this.gzippedLists = gzipMaximumWeight <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(gzipMaximumWeight)
+                .weigher((String query, ListBody body) -> ENTRY_OVERHEAD + query.length() + body.bytes().length)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * The JSON of an incident, serialized on the first read of its version.
+     *
+     * @param incident The incident.
+     * @return The UTF-8 JSON of the incident; must not be modified.
+     */
+    public byte[] json(Incident incident) {
+        if (fragments == null || incident.getId() == null || incident.getVersion() == null) {
+            return serialize(incident);
+        }
+        long version = incident.getVersion();
+        Fragment fragment = fragments.getIfPresent(incident.getId());
+        if (fragment != null && fragment.version() == version) {
+            return fragment.json();
+        }
+        // Racing reads of different versions may leave the older one cached, which the next read replaces
+        byte[] json = serialize(incident);
+        fragments.put(incident.getId(), new Fragment(version, json));
+        return json;
+    }
+
+    /**
+     * Drops the JSON of a deleted incident. Updated incidents need no eviction as their new version is not cached.
+     *
+     * @param id The ID of the incident.
+     */
+    public void evict(long id) {
+        if (fragments != null) {
+            fragments.invalidate(id);
+        }
+    }
+
+    /**
+     * Drops the JSON of the incidents a batch delete removed.
+     *
+     * @param results The results of the batch delete; items not deleted, such as invalid IDs, are skipped.
+     */
+    public void evictDeleted(List<BatchItemResult> results) {
+        for (BatchItemResult result : results) {
+            if (result.getOutcome() == BatchItemResult.Outcome.DELETED) {
+                evict(result.getId());
+            }
+        }
+    }
+
+    /**
+     * Writes incidents as a JSON array.
+     *
+     * @param incidents The incidents.
+     * @param out The stream to write to, left open.
+     * @throws IOException If writing fails.
+     */
+    public void writeArray(Iterator<Incident> incidents, OutputStream out) throws IOException {
+        out.write(ARRAY_START);
+        for (boolean first = true; incidents.hasNext(); first = false) {
+            if (!first) {
+                out.write(SEPARATOR);
+            }
+            out.write(json(incidents.next()));
+        }
+        out.write(ARRAY_END);
+    }
+
+    /**
+     * Writes incidents as newline-delimited JSON.
+     *
+     * @param incidents The incidents.
+     * @param out The stream to write to, left open.
+     * @throws IOException If writing fails.
+     */
+    public void writeLines(Iterator<Incident> incidents, OutputStream out) throws IOException {
+        while (incidents.hasNext()) {
+            out.write(json(incidents.next()));
+            out.write(NEWLINE);
+        }
+    }
+
+    /**
+     * Concatenates the JSON of incidents into a JSON array.
+     *
+     * @param incidents The incidents.
+     * @return The UTF-8 JSON array.
+     */
+    public byte[] array(List<Incident> incidents) {
+        byte[][] parts = new byte[incidents.size()][];
+        int length = 2 + Math.max(0, incidents.size() - 1);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = json(incidents.get(i));
+            length += parts[i].length;
+        }
+        byte[] array = new byte[length];
+        array[0] = '[';
+        int position = 1;
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                array[position++] = ',';
+            }
+            System.arraycopy(parts[i], 0, array, position, parts[i].length);
+            position += parts[i].length;
+        }
+        array[position] = ']';
+        return array;
+    }
+
+    /**
+     * A page of incidents as a JSON array, gzipped if the client accepts it and the array is at least the gzip
+     * threshold. A gzipped page is reused until the change count moves on.
+     *
+     * @param query Identifies the page, such as its cursor, limit and status filter.
+     * @param changeCount The change count of the service, read before the list.
+     * @param incidents Reads the page, of at most {@link org.demo.service.IncidentService#MAX_PAGE_SIZE} incidents.
+     * @param gzip Whether the client accepts gzip.
+     * @return The body of the page.
+     */
+    public ListBody list(String query, long changeCount, Supplier<List<Incident>> incidents, boolean gzip) {
+        if (gzip && gzippedLists != null) {
+            ListBody cached = gzippedLists.getIfPresent(query);
+            if (cached != null && cached.changeCount() == changeCount) {
+                return cached;
+            }
+        }
+        List<Incident> list = incidents.get();
+        byte[] json = array(list);
+        Incident last = list.isEmpty() ? null : list.get(list.size() - 1);
+        if (!gzip || json.length < gzipThreshold) {
+            return new ListBody(json, false, list.size(), last, changeCount);
+        }
+        ListBody body = new ListBody(gzip(json), true, list.size(), last, changeCount);
+        if (gzippedLists != null) {
+            gzippedLists.put(query, body);
+        }
+        return body;
+    }
+
+    /**
+     * Whether an Accept-Encoding header accepts gzip.
+     *
+     * @param acceptEncoding The header, or null if there is none.
+     * @return True if gzip or any encoding is listed without a zero quality.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") && parameter.substring(2).trim().matches("0(\\.0*)?")) {
+                    refused = true;
+                }
+            }
+            return !refused;
+        }
+        return false;
+    }
+
+    private byte[] serialize(Incident incident) {
+        try {
+            return writer.writeValueAsBytes(incident);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The JSON of one version of an incident.
+     */
+    private record Fragment(long version, byte[] json) {
+    }
+
+    /**
+     * A list of incidents as sent to the client.
+     *
+     * @param bytes The JSON array, gzipped if {@code gzipped}.
+     * @param gzipped Whether the bytes are gzipped.
+     * @param size The number of incidents in the list.
+     * @param last The last incident, which the cursor of the next page is taken from, or null if the list is empty.
+     * @param changeCount The change count of the service the list was read at.
+     */
+    public record ListBody(byte[] bytes, boolean gzipped, int size, Incident last, long changeCount) {
+    }
+}
@@ -0,0 +1,46 @@
+package org.demo.controller;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * The binary encoding of the {@code /api/incidents} API, negotiated with the {@value #MEDIA_TYPE_VALUE} media type.
+ *
+ * <p>Smile encodes the same fields as the JSON API in a binary form: numbers as binary integers, short strings with a
+ * one-byte header, and field names repeated within a payload as one-byte back references. Enums such as
+ * {@code status} are encoded as their ordinal ({@code OPEN} 0, {@code IN_PROGRESS} 1, {@code CLOSED} 2) and
+ * {@code lastOccurredAt} as epoch milliseconds, so new enum constants are only ever appended. Names are accepted
+ * for enums as well.
+ */
+public final class IncidentSmile {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-jackson-smile";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    private IncidentSmile() {
+    }
+
+    /**
+     * @return A new object mapper reading and writing the Smile encoding of the API.
+     */
+    public static ObjectMapper createMapper() {
+        return Jackson2ObjectMapperBuilder.smile()
+                .featuresToEnable(SerializationFeature.WRITE_ENUMS_USING_INDEX, SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .featuresToDisable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS,
+                        DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * Whether a Content-Type or Accept header names the Smile media type.
+     *
+     * @param header The header, or null if there is none.
+     * @return True if the header includes {@value #MEDIA_TYPE_VALUE}.
+     */
+    public static boolean includes(String header) {
+        return header != null && header.contains(MEDIA_TYPE_VALUE);
+    }
+}
@@ -0,0 +1,381 @@
+package org.demo.controller;
+
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.model.BatchItemResult;
+import org.demo.model.Incident;
+import org.demo.model.SearchHit;
+import org.demo.service.IncidentService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.validation.Valid;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+import static org.demo.controller.EntityTags.eTag;
+import static org.demo.controller.EntityTags.expectedVersion;
+import static org.demo.controller.EntityTags.smileETag;
+
+/**
+ * The {@code /api/incidents} API of {@link IncidentController} on WebFlux, active with the {@code reactive} profile.
+ *
+ * <p>Reads run on the event loop. Writes may wait for the journal to be forced to disk, so they run on the
+ * bounded elastic scheduler instead of blocking an event loop thread.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/incidents")
+public class ReactiveIncidentController {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final IncidentService incidentService;
+    private final IncidentJsonCache jsonCache;
+    private final Duration eventStreamTimeout;
+
+    public ReactiveIncidentController(IncidentService incidentService, IncidentJsonCache jsonCache,
+                                      @Value("${incident.events.timeout:30m}") Duration eventStreamTimeout) {
+        this.incidentService = incidentService;
+        this.jsonCache = jsonCache;
+        this.eventStreamTimeout = eventStreamTimeout;
+    }
+
+    // Create a new incident
+    @PostMapping
+    public Mono<ResponseEntity<Incident>> createIncident(@Valid @RequestBody Incident incident) {
+        return blocking(() -> incidentService.createIncident(incident))
+                .map(created -> ResponseEntity.status(201).eTag(eTag(created)).body(created));
+    }
+
+    // Create several incidents at once, reporting the outcome of each
+    @PostMapping("/batch")
+    public Mono<List<BatchItemResult>> createIncidents(@RequestBody List<Incident> incidents) {
+        return blocking(() -> incidentService.createIncidents(incidents));
+    }
+
+    // Create incidents from a Smile array or sequence of any length, decoded one at a time and created a batch at a time
+    @PostMapping(path = "/batch", consumes = IncidentSmile.MEDIA_TYPE_VALUE)
+    public Mono<List<BatchItemResult>> createIncidentsFromSmile(@RequestBody Flux<Incident> incidents) {
+        return blocking(() -> incidentService.createIncidents(incidents.toIterable().iterator()));
+    }
+
+    // Update several incidents at once, each identified by its ID
+    @PutMapping("/batch")
+    public Mono<List<BatchItemResult>> updateIncidents(@RequestBody List<Incident> incidents) {
+        return blocking(() -> incidentService.updateIncidents(incidents));
+    }
+
+    // Delete several incidents at once by their IDs
+    @DeleteMapping("/batch")
+    public Mono<List<BatchItemResult>> deleteIncidents(@RequestBody List<Long> ids) {
+        return blocking(() -> incidentService.deleteIncidents(ids))
+                .doOnNext(jsonCache::evictDeleted);
+    }
+
+    // Get all incidents as a JSON array of their cached JSON written while iterating the store, gzipped on the fly when
+    // the client accepts it, or a page of them when a cursor, limit, status filter or creation time range is given.
+    // Large pages are sent gzipped, from a cached copy while nothing changed, when the client accepts it.
+    @GetMapping
+    public Mono<ResponseEntity<Flux<byte[]>>> getAllIncidents(@RequestParam(required = false) Long after,
+                                                              @RequestParam(required = false) Integer limit,
+                                                              @RequestParam(required = false) Incident.Status status,
+                                                              @RequestParam(required = false) Instant since,
+                                                              @RequestParam(required = false) Instant until,
+                                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = IncidentJsonCache.acceptsGzip(acceptEncoding);
+        boolean byCreation = since != null || until != null;
+        boolean all = after == null && limit == null && status == null && !byCreation;
+        if (all) {
+            Flux<byte[]> incidents = Flux.fromStream(() -> incidentService.streamIncidents(null, null))
+                    .index()
+                    .concatMapIterable(incident -> incident.getT1() == 0
+                            ? List.of(jsonCache.json(incident.getT2()))
+                            : List.of(IncidentJsonCache.SEPARATOR, jsonCache.json(incident.getT2())));
+            Flux<byte[]> array = Flux.concat(Mono.just(IncidentJsonCache.ARRAY_START), incidents,
+                    Mono.just(IncidentJsonCache.ARRAY_END));
+            if (gzip) {
+                return Mono.just(jsonList().header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzipped(array)));
+            }
+            return Mono.just(jsonList().body(array));
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        String query = (byCreation ? since + "|" + until + "|" : "") + after + "|" + pageSize + "|" + status;
+        return Mono.fromSupplier(() -> {
+            IncidentJsonCache.ListBody page = jsonCache.list(query, incidentService.changeCount(),
+                    () -> page(since, until, after, pageSize, status), gzip);
+            return jsonList(page, page.size() == pageSize, byCreation);
+        });
+    }
+
+    // Get all incidents, or a page of them when a cursor, limit, status filter or creation time range is given,
+    // encoded as Smile
+    @GetMapping(produces = IncidentSmile.MEDIA_TYPE_VALUE)
+    public Mono<ResponseEntity<Flux<Incident>>> getAllIncidentsAsSmile(@RequestParam(required = false) Long after,
+                                                                       @RequestParam(required = false) Integer limit,
+                                                                       @RequestParam(required = false) Incident.Status status,
+                                                                       @RequestParam(required = false) Instant since,
+                                                                       @RequestParam(required = false) Instant until) {
+        boolean byCreation = since != null || until != null;
+        if (after == null && limit == null && status == null && !byCreation) {
+            return Mono.just(ResponseEntity.ok().header(HttpHeaders.VARY, IncidentController.LIST_VARY)
+                    .body(Flux.fromStream(() -> incidentService.streamIncidents(null, null))));
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        return Mono.fromSupplier(() -> page(since, until, after, pageSize, status)).map(page -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(HttpHeaders.VARY, IncidentController.LIST_VARY);
+            if (page.size() == pageSize) {
+                IncidentController.nextPage(response, page.get(page.size() - 1), byCreation);
+            }
+            return response.body(Flux.fromIterable(page));
+        });
+    }
+
+    // Stream incidents as newline-delimited JSON, pulled from the store as the client reads them
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<Incident>>> streamIncidents(@RequestParam(required = false) Long after,
+                                                                @RequestParam(required = false) Integer limit,
+                                                                @RequestParam(required = false) Incident.Status status) {
+        if (!IncidentController.isValidLimit(limit)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        // Encoded by Jackson rather than from cached JSON: each line is flushed on its own, which costs more than encoding it
+        Flux<Incident> incidents = Flux.fromStream(() -> incidentService.streamIncidents(after, status));
+        return Mono.just(ResponseEntity.ok().header(HttpHeaders.VARY, IncidentController.LIST_VARY)
+                .body(limit == null ? incidents : incidents.take(limit, true)));
+    }
+
+    // Search titles and descriptions for all words of q, best matches first, a page at a time
+    @GetMapping("/search")
+    public Mono<ResponseEntity<List<SearchHit>>> searchIncidents(@RequestParam String q,
+                                                                 @RequestParam(defaultValue = "0") int offset,
+                                                                 @RequestParam(required = false) Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        return Mono.fromSupplier(() -> incidentService.searchIncidents(q, offset, pageSize)).map(hits -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (hits.size() == pageSize) {
+                response.header(IncidentController.NEXT_OFFSET_HEADER, String.valueOf(offset + pageSize));
+            }
+            return response.body(hits);
+        });
+    }
+
+    // Get a page of archived incidents in ID order, read from the archive rather than the store
+    @GetMapping("/archive")
+    public Mono<ResponseEntity<List<Incident>>> getArchivedIncidents(@RequestParam(required = false) Long after,
+                                                                     @RequestParam(required = false) Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        return blocking(() -> incidentService.getArchivedIncidents(after, pageSize)).map(page -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.size() == pageSize) {
+                response.header(IncidentController.NEXT_CURSOR_HEADER, String.valueOf(page.get(page.size() - 1).getId()));
+            }
+            return response.body(page);
+        });
+    }
+
+    // Get an archived incident by ID
+    @GetMapping("/archive/{id}")
+    public Mono<ResponseEntity<Incident>> getArchivedIncidentById(@PathVariable Long id) {
+        return blocking(() -> incidentService.getArchivedIncident(id))
+                .map(incident -> incident
+                        .map(ResponseEntity::ok)
+                        .orElse(ResponseEntity.notFound().build()));
+    }
+
+    // Get the number of incidents per status
+    @GetMapping("/stats")
+    public Mono<Map<Incident.Status, Long>> getIncidentStats() {
+        return Mono.fromSupplier(incidentService::getStatusCounts);
+    }
+
+    // Stream created, updated, deleted and archived incidents as server-sent events, resuming after Last-Event-ID when given.
+    // A "resync" event means changes were missed and the client has to reload the incidents.
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return Flux.<ServerSentEvent<Object>>create(sink -> {
+            // Delivery waits for demand like a blocking send would, so a slow client falls behind in the
+            // event bus, which asks it to resync, instead of in an unbounded buffer here
+            Semaphore demand = new Semaphore(0);
+            sink.onRequest(n -> demand.release((int) Math.min(n, Integer.MAX_VALUE / 2)));
+            IncidentEventBus.Subscription subscription = incidentService.subscribeToChanges(lastEventId, new IncidentEventBus.Listener() {
+                @Override
+                public void onEvent(IncidentEvent event) throws InterruptedException {
+                    demand.acquire();
+                    sink.next(ServerSentEvent.builder()
+                            .id(String.valueOf(event.sequence()))
+                            .event(event.type().name().toLowerCase())
+                            .data(event)
+                            .build());
+                }
+
+                @Override
+                public void onResync(long sequence) throws InterruptedException {
+                    demand.acquire();
+                    sink.next(ServerSentEvent.builder().id(String.valueOf(sequence)).event("resync").data(sequence).build());
+                }
+
+                @Override
+                public void onClose() {
+                    sink.complete();
+                }
+            });
+            sink.onDispose(() -> {
+                subscription.close();
+                demand.release(Integer.MAX_VALUE / 2); // Let a delivery waiting for demand see the closed subscription
+            });
+        }).take(eventStreamTimeout);
+    }
+
+    // Get a specific incident by ID as its cached JSON, or 304 without a body when If-None-Match names its current version
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<byte[]>> getIncidentById(@PathVariable Long id, ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> incidentService.getIncidentById(id)).flatMap(incident -> {
+            if (incident.isEmpty()) {
+                return Mono.just(ResponseEntity.notFound().build());
+            }
+            // Set before the check, so a 304 response varies with Accept as well
+            exchange.getResponse().getHeaders().set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            if (exchange.checkNotModified(eTag(incident.get()))) {
+                return Mono.empty(); // The 304 response is already complete
+            }
+            return Mono.just(ResponseEntity.ok().eTag(eTag(incident.get())).contentType(MediaType.APPLICATION_JSON)
+                    .body(jsonCache.json(incident.get())));
+        });
+    }
+
+    // Get a specific incident by ID encoded as Smile, or 304 without a body when If-None-Match names its current version
+    @GetMapping(path = "/{id}", produces = IncidentSmile.MEDIA_TYPE_VALUE)
+    public Mono<ResponseEntity<Incident>> getIncidentByIdAsSmile(@PathVariable Long id, ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> incidentService.getIncidentById(id)).flatMap(incident -> {
+            if (incident.isEmpty()) {
+                return Mono.just(ResponseEntity.notFound().build());
+            }
+            exchange.getResponse().getHeaders().set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            if (exchange.checkNotModified(smileETag(incident.get()))) {
+                return Mono.empty(); // The 304 response is already complete
+            }
+            return Mono.just(ResponseEntity.ok().eTag(smileETag(incident.get())).body(incident.get()));
+        });
+    }
+
+    // Update an incident, only if it is still at the version named by If-Match when the header is given
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<Incident>> updateIncident(@PathVariable Long id, @Valid @RequestBody Incident incident,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return blocking(() -> incidentService.updateIncident(id, incident, expectedVersion(ifMatch)))
+                .map(updated -> updated
+                        .map(value -> ResponseEntity.ok().eTag(eTag(value)).body(value))
+                        .orElse(ResponseEntity.notFound().build()));
+    }
+
+    // Delete an incident
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteIncident(@PathVariable Long id) {
+        return blocking(() -> incidentService.deleteIncident(id))
+                .doOnNext(deleted -> {
+                    if (deleted) {
+                        jsonCache.evict(id);
+                    }
+                })
+                .map(deleted -> deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+    }
+
+    // A JSON list response, which varies with Accept as well as Accept-Encoding, as large lists are gzipped for
+    // clients accepting it
+    private static ResponseEntity.BodyBuilder jsonList() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.VARY, IncidentController.LIST_VARY);
+    }
+
+    private static ResponseEntity<Flux<byte[]>> jsonList(IncidentJsonCache.ListBody list, boolean full, boolean byCreation) {
+        ResponseEntity.BodyBuilder response = jsonList();
+        if (list.gzipped()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (full) {
+            IncidentController.nextPage(response, list.last(), byCreation);
+        }
+        return response.body(Flux.just(list.bytes()));
+    }
+
+    // Compresses chunks into gzip, emitting the compressed bytes a buffer at a time as the chunks arrive
+    private static Flux<byte[]> gzipped(Flux<byte[]> chunks) {
+        return Flux.using(GzipBuffer::new, buffer -> chunks
+                        .concatMapIterable(buffer::write)
+                        .concatWith(Mono.fromCallable(buffer::finish)),
+                GzipBuffer::close);
+    }
+
+    // A page in ID order, or in creation time order when a time range is given
+    private List<Incident> page(Instant since, Instant until, Long after, int limit, Incident.Status status) {
+        return since != null || until != null
+                ? incidentService.getIncidentsCreatedBetween(since, until, after, limit, status)
+                : incidentService.getIncidents(after, limit, status);
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * A gzip stream over an in-memory buffer that is handed out whenever it fills up.
+     */
+    private static final class GzipBuffer {
+
+        private static final int SIZE = 8192;
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(SIZE);
+        private final GZIPOutputStream gzip;
+
+        GzipBuffer() throws IOException {
+            gzip = new GZIPOutputStream(buffer, SIZE);
+        }
+
+        List<byte[]> write(byte[] chunk) {
+            try {
+                gzip.write(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.size() < SIZE ? List.of() : List.of(drain());
+        }
+
+        byte[] finish() throws IOException {
+            gzip.finish();
+            return drain();
+        }
+
+        void close() {
+            try {
+                gzip.close(); // Releases the deflater also when the client went away before the end
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private byte[] drain() {
+            byte[] bytes = buffer.toByteArray();
+            buffer.reset();
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.demo.event;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.demo.model.Incident;
+
+/**
+ * A change of one incident, numbered in the order the changes were applied.
+ *
+ * @param sequence The position of the change in the feed, starting at 1.
+ * @param type The kind of change.
+ * @param incidentId The ID of the changed incident.
+ * @param incident The incident after the change, as archived when it was archived, null when it was deleted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IncidentEvent(long sequence, Type type, long incidentId, Incident incident) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        // Moved from the store to the archive by retention
+        ARCHIVED
+    }
+}
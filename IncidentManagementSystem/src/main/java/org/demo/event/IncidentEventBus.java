@@ -0,0 +1,253 @@
+package org.demo.event;
+
+import org.demo.model.Incident;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-process feed of incident changes.
+ *
+ * <p>Published events are written to a fixed-size ring, overwriting the oldest ones. Publishing never waits for
+ * subscribers: each subscriber reads the ring from its own cursor on a delivery thread, so the ring is both the
+ * resume buffer for reconnecting clients and the per-subscriber backlog. A subscriber that falls more than
+ * {@code maxLag} events behind, or asks to resume from an event no longer in the ring, is told to resync.
+ *
+ * <p>A change can take its sequence while it is applied and publish its event once readers can see it; subscribers
+ * receive events in sequence order, waiting for an earlier event still being published.
+ */
+public class IncidentEventBus implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncidentEventBus.class);
+
+    public static final int DEFAULT_RING_SIZE = 4096;
+    public static final int DEFAULT_MAX_LAG = 1024;
+
+    /**
+     * Receives the events of one subscription, always from one thread at a time.
+     */
+    public interface Listener {
+
+        void onEvent(IncidentEvent event) throws Exception;
+
+        /**
+         * Events were missed; the subscriber has to reload the current state.
+         *
+         * @param sequence The sequence of the latest event reflected by a reload; if the subscription stays open,
+         *                 delivery continues with the event after it.
+         */
+        void onResync(long sequence) throws Exception;
+
+        /**
+         * Every event published so far was delivered, so events buffered by the listener can be sent on.
+         */
+        default void onCaughtUp() throws Exception {
+        }
+
+        /**
+         * The subscription ended, after a resync for a slow subscriber, a failed delivery or {@link Subscription#close()}.
+         */
+        void onClose();
+    }
+
+    private final AtomicReferenceArray<IncidentEvent> ring;
+    private final int mask;
+    private final int maxLag;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService deliveryExecutor;
+
+    public IncidentEventBus() {
+        this(DEFAULT_RING_SIZE, DEFAULT_MAX_LAG, false);
+    }
+
+    /**
+     * @param ringSize The number of events kept for resuming, rounded up to a power of two.
+     * @param maxLag How many events a subscriber may fall behind before it is told to resync.
+     * @param virtualThreads Whether events are delivered on virtual threads instead of a pool of platform threads.
+     */
+    public IncidentEventBus(int ringSize, int maxLag, boolean virtualThreads) {
+        int capacity = Integer.highestOneBit(Math.max(ringSize, 2) - 1) << 1;
+        if (maxLag <= 0 || maxLag > capacity) {
+            throw new IllegalArgumentException("Max lag must be between 1 and the ring size " + capacity);
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.maxLag = maxLag;
+        // Delivery blocks while a client is slow to read, which only costs a virtual thread its stack
+        this.deliveryExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("incident-events-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("incident-events-", 0).daemon().factory());
+    }
+
+    /**
+     * Publishes a change right away. Must be called while the change is still exclusive to the caller,
+     * so the events of one incident are in the order the changes were applied.
+     *
+     * @param type The kind of change.
+     * @param id The ID of the changed incident.
+     * @param incident The incident after the change, null when it was deleted.
+     */
+    public void publish(IncidentEvent.Type type, long id, Incident incident) {
+        publish(reserve(), type, id, incident);
+    }
+
+    /**
+     * Takes the sequence of the next event, to be published once the change can be read. Taken while the change is
+     * still exclusive to the caller, it numbers the events of one incident in the order the changes were applied.
+     * Delivery waits at a taken sequence until it is published or cancelled, so every one must be either.
+     *
+     * @return The sequence of the event.
+     */
+    public long reserve() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Publishes a change under a sequence taken with {@link #reserve()}.
+     *
+     * @param sequence The reserved sequence of the event.
+     * @param type The kind of change.
+     * @param id The ID of the changed incident.
+     * @param incident The incident after the change, as archived when it was archived, null when it was deleted.
+     */
+    public void publish(long sequence, IncidentEvent.Type type, long id, Incident incident) {
+        put(new IncidentEvent(sequence, type, id, incident));
+    }
+
+    /**
+     * Gives up a sequence taken with {@link #reserve()} for a change that failed, so delivery skips it.
+     *
+     * @param sequence The reserved sequence.
+     */
+    public void cancel(long sequence) {
+        put(new IncidentEvent(sequence, null, 0, null));
+    }
+
+    private void put(IncidentEvent event) {
+        // A publisher that took longer than a whole ring of later events must not overwrite them
+        ring.accumulateAndGet(slot(event.sequence()), event,
+                (current, next) -> current == null || current.sequence() < next.sequence() ? next : current);
+        for (Subscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Subscribes to the changes published from now on, or since the given event.
+     *
+     * @param lastEventId The sequence of the last event the subscriber has seen, or null to start with the next event.
+     * @param listener The listener receiving the events.
+     * @return The subscription, to be closed when the subscriber goes away.
+     */
+    public Subscription subscribe(Long lastEventId, Listener listener) {
+        long current = sequence.get();
+        // An ID from before a restart can be ahead of the current sequence
+        boolean resumable = lastEventId != null && lastEventId >= 0 && lastEventId <= current && current - lastEventId <= maxLag;
+        boolean resync = lastEventId != null && !resumable;
+        Subscription subscription = new Subscription(listener, resumable ? lastEventId : current, resync);
+        subscriptions.add(subscription);
+        subscription.schedule();
+        logger.info("Change feed subscriber added, resuming after {}, {} subscribers", lastEventId, subscriptions.size());
+        return subscription;
+    }
+
+    public long lastSequence() {
+        return sequence.get();
+    }
+
+    @Override
+    public void close() {
+        subscriptions.forEach(Subscription::close);
+        deliveryExecutor.shutdownNow();
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    /**
+     * One subscriber's position in the feed. Delivery runs on at most one thread at a time.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final Listener listener;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Only accessed by the delivery thread holding the scheduled flag
+        private long cursor;
+        private boolean resyncPending;
+
+        private Subscription(Listener listener, long cursor, boolean resyncPending) {
+            this.listener = listener;
+            this.cursor = cursor;
+            this.resyncPending = resyncPending;
+        }
+
+        private void schedule() {
+            if (!closed.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(this::deliver);
+                } catch (RuntimeException e) {
+                    // The bus is shutting down
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void deliver() {
+            try {
+                if (resyncPending) {
+                    resyncPending = false;
+                    listener.onResync(cursor);
+                }
+                while (!closed.get()) {
+                    long next = cursor + 1;
+                    IncidentEvent event = ring.get(slot(next));
+                    if (event == null || event.sequence() < next) {
+                        break; // Reserved but not published yet, its publisher schedules delivery again
+                    }
+                    if (event.sequence() > next || sequence.get() - cursor > maxLag) {
+                        logger.warn("Change feed subscriber fell more than {} events behind, asking it to resync", maxLag);
+                        listener.onResync(sequence.get());
+                        close();
+                        return;
+                    }
+                    if (event.type() != null) {
+                        listener.onEvent(event); // Cancelled reservations have no type
+                    }
+                    cursor = next;
+                }
+                if (!closed.get()) {
+                    listener.onCaughtUp();
+                }
+            } catch (Exception e) {
+                logger.debug("Change feed delivery failed, closing subscription", e);
+                close();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            // An event published after the last check but before the flag was cleared did not schedule delivery
+            IncidentEvent next = ring.get(slot(cursor + 1));
+            if (next != null && next.sequence() > cursor) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.remove(this);
+                listener.onClose();
+            }
+        }
+    }
+}
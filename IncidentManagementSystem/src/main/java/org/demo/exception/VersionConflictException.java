@@ -0,0 +1,23 @@
+package org.demo.exception;
+
+import java.io.Serial;
+
+/**
+ * Thrown when a conditional update names a version that is no longer the current version of the incident.
+ */
+public class VersionConflictException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final long currentVersion;
+
+    public VersionConflictException(long id, long expectedVersion, long currentVersion) {
+        super("Incident " + id + " is at version " + currentVersion + ", not " + expectedVersion);
+        this.currentVersion = currentVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,86 @@
+package org.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lets through at most {@code messagesPerSecond} events per message template and second for loggers under
+ * {@code loggerPrefix}, and drops the rest before they are formatted or queued.
+ *
+ * <p>Every call site logs with its own constant template, so the limit applies per operation. Errors are never
+ * dropped, and events below the logger's level are left to the normal level check without using up the budget.
+ */
+public class RateLimitingTurboFilter extends TurboFilter {
+
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+    private String loggerPrefix = "";
+    private int messagesPerSecond = 20;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // Level checks such as isDebugEnabled() pass no template
+        if (format == null || level.levelInt >= Level.ERROR_INT || level.levelInt < logger.getEffectiveLevel().levelInt
+                || !logger.getName().startsWith(loggerPrefix)) {
+            return FilterReply.NEUTRAL;
+        }
+        Window window = windows.get(format);
+        if (window == null) {
+            window = windows.computeIfAbsent(format, key -> new Window());
+        }
+        return window.tryAcquire(clock.getAsLong() / 1000, messagesPerSecond) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    /**
+     * @return The number of events dropped so far.
+     */
+    public long getSuppressed() {
+        return windows.values().stream().mapToLong(window -> window.suppressed.get()).sum();
+    }
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+
+    public void setMessagesPerSecond(int messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Events of one template in the current second, packed as second * 2^20 + count so one CAS moves both.
+     */
+    private static final class Window {
+
+        private static final int COUNT_BITS = 20;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        private final AtomicLong state = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        boolean tryAcquire(long second, int limit) {
+            while (true) {
+                long current = state.get();
+                long count = (current >>> COUNT_BITS) == second ? current & COUNT_MASK : 0;
+                if (count >= limit) {
+                    suppressed.incrementAndGet();
+                    return false;
+                }
+                if (state.compareAndSet(current, (second << COUNT_BITS) | (count + 1))) {
+                    return true;
+                }
+            }
+        }
+    }
+}
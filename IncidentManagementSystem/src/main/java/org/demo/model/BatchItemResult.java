@@ -0,0 +1,39 @@
+package org.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of one item of a batch request.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    private final int index;
+
+    private final Outcome outcome;
+
+    private final Long id;
+
+    private final Incident incident;
+
+    private final String error;
+
+    public static BatchItemResult invalid(int index, String error) {
+        return new BatchItemResult(index, Outcome.INVALID, null, null, error);
+    }
+
+    public enum Outcome {
+        CREATED,
+        DUPLICATE,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        CONFLICT,
+        INVALID
+    }
+}
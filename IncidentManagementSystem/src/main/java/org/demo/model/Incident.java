@@ -1,27 +1,70 @@
 package org.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
-import lombok.ToString;
-
-@Getter
-@Setter
-@NoArgsConstructor
+import lombok.Builder;
+import lombok.Value;
+import lombok.With;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.Instant;
+
+/**
+ * An immutable incident. Changes are made on a copy ({@code toBuilder()} or {@code withX}),
+ * so a stored, cached or returned incident can be shared between threads as is.
+ */
+@Value
+@With
+@Builder(toBuilder = true)
+@Jacksonized
 @AllArgsConstructor
-@ToString
 public class Incident {
-    private Long id;
+    Long id;
 
     @NotBlank(message = "Title is mandatory")
-    private String title;
+    String title;
 
     @NotBlank(message = "Description is mandatory")
-    private String description;
+    String description;
+
+    Status status; // e.g., "OPEN", "IN_PROGRESS", "CLOSED"
+
+    // Assigned by the service: 1 when created, incremented by every update
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Long version;
+
+    // Assigned by the service: how often the incident was reported, duplicates merged into it included
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Long occurrences;
+
+    // Assigned by the service: when the incident was last reported, which starts its deduplication window
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Instant lastOccurredAt;
+
+    // Assigned by the service: when the incident was created, which orders the time range queries
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Instant createdAt;
 
-    private Status status; // e.g., "OPEN", "IN_PROGRESS", "CLOSED"
+    // Assigned by the service: when the incident was last created, updated or reported again
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Instant updatedAt;
+
+    // Assigned by the service: when the incident last moved to IN_PROGRESS
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Instant inProgressAt;
+
+    // Assigned by the service: when the incident was closed, cleared when it is reopened
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Instant closedAt;
+
+    public Incident(Long id, String title, String description, Status status) {
+        this(id, title, description, status, null);
+    }
+
+    public Incident(Long id, String title, String description, Status status, Long version) {
+        this(id, title, description, status, version, null, null, null, null, null, null);
+    }
 
     public enum Status {
         OPEN,
@@ -0,0 +1,17 @@
+package org.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * An incident matching a search, with its relevance score; higher scores match better.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class SearchHit {
+    private final double score;
+
+    private final Incident incident;
+}
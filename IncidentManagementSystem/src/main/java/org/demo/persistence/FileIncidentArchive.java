@@ -0,0 +1,338 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only archive in numbered segment files {@code archive-N.seg} of compressed blocks.
+ *
+ * <p>Every {@link #append} writes one block holding the whole batch, deflated together so the wording incidents
+ * share compresses well, and forces it to disk before returning; {@link #forget} writes a block listing the IDs to
+ * drop. A block is framed as its length, a CRC32 of the rest, its type, the number of IDs and the IDs, followed for
+ * archived incidents by their deflated {@link IncidentCodec} records, each prefixed with its length. The IDs let
+ * the index from ID to block be rebuilt at startup without inflating anything, and a read inflates only the block
+ * holding the incident. A segment is closed once it reaches the segment size, and after a restart appends always
+ * go to a new segment, so a block torn by a crash is only ever at the end of a segment, where it is ignored.
+ */
+public class FileIncidentArchive implements IncidentArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIncidentArchive.class);
+
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAX_BLOCK_LENGTH = 256 * 1024 * 1024;
+    private static final byte INCIDENTS = 1;
+    private static final byte FORGOTTEN = 2;
+    // Offsets within a segment take the low 40 bits of a block address, its segment number the rest
+    private static final int OFFSET_BITS = 40;
+
+    private final Path directory;
+    private final long segmentSize;
+    // Archived ID -> address of the block holding its latest copy
+    private final ConcurrentSkipListMap<Long, Long> index = new ConcurrentSkipListMap<>();
+    private final Map<Long, FileChannel> segments = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Guarded by appendLock
+    private long lastSegment;
+    private FileChannel appending;
+    private long appendPosition;
+
+    public FileIncidentArchive(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            for (long number : segmentNumbers()) {
+                load(number);
+                lastSegment = number;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open incident archive in " + directory, e);
+        }
+        logger.info("Incident archive opened in {} with {} incidents", directory, index.size());
+    }
+
+    @Override
+    public void append(List<Incident> incidents) {
+        if (incidents.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(incidents.size() * 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(compressed, deflater, 8192))) {
+            for (Incident incident : incidents) {
+                byte[] record = IncidentCodec.encode(incident);
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end(); // Not ended by the stream as it was passed in
+        }
+        long[] ids = incidents.stream().mapToLong(Incident::getId).toArray();
+        long address = write(block(INCIDENTS, ids, compressed.toByteArray()));
+        for (long id : ids) {
+            index.put(id, address);
+            lastId.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    @Override
+    public void forget(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long[] forgotten = ids.stream().mapToLong(Long::longValue).toArray();
+        write(block(FORGOTTEN, forgotten, new byte[0]));
+        for (long id : forgotten) {
+            index.remove(id);
+        }
+    }
+
+    @Override
+    public Optional<Incident> get(long id) {
+        Long address = index.get(id);
+        if (address == null) {
+            return Optional.empty();
+        }
+        return readBlock(address).stream().filter(incident -> incident.getId() == id).findFirst();
+    }
+
+    @Override
+    public List<Incident> list(Long after, int limit) {
+        List<Incident> page = new ArrayList<>(Math.min(limit, 64));
+        // Incidents archived together are read from one block, inflated once per page
+        Map<Long, Map<Long, Incident>> blocks = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : (after == null ? index : index.tailMap(after, false)).entrySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+            Incident incident = blocks.computeIfAbsent(entry.getValue(), address -> {
+                Map<Long, Incident> byId = new HashMap<>();
+                readBlock(address).forEach(archived -> byId.put(archived.getId(), archived));
+                return byId;
+            }).get(entry.getKey());
+            if (incident != null) {
+                page.add(incident);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return index.containsKey(id);
+    }
+
+    @Override
+    public long lastId() {
+        return lastId.get();
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close incident archive segment", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Frames a block as its length, a CRC32 of the rest, then its type, IDs and payload.
+     */
+    private static ByteBuffer block(byte type, long[] ids, byte[] payload) {
+        int length = 1 + Integer.BYTES + ids.length * Long.BYTES + payload.length;
+        ByteBuffer block = ByteBuffer.allocate(2 * Integer.BYTES + length);
+        block.putInt(length);
+        block.putInt(0);
+        block.put(type);
+        block.putInt(ids.length);
+        for (long id : ids) {
+            block.putLong(id);
+        }
+        block.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), 2 * Integer.BYTES, length);
+        block.putInt(Integer.BYTES, (int) crc.getValue());
+        return block.flip();
+    }
+
+    /**
+     * Appends a block to the current segment, starting a new one when it is full, and forces it to disk.
+     *
+     * @return The address of the block.
+     */
+    private long write(ByteBuffer block) {
+        appendLock.lock();
+        try {
+            if (appending == null || appendPosition >= segmentSize) {
+                lastSegment++;
+                Path file = segmentFile(lastSegment);
+                appending = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segments.put(lastSegment, appending);
+                appendPosition = 0;
+            }
+            long address = (lastSegment << OFFSET_BITS) | appendPosition;
+            long position = appendPosition;
+            while (block.hasRemaining()) {
+                position += appending.write(block, position);
+            }
+            appending.force(false);
+            appendPosition = position;
+            return address;
+        } catch (IOException e) {
+            // The next append starts a new segment rather than writing after a block that may be incomplete
+            appending = null;
+            throw new UncheckedIOException("Failed to write to incident archive in " + directory, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Reads and inflates the incidents of a block.
+     */
+    private List<Incident> readBlock(long address) {
+        FileChannel channel = segments.get(address >>> OFFSET_BITS);
+        long offset = address & ((1L << OFFSET_BITS) - 1);
+        try {
+            ByteBuffer body = readBody(channel, offset);
+            if (body == null || body.get() != INCIDENTS) {
+                throw new IOException("Corrupt archive block at " + offset + " of segment " + (address >>> OFFSET_BITS));
+            }
+            int count = body.getInt();
+            body.position(body.position() + count * Long.BYTES);
+            List<Incident> incidents = new ArrayList<>(count);
+            Inflater inflater = new Inflater();
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                    new ByteArrayInputStream(body.array(), body.position(), body.remaining()), inflater, 8192))) {
+                for (int i = 0; i < count; i++) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    incidents.add(IncidentCodec.decode(ByteBuffer.wrap(record)));
+                }
+            } finally {
+                inflater.end(); // Not ended by the stream as it was passed in
+            }
+            return incidents;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read incident archive in " + directory, e);
+        }
+    }
+
+    /**
+     * Rebuilds the index entries of a segment from the IDs of its blocks, up to the first incomplete block.
+     */
+    private void load(long number) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(number), StandardOpenOption.READ);
+        segments.put(number, channel);
+        long size = channel.size();
+        long offset = 0;
+        long blocks = 0;
+        try {
+            ByteBuffer body;
+            while (offset < size && (body = readBody(channel, offset)) != null) {
+                byte type = body.get();
+                int count = body.getInt();
+                long address = (number << OFFSET_BITS) | offset;
+                for (int i = 0; i < count; i++) {
+                    long id = body.getLong();
+                    if (type == INCIDENTS) {
+                        index.put(id, address);
+                        lastId.accumulateAndGet(id, Math::max);
+                    } else {
+                        index.remove(id);
+                    }
+                }
+                offset += 2 * Integer.BYTES + body.capacity();
+                blocks++;
+            }
+        } catch (EOFException e) {
+            // Expected when the process stopped while the last block was being written
+        }
+        if (offset < size) {
+            logger.warn("Ignoring {} bytes after block {} of archive segment {}", size - offset, blocks, number);
+        }
+    }
+
+    /**
+     * Reads the checked body of the block at an offset, after its length and checksum.
+     *
+     * @return The body, or null if the block is incomplete or corrupt.
+     */
+    private static ByteBuffer readBody(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        readFully(channel, header, offset);
+        int length = header.getInt(0);
+        if (length <= 0 || length > MAX_BLOCK_LENGTH) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(channel, body, offset + header.capacity());
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        return (int) crc.getValue() == header.getInt(Integer.BYTES) ? body : null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private List<Long> segmentNumbers() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps incidents moved out of the store by retention, read through its own query path.
+ * The default methods make up the mode without an archive, where nothing can be archived.
+ */
+public interface IncidentArchive extends AutoCloseable {
+
+    /**
+     * Archive used when retention is disabled.
+     */
+    IncidentArchive NONE = new IncidentArchive() {
+    };
+
+    /**
+     * Archives incidents and makes them durable before returning, so they can then be removed from the store.
+     * An incident archived again replaces its earlier copy.
+     *
+     * @param incidents The incidents to archive.
+     */
+    default void append(List<Incident> incidents) {
+        throw new IllegalStateException("Archiving is disabled");
+    }
+
+    /**
+     * Drops archived copies that did not leave the store after all, because the incident changed in the meantime.
+     *
+     * @param ids The IDs of the incidents.
+     */
+    default void forget(Collection<Long> ids) {
+    }
+
+    /**
+     * Reads an archived incident.
+     *
+     * @param id The ID of the incident.
+     * @return The archived incident, or empty if there is none.
+     */
+    default Optional<Incident> get(long id) {
+        return Optional.empty();
+    }
+
+    /**
+     * Reads archived incidents in ascending ID order.
+     *
+     * @param after The ID after which the incidents start, or null to start from the beginning.
+     * @param limit The maximum number of incidents to return.
+     * @return The archived incidents.
+     */
+    default List<Incident> list(Long after, int limit) {
+        return List.of();
+    }
+
+    /**
+     * @param id The ID of an incident.
+     * @return Whether a copy of the incident is archived.
+     */
+    default boolean contains(long id) {
+        return false;
+    }
+
+    /**
+     * @return The largest ID ever archived, or 0 if there is none.
+     */
+    default long lastId() {
+        return 0;
+    }
+
+    @Override
+    default void close() {
+    }
+}
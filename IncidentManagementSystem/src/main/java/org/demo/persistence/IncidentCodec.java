@@ -0,0 +1,123 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Compact binary encoding of an incident used by the write-ahead log and snapshots.
+ * Layout: ID (8 bytes), version (8 bytes, 0 for null), status ordinal (1 byte, -1 for null),
+ * then title and description as length-prefixed UTF-8 (length -1 for null), then the occurrence count (8 bytes,
+ * 0 for null) and the last occurrence in epoch milliseconds (8 bytes, {@link Long#MIN_VALUE} for null), then the
+ * creation, last update, IN_PROGRESS and closing times encoded like the last occurrence.
+ * Records written before the occurrence fields existed end after the description and decode with both null;
+ * records written before the lifecycle times existed end after the last occurrence and decode with them null.
+ */
+public final class IncidentCodec {
+
+    private static final Incident.Status[] STATUSES = Incident.Status.values();
+
+    private IncidentCodec() {
+    }
+
+    /**
+     * Encodes an incident.
+     *
+     * @param incident The incident to encode.
+     * @return The encoded bytes.
+     */
+    public static byte[] encode(Incident incident) {
+        byte[] title = bytes(incident.getTitle());
+        byte[] description = bytes(incident.getDescription());
+        ByteBuffer buffer = ByteBuffer.allocate(8 * Long.BYTES + 1 + encodedLength(title) + encodedLength(description));
+        buffer.putLong(incident.getId());
+        buffer.putLong(incident.getVersion() == null ? 0 : incident.getVersion());
+        buffer.put(incident.getStatus() == null ? -1 : (byte) incident.getStatus().ordinal());
+        putBytes(buffer, title);
+        putBytes(buffer, description);
+        buffer.putLong(incident.getOccurrences() == null ? 0 : incident.getOccurrences());
+        putInstant(buffer, incident.getLastOccurredAt());
+        putInstant(buffer, incident.getCreatedAt());
+        putInstant(buffer, incident.getUpdatedAt());
+        putInstant(buffer, incident.getInProgressAt());
+        putInstant(buffer, incident.getClosedAt());
+        return buffer.array();
+    }
+
+    /**
+     * Decodes an incident starting at the buffer's position and advances the position past it.
+     *
+     * @param buffer The buffer to read from, ending with the incident's record.
+     * @return The decoded incident.
+     */
+    public static Incident decode(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long version = buffer.getLong();
+        byte status = buffer.get();
+        String title = getString(buffer);
+        String description = getString(buffer);
+        long occurrences = 0;
+        Instant lastOccurredAt = null;
+        if (buffer.hasRemaining()) {
+            occurrences = buffer.getLong();
+            lastOccurredAt = getInstant(buffer);
+        }
+        Instant createdAt = null;
+        Instant updatedAt = null;
+        Instant inProgressAt = null;
+        Instant closedAt = null;
+        if (buffer.hasRemaining()) {
+            createdAt = getInstant(buffer);
+            updatedAt = getInstant(buffer);
+            inProgressAt = getInstant(buffer);
+            closedAt = getInstant(buffer);
+        }
+        return new Incident(id, title, description, status < 0 ? null : STATUSES[status], version == 0 ? null : version,
+                occurrences == 0 ? null : occurrences, lastOccurredAt, createdAt, updatedAt, inProgressAt, closedAt);
+    }
+
+    private static void putInstant(ByteBuffer buffer, Instant value) {
+        buffer.putLong(value == null ? Long.MIN_VALUE : value.toEpochMilli());
+    }
+
+    private static Instant getInstant(ByteBuffer buffer) {
+        long millis = buffer.getLong();
+        return millis == Long.MIN_VALUE ? null : Instant.ofEpochMilli(millis);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int encodedLength(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
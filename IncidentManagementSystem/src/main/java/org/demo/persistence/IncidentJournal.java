@@ -0,0 +1,89 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+
+import java.util.function.Consumer;
+
+/**
+ * Records every change made to the incident store so it can be rebuilt after a restart.
+ * The default methods make up the in-memory mode where nothing is recorded.
+ */
+public interface IncidentJournal extends AutoCloseable {
+
+    /**
+     * Journal used when persistence is disabled.
+     */
+    IncidentJournal NONE = new IncidentJournal() {
+    };
+
+    /**
+     * Receives the recovered state while the journal is replayed.
+     */
+    interface RecoveryListener {
+
+        void onPut(Incident incident);
+
+        void onDelete(long id);
+
+        void onLastId(long lastId);
+    }
+
+    /**
+     * Supplies a consistent view of the store when a snapshot is written.
+     */
+    interface SnapshotSource {
+
+        long lastId();
+
+        void forEachIncident(Consumer<Incident> consumer);
+    }
+
+    /**
+     * Replays the latest snapshot and the log written after it.
+     *
+     * @param listener The listener receiving the recovered state, in the order it was recorded.
+     */
+    default void recover(RecoveryListener listener) {
+    }
+
+    /**
+     * Starts writing periodic snapshots of the given source.
+     *
+     * @param source The store to snapshot.
+     */
+    default void startSnapshots(SnapshotSource source) {
+    }
+
+    /**
+     * Records that an incident was created or replaced. Must be called while the change is
+     * still exclusive to the caller, so records of the same incident are in the order they were applied.
+     *
+     * @param incident The new state of the incident.
+     * @return The position to pass to {@link #awaitDurable(long)}.
+     */
+    default long recordPut(Incident incident) {
+        return 0;
+    }
+
+    /**
+     * Records that an incident was deleted.
+     *
+     * @param id The ID of the deleted incident.
+     * @return The position to pass to {@link #awaitDurable(long)}.
+     */
+    default long recordDelete(long id) {
+        return 0;
+    }
+
+    /**
+     * Blocks until every record up to the given position is durable.
+     *
+     * @param position The position returned when the record was written.
+     */
+    default void awaitDurable(long position) {
+    }
+
+    @Override
+    default void close() {
+    }
+}
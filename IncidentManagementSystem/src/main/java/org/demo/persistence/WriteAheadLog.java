@@ -0,0 +1,489 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, {@link FileChannel}-based write-ahead log with group commit and periodic snapshots.
+ *
+ * <p>Writers copy their record into a shared buffer and wait; a single flusher thread writes
+ * everything buffered so far and forces it to disk once, so the cost of an fsync is shared by all
+ * writers that arrived while the previous one was in progress. Without fsync writers still wait
+ * until their record is written to the file, which survives a crash of the process though not of
+ * the machine.
+ *
+ * <p>The log is split into numbered segments {@code wal-N.log}. A snapshot {@code snapshot-N.bin}
+ * holds the whole store as of the start of segment N, after which older segments are deleted.
+ * Every record carries the full state of an incident, so replaying a segment on top of a snapshot
+ * that already contains some of its changes is harmless.
+ */
+public class WriteAheadLog implements IncidentJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOT_MAGIC = 0x494E4353;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Duration snapshotInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // Guarded by lock
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appendedPosition;
+    // Written to the file, and forced to disk when fsync is enabled
+    private long durablePosition;
+    private long segment;
+    private long completedRotations;
+    private boolean rotationRequested;
+    private boolean closed;
+    private boolean flusherStopped;
+    private IOException failure;
+
+    // Only used by the flusher thread once it is started
+    private FileChannel channel;
+    private Thread flusher;
+    private ScheduledExecutorService snapshotScheduler;
+    private volatile long snapshotPosition;
+
+    public WriteAheadLog(Path directory, boolean fsync, Duration snapshotInterval) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @Override
+    public void recover(RecoveryListener listener) {
+        try {
+            Files.createDirectories(directory);
+            long snapshotSegment = latestIndex(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if (snapshotSegment > 0) {
+                readSnapshot(snapshotFile(snapshotSegment), listener);
+            }
+
+            long lastSegment = Math.max(snapshotSegment - 1, 0);
+            for (long index : indexes(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (index >= snapshotSegment) {
+                    replaySegment(segmentFile(index), listener);
+                    lastSegment = index;
+                }
+            }
+
+            // Never append to a segment that may end with a torn record
+            segment = lastSegment + 1;
+            channel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover write-ahead log in " + directory, e);
+        }
+
+        flusher = new Thread(this::flushLoop, "incident-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Write-ahead log opened in {}, appending to segment {}", directory, segment);
+    }
+
+    @Override
+    public void startSnapshots(SnapshotSource source) {
+        if (snapshotInterval == null || snapshotInterval.isZero() || snapshotInterval.isNegative()) {
+            return;
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "incident-wal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = snapshotInterval.toMillis();
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                if (appendedPosition() > snapshotPosition) {
+                    writeSnapshot(source);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to write snapshot", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long recordPut(Incident incident) {
+        return append(PUT, IncidentCodec.encode(incident));
+    }
+
+    @Override
+    public long recordDelete(long id) {
+        return append(DELETE, ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+        // Without fsync this only waits for the write: a record still in our buffer is lost if the process dies,
+        // one in the page cache only if the machine does
+        lock.lock();
+        try {
+            while (durablePosition < position) {
+                checkWritable();
+                if (flusherStopped) {
+                    throw new IllegalStateException("Write-ahead log closed before the record was written");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store and deletes the segments and snapshots it supersedes.
+     *
+     * @param source The store to snapshot.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public void writeSnapshot(SnapshotSource source) throws IOException {
+        long position = appendedPosition();
+        long snapshotSegment = rotate();
+        // Every record in older segments was appended before the rotation, so its change is visible to the source now
+        long lastId = source.lastId();
+
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + snapshotSegment + ".tmp");
+        long count;
+        try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(snapshotChannel), 64 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(lastId);
+            long[] written = new long[1];
+            source.forEachIncident(incident -> {
+                try {
+                    out.write(frame(PUT, IncidentCodec.encode(incident)));
+                    written[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeInt(0); // End marker, a snapshot without it is incomplete
+            out.flush();
+            snapshotChannel.force(true);
+            count = written[0];
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporary, snapshotFile(snapshotSegment), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        snapshotPosition = position;
+
+        for (long index : indexes(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (index < snapshotSegment) {
+                Files.deleteIfExists(segmentFile(index));
+            }
+        }
+        for (long index : indexes(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (index < snapshotSegment) {
+                Files.deleteIfExists(snapshotFile(index));
+            }
+        }
+        logger.info("Wrote snapshot {} with {} incidents", snapshotSegment, count);
+    }
+
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close write-ahead log segment", e);
+        }
+    }
+
+    private long append(byte type, byte[] body) {
+        byte[] record = frame(type, body);
+        lock.lock();
+        try {
+            checkWritable();
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (pending.remaining() < record.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            pending.put(record);
+            workAvailable.signal();
+            return ++appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Requests a new segment and waits until the flusher has switched to it.
+     *
+     * @return The number of the new segment.
+     */
+    private long rotate() throws IOException {
+        lock.lock();
+        try {
+            long target = completedRotations + 1;
+            rotationRequested = true;
+            workAvailable.signal();
+            while (completedRotations < target) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (flusherStopped) {
+                    throw new IllegalStateException("Write-ahead log is closed");
+                }
+                flushed.awaitUninterruptibly();
+            }
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long target;
+            boolean rotate;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !rotationRequested && !closed) {
+                    workAvailable.awaitUninterruptibly();
+                }
+                if (pending.position() == 0 && !rotationRequested) {
+                    flusherStopped = true;
+                    flushed.signalAll();
+                    return;
+                }
+                batch = pending;
+                pending = writing;
+                writing = batch;
+                target = appendedPosition;
+                rotate = rotationRequested;
+            } finally {
+                lock.unlock();
+            }
+
+            long nextSegment = segment + 1;
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                batch.clear();
+                if (fsync) {
+                    channel.force(false);
+                }
+                if (rotate) {
+                    FileChannel next = FileChannel.open(segmentFile(nextSegment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    channel.close();
+                    channel = next;
+                }
+            } catch (IOException e) {
+                logger.error("Write-ahead log failed, rejecting further writes", e);
+                lock.lock();
+                try {
+                    failure = e;
+                    flusherStopped = true;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durablePosition = target;
+                if (rotate) {
+                    segment = nextSegment;
+                    rotationRequested = false;
+                    completedRotations++;
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long appendedPosition() {
+        lock.lock();
+        try {
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    private void readSnapshot(Path file, RecoveryListener listener) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            listener.onLastId(in.readLong());
+            long count = 0;
+            ByteBuffer record;
+            while ((record = readRecord(in, false)) != null) {
+                record.get(); // Always PUT
+                listener.onPut(IncidentCodec.decode(record));
+                count++;
+            }
+            logger.info("Loaded snapshot {} with {} incidents", file.getFileName(), count);
+        } catch (EOFException e) {
+            throw new IOException("Snapshot " + file + " is incomplete", e);
+        }
+    }
+
+    private void replaySegment(Path file, RecoveryListener listener) throws IOException {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            ByteBuffer record;
+            while ((record = readRecord(in, true)) != null) {
+                if (record.get() == PUT) {
+                    listener.onPut(IncidentCodec.decode(record));
+                } else {
+                    listener.onDelete(record.getLong());
+                }
+                count++;
+            }
+        } catch (EOFException e) {
+            // Expected when the process stopped while the last batch was being written
+        } catch (IOException e) {
+            logger.warn("Stopped replaying {} at a corrupt record", file.getFileName(), e);
+        }
+        logger.info("Replayed {} records from {}", count, file.getFileName());
+    }
+
+    /**
+     * Reads the next framed record.
+     *
+     * @param endOfFileAllowed Whether the end of the file may be reached before an end marker.
+     * @return The checked record body including its type, or null at the end marker or end of file.
+     */
+    private static ByteBuffer readRecord(DataInputStream in, boolean endOfFileAllowed) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            if (endOfFileAllowed) {
+                return null;
+            }
+            throw e;
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+            throw new IOException("Invalid record length " + length);
+        }
+        int checksum = in.readInt();
+        byte[] body = new byte[length];
+        in.readFully(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Record checksum mismatch");
+        }
+        return ByteBuffer.wrap(body);
+    }
+
+    /**
+     * Frames a record as its length, a CRC32 of its body, then the body (type followed by payload).
+     */
+    private static byte[] frame(byte type, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + 1 + payload.length);
+        record.putInt(1 + payload.length);
+        record.putInt(0);
+        record.put(type);
+        record.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 2 * Integer.BYTES, 1 + payload.length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.array();
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(SEGMENT_PREFIX + index + SEGMENT_SUFFIX);
+    }
+
+    private Path snapshotFile(long index) {
+        return directory.resolve(SNAPSHOT_PREFIX + index + SNAPSHOT_SUFFIX);
+    }
+
+    private long latestIndex(String prefix, String suffix) throws IOException {
+        List<Long> indexes = indexes(prefix, suffix);
+        return indexes.isEmpty() ? 0 : indexes.get(indexes.size() - 1);
+    }
+
+    private List<Long> indexes(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
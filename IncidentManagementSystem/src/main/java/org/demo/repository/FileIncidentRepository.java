@@ -0,0 +1,52 @@
+package org.demo.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Slab engine backed by regions of a memory-mapped file, so the operating system can page incidents out to disk
+ * when the store is larger than the memory it is willing to give it.
+ *
+ * <p>The file is a spill area, not a durable copy of the store: it is truncated on startup and the state is
+ * rebuilt from the write-ahead log when journaling is enabled.
+ */
+public class FileIncidentRepository extends SlabIncidentRepository {
+
+    private final FileChannel channel;
+
+    public FileIncidentRepository(Path file, int slabSize) {
+        super(slabSize);
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open incident store file " + file, e);
+        }
+    }
+
+    @Override
+    protected ByteBuffer allocateSlab(int index, int size) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, (long) index * size, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map slab " + index + " of the incident store file", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.demo.repository;
+
+import org.demo.model.Incident;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps incidents as objects on the heap in a {@link ConcurrentHashMap}.
+ * Fastest engine, suited as long as the store fits comfortably in the heap.
+ *
+ * <p>Writers hold a striped {@link ReentrantLock} for the ID rather than using {@link ConcurrentHashMap#compute},
+ * whose bin lock is a {@code synchronized} block: the remapping functions of the service write to the journal
+ * and may wait for its lock, which would pin the carrier of a virtual thread. Readers do not lock.
+ */
+public class InMemoryIncidentRepository implements IncidentRepository {
+
+    private static final int STRIPES = 256;
+
+    private final ConcurrentMap<Long, Incident> incidents = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public InMemoryIncidentRepository() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Incident get(long id) {
+        return incidents.get(id);
+    }
+
+    @Override
+    public Incident compute(long id, BiFunction<Long, Incident, Incident> remapping) {
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            Incident existing = incidents.get(id);
+            Incident result = remapping.apply(id, existing);
+            if (result == null) {
+                if (existing != null) {
+                    incidents.remove(id);
+                }
+            } else if (result != existing) {
+                incidents.put(id, result);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return incidents.size();
+    }
+
+    private ReentrantLock stripe(long id) {
+        return stripes[(int) (id ^ (id >>> 32)) & (STRIPES - 1)];
+    }
+}
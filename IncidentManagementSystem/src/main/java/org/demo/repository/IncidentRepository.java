@@ -0,0 +1,62 @@
+package org.demo.repository;
+
+import org.demo.model.Incident;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Storage engine holding incidents by ID.
+ * The compute methods run the given function at most once while no other writer can change the same ID,
+ * which is what the service relies on to keep its indexes consistent with the store.
+ */
+public interface IncidentRepository extends AutoCloseable {
+
+    /**
+     * Retrieves an incident by its ID.
+     *
+     * @param id The ID of the incident.
+     * @return The incident, or null if there is none.
+     */
+    Incident get(long id);
+
+    /**
+     * Atomically computes the new state of an incident.
+     *
+     * @param id The ID of the incident.
+     * @param remapping Receives the ID and the current incident or null, returns the new incident or null to remove it.
+     * @return The new incident, or null if there is none.
+     */
+    Incident compute(long id, BiFunction<Long, Incident, Incident> remapping);
+
+    /**
+     * Stores an incident unless one already exists with the same ID.
+     *
+     * @param id The ID of the incident.
+     * @param mapping Receives the ID and returns the incident to store, or null to store nothing.
+     * @return The existing or stored incident, or null if there is none.
+     */
+    default Incident computeIfAbsent(long id, Function<Long, Incident> mapping) {
+        return compute(id, (key, existing) -> existing != null ? existing : mapping.apply(key));
+    }
+
+    /**
+     * Replaces or removes an existing incident.
+     *
+     * @param id The ID of the incident.
+     * @param remapping Receives the ID and the current incident, returns the new incident or null to remove it.
+     * @return The new incident, or null if there is none.
+     */
+    default Incident computeIfPresent(long id, BiFunction<Long, Incident, Incident> remapping) {
+        return compute(id, (key, existing) -> existing == null ? null : remapping.apply(key, existing));
+    }
+
+    /**
+     * @return The number of stored incidents.
+     */
+    long size();
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,19 @@
+package org.demo.repository;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Slab engine backed by direct buffers. The store lives outside the heap but still in memory, so the
+ * JVM must be allowed enough direct memory ({@code -XX:MaxDirectMemorySize}).
+ */
+public class OffHeapIncidentRepository extends SlabIncidentRepository {
+
+    public OffHeapIncidentRepository(int slabSize) {
+        super(slabSize);
+    }
+
+    @Override
+    protected ByteBuffer allocateSlab(int index, int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+}
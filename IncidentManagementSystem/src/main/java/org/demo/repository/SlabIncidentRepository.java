@@ -0,0 +1,256 @@
+package org.demo.repository;
+
+import org.demo.model.Incident;
+import org.demo.persistence.IncidentCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps incidents serialized in large {@link ByteBuffer} slabs outside the Java object graph, so millions of
+ * incidents cost the garbage collector a handful of buffers instead of millions of objects.
+ *
+ * <p>Records live in power-of-two blocks carved out of the slabs. Freed blocks go to a free list per block size
+ * and are reused. The index from ID to block address is a paged array of primitive longs, which relies on IDs
+ * being handed out densely. Writers hold a striped {@link StampedLock} for the ID, readers decode optimistically
+ * and retry under the read lock if a writer got in the way.
+ *
+ * <p>Remapping functions must not access the repository themselves.
+ */
+public abstract class SlabIncidentRepository implements IncidentRepository {
+
+    private static final int MIN_BLOCK_SHIFT = 6;
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int STRIPES = 256;
+
+    private final int slabSize;
+    private final StampedLock[] stripes = new StampedLock[STRIPES];
+    private final LongAdder count = new LongAdder();
+
+    // Slabs and index pages are only ever appended to, readers see them through the volatile arrays
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private volatile long[][] pages = new long[0][];
+
+    // Guarded by allocationLock
+    private final ReentrantLock allocationLock = new ReentrantLock();
+    private final long[][] freeBlocks;
+    private final int[] freeBlockCounts;
+    private int bumpOffset;
+
+    protected SlabIncidentRepository(int slabSize) {
+        if (Integer.bitCount(slabSize) != 1 || slabSize < (1 << MIN_BLOCK_SHIFT)) {
+            throw new IllegalArgumentException("Slab size must be a power of two of at least 64 bytes");
+        }
+        this.slabSize = slabSize;
+        int sizeClasses = Integer.numberOfTrailingZeros(slabSize) - MIN_BLOCK_SHIFT + 1;
+        this.freeBlocks = new long[sizeClasses][16];
+        this.freeBlockCounts = new int[sizeClasses];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new StampedLock();
+        }
+        this.bumpOffset = slabSize; // Forces the first slab to be allocated on the first write
+    }
+
+    /**
+     * Allocates a new slab.
+     *
+     * @param index The index of the slab.
+     * @param size The size of the slab in bytes.
+     * @return The slab.
+     */
+    protected abstract ByteBuffer allocateSlab(int index, int size);
+
+    @Override
+    public Incident get(long id) {
+        StampedLock lock = stripe(id);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Incident incident = read(id);
+                if (lock.validate(stamp)) {
+                    return incident;
+                }
+            } catch (RuntimeException e) {
+                // A writer reused the block while it was being decoded, read again under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Incident compute(long id, BiFunction<Long, Incident, Incident> remapping) {
+        StampedLock lock = stripe(id);
+        long stamp = lock.writeLock();
+        try {
+            long address = address(id);
+            Incident existing = address < 0 ? null : decode(address);
+            Incident result = remapping.apply(id, existing);
+            if (result == null) {
+                if (existing != null) {
+                    free(address);
+                    setAddress(id, -1);
+                    count.decrement();
+                }
+            } else if (result != existing) {
+                setAddress(id, write(address, IncidentCodec.encode(result)));
+                if (existing == null) {
+                    count.increment();
+                }
+            }
+            return result;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long size() {
+        return count.sum();
+    }
+
+    private StampedLock stripe(long id) {
+        return stripes[(int) (id ^ (id >>> 32)) & (STRIPES - 1)];
+    }
+
+    private Incident read(long id) {
+        long address = address(id);
+        return address < 0 ? null : decode(address);
+    }
+
+    private Incident decode(long address) {
+        ByteBuffer slab = slabs[(int) (address >>> 32)];
+        int offset = (int) address;
+        int length = slab.getInt(offset);
+        if (length < 0 || length > slabSize - Integer.BYTES) {
+            throw new IllegalStateException("Corrupt record length " + length);
+        }
+        byte[] record = new byte[length];
+        slab.get(offset + Integer.BYTES, record);
+        return IncidentCodec.decode(ByteBuffer.wrap(record));
+    }
+
+    /**
+     * Writes a record, in place if it needs the same block size as the previous version.
+     *
+     * @param previousAddress The address of the previous version, or -1.
+     * @param record The encoded incident.
+     * @return The address of the record.
+     */
+    private long write(long previousAddress, byte[] record) {
+        int sizeClass = sizeClass(Integer.BYTES + record.length);
+        long address = previousAddress;
+        if (previousAddress < 0 || sizeClass(previousAddress) != sizeClass) {
+            address = allocate(sizeClass);
+            if (previousAddress >= 0) {
+                free(previousAddress);
+            }
+        }
+        ByteBuffer slab = slabs[(int) (address >>> 32)];
+        int offset = (int) address;
+        slab.putInt(offset, record.length);
+        slab.put(offset + Integer.BYTES, record);
+        return address;
+    }
+
+    private long allocate(int sizeClass) {
+        int blockSize = 1 << (sizeClass + MIN_BLOCK_SHIFT);
+        allocationLock.lock();
+        try {
+            if (freeBlockCounts[sizeClass] > 0) {
+                return freeBlocks[sizeClass][--freeBlockCounts[sizeClass]];
+            }
+            if (bumpOffset + blockSize > slabSize) {
+                ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+                grown[slabs.length] = allocateSlab(slabs.length, slabSize);
+                slabs = grown;
+                bumpOffset = 0;
+            }
+            long address = ((long) (slabs.length - 1) << 32) | bumpOffset;
+            bumpOffset += blockSize;
+            return address;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    private void free(long address) {
+        int sizeClass = sizeClass(address);
+        allocationLock.lock();
+        try {
+            long[] blocks = freeBlocks[sizeClass];
+            if (freeBlockCounts[sizeClass] == blocks.length) {
+                blocks = freeBlocks[sizeClass] = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+            blocks[freeBlockCounts[sizeClass]++] = address;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    private int sizeClass(long address) {
+        int length = slabs[(int) (address >>> 32)].getInt((int) address);
+        return sizeClass(Integer.BYTES + length);
+    }
+
+    private int sizeClass(int size) {
+        if (size > slabSize) {
+            throw new IllegalArgumentException("Incident of " + size + " bytes does not fit in a slab of " + slabSize + " bytes");
+        }
+        int blockShift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(blockShift - MIN_BLOCK_SHIFT, 0);
+    }
+
+    /**
+     * @return The block address of the incident, or -1 if there is none.
+     */
+    private long address(long id) {
+        long[][] currentPages = pages;
+        long page = id >>> PAGE_SHIFT;
+        if (page >= currentPages.length || currentPages[(int) page] == null) {
+            return -1;
+        }
+        // Addresses are stored plus one so that a fresh page reads as empty
+        return currentPages[(int) page][(int) (id & PAGE_MASK)] - 1;
+    }
+
+    private void setAddress(long id, long address) {
+        long page = id >>> PAGE_SHIFT;
+        if (page > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("ID " + id + " is out of range for a slab repository");
+        }
+        long[][] currentPages = pages;
+        if (page >= currentPages.length || currentPages[(int) page] == null) {
+            currentPages = ensurePage((int) page);
+        }
+        currentPages[(int) page][(int) (id & PAGE_MASK)] = address + 1;
+    }
+
+    private long[][] ensurePage(int page) {
+        allocationLock.lock();
+        try {
+            long[][] grown = pages;
+            if (page >= grown.length) {
+                grown = Arrays.copyOf(grown, Math.max(page + 1, grown.length * 2));
+            } else if (grown[page] != null) {
+                return grown;
+            } else {
+                grown = grown.clone();
+            }
+            grown[page] = new long[1 << PAGE_SHIFT];
+            pages = grown;
+            return grown;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.demo.service;
+
+import java.time.Duration;
+
+/**
+ * How {@link IncidentService} caches incidents in front of its repository.
+ *
+ * <p>The cache holds recently read and written incidents as objects, so reading one does not decode it from an
+ * off-heap or file repository. It is bounded by the estimated heap footprint of its entries rather than their count,
+ * divided evenly between the shards, and kept consistent with the repository by every write.
+ *
+ * @param maximumWeight Most bytes of incidents cached across all shards, 0 to disable the cache.
+ * @param expireAfterAccess How long an incident stays cached after it was last read or written, zero for no limit.
+ */
+public record CachePolicy(long maximumWeight, Duration expireAfterAccess) {
+
+    /**
+     * 16 MB of incidents, each kept until it has not been used for 10 minutes.
+     */
+    public static final CachePolicy DEFAULT = new CachePolicy(16L << 20, Duration.ofMinutes(10));
+
+    /**
+     * No cache, for repositories holding incidents as objects already.
+     */
+    public static final CachePolicy DISABLED = new CachePolicy(0, Duration.ZERO);
+
+    public CachePolicy {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Cache weight must not be negative");
+        }
+        if (expireAfterAccess.isNegative()) {
+            throw new IllegalArgumentException("Cache expiry must not be negative");
+        }
+    }
+
+    /**
+     * @return Whether incidents are cached at all.
+     */
+    public boolean enabled() {
+        return maximumWeight > 0;
+    }
+}
@@ -0,0 +1,124 @@
+package org.demo.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps deduplication fingerprints to the incidents registered under them, with the signature of each, most
+ * recently registered first. At most {@code capacity} incidents are kept per fingerprint, dropping the oldest.
+ *
+ * <p>Entries are immutable and replaced as a whole, so a create can read an entry, compare its incidents and then
+ * register a new incident only if the entry did not change in between.
+ */
+final class DeduplicationIndex {
+
+    private final int capacity;
+    private final ConcurrentMap<IncidentFingerprint, Entry> entries = new ConcurrentHashMap<>();
+
+    DeduplicationIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param fingerprint The fingerprint to look up.
+     * @return The incidents registered under it, or null if there are none.
+     */
+    Entry get(IncidentFingerprint fingerprint) {
+        return entries.get(fingerprint);
+    }
+
+    /**
+     * Registers a new incident, only if the fingerprint's entry is still the one that was compared against.
+     *
+     * @param fingerprint The fingerprint of the incident.
+     * @param expected The entry read before, or null if there was none.
+     * @param id The ID of the incident.
+     * @param signature The signature of the incident.
+     * @return Whether the incident was registered.
+     */
+    boolean claim(IncidentFingerprint fingerprint, Entry expected, long id, long signature) {
+        if (expected == null) {
+            return entries.putIfAbsent(fingerprint, new Entry(new long[]{id}, new long[]{signature})) == null;
+        }
+        // Entry does not override equals, so this only succeeds if the entry is the same instance
+        return entries.replace(fingerprint, expected, expected.with(id, signature, capacity));
+    }
+
+    /**
+     * Registers an incident, or updates its signature, whatever the fingerprint's entry is.
+     *
+     * @param fingerprint The fingerprint of the incident.
+     * @param id The ID of the incident.
+     * @param signature The signature of the incident.
+     */
+    void add(IncidentFingerprint fingerprint, long id, long signature) {
+        entries.compute(fingerprint, (key, entry) -> entry == null
+                ? new Entry(new long[]{id}, new long[]{signature})
+                : entry.without(id).with(id, signature, capacity));
+    }
+
+    /**
+     * Unregisters an incident.
+     *
+     * @param fingerprint The fingerprint the incident was registered under.
+     * @param id The ID of the incident.
+     */
+    void remove(IncidentFingerprint fingerprint, long id) {
+        entries.computeIfPresent(fingerprint, (key, entry) -> {
+            Entry remaining = entry.without(id);
+            return remaining.ids.length == 0 ? null : remaining;
+        });
+    }
+
+    /**
+     * The incidents registered under one fingerprint, most recent first.
+     */
+    static final class Entry {
+
+        private final long[] ids;
+        private final long[] signatures;
+
+        private Entry(long[] ids, long[] signatures) {
+            this.ids = ids;
+            this.signatures = signatures;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        long id(int index) {
+            return ids[index];
+        }
+
+        long signature(int index) {
+            return signatures[index];
+        }
+
+        private Entry with(long id, long signature, int capacity) {
+            int size = Math.min(ids.length + 1, capacity);
+            long[] newIds = new long[size];
+            long[] newSignatures = new long[size];
+            newIds[0] = id;
+            newSignatures[0] = signature;
+            System.arraycopy(ids, 0, newIds, 1, size - 1);
+            System.arraycopy(signatures, 0, newSignatures, 1, size - 1);
+            return new Entry(newIds, newSignatures);
+        }
+
+        private Entry without(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    long[] newIds = new long[ids.length - 1];
+                    long[] newSignatures = new long[ids.length - 1];
+                    System.arraycopy(ids, 0, newIds, 0, i);
+                    System.arraycopy(ids, i + 1, newIds, i, ids.length - i - 1);
+                    System.arraycopy(signatures, 0, newSignatures, 0, i);
+                    System.arraycopy(signatures, i + 1, newSignatures, i, ids.length - i - 1);
+                    return new Entry(newIds, newSignatures);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.demo.service;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * How {@link IncidentService} deduplicates new incidents.
+ *
+ * <p>A new incident is merged into a stored incident that the strategy considers the same, is not closed and was
+ * last reported within the window. Merging counts another occurrence and restarts the window, so an alert storm
+ * stays one incident, while the same problem reported again after the window or after it was closed opens a new one.
+ *
+ * @param strategy Decides which incidents are the same.
+ * @param window How long after its last occurrence an incident still absorbs duplicates, zero for no limit.
+ * @param candidates Most incidents compared per fingerprint, the most recently created ones, which bounds the cost
+ *                   of a check however many incidents share a fingerprint.
+ * @param clock Source of occurrence times.
+ */
+public record DeduplicationPolicy(DeduplicationStrategy strategy, Duration window, int candidates, Clock clock) {
+
+    /**
+     * Exact matching within an hour of the last occurrence.
+     */
+    public static final DeduplicationPolicy DEFAULT =
+            new DeduplicationPolicy(new ExactDeduplication(), Duration.ofHours(1), 8, Clock.systemUTC());
+
+    public DeduplicationPolicy {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("Deduplication window must not be negative");
+        }
+        if (candidates < 1) {
+            throw new IllegalArgumentException("Deduplication candidates must be at least 1");
+        }
+    }
+}
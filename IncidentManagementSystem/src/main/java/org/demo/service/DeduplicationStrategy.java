@@ -0,0 +1,39 @@
+package org.demo.service;
+
+import org.demo.model.Incident;
+
+/**
+ * Decides which new incidents are reports of an incident already stored.
+ *
+ * <p>Incidents are first grouped by a {@link #fingerprint}: only incidents with the same fingerprint are compared,
+ * and the fingerprint also picks the shard, and in cluster mode the node, creating the incident. Within the group,
+ * {@link #isDuplicate} compares the candidate with each stored incident, using the {@link #signature} computed once
+ * per incident so a check never has to reprocess stored text.
+ */
+public interface DeduplicationStrategy {
+
+    /**
+     * @param title The sanitized title.
+     * @param description The sanitized description, may be null.
+     * @return The fingerprint of the content duplicates have to share exactly.
+     */
+    IncidentFingerprint fingerprint(String title, String description);
+
+    /**
+     * @param title The sanitized title.
+     * @param description The sanitized description, may be null.
+     * @return A summary of the content compared by {@link #isDuplicate}, or 0 if the strategy needs none.
+     */
+    long signature(String title, String description);
+
+    /**
+     * Compares a new incident with a stored incident of the same fingerprint.
+     *
+     * @param existing The stored incident.
+     * @param existingSignature The signature of the stored incident.
+     * @param candidate The new incident, sanitized.
+     * @param candidateSignature The signature of the new incident.
+     * @return Whether the new incident is another report of the stored one.
+     */
+    boolean isDuplicate(Incident existing, long existingSignature, Incident candidate, long candidateSignature);
+}
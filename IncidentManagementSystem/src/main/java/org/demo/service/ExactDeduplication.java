@@ -0,0 +1,27 @@
+package org.demo.service;
+
+import org.demo.model.Incident;
+
+import java.util.Objects;
+
+/**
+ * Incidents are duplicates only when title and description are identical.
+ */
+public final class ExactDeduplication implements DeduplicationStrategy {
+
+    @Override
+    public IncidentFingerprint fingerprint(String title, String description) {
+        return IncidentFingerprint.of(title, description);
+    }
+
+    @Override
+    public long signature(String title, String description) {
+        return 0;
+    }
+
+    @Override
+    public boolean isDuplicate(Incident existing, long existingSignature, Incident candidate, long candidateSignature) {
+        return Objects.equals(existing.getTitle(), candidate.getTitle())
+                && Objects.equals(existing.getDescription(), candidate.getDescription());
+    }
+}
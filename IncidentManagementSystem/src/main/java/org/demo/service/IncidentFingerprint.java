@@ -0,0 +1,59 @@
+package org.demo.service;
+
+/**
+ * Compact, fixed-size 128-bit fingerprint of an incident's deduplication key (title and description, as reduced
+ * by the {@link DeduplicationStrategy}).
+ * Replaces the concatenated {@code title + ":" + description} string so the deduplication index
+ * holds two longs per incident regardless of how large the description is.
+ *
+ * <p>The two lanes are hashed independently with different seeds and multipliers, so an accidental
+ * collision is astronomically unlikely. Callers still compare the incidents on a hit.
+ */
+public record IncidentFingerprint(long high, long low) {
+
+    private static final long SEED_HIGH = 0x9E3779B97F4A7C15L;
+    private static final long SEED_LOW = 0xC2B2AE3D27D4EB4FL;
+    private static final long MULTIPLIER_HIGH = 0x87C37B91114253D5L;
+    private static final long MULTIPLIER_LOW = 0x4CF5AD432745937FL;
+
+    /**
+     * Computes the fingerprint of the given title and description.
+     *
+     * @param title The incident title.
+     * @param description The incident description, may be null.
+     * @return The fingerprint.
+     */
+    public static IncidentFingerprint of(String title, String description) {
+        return new IncidentFingerprint(
+                hash(SEED_HIGH, MULTIPLIER_HIGH, title, description),
+                hash(SEED_LOW, MULTIPLIER_LOW, title, description));
+    }
+
+    private static long hash(long seed, long multiplier, String title, String description) {
+        long h = mix(seed, multiplier, title);
+        // Mixing in the title length keeps ("a:b", "c") and ("a", "b:c") apart
+        h = Long.rotateLeft(h ^ (title == null ? -1 : title.length()), 27) * multiplier;
+        h = mix(h, multiplier, description);
+        h ^= description == null ? -1 : description.length();
+        return finalizeHash(h);
+    }
+
+    private static long mix(long h, long multiplier, String value) {
+        if (value == null) {
+            return Long.rotateLeft(h ^ 0xFFL, 31) * multiplier;
+        }
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h = Long.rotateLeft(h ^ value.charAt(i), 31) * multiplier;
+        }
+        return h;
+    }
+
+    private static long finalizeHash(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,113 @@
+package org.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.demo.model.Incident;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Meters of {@link IncidentService}. Every meter is registered once up front, so recording on the
+ * hot path is an array lookup and a timer update without any registry lookup or tag allocation.
+ */
+final class IncidentMetrics {
+
+    /**
+     * The timed service methods, reported as the {@code method} tag of {@code incident.service.calls}.
+     */
+    enum Operation {
+        CREATE("createIncident"),
+        CREATE_BATCH("createIncidents"),
+        GET_ALL("getAllIncidents"),
+        GET_PAGE("getIncidents"),
+        GET_RANGE("getIncidentsCreatedBetween"),
+        STREAM("streamIncidents"),
+        COUNT("countIncidents"),
+        STATUS_COUNTS("getStatusCounts"),
+        SEARCH("searchIncidents"),
+        GET("getIncidentById"),
+        UPDATE("updateIncident"),
+        UPDATE_BATCH("updateIncidents"),
+        DELETE("deleteIncident"),
+        DELETE_BATCH("deleteIncidents"),
+        SUBSCRIBE("subscribeToChanges"),
+        REPLICATE("applyReplica"),
+        ARCHIVE("archiveClosedIncidents"),
+        GET_ARCHIVED("getArchivedIncident"),
+        GET_ARCHIVED_PAGE("getArchivedIncidents");
+
+        private final String method;
+
+        Operation(String method) {
+            this.method = method;
+        }
+    }
+
+    private final Timer[] timers = new Timer[Operation.values().length];
+    private final Counter duplicates;
+    private final Counter archived;
+
+    IncidentMetrics(MeterRegistry registry, List<Cache<Long, Incident>> caches, Map<Incident.Status, LongAdder> statusCounts) {
+        for (Operation operation : Operation.values()) {
+            timers[operation.ordinal()] = Timer.builder("incident.service.calls")
+                    .description("Time spent in IncidentService methods")
+                    .tag("method", operation.method)
+                    .register(registry);
+        }
+        duplicates = Counter.builder("incident.duplicates")
+                .description("Creates answered with an existing incident")
+                .register(registry);
+        archived = Counter.builder("incident.archived")
+                .description("Closed incidents moved from the store to the archive")
+                .register(registry);
+        for (int shard = 0; shard < caches.size(); shard++) {
+            CaffeineCacheMetrics.monitor(registry, caches.get(shard), "incidents", "shard", String.valueOf(shard));
+        }
+        if (!caches.isEmpty()) {
+            Gauge.builder("incident.cache.weight", caches, IncidentMetrics::weightedSize)
+                    .description("Estimated heap taken by cached incidents")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+        Gauge.builder("incident.store.size", statusCounts, counts -> counts.values().stream().mapToLong(LongAdder::sum).sum())
+                .description("Number of stored incidents")
+                .register(registry);
+        statusCounts.forEach((status, count) -> Gauge.builder("incident.store.status", count, LongAdder::sum)
+                .description("Number of stored incidents per status")
+                .tag("status", status.name())
+                .register(registry));
+    }
+
+    /**
+     * Records a call that started at the given {@link System#nanoTime()}.
+     *
+     * @param operation The method that was called.
+     * @param startNanos The time the call started.
+     */
+    void record(Operation operation, long startNanos) {
+        timers[operation.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void duplicate() {
+        duplicates.increment();
+    }
+
+    void archived(int count) {
+        archived.increment(count);
+    }
+
+    private static double weightedSize(List<Cache<Long, Incident>> caches) {
+        long weight = 0;
+        for (Cache<Long, Incident> cache : caches) {
+            weight += cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,115 @@
+package org.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongConsumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves incidents closed for longer than the maximum age from the store to the archive, on a background thread.
+ *
+ * <p>Every interval a sweep walks the closed incidents in batches: each batch examines at most the batch size
+ * of them, continuing after the last one examined, and archives those that expired through
+ * {@link IncidentService#archiveClosedIncidents}, which locks one incident at a time. Batches are separated by a
+ * pause, so a large backlog is worked off in short steps that requests interleave with rather than in one long pass.
+ */
+public class IncidentRetention implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncidentRetention.class);
+
+    private final IncidentService incidentService;
+    private final Duration maxAge;
+    private final Duration interval;
+    private final int batchSize;
+    private final Duration pause;
+    private final LongConsumer onArchived;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param incidentService The service whose closed incidents are archived.
+     * @param maxAge How long an incident stays in the store after it was closed.
+     * @param interval Time between the end of a sweep and the start of the next.
+     * @param batchSize Closed incidents examined per batch, at most {@link IncidentService#MAX_BATCH_SIZE}.
+     * @param pause Time between two batches of a sweep.
+     */
+    public IncidentRetention(IncidentService incidentService, Duration maxAge, Duration interval, int batchSize, Duration pause) {
+        this(incidentService, maxAge, interval, batchSize, pause, id -> {
+        });
+    }
+
+    /**
+     * @param incidentService The service whose closed incidents are archived.
+     * @param maxAge How long an incident stays in the store after it was closed.
+     * @param interval Time between the end of a sweep and the start of the next.
+     * @param batchSize Closed incidents examined per batch, at most {@link IncidentService#MAX_BATCH_SIZE}.
+     * @param pause Time between two batches of a sweep.
+     * @param onArchived Called with the ID of every incident archived, such as to drop what is cached for it.
+     */
+    public IncidentRetention(IncidentService incidentService, Duration maxAge, Duration interval, int batchSize, Duration pause,
+                             LongConsumer onArchived) {
+        if (batchSize <= 0 || batchSize > IncidentService.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + IncidentService.MAX_BATCH_SIZE);
+        }
+        this.incidentService = incidentService;
+        this.maxAge = maxAge;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.onArchived = onArchived;
+    }
+
+    /**
+     * Starts sweeping every interval, the first sweep one interval from now.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "incident-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Failed to archive closed incidents", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Archiving incidents closed for more than {} every {}", maxAge, interval);
+    }
+
+    /**
+     * Examines every closed incident once, a batch at a time, and archives those that expired.
+     *
+     * @return The number of incidents archived.
+     * @throws InterruptedException If interrupted while pausing between batches.
+     */
+    public int sweep() throws InterruptedException {
+        int archived = 0;
+        Long cursor = null;
+        do {
+            IncidentService.ArchivePass pass = incidentService.archiveClosedIncidents(cursor, maxAge, batchSize);
+            archived += pass.archived();
+            pass.archivedIds().forEach(onArchived::accept);
+            cursor = pass.next();
+            if (cursor != null && pause.isPositive()) {
+                Thread.sleep(pause);
+            }
+        } while (cursor != null);
+        return archived;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -1,19 +1,45 @@
 package org.demo.service;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.exception.VersionConflictException;
+import org.demo.model.BatchItemResult;
 import org.demo.model.Incident;
+import org.demo.model.SearchHit;
+import org.demo.persistence.IncidentArchive;
+import org.demo.persistence.IncidentJournal;
+import org.demo.repository.InMemoryIncidentRepository;
+import org.demo.repository.IncidentRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Service class for managing incidents.
@@ -22,62 +48,227 @@ import java.util.concurrent.atomic.AtomicLong;
 @Service
 public class IncidentService {
 
+    // Per-request messages are rate limited per call site in logback-spring.xml; incident contents are only logged at DEBUG
     private static final Logger logger = LoggerFactory.getLogger(IncidentService.class);
 
-    private final ConcurrentMap<Long, Incident> incidents = new ConcurrentHashMap<>();
-    private final Set<String> deduplicationSet = ConcurrentHashMap.newKeySet();
-    private final AtomicLong idGenerator = new AtomicLong();
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 1000;
+    // Deepest search result reachable by paging, which bounds the matches kept while ranking
+    public static final int MAX_SEARCH_OFFSET = 10_000;
 
-    // Caffeine cache for read-heavy APIs
-    private final Cache<Long, Incident> incidentCache = Caffeine.newBuilder()
-            .expireAfterWrite(10, TimeUnit.MINUTES)
-            .maximumSize(1000)
-            .build();
+    private final IncidentRepository incidents;
+    // ID generators, indexes and caches; an incident's ID names its shard
+    private final IncidentShard[] shards;
+    // Per-status counts, maintained inside repository computes
+    private final Map<Incident.Status, LongAdder> statusCounts = new EnumMap<>(Incident.Status.class);
+
+    private final IncidentJournal journal;
+    // Closed incidents moved out of the store by retention
+    private final IncidentArchive archive;
+    private final IncidentMetrics metrics;
+    private final DeduplicationPolicy deduplication;
+    // Changes take their event sequence inside the compute that applies them, so every incident's events are in
+    // order, and publish it once the change can be read
+    private final IncidentEventBus events;
+    // Number of changes applied, counted after each change so a reader that saw a count has seen every earlier change
+    private final AtomicLong changes = new AtomicLong();
+
+    public IncidentService() {
+        this(new InMemoryIncidentRepository(), IncidentJournal.NONE);
+    }
+
+    public IncidentService(IncidentRepository repository, IncidentJournal journal) {
+        this(repository, journal, new SimpleMeterRegistry(), new IncidentEventBus());
+    }
+
+    public IncidentService(IncidentRepository repository, IncidentJournal journal, MeterRegistry meterRegistry,
+                           IncidentEventBus events) {
+        this(repository, journal, meterRegistry, events, 1);
+    }
+
+    public IncidentService(IncidentRepository repository, IncidentJournal journal, MeterRegistry meterRegistry,
+                           IncidentEventBus events, int shardCount) {
+        this(repository, journal, meterRegistry, events, shardCount, DeduplicationPolicy.DEFAULT);
+    }
+
+    public IncidentService(IncidentRepository repository, IncidentJournal journal, MeterRegistry meterRegistry,
+                           IncidentEventBus events, int shardCount, DeduplicationPolicy deduplication) {
+        this(repository, journal, meterRegistry, events, shardCount, deduplication, CachePolicy.DEFAULT);
+    }
+
+    public IncidentService(IncidentRepository repository, IncidentJournal journal, MeterRegistry meterRegistry,
+                           IncidentEventBus events, int shardCount, DeduplicationPolicy deduplication, CachePolicy cachePolicy) {
+        this(repository, journal, meterRegistry, events, shardCount, deduplication, cachePolicy, IncidentArchive.NONE);
+    }
+
+    @Autowired
+    public IncidentService(IncidentRepository repository, IncidentJournal journal, MeterRegistry meterRegistry,
+                           IncidentEventBus events, @Value("${incident.store.shards:1}") int shardCount,
+                           DeduplicationPolicy deduplication, CachePolicy cachePolicy, IncidentArchive archive) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        this.incidents = repository;
+        this.deduplication = deduplication;
+        this.shards = new IncidentShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new IncidentShard(i, shardCount, cachePolicy, deduplication.candidates());
+        }
+        for (Incident.Status status : Incident.Status.values()) {
+            statusCounts.put(status, new LongAdder());
+        }
+        this.metrics = new IncidentMetrics(meterRegistry, Arrays.stream(shards).map(shard -> shard.cache)
+                .filter(Objects::nonNull).toList(), statusCounts);
+        this.journal = journal;
+        this.events = events;
+        this.archive = archive;
+        journal.recover(new IncidentJournal.RecoveryListener() {
+            @Override
+            public void onPut(Incident incident) {
+                restore(incident);
+            }
+
+            @Override
+            public void onDelete(long id) {
+                restoreDeletion(id);
+            }
+
+            @Override
+            public void onLastId(long lastId) {
+                for (IncidentShard shard : shards) {
+                    shard.advancePast(lastId);
+                }
+            }
+        });
+        for (IncidentShard shard : shards) {
+            shard.advancePast(archive.lastId());
+        }
+        reconcileArchive();
+        journal.startSnapshots(new IncidentJournal.SnapshotSource() {
+            @Override
+            public long lastId() {
+                return Arrays.stream(shards).mapToLong(IncidentShard::lastId).max().orElse(0);
+            }
+
+            @Override
+            public void forEachIncident(Consumer<Incident> consumer) {
+                forEachCommittedIncident(consumer);
+            }
+        });
+    }
 
     /**
      * Creates a new incident and assigns a unique ID to it.
-     * Prevents duplicate incidents based on title and description.
+     * A duplicate of an open incident reported within the deduplication window is not created but counted as
+     * another occurrence of that incident, as decided by the {@link DeduplicationPolicy}.
      *
      * @param incident The incident to be created.
-     * @return The created incident with an assigned ID, or the existing incident if a duplicate is detected.
+     * @return The created incident with an assigned ID, or the existing incident with its occurrence counted
+     * if a duplicate is detected.
      */
     public Incident createIncident(Incident incident) {
-        // Validate status
-        if (incident.getStatus() != null && incident.getStatus() != Incident.Status.OPEN) {
-            throw new IllegalArgumentException("Status can only be null or OPEN.");
-        }
-        if (incident.getStatus() == null) {
-            incident.setStatus(Incident.Status.OPEN);
-        }
+        long start = System.nanoTime();
+        try {
+            Incident candidate = prepareForCreate(incident);
 
-        // Validate title length
-        if (incident.getTitle() == null || incident.getTitle().length() > 100) {
-            throw new IllegalArgumentException("Title must not be null and should be less than 100 characters.");
+            Insertion insertion = insert(candidate);
+            journal.awaitDurable(insertion.journalPosition());
+            if (!insertion.created()) {
+                metrics.duplicate();
+                logger.warn("Duplicate incident detected, existing ID {} has {} occurrences",
+                        insertion.incident().getId(), insertion.incident().getOccurrences());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Duplicate incident: {}", candidate);
+                }
+                return insertion.incident();
+            }
+            logger.info("Created new incident with ID {}", insertion.incident().getId());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Created incident: {}", insertion.incident());
+            }
+            return insertion.incident();
+        } finally {
+            metrics.record(IncidentMetrics.Operation.CREATE, start);
         }
+    }
 
-        // Sanitize and validate body content
-        if (incident.getDescription() != null) {
-            incident.setDescription(sanitize(incident.getDescription()));
-        }
+    /**
+     * Creates a batch of incidents in a single pass.
+     * Each item is validated, sanitized and deduplicated against the store and the earlier items of the batch,
+     * and the batch waits for durability once instead of once per incident.
+     *
+     * @param batch The incidents to be created.
+     * @return One result per incident, in the order of the batch.
+     */
+    public List<BatchItemResult> createIncidents(List<Incident> batch) {
+        long start = System.nanoTime();
+        try {
+            validateBatchSize(batch.size());
+            List<BatchItemResult> results = new ArrayList<>(batch.size());
+            long lastJournalPosition = 0;
+            int created = 0;
+
+            for (int index = 0; index < batch.size(); index++) {
+                Incident incident;
+                try {
+                    validateContent(batch.get(index));
+                    incident = prepareForCreate(batch.get(index));
+                } catch (IllegalArgumentException e) {
+                    results.add(BatchItemResult.invalid(index, e.getMessage()));
+                    continue;
+                }
 
-        // Create a deduplication key based on the title and description
-        String deduplicationKey = incident.getTitle() + ":" + incident.getDescription();
+                Insertion insertion = insert(incident);
+                Incident stored = insertion.incident();
+                lastJournalPosition = Math.max(lastJournalPosition, insertion.journalPosition());
+                if (insertion.created()) {
+                    created++;
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.CREATED, stored.getId(), stored, null));
+                } else {
+                    metrics.duplicate();
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.DUPLICATE, stored.getId(), stored, null));
+                }
+            }
 
-        // Use deduplication set to check and add atomically
-        if (!deduplicationSet.add(deduplicationKey)) {
-            logger.warn("Duplicate incident detected: {}", incident);
-            return incidents.values().stream()
-                    .filter(existing -> deduplicationKey.equals(existing.getTitle() + ":" + existing.getDescription()))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Duplicate key in deduplicationSet but no matching incident"));
+            journal.awaitDurable(lastJournalPosition);
+            logger.info("Created {} of {} incidents in batch", created, batch.size());
+            return results;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.CREATE_BATCH, start);
         }
+    }
+
+    /**
+     * Creates incidents as they are read, such as while a request body is decoded, in batches of at most
+     * {@link #MAX_BATCH_SIZE}, so a stream of any length is created without holding more than one batch.
+     * Each batch is created like {@link #createIncidents(List)}; a failure leaves the earlier batches created.
+     *
+     * @param incidents The incidents to be created, read one at a time.
+     * @return One result per incident, in the order they were read, indexed from the start of the stream.
+     */
+    public List<BatchItemResult> createIncidents(Iterator<Incident> incidents) {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<Incident> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (incidents.hasNext()) {
+            batch.add(incidents.next());
+            if (batch.size() == MAX_BATCH_SIZE) {
+                createBatchOfStream(batch, results);
+            }
+        }
+        if (!batch.isEmpty() || results.isEmpty()) {
+            createBatchOfStream(batch, results); // An empty stream is rejected like an empty batch
+        }
+        return results;
+    }
 
-        long id = idGenerator.incrementAndGet();
-        incident.setId(id);
-        incidents.put(id, incident);
-        incidentCache.put(id, incident);
-        logger.info("Created new incident with ID {}: {}", id, incident);
-        return incident;
+    // Creates the next batch of a stream, offsetting its result indexes by the items read before it
+    private void createBatchOfStream(List<Incident> batch, List<BatchItemResult> results) {
+        int offset = results.size();
+        for (BatchItemResult result : createIncidents(batch)) {
+            results.add(new BatchItemResult(offset + result.getIndex(), result.getOutcome(), result.getId(),
+                    result.getIncident(), result.getError()));
+        }
+        batch.clear();
     }
 
     /**
@@ -86,8 +277,387 @@ public class IncidentService {
      * @return A list of all incidents.
      */
     public List<Incident> getAllIncidents() {
-        logger.info("Fetching all incidents, total count: {}", incidents.size());
-        return List.copyOf(incidents.values());
+        long start = System.nanoTime();
+        try {
+            logger.info("Fetching all incidents, total count: {}", incidents.size());
+            return incidentStream(null, null, shards).toList();
+        } finally {
+            metrics.record(IncidentMetrics.Operation.GET_ALL, start);
+        }
+    }
+
+    /**
+     * Retrieves a page of incidents ordered by ID, starting after the given cursor.
+     *
+     * @param after The ID after which the page starts, or null to start from the beginning.
+     * @param limit The maximum number of incidents to return.
+     * @param status The status to filter by, or null for all statuses.
+     * @return The incidents of the page in ascending ID order.
+     */
+    public List<Incident> getIncidents(Long after, int limit, Incident.Status status) {
+        return getIncidents(after, limit, status, shard -> true);
+    }
+
+    /**
+     * Retrieves a page of the incidents of some of the shards, as by {@link #getIncidents(Long, int, Incident.Status)}.
+     *
+     * @param after The ID after which the page starts, or null to start from the beginning.
+     * @param limit The maximum number of incidents to return.
+     * @param status The status to filter by, or null for all statuses.
+     * @param shardFilter Selects the indexes of the shards to read.
+     * @return The incidents of the page in ascending ID order.
+     */
+    public List<Incident> getIncidents(Long after, int limit, Incident.Status status, IntPredicate shardFilter) {
+        long start = System.nanoTime();
+        try {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            List<Incident> page = incidentStream(after, status, selectShards(shardFilter)).limit(limit).toList();
+            logger.info("Fetched page of {} incidents after ID {}", page.size(), after);
+            return page;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.GET_PAGE, start);
+        }
+    }
+
+    /**
+     * Lazily streams incidents ordered by ID, starting after the given cursor.
+     * Incidents are looked up one at a time as the stream is consumed, so the whole store is never copied.
+     *
+     * @param after The ID after which the stream starts, or null to start from the beginning.
+     * @param status The status to filter by, or null for all statuses.
+     * @return A weakly consistent stream of incidents in ascending ID order, timed until it is closed.
+     */
+    public Stream<Incident> streamIncidents(Long after, Incident.Status status) {
+        return streamIncidents(after, status, shard -> true);
+    }
+
+    /**
+     * Lazily streams the incidents of some of the shards, as by {@link #streamIncidents(Long, Incident.Status)}.
+     *
+     * @param after The ID after which the stream starts, or null to start from the beginning.
+     * @param status The status to filter by, or null for all statuses.
+     * @param shardFilter Selects the indexes of the shards to read.
+     * @return A weakly consistent stream of incidents in ascending ID order, timed until it is closed.
+     */
+    public Stream<Incident> streamIncidents(Long after, Incident.Status status, IntPredicate shardFilter) {
+        long start = System.nanoTime();
+        return incidentStream(after, status, selectShards(shardFilter)).onClose(() -> metrics.record(IncidentMetrics.Operation.STREAM, start));
+    }
+
+    /**
+     * Retrieves a page of the incidents created in a time range, ordered by creation time and then by ID. The page is
+     * read from the creation time index of each shard, so it costs a seek per shard plus the incidents read rather
+     * than a scan of the store. Incidents stored before creation times were recorded are never in a range.
+     *
+     * @param since The earliest creation time, inclusive, or null for no lower bound.
+     * @param until The creation time before which the range ends, or null for no upper bound.
+     * @param after The ID of the last incident of the previous page, which was created at {@code since}, to continue
+     *              after it; or null to start at {@code since}.
+     * @param limit The maximum number of incidents to return.
+     * @param status The status to filter by, or null for all statuses.
+     * @return The incidents of the page in ascending creation time and ID order.
+     */
+    public List<Incident> getIncidentsCreatedBetween(Instant since, Instant until, Long after, int limit, Incident.Status status) {
+        return getIncidentsCreatedBetween(since, until, after, limit, status, shard -> true);
+    }
+
+    /**
+     * Retrieves a page of the incidents of some of the shards created in a time range, as by
+     * {@link #getIncidentsCreatedBetween(Instant, Instant, Long, int, Incident.Status)}.
+     *
+     * @param since The earliest creation time, inclusive, or null for no lower bound.
+     * @param until The creation time before which the range ends, or null for no upper bound.
+     * @param after The ID of the last incident of the previous page, which was created at {@code since}, to continue
+     *              after it; or null to start at {@code since}.
+     * @param limit The maximum number of incidents to return.
+     * @param status The status to filter by, or null for all statuses.
+     * @param shardFilter Selects the indexes of the shards to read.
+     * @return The incidents of the page in ascending creation time and ID order.
+     */
+    public List<Incident> getIncidentsCreatedBetween(Instant since, Instant until, Long after, int limit, Incident.Status status,
+                                                     IntPredicate shardFilter) {
+        long start = System.nanoTime();
+        try {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            if (since != null && until != null && until.isBefore(since)) {
+                throw new IllegalArgumentException("Until must not be before since");
+            }
+            // The first key of the range is the one after this: (since, after), or any key at since
+            IncidentShard.TimeKey from = new IncidentShard.TimeKey(since == null ? Long.MIN_VALUE : since.toEpochMilli(),
+                    after == null ? Long.MIN_VALUE : after);
+            Iterator<IncidentShard.TimeKey> keys = IncidentShard.mergedCreated(selectShards(shardFilter), from,
+                    until == null ? Long.MAX_VALUE : until.toEpochMilli());
+            List<Incident> page = new ArrayList<>(Math.min(limit, 64));
+            while (page.size() < limit && keys.hasNext()) {
+                Incident incident = incidents.get(keys.next().id());
+                // An incident being deleted can briefly be seen through the index
+                if (incident != null && (status == null || incident.getStatus() == status)) {
+                    page.add(incident);
+                }
+            }
+            logger.info("Fetched page of {} incidents created between {} and {}", page.size(), since, until);
+            return page;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.GET_RANGE, start);
+        }
+    }
+
+    private Stream<Incident> incidentStream(Long after, Incident.Status status, IncidentShard[] selected) {
+        Stream<Long> ids = selected.length == 1
+                ? selected[0].ids(after, status).stream()
+                : StreamSupport.stream(Spliterators.spliteratorUnknownSize(IncidentShard.mergedIds(selected, after, status),
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+        Stream<Incident> stream = ids
+                .map(incidents::get)
+                .filter(Objects::nonNull);
+        // An incident whose status is being changed can briefly be seen through the index of its old status
+        return status == null ? stream : stream.filter(incident -> incident.getStatus() == status);
+    }
+
+    // The shards the filter selects, all of them when it selects every index
+    private IncidentShard[] selectShards(IntPredicate shardFilter) {
+        IncidentShard[] selected = IntStream.range(0, shards.length).filter(shardFilter).mapToObj(i -> shards[i])
+                .toArray(IncidentShard[]::new);
+        return selected.length == shards.length ? shards : selected;
+    }
+
+    /**
+     * The number of changes applied to the store so far, to tell whether anything read before may have changed.
+     * A list read after this returned a count holds every change up to that count, so a copy of it stays current
+     * while the count is unchanged.
+     *
+     * @return The number of creates, occurrences, updates, deletions and replicated changes applied so far.
+     */
+    public long changeCount() {
+        return changes.get();
+    }
+
+    /**
+     * Moves closed incidents closed for longer than the maximum age from the store to the archive, examining at most
+     * {@code limit} closed incidents after the cursor. The incidents are archived and made durable first, then each
+     * is removed in its own repository compute if it is still the archived version, so the store is never locked
+     * for more than one incident and an incident changed in the meantime stays in the store. An archived event is
+     * published for every incident removed.
+     *
+     * @param after The ID of the closed incident after which to continue, or null to start from the beginning.
+     * @param maxAge How long an incident stays in the store after it was closed.
+     * @param limit The maximum number of closed incidents to examine, at most {@link #MAX_BATCH_SIZE}.
+     * @return The IDs of the incidents archived and the cursor to continue from.
+     */
+    public ArchivePass archiveClosedIncidents(Long after, Duration maxAge, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (limit <= 0 || limit > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            Instant cutoff = now().minus(maxAge);
+            Iterator<Long> ids = IncidentShard.mergedIds(shards, after, Incident.Status.CLOSED);
+            List<Incident> expired = new ArrayList<>();
+            Long last = after;
+            for (int examined = 0; examined < limit && ids.hasNext(); examined++) {
+                last = ids.next();
+                Incident incident = incidents.get(last);
+                if (incident != null && incident.getStatus() == Incident.Status.CLOSED && closedBefore(incident, cutoff)) {
+                    expired.add(incident);
+                }
+            }
+            List<Long> archived = List.of();
+            if (!expired.isEmpty()) {
+                // Durable in the archive before leaving the store; a crash in between leaves both, which startup resolves
+                archive.append(expired);
+                archived = removeArchived(expired);
+                logger.info("Archived {} incidents closed before {}", archived.size(), cutoff);
+            }
+            return new ArchivePass(archived, ids.hasNext() ? last : null);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.ARCHIVE, start);
+        }
+    }
+
+    /**
+     * Retrieves an archived incident.
+     *
+     * @param id The ID of the incident.
+     * @return The archived incident, or empty if it is not archived.
+     */
+    public Optional<Incident> getArchivedIncident(Long id) {
+        long start = System.nanoTime();
+        try {
+            validateId(id);
+            return archive.get(id);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.GET_ARCHIVED, start);
+        }
+    }
+
+    /**
+     * Retrieves a page of archived incidents ordered by ID, starting after the given cursor.
+     *
+     * @param after The ID after which the page starts, or null to start from the beginning.
+     * @param limit The maximum number of incidents to return.
+     * @return The archived incidents of the page in ascending ID order.
+     */
+    public List<Incident> getArchivedIncidents(Long after, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return archive.list(after, limit);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.GET_ARCHIVED_PAGE, start);
+        }
+    }
+
+    /**
+     * Outcome of {@link #archiveClosedIncidents}.
+     *
+     * @param archivedIds The IDs of the incidents moved to the archive.
+     * @param next The cursor to pass to the next call, or null once the last closed incident was examined.
+     */
+    public record ArchivePass(List<Long> archivedIds, Long next) {
+
+        /**
+         * @return The number of incidents moved to the archive.
+         */
+        public int archived() {
+            return archivedIds.size();
+        }
+    }
+
+    /**
+     * Counts the incidents with the given status without scanning the store.
+     *
+     * @param status The status to count.
+     * @return The number of incidents with that status.
+     */
+    public long countIncidents(Incident.Status status) {
+        long start = System.nanoTime();
+        try {
+            return statusCounts.get(status).sum();
+        } finally {
+            metrics.record(IncidentMetrics.Operation.COUNT, start);
+        }
+    }
+
+    /**
+     * Counts the incidents per status without scanning the store.
+     *
+     * @return The number of incidents for every status.
+     */
+    public Map<Incident.Status, Long> getStatusCounts() {
+        long start = System.nanoTime();
+        try {
+            Map<Incident.Status, Long> counts = new EnumMap<>(Incident.Status.class);
+            statusCounts.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.STATUS_COUNTS, start);
+        }
+    }
+
+    /**
+     * Searches the titles and descriptions of incidents for all words of a query, best matches first.
+     * Matches are ranked with BM25 over the indexes of all shards, counting title words more than description words,
+     * and equally good matches go newest first.
+     *
+     * @param query The words to search for; case and punctuation are ignored.
+     * @param offset The number of better matches to skip.
+     * @param limit The maximum number of matches to return.
+     * @return The matches of the page, best first.
+     */
+    public List<SearchHit> searchIncidents(String query, int offset, int limit) {
+        return searchIncidents(query, offset, limit, shard -> true);
+    }
+
+    /**
+     * Searches the incidents of some of the shards, ranked as by {@link #searchIncidents(String, int, int)} with
+     * word statistics of all shards.
+     *
+     * @param query The words to search for; case and punctuation are ignored.
+     * @param offset The number of better matches to skip.
+     * @param limit The maximum number of matches to return.
+     * @param shardFilter Selects the indexes of the shards to search.
+     * @return The matches of the page, best first.
+     */
+    public List<SearchHit> searchIncidents(String query, int offset, int limit, IntPredicate shardFilter) {
+        long start = System.nanoTime();
+        try {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            if (offset < 0 || offset > MAX_SEARCH_OFFSET) {
+                throw new IllegalArgumentException("Offset must be between 0 and " + MAX_SEARCH_OFFSET);
+            }
+            List<String> terms = query == null ? List.of() : SearchIndex.queryTerms(query);
+            if (terms.isEmpty()) {
+                throw new IllegalArgumentException("Query must contain at least one word");
+            }
+
+            long documents = 0;
+            long totalLength = 0;
+            for (IncidentShard shard : shards) {
+                documents += shard.searchIndex.documentCount();
+                totalLength += shard.searchIndex.totalLength();
+            }
+            double[] weights = new double[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                long frequency = 0;
+                for (IncidentShard shard : shards) {
+                    frequency += shard.searchIndex.documentFrequency(terms.get(i));
+                }
+                if (frequency == 0) {
+                    return List.of();
+                }
+                weights[i] = SearchIndex.inverseDocumentFrequency(documents, frequency);
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / Math.max(1, documents));
+
+            // Keeps the best offset + limit matches with the worst on top
+            int wanted = offset + limit;
+            Comparator<ScoredId> ranking = Comparator.comparingDouble(ScoredId::score).thenComparingLong(ScoredId::id);
+            PriorityQueue<ScoredId> best = new PriorityQueue<>(Math.min(wanted, 1024), ranking);
+            for (int i = 0; i < shards.length; i++) {
+                if (!shardFilter.test(i)) {
+                    continue;
+                }
+                shards[i].searchIndex.search(terms, weights, averageLength, (id, score) -> {
+                    if (best.size() < wanted) {
+                        best.add(new ScoredId(id, score));
+                    } else {
+                        ScoredId worst = best.peek();
+                        if (score > worst.score() || (score == worst.score() && id > worst.id())) {
+                            best.poll();
+                            best.add(new ScoredId(id, score));
+                        }
+                    }
+                });
+            }
+
+            List<ScoredId> ranked = new ArrayList<>(best);
+            ranked.sort(ranking.reversed());
+            List<SearchHit> hits = new ArrayList<>(Math.max(0, Math.min(limit, ranked.size() - offset)));
+            for (int i = offset; i < ranked.size(); i++) {
+                Incident incident = incidents.get(ranked.get(i).id());
+                if (incident != null) { // Deleted since it was matched
+                    hits.add(new SearchHit(ranked.get(i).score(), incident));
+                }
+            }
+            logger.info("Found {} incidents matching {} words", hits.size(), terms.size());
+            return hits;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.SEARCH, start);
+        }
+    }
+
+    /**
+     * A search match before its incident is looked up.
+     */
+    private record ScoredId(long id, double score) {
     }
 
     /**
@@ -98,26 +668,25 @@ public class IncidentService {
      * @return An Optional containing the incident if found, or empty if not found.
      */
     public Optional<Incident> getIncidentById(Long id) {
-        validateId(id);
+        long start = System.nanoTime();
+        try {
+            validateId(id);
 
-        // Attempt to retrieve the incident from the cache
-        Incident cachedIncident = incidentCache.getIfPresent(id);
-        if (cachedIncident != null) {
-            logger.info("Retrieved incident with ID {} from cache", id);
-            return Optional.of(cachedIncident);
-        }
+            // Served from the cache, loading it from the repository on a miss
+            Optional<Incident> incident = Optional.ofNullable(shardOf(id).read(id, incidents::get));
 
-        // Fallback to the main storage
-        Optional<Incident> incident = Optional.ofNullable(incidents.get(id));
-        incident.ifPresent(value -> incidentCache.put(id, value));
+            if (incident.isPresent()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Retrieved incident with ID {}: {}", id, incident.get());
+                }
+            } else {
+                logger.warn("Incident with ID {} not found", id);
+            }
 
-        if (incident.isPresent()) {
-            logger.info("Retrieved incident with ID {}: {}", id, incident.get());
-        } else {
-            logger.warn("Incident with ID {} not found", id);
+            return incident;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.GET, start);
         }
-
-        return incident;
     }
 
     /**
@@ -128,45 +697,870 @@ public class IncidentService {
      * @return An Optional containing the updated incident if successful, or empty if the incident does not exist.
      */
     public Optional<Incident> updateIncident(Long id, Incident updatedIncident) {
-        validateId(id);
+        return updateIncident(id, updatedIncident, null);
+    }
 
-        if (updatedIncident.getStatus() == null) {
-            updatedIncident.setStatus(Incident.Status.OPEN);
+    /**
+     * Updates an existing incident if it is still at the expected version.
+     * The version is compared and incremented in the same atomic step that numbers the update's change event.
+     *
+     * @param id The ID of the incident to update.
+     * @param updatedIncident The new incident data.
+     * @param expectedVersion The version the update is based on, or null to update unconditionally.
+     * @return An Optional containing the updated incident if successful, or empty if the incident does not exist.
+     * @throws VersionConflictException If the incident is no longer at the expected version.
+     */
+    public Optional<Incident> updateIncident(Long id, Incident updatedIncident, Long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            validateId(id);
+
+            long[] journalPosition = new long[1];
+            Optional<Incident> result = Optional.ofNullable(replace(id, updatedIncident, expectedVersion, journalPosition));
+            result.ifPresent(incident -> {
+                journal.awaitDurable(journalPosition[0]);
+                logger.info("Updated incident with ID {} to version {}", id, incident.getVersion());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Updated incident: {}", incident);
+                }
+            });
+            return result;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.UPDATE, start);
         }
+    }
+
+    /**
+     * Updates a batch of incidents, identified by the ID of each item.
+     * Items that carry a version are only applied if the incident is still at that version.
+     *
+     * @param batch The new incident data, each with the ID of the incident to update.
+     * @return One result per incident, in the order of the batch.
+     */
+    public List<BatchItemResult> updateIncidents(List<Incident> batch) {
+        long start = System.nanoTime();
+        try {
+            validateBatchSize(batch.size());
+            List<BatchItemResult> results = new ArrayList<>(batch.size());
+            long[] journalPosition = new long[1];
+            long lastJournalPosition = 0;
+            int updated = 0;
 
-        return Optional.ofNullable(incidents.computeIfPresent(id, (key, existingIncident) -> {
-            String oldDeduplicationKey = existingIncident.getTitle() + ":" + existingIncident.getDescription();
-            deduplicationSet.remove(oldDeduplicationKey);
+            for (int index = 0; index < batch.size(); index++) {
+                Incident incident = batch.get(index);
+                Long id = incident == null ? null : incident.getId();
+                try {
+                    validateContent(incident);
+                    validateId(id);
+                } catch (IllegalArgumentException e) {
+                    results.add(BatchItemResult.invalid(index, e.getMessage()));
+                    continue;
+                }
 
-            String newDeduplicationKey = updatedIncident.getTitle() + ":" + updatedIncident.getDescription();
-            deduplicationSet.add(newDeduplicationKey);
+                Incident stored;
+                try {
+                    stored = replace(id, incident, incident.getVersion(), journalPosition);
+                } catch (VersionConflictException e) {
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.CONFLICT, id, null, e.getMessage()));
+                    continue;
+                }
+                if (stored == null) {
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.NOT_FOUND, id, null, null));
+                } else {
+                    lastJournalPosition = Math.max(lastJournalPosition, journalPosition[0]);
+                    updated++;
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.UPDATED, id, stored, null));
+                }
+            }
 
-            updatedIncident.setId(id);
-            incidentCache.put(id, updatedIncident); // Update cache
-            logger.info("Updated incident with ID {}: {}", id, updatedIncident);
-            return updatedIncident;
-        }));
+            journal.awaitDurable(lastJournalPosition);
+            logger.info("Updated {} of {} incidents in batch", updated, batch.size());
+            return results;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.UPDATE_BATCH, start);
+        }
     }
 
     /**
-     * Deletes an incident by its ID and removes it from the deduplication set.
+     * Deletes an incident by its ID and removes it from the deduplication index.
      *
      * @param id The ID of the incident to delete.
      * @return True if the incident was deleted, false if it did not exist.
      */
     public boolean deleteIncident(Long id) {
-        validateId(id);
-        Incident removedIncident = incidents.remove(id);
-        if (removedIncident != null) {
-            String deduplicationKey = removedIncident.getTitle() + ":" + removedIncident.getDescription();
-            deduplicationSet.remove(deduplicationKey);
-            incidentCache.invalidate(id); // Invalidate cache
-            logger.info("Deleted incident with ID {}", id);
-            return true;
-        } else {
-            logger.warn("Attempted to delete non-existent incident with ID {}", id);
+        long start = System.nanoTime();
+        try {
+            validateId(id);
+            long[] journalPosition = new long[1];
+            if (remove(id, journalPosition) != null) {
+                journal.awaitDurable(journalPosition[0]);
+                logger.info("Deleted incident with ID {}", id);
+                return true;
+            } else {
+                logger.warn("Attempted to delete non-existent incident with ID {}", id);
+                return false;
+            }
+        } finally {
+            metrics.record(IncidentMetrics.Operation.DELETE, start);
+        }
+    }
+
+    /**
+     * Deletes a batch of incidents.
+     *
+     * @param ids The IDs of the incidents to delete.
+     * @return One result per ID, in the order of the batch.
+     */
+    public List<BatchItemResult> deleteIncidents(List<Long> ids) {
+        long start = System.nanoTime();
+        try {
+            validateBatchSize(ids.size());
+            List<BatchItemResult> results = new ArrayList<>(ids.size());
+            long[] journalPosition = new long[1];
+            long lastJournalPosition = 0;
+            int deleted = 0;
+
+            for (int index = 0; index < ids.size(); index++) {
+                Long id = ids.get(index);
+                try {
+                    validateId(id);
+                } catch (IllegalArgumentException e) {
+                    results.add(BatchItemResult.invalid(index, e.getMessage()));
+                    continue;
+                }
+
+                if (remove(id, journalPosition) == null) {
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.NOT_FOUND, id, null, null));
+                } else {
+                    lastJournalPosition = Math.max(lastJournalPosition, journalPosition[0]);
+                    deleted++;
+                    results.add(new BatchItemResult(index, BatchItemResult.Outcome.DELETED, id, null, null));
+                }
+            }
+
+            journal.awaitDurable(lastJournalPosition);
+            logger.info("Deleted {} of {} incidents in batch", deleted, ids.size());
+            return results;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.DELETE_BATCH, start);
+        }
+    }
+
+    /**
+     * Subscribes to the feed of created, updated and deleted incidents.
+     *
+     * @param lastEventId The sequence of the last event the subscriber has seen, or null to start with the next change.
+     * @param listener The listener receiving the changes.
+     * @return The subscription, to be closed when the subscriber goes away.
+     */
+    public IncidentEventBus.Subscription subscribeToChanges(Long lastEventId, IncidentEventBus.Listener listener) {
+        long start = System.nanoTime();
+        try {
+            return events.subscribe(lastEventId, listener);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.SUBSCRIBE, start);
+        }
+    }
+
+    /**
+     * @return The number of shards the incidents are partitioned into.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Finds the shard holding an incident.
+     *
+     * @param id The ID of the incident.
+     * @return The index of its shard.
+     */
+    public int shardIndexOf(long id) {
+        return (int) ((id - 1) % shards.length);
+    }
+
+    /**
+     * Finds the shard a new incident would be created in, which owns the deduplication entry of its content.
+     *
+     * @param incident The incident to be created, with a title.
+     * @return The index of its shard.
+     */
+    public int shardIndexOf(Incident incident) {
+        String description = incident.getDescription() == null ? null : sanitize(incident.getDescription());
+        IncidentFingerprint fingerprint = deduplication.strategy().fingerprint(incident.getTitle(), description);
+        return (int) Long.remainderUnsigned(fingerprint.low(), shards.length);
+    }
+
+    /**
+     * Counts the incidents per status in some of the shards.
+     *
+     * @param shardFilter Selects the indexes of the shards to count.
+     * @return The number of incidents for every status in the selected shards.
+     */
+    public Map<Incident.Status, Long> getStatusCounts(IntPredicate shardFilter) {
+        long start = System.nanoTime();
+        try {
+            Map<Incident.Status, Long> counts = new EnumMap<>(Incident.Status.class);
+            for (Incident.Status status : Incident.Status.values()) {
+                counts.put(status, 0L);
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (shardFilter.test(i)) {
+                    shards[i].statusCounts.forEach((status, count) -> counts.merge(status, count.sum(), Long::sum));
+                }
+            }
+            return counts;
+        } finally {
+            metrics.record(IncidentMetrics.Operation.STATUS_COUNTS, start);
+        }
+    }
+
+    /**
+     * Lazily streams the incidents of one shard in ascending ID order.
+     *
+     * @param shard The index of the shard.
+     * @return A weakly consistent stream of the incidents of the shard.
+     */
+    public Stream<Incident> streamShard(int shard) {
+        return shards[shard].ids(null, null).stream().map(incidents::get).filter(Objects::nonNull);
+    }
+
+    /**
+     * @param shard The index of the shard.
+     * @return The largest ID the shard has handed out, or 0 if there is none.
+     */
+    public long getLastId(int shard) {
+        return shards[shard].lastId();
+    }
+
+    /**
+     * Makes sure a shard only hands out IDs larger than the given one, when it takes over from another node.
+     *
+     * @param shard The index of the shard.
+     * @param lastId The largest ID handed out for the shard so far.
+     */
+    public void advanceShard(int shard, long lastId) {
+        shards[shard].advancePast(lastId);
+    }
+
+    /**
+     * Stores a copy of an incident owned by another node, unless a newer version of it is already stored.
+     * The copy is journaled and indexed like any other incident but no change event is published for it.
+     *
+     * @param incident The incident as stored by its owner.
+     */
+    public void applyReplica(Incident incident) {
+        long start = System.nanoTime();
+        try {
+            long id = incident.getId();
+            long version = incident.getVersion() == null ? 0 : incident.getVersion();
+            long[] journalPosition = new long[1];
+            incidents.compute(id, (key, existingIncident) -> {
+                if (existingIncident != null && existingIncident.getVersion() != null && existingIncident.getVersion() >= version) {
+                    return existingIncident;
+                }
+                if (existingIncident != null) {
+                    unindex(key, existingIncident);
+                }
+                register(key, incident);
+                index(key, incident);
+                journalPosition[0] = journal.recordPut(incident);
+                return incident;
+            });
+            shardOf(id).advancePast(id);
+            shardOf(id).evict(id);
+            changes.incrementAndGet();
+            if (archive.contains(id)) {
+                archive.forget(List.of(id)); // Archived here before its owner changed it
+            }
+            journal.awaitDurable(journalPosition[0]);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.REPLICATE, start);
+        }
+    }
+
+    /**
+     * Removes the copy of an incident that its owner deleted.
+     *
+     * @param id The ID of the deleted incident.
+     */
+    public void applyReplicaDeletion(long id) {
+        long start = System.nanoTime();
+        try {
+            long[] journalPosition = new long[1];
+            incidents.computeIfPresent(id, (key, existingIncident) -> {
+                journalPosition[0] = journal.recordDelete(key);
+                unindex(key, existingIncident);
+                return null;
+            });
+            shardOf(id).removed(id);
+            changes.incrementAndGet();
+            if (archive.contains(id)) {
+                archive.forget(List.of(id)); // Archived here before its owner deleted it
+            }
+            journal.awaitDurable(journalPosition[0]);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.REPLICATE, start);
+        }
+    }
+
+    /**
+     * Moves the copy of an incident that its owner archived to this node's archive, unless a newer version of it is
+     * stored. Without an archive the copy is only removed.
+     *
+     * @param incident The incident as archived by its owner.
+     */
+    public void applyReplicaArchival(Incident incident) {
+        long start = System.nanoTime();
+        try {
+            long id = incident.getId();
+            long version = incident.getVersion() == null ? 0 : incident.getVersion();
+            Incident stored = incidents.get(id);
+            if (stored != null && stored.getVersion() != null && stored.getVersion() > version) {
+                return;
+            }
+            boolean archiving = archive != IncidentArchive.NONE;
+            if (archiving) {
+                archive.append(List.of(incident)); // Durable before the copy leaves the store, as in archiveClosedIncidents
+            }
+            long[] journalPosition = new long[1];
+            boolean[] removed = new boolean[1];
+            incidents.computeIfPresent(id, (key, existingIncident) -> {
+                if (existingIncident.getVersion() != null && existingIncident.getVersion() > version) {
+                    return existingIncident;
+                }
+                journalPosition[0] = journal.recordDelete(key);
+                unindex(key, existingIncident);
+                removed[0] = true;
+                return null;
+            });
+            if (removed[0]) {
+                shardOf(id).removed(id);
+                changes.incrementAndGet();
+            } else if (archiving && incidents.get(id) != null) {
+                archive.forget(List.of(id)); // Changed by its owner since
+            }
+            journal.awaitDurable(journalPosition[0]);
+        } finally {
+            metrics.record(IncidentMetrics.Operation.REPLICATE, start);
+        }
+    }
+
+    /**
+     * Outcome of {@link #insert}: the new incident, or the existing incident with the occurrence counted,
+     * and the journal position of the change.
+     */
+    private record Insertion(Incident incident, boolean created, long journalPosition) {
+    }
+
+    /**
+     * Validates a new incident and returns a copy with its status defaulted, its description sanitized, and its
+     * first occurrence and creation time set to now.
+     *
+     * @param incident The incident to be created.
+     * @return The incident to store, still without an ID.
+     */
+    private Incident prepareForCreate(Incident incident) {
+        // Validate status
+        if (incident.getStatus() != null && incident.getStatus() != Incident.Status.OPEN) {
+            throw new IllegalArgumentException("Status can only be null or OPEN.");
+        }
+
+        // Validate title length
+        if (incident.getTitle() == null || incident.getTitle().length() > 100) {
+            throw new IllegalArgumentException("Title must not be null and should be less than 100 characters.");
+        }
+
+        // Sanitize and validate body content
+        Instant now = now();
+        return incident.toBuilder()
+                .id(null)
+                .version(1L)
+                .status(Incident.Status.OPEN)
+                .description(incident.getDescription() == null ? null : sanitize(incident.getDescription()))
+                .occurrences(1L)
+                .lastOccurredAt(now)
+                .createdAt(now)
+                .updatedAt(now)
+                .inProgressAt(null)
+                .closedAt(null)
+                .build();
+    }
+
+    // The current time as stored in incidents, in milliseconds like the journal encodes it
+    private Instant now() {
+        return deduplication.clock().instant().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    /**
+     * Stores a new incident, or counts another occurrence of a stored incident it duplicates.
+     *
+     * @param candidate The validated incident to be created, without an ID.
+     * @return The stored incident with its new ID, or the existing incident if it is a duplicate.
+     */
+    private Insertion insert(Incident candidate) {
+        DeduplicationStrategy strategy = deduplication.strategy();
+        IncidentFingerprint fingerprint = strategy.fingerprint(candidate.getTitle(), candidate.getDescription());
+        long signature = strategy.signature(candidate.getTitle(), candidate.getDescription());
+        IncidentShard shard = shardOf(fingerprint);
+        long[] journalPosition = new long[1];
+        long[] sequence = new long[1];
+        while (true) {
+            DeduplicationIndex.Entry entry = shard.deduplicationIndex.get(fingerprint);
+            Incident original = null;
+            boolean settled = true;
+            for (int i = 0; entry != null && i < entry.size(); i++) {
+                Incident existing = incidents.get(entry.id(i));
+                if (existing == null) {
+                    settled = false; // Still being published or removed inside its compute
+                    break;
+                }
+                if (absorbs(existing, candidate.getLastOccurredAt())
+                        && strategy.isDuplicate(existing, entry.signature(i), candidate, signature)) {
+                    original = existing;
+                    break;
+                }
+            }
+            if (!settled) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            if (original != null) {
+                Incident recurrence = recordOccurrence(original, candidate.getLastOccurredAt(), journalPosition);
+                if (recurrence != null) {
+                    return new Insertion(recurrence, false, journalPosition[0]);
+                }
+                continue; // Closed, deleted or changed since it was compared
+            }
+
+            long id = shard.nextId();
+            Incident incident = candidate.withId(id);
+            // The index entry is claimed inside the compute of the new ID, so a concurrent create of
+            // the same incident either sees it or fails to claim the entry it compared against
+            Incident created;
+            try {
+                created = incidents.computeIfAbsent(id, key -> {
+                    if (!shard.deduplicationIndex.claim(fingerprint, entry, key, signature)) {
+                        return null;
+                    }
+                    // Indexed before it is journaled so a snapshot started after the journal write sees the ID
+                    index(key, incident);
+                    try {
+                        journalPosition[0] = journal.recordPut(incident);
+                    } catch (RuntimeException e) {
+                        unindex(key, incident);
+                        throw e;
+                    }
+                    sequence[0] = events.reserve();
+                    return incident;
+                });
+            } catch (RuntimeException e) {
+                cancelEvent(sequence[0]);
+                throw e;
+            }
+
+            if (created != null) {
+                shard.cache(id, incident);
+                changes.incrementAndGet();
+                events.publish(sequence[0], IncidentEvent.Type.CREATED, id, incident);
+                return new Insertion(incident, true, journalPosition[0]);
+            }
+            // The entry changed, possibly by a concurrent create of the same incident, compare again
+        }
+    }
+
+    /**
+     * Counts another occurrence of a stored incident, if it still absorbs duplicates and has the content it
+     * was compared with.
+     *
+     * @param original The incident as it was compared with the duplicate.
+     * @param occurredAt When the duplicate was reported.
+     * @param journalPosition Receives the journal position of the change.
+     * @return The incident with the occurrence counted, or null if it changed in the meantime.
+     */
+    private Incident recordOccurrence(Incident original, Instant occurredAt, long[] journalPosition) {
+        long id = original.getId();
+        long[] sequence = new long[1];
+        Incident result;
+        try {
+            result = incidents.computeIfPresent(id, (key, existingIncident) -> {
+                if (!absorbs(existingIncident, occurredAt)
+                        || !Objects.equals(existingIncident.getTitle(), original.getTitle())
+                        || !Objects.equals(existingIncident.getDescription(), original.getDescription())) {
+                    return existingIncident;
+                }
+                Instant lastOccurredAt = existingIncident.getLastOccurredAt() == null
+                        || existingIncident.getLastOccurredAt().isBefore(occurredAt) ? occurredAt : existingIncident.getLastOccurredAt();
+                Incident updatedIncident = existingIncident.toBuilder()
+                        .version(existingIncident.getVersion() + 1)
+                        .occurrences((existingIncident.getOccurrences() == null ? 1 : existingIncident.getOccurrences()) + 1)
+                        .lastOccurredAt(lastOccurredAt)
+                        .updatedAt(later(existingIncident.getUpdatedAt(), occurredAt))
+                        .build();
+                journalPosition[0] = journal.recordPut(updatedIncident);
+                sequence[0] = events.reserve();
+                return updatedIncident;
+            });
+        } catch (RuntimeException e) {
+            cancelEvent(sequence[0]);
+            throw e;
+        }
+        if (sequence[0] == 0) {
+            return null;
+        }
+        shardOf(id).cache(id, result);
+        changes.incrementAndGet();
+        events.publish(sequence[0], IncidentEvent.Type.UPDATED, id, result);
+        return result;
+    }
+
+    /**
+     * Whether a stored incident still absorbs duplicates: it is not closed and was last reported within the window.
+     * Incidents stored before occurrences were recorded have no last occurrence and absorb duplicates until their
+     * first one.
+     *
+     * @param incident The stored incident.
+     * @param now When the duplicate was reported.
+     * @return True if a duplicate reported now counts as another occurrence of the incident.
+     */
+    private boolean absorbs(Incident incident, Instant now) {
+        if (incident.getStatus() == Incident.Status.CLOSED) {
             return false;
         }
+        Duration window = deduplication.window();
+        return window.isZero()
+                || incident.getLastOccurredAt() == null
+                || !incident.getLastOccurredAt().plus(window).isBefore(now);
+    }
+
+    // The later of two times, either of which may be null
+    private static Instant later(Instant a, Instant b) {
+        return a == null || (b != null && b.isAfter(a)) ? b : a;
+    }
+
+    /**
+     * Sanitizes and replaces an existing incident and moves it between indexes. The lifecycle times are kept from
+     * the stored incident, with the update time set to now and the time of a status it moves to recorded.
+     *
+     * @param id The ID of the incident to update.
+     * @param update The new incident data.
+     * @param expectedVersion The version the update is based on, or null to update unconditionally.
+     * @param journalPosition Receives the journal position of the update.
+     * @return The updated incident, or null if it does not exist.
+     */
+    private Incident replace(Long id, Incident update, Long expectedVersion, long[] journalPosition) {
+        // The new version is complete apart from its version number and occurrences before the compute stores it
+        Incident replacement = update.toBuilder()
+                .id(id)
+                .status(update.getStatus() == null ? Incident.Status.OPEN : update.getStatus())
+                .description(update.getDescription() == null ? null : sanitize(update.getDescription()))
+                .build();
+
+        long[] sequence = new long[1];
+        Incident result;
+        try {
+            result = incidents.computeIfPresent(id, (key, existingIncident) -> {
+                long currentVersion = existingIncident.getVersion();
+                if (expectedVersion != null && expectedVersion != currentVersion) {
+                    throw new VersionConflictException(key, expectedVersion, currentVersion);
+                }
+                Instant now = now();
+                Incident.Status status = replacement.getStatus();
+                boolean moved = existingIncident.getStatus() != status;
+                Incident updatedIncident = replacement.toBuilder()
+                        .version(currentVersion + 1)
+                        .occurrences(existingIncident.getOccurrences())
+                        .lastOccurredAt(existingIncident.getLastOccurredAt())
+                        .createdAt(existingIncident.getCreatedAt())
+                        .updatedAt(now)
+                        .inProgressAt(moved && status == Incident.Status.IN_PROGRESS ? now : existingIncident.getInProgressAt())
+                        .closedAt(status != Incident.Status.CLOSED ? null : moved ? now : existingIncident.getClosedAt())
+                        .build();
+                journalPosition[0] = journal.recordPut(updatedIncident);
+
+                if (!Objects.equals(existingIncident.getTitle(), updatedIncident.getTitle())
+                        || !Objects.equals(existingIncident.getDescription(), updatedIncident.getDescription())) {
+                    IncidentFingerprint oldFingerprint = deduplication.strategy().fingerprint(existingIncident.getTitle(), existingIncident.getDescription());
+                    shardOf(oldFingerprint).deduplicationIndex.remove(oldFingerprint, key);
+                    register(key, updatedIncident);
+                    shardOf(key).searchIndex.remove(key, existingIncident);
+                    shardOf(key).searchIndex.add(key, updatedIncident);
+                }
+                if (existingIncident.getStatus() != updatedIncident.getStatus()) {
+                    removeFromStatusIndex(key, existingIncident.getStatus());
+                    addToStatusIndex(key, updatedIncident.getStatus());
+                }
+                sequence[0] = events.reserve();
+                return updatedIncident;
+            });
+        } catch (RuntimeException e) {
+            cancelEvent(sequence[0]);
+            throw e;
+        }
+        if (result != null) {
+            shardOf(id).cache(id, result);
+            changes.incrementAndGet();
+            events.publish(sequence[0], IncidentEvent.Type.UPDATED, id, result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes an incident and its index entries.
+     *
+     * @param id The ID of the incident to delete.
+     * @param journalPosition Receives the journal position of the deletion.
+     * @return The removed incident, or null if it did not exist.
+     */
+    private Incident remove(Long id, long[] journalPosition) {
+        Incident[] removed = new Incident[1];
+        long[] sequence = new long[1];
+        try {
+            incidents.computeIfPresent(id, (key, existingIncident) -> {
+                journalPosition[0] = journal.recordDelete(key);
+                unindex(key, existingIncident);
+                sequence[0] = events.reserve();
+                removed[0] = existingIncident;
+                return null;
+            });
+        } catch (RuntimeException e) {
+            cancelEvent(sequence[0]);
+            throw e;
+        }
+        if (removed[0] != null) {
+            shardOf(id).removed(id);
+            changes.incrementAndGet();
+            events.publish(sequence[0], IncidentEvent.Type.DELETED, id, null);
+            if (archive.contains(id)) {
+                archive.forget(List.of(id)); // Archived while it was being deleted
+            }
+        }
+        return removed[0];
+    }
+
+    // Gives up the event sequence a failed compute took, if it got that far
+    private void cancelEvent(long sequence) {
+        if (sequence != 0) {
+            events.cancel(sequence);
+        }
+    }
+
+    /**
+     * Whether a closed incident was closed before the cutoff. Incidents closed before closing times were recorded
+     * count from their last update or occurrence instead, and are kept if they have neither.
+     */
+    private static boolean closedBefore(Incident incident, Instant cutoff) {
+        Instant closedAt = incident.getClosedAt() != null ? incident.getClosedAt()
+                : incident.getUpdatedAt() != null ? incident.getUpdatedAt() : incident.getLastOccurredAt();
+        return closedAt != null && closedAt.isBefore(cutoff);
+    }
+
+    /**
+     * Removes archived incidents from the store, each only if it is still the archived version, and publishes an
+     * archived event for each. The archived copies of incidents changed since are forgotten, as the store holds the
+     * current version. Incidents no longer stored keep their archived copy if it is the version archived here, as
+     * they were archived by a replicated archival meanwhile; deletions forget archived copies themselves.
+     *
+     * @param archived The incidents as they were archived.
+     * @return The IDs of the incidents removed.
+     */
+    private List<Long> removeArchived(List<Incident> archived) {
+        List<Long> changed = new ArrayList<>();
+        List<Long> removed = new ArrayList<>(archived.size());
+        long journalPosition = 0;
+        for (Incident incident : archived) {
+            long id = incident.getId();
+            long[] position = new long[1];
+            long[] sequence = new long[1];
+            try {
+                incidents.computeIfPresent(id, (key, existingIncident) -> {
+                    if (!Objects.equals(existingIncident.getVersion(), incident.getVersion())) {
+                        return existingIncident;
+                    }
+                    position[0] = journal.recordDelete(key);
+                    unindex(key, existingIncident);
+                    sequence[0] = events.reserve();
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                cancelEvent(sequence[0]);
+                throw e;
+            }
+            if (sequence[0] == 0) {
+                if (incidents.get(id) != null || !archive.get(id).map(Incident::getVersion)
+                        .equals(Optional.ofNullable(incident.getVersion()))) {
+                    changed.add(id);
+                }
+                continue;
+            }
+            shardOf(id).removed(id);
+            changes.incrementAndGet();
+            events.publish(sequence[0], IncidentEvent.Type.ARCHIVED, id, incident);
+            journalPosition = Math.max(journalPosition, position[0]);
+            removed.add(id);
+        }
+        archive.forget(changed);
+        journal.awaitDurable(journalPosition);
+        metrics.archived(removed.size());
+        return removed;
+    }
+
+    /**
+     * Finishes moves to the archive interrupted by a crash after recovery: incidents both archived and stored are
+     * removed from the store if the archive holds their current version, and forgotten by the archive otherwise.
+     */
+    private void reconcileArchive() {
+        if (archive.lastId() == 0) {
+            return; // Nothing was ever archived
+        }
+        List<Incident> archived = new ArrayList<>();
+        List<Long> changed = new ArrayList<>();
+        for (Iterator<Long> ids = IncidentShard.mergedIds(shards, null, null); ids.hasNext(); ) {
+            long id = ids.next();
+            if (!archive.contains(id)) {
+                continue;
+            }
+            Incident stored = incidents.get(id);
+            Incident archivedCopy = archive.get(id).orElse(null);
+            if (stored != null && archivedCopy != null && Objects.equals(stored.getVersion(), archivedCopy.getVersion())) {
+                archived.add(stored);
+            } else {
+                changed.add(id);
+            }
+        }
+        archive.forget(changed);
+        if (!archived.isEmpty()) {
+            logger.info("Completing the archiving of {} incidents", removeArchived(archived).size());
+        }
+    }
+
+    /**
+     * Applies a recovered incident, replacing any earlier version of it.
+     *
+     * @param incident The recovered incident.
+     */
+    private void restore(Incident incident) {
+        incidents.compute(incident.getId(), (key, existingIncident) -> {
+            if (existingIncident != null) {
+                unindex(key, existingIncident);
+            }
+            register(key, incident);
+            index(key, incident);
+            return incident;
+        });
+        for (IncidentShard shard : shards) {
+            shard.advancePast(incident.getId());
+        }
+    }
+
+    /**
+     * Applies a recovered deletion.
+     *
+     * @param id The ID of the deleted incident.
+     */
+    private void restoreDeletion(long id) {
+        incidents.computeIfPresent(id, (key, existingIncident) -> {
+            unindex(key, existingIncident);
+            return null;
+        });
+    }
+
+    /**
+     * Visits every incident, waiting for any change in progress on it, so that every change
+     * journaled before this call is seen.
+     *
+     * @param consumer The consumer of the incidents.
+     */
+    private void forEachCommittedIncident(Consumer<Incident> consumer) {
+        for (Iterator<Long> ids = IncidentShard.mergedIds(shards, null, null); ids.hasNext(); ) {
+            Long id = ids.next();
+            Incident incident = incidents.computeIfPresent(id, (key, existingIncident) -> existingIncident);
+            if (incident != null) {
+                consumer.accept(incident);
+            }
+        }
+    }
+
+    // Index maintenance, always called inside a repository compute of the ID
+
+    private void index(Long id, Incident incident) {
+        shardOf(id).incidentIds.add(id);
+        if (incident.getCreatedAt() != null) {
+            shardOf(id).createdIndex.add(new IncidentShard.TimeKey(incident.getCreatedAt().toEpochMilli(), id));
+        }
+        shardOf(id).searchIndex.add(id, incident);
+        addToStatusIndex(id, incident.getStatus());
+    }
+
+    // Adds an incident to the deduplication index, which new incidents claim themselves in insert
+    private void register(Long id, Incident incident) {
+        DeduplicationStrategy strategy = deduplication.strategy();
+        IncidentFingerprint fingerprint = strategy.fingerprint(incident.getTitle(), incident.getDescription());
+        shardOf(fingerprint).deduplicationIndex.add(fingerprint, id, strategy.signature(incident.getTitle(), incident.getDescription()));
+    }
+
+    private void unindex(Long id, Incident incident) {
+        IncidentFingerprint fingerprint = deduplication.strategy().fingerprint(incident.getTitle(), incident.getDescription());
+        shardOf(fingerprint).deduplicationIndex.remove(fingerprint, id);
+        shardOf(id).incidentIds.remove(id);
+        if (incident.getCreatedAt() != null) {
+            shardOf(id).createdIndex.remove(new IncidentShard.TimeKey(incident.getCreatedAt().toEpochMilli(), id));
+        }
+        shardOf(id).searchIndex.remove(id, incident);
+        removeFromStatusIndex(id, incident.getStatus());
+    }
+
+    private void addToStatusIndex(Long id, Incident.Status status) {
+        IncidentShard shard = shardOf(id);
+        shard.statusIndex.get(status).add(id);
+        shard.statusCounts.get(status).increment();
+        statusCounts.get(status).increment();
+    }
+
+    private void removeFromStatusIndex(Long id, Incident.Status status) {
+        IncidentShard shard = shardOf(id);
+        shard.statusIndex.get(status).remove(id);
+        shard.statusCounts.get(status).decrement();
+        statusCounts.get(status).decrement();
+    }
+
+    // The shard holding the indexes and cache entry of an incident
+    private IncidentShard shardOf(long id) {
+        return shards.length == 1 ? shards[0] : shards[(int) ((id - 1) % shards.length)];
+    }
+
+    // The shard owning the deduplication entry of a fingerprint, where new incidents with it are created
+    private IncidentShard shardOf(IncidentFingerprint fingerprint) {
+        return shards.length == 1 ? shards[0] : shards[(int) Long.remainderUnsigned(fingerprint.low(), shards.length)];
+    }
+
+    /**
+     * Validates that title and description are present, as the controller does for single incidents.
+     *
+     * @param incident The incident to validate.
+     */
+    private void validateContent(Incident incident) {
+        if (incident == null) {
+            throw new IllegalArgumentException("Incident is mandatory");
+        }
+        if (incident.getTitle() == null || incident.getTitle().isBlank()) {
+            throw new IllegalArgumentException("Title is mandatory");
+        }
+        if (incident.getDescription() == null || incident.getDescription().isBlank()) {
+            throw new IllegalArgumentException("Description is mandatory");
+        }
+    }
+
+    /**
+     * Validates that a batch is neither empty nor larger than {@link #MAX_BATCH_SIZE}.
+     *
+     * @param size The number of items in the batch.
+     */
+    private void validateBatchSize(int size) {
+        if (size == 0 || size > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must contain between 1 and " + MAX_BATCH_SIZE + " items");
+        }
     }
 
     /**
@@ -190,7 +1584,7 @@ public class IncidentService {
      */
     private String sanitize(String input) {
         // Example sanitization: strip HTML tags
-        return input.replaceAll("<[^>]*>", "").trim();
+        return TagStripper.strip(input);
     }
 
 }
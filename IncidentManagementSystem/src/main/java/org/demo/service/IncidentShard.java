@@ -0,0 +1,294 @@
+package org.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.demo.model.Incident;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * One partition of the indexes of {@link IncidentService}, so concurrent creates do not all contend on the
+ * same ID counter, index and cache.
+ *
+ * <p>Shard {@code s} of {@code n} hands out the IDs {@code s + 1, s + 1 + n, s + 1 + 2n, ...}, so IDs are unique
+ * without coordination, stay roughly in creation order across shards, and name the shard holding their incident.
+ * New incidents are assigned to the shard of their fingerprint, which owns the deduplication entry for it.
+ */
+final class IncidentShard {
+
+    // Heap taken by a cached incident besides its text: cache node, boxed key, incident, strings and their arrays
+    private static final int CACHE_ENTRY_OVERHEAD = 240;
+    // Cached in place of a removed incident, whose ID is never handed out again
+    private static final Incident REMOVED = new Incident(null, null, null, null);
+
+    private final int index;
+    private final int shardCount;
+    // Next sequence number; the ID of sequence q is q * shardCount + index + 1
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Maps deduplication fingerprints to the incidents registered under them.
+    // Only ever modified inside a repository compute of a registered ID.
+    final DeduplicationIndex deduplicationIndex;
+    // IDs in ascending order for keyset pagination, maintained inside repository computes
+    final ConcurrentSkipListSet<Long> incidentIds = new ConcurrentSkipListSet<>();
+    // Creation times and IDs in ascending order for time range queries, maintained inside repository computes.
+    // Incidents stored before creation times were recorded have none and are not in it
+    final ConcurrentSkipListSet<TimeKey> createdIndex = new ConcurrentSkipListSet<>();
+    // Per-status ID indexes and counts, maintained inside repository computes
+    final Map<Incident.Status, ConcurrentSkipListSet<Long>> statusIndex = new EnumMap<>(Incident.Status.class);
+    final Map<Incident.Status, LongAdder> statusCounts = new EnumMap<>(Incident.Status.class);
+    // Words of titles and descriptions for full-text search, maintained inside repository computes
+    final SearchIndex searchIndex = new SearchIndex();
+    // Incidents recently read or written, or null when caching is disabled. Writes update it after the repository,
+    // only ever replacing an older version, and removals leave a tombstone, so writes applied out of order or after
+    // a removal cannot leave a stale incident cached. Misses load through it, so a load racing a write finishes
+    // before the write's update is compared with it
+    final Cache<Long, Incident> cache;
+
+    IncidentShard(int index, int shardCount, CachePolicy cachePolicy, int deduplicationCandidates) {
+        this.index = index;
+        this.shardCount = shardCount;
+        this.deduplicationIndex = new DeduplicationIndex(deduplicationCandidates);
+        for (Incident.Status status : Incident.Status.values()) {
+            statusIndex.put(status, new ConcurrentSkipListSet<>());
+            statusCounts.put(status, new LongAdder());
+        }
+        this.cache = cachePolicy.enabled() ? buildCache(cachePolicy, shardCount) : null;
+    }
+
+    private static Cache<Long, Incident> buildCache(CachePolicy policy, int shardCount) {
+        Caffeine<Long, Incident> builder = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, policy.maximumWeight() / shardCount))
+                .weigher(IncidentShard::weigh)
+                // Evicting on the calling thread costs less than waking a pool thread for it after every few reads
+                .executor(Runnable::run)
+                .recordStats();
+        if (!policy.expireAfterAccess().isZero()) {
+            builder.expireAfterAccess(policy.expireAfterAccess());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Estimates the heap taken by a cached incident: the cache entry, key, incident and strings, with one byte per
+     * character as for Latin-1 text, which compact strings store in a byte each.
+     *
+     * @param id The ID of the incident.
+     * @param incident The incident.
+     * @return The estimated size in bytes.
+     */
+    static int weigh(Long id, Incident incident) {
+        return CACHE_ENTRY_OVERHEAD
+                + (incident.getTitle() == null ? 0 : incident.getTitle().length())
+                + (incident.getDescription() == null ? 0 : incident.getDescription().length());
+    }
+
+    /**
+     * Reads an incident from the cache, loading it from the repository on a miss.
+     *
+     * @param id The ID of the incident.
+     * @param loader Reads the incident from the repository, returns null if there is none.
+     * @return The incident, or null if there is none.
+     */
+    Incident read(long id, LongFunction<Incident> loader) {
+        if (cache == null) {
+            return loader.apply(id);
+        }
+        Incident incident = cache.get(id, loader::apply);
+        return incident == REMOVED ? null : incident;
+    }
+
+    /**
+     * Caches a version of an incident after it was written to the repository, unless a newer version or the
+     * removal of the incident was cached first by a write that finished its update sooner.
+     *
+     * @param id The ID of the incident.
+     * @param incident The incident as stored.
+     */
+    void cache(long id, Incident incident) {
+        if (cache != null) {
+            cache.asMap().merge(id, incident, IncidentShard::newer);
+        }
+    }
+
+    /**
+     * Caches the removal of an incident after it was removed from the repository, so a write of the incident that
+     * raced the removal cannot cache it again.
+     *
+     * @param id The ID of the incident.
+     */
+    void removed(long id) {
+        if (cache != null) {
+            cache.put(id, REMOVED);
+        }
+    }
+
+    /**
+     * Drops an incident from the cache after a replicated change, which may bring an incident back under an ID
+     * removed before.
+     *
+     * @param id The ID of the incident.
+     */
+    void evict(long id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static Incident newer(Incident cached, Incident written) {
+        return cached == REMOVED || version(cached) >= version(written) ? cached : written;
+    }
+
+    private static long version(Incident incident) {
+        return incident.getVersion() == null ? 0 : incident.getVersion();
+    }
+
+    /**
+     * @return A new ID belonging to this shard.
+     */
+    long nextId() {
+        return sequence.getAndIncrement() * shardCount + index + 1;
+    }
+
+    /**
+     * @return The largest ID handed out by this shard, or 0 if there is none.
+     */
+    long lastId() {
+        return Math.max(0, (sequence.get() - 1) * shardCount + index + 1);
+    }
+
+    /**
+     * Makes sure every later ID of this shard is larger than the given one.
+     *
+     * @param id An ID already in use, of any shard.
+     */
+    void advancePast(long id) {
+        sequence.accumulateAndGet(Math.floorDiv(id - index - 1, shardCount) + 1, Math::max);
+    }
+
+    /**
+     * The IDs of this shard in ascending order.
+     *
+     * @param after The ID after which the IDs start, or null to start from the beginning.
+     * @param status The status to filter by, or null for all statuses.
+     * @return A weakly consistent view of the IDs.
+     */
+    NavigableSet<Long> ids(Long after, Incident.Status status) {
+        ConcurrentSkipListSet<Long> ids = status == null ? incidentIds : statusIndex.get(status);
+        return after == null ? ids : ids.tailSet(after, false);
+    }
+
+    /**
+     * Merges the IDs of all shards into one ascending sequence, reading each shard only as far as it is consumed.
+     *
+     * @param shards The shards to merge.
+     * @param after The ID after which the IDs start, or null to start from the beginning.
+     * @param status The status to filter by, or null for all statuses.
+     * @return A weakly consistent iterator of the IDs of all shards.
+     */
+    static Iterator<Long> mergedIds(IncidentShard[] shards, Long after, Incident.Status status) {
+        if (shards.length == 1) {
+            return shards[0].ids(after, status).iterator();
+        }
+        List<Iterator<Long>> ids = new ArrayList<>(shards.length);
+        for (IncidentShard shard : shards) {
+            ids.add(shard.ids(after, status).iterator());
+        }
+        return merge(ids, Comparator.naturalOrder());
+    }
+
+    /**
+     * The creation times and IDs of this shard in a time range, in ascending order.
+     *
+     * @param from The key after which the range starts.
+     * @param until The creation time in epoch milliseconds before which the range ends.
+     * @return A weakly consistent view of the keys.
+     */
+    NavigableSet<TimeKey> created(TimeKey from, long until) {
+        TimeKey to = new TimeKey(until, Long.MIN_VALUE);
+        return from.compareTo(to) >= 0 ? Collections.emptyNavigableSet() : createdIndex.subSet(from, false, to, false);
+    }
+
+    /**
+     * Merges the creation times and IDs of all shards in a time range into one ascending sequence, reading each shard
+     * only as far as it is consumed, so a range costs a seek per shard plus the keys read.
+     *
+     * @param shards The shards to merge.
+     * @param from The key after which the range starts.
+     * @param until The creation time in epoch milliseconds before which the range ends.
+     * @return A weakly consistent iterator of the keys of all shards.
+     */
+    static Iterator<TimeKey> mergedCreated(IncidentShard[] shards, TimeKey from, long until) {
+        if (shards.length == 1) {
+            return shards[0].created(from, until).iterator();
+        }
+        List<Iterator<TimeKey>> keys = new ArrayList<>(shards.length);
+        for (IncidentShard shard : shards) {
+            keys.add(shard.created(from, until).iterator());
+        }
+        return merge(keys, Comparator.naturalOrder());
+    }
+
+    // Merges ascending sequences with a heap of their smallest unread elements
+    private static <T> Iterator<T> merge(List<Iterator<T>> sequences, Comparator<? super T> order) {
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(sequences.size(), 1), (a, b) -> order.compare(a.value(), b.value()));
+        for (Iterator<T> sequence : sequences) {
+            if (sequence.hasNext()) {
+                heads.add(new Head<>(sequence.next(), sequence));
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Head<T> head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                if (head.rest().hasNext()) {
+                    heads.add(new Head<>(head.rest().next(), head.rest()));
+                }
+                return head.value();
+            }
+        };
+    }
+
+    /**
+     * The smallest element not yet returned from a sequence, and the rest of that sequence.
+     */
+    private record Head<T>(T value, Iterator<T> rest) {
+    }
+
+    /**
+     * An entry of the creation time index: ordered by creation time, then by ID so incidents created in the same
+     * millisecond have distinct keys.
+     *
+     * @param createdAt The creation time in epoch milliseconds.
+     * @param id The ID of the incident.
+     */
+    record TimeKey(long createdAt, long id) implements Comparable<TimeKey> {
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = Long.compare(createdAt, other.createdAt);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.demo.service;
+
+import org.demo.model.Incident;
+
+/**
+ * Incidents are duplicates when title and description are identical once normalized by {@link TextNormalizer}:
+ * case, punctuation and whitespace are ignored, as are timestamps, counters and other numbers in the description,
+ * and long identifiers such as UUIDs in the title.
+ *
+ * <p>The signature is a second, independent hash of the normalized text, so together with the 128-bit fingerprint
+ * a check compares 192 bits without normalizing the stored incident again.
+ */
+public final class NormalizedDeduplication implements DeduplicationStrategy {
+
+    @Override
+    public IncidentFingerprint fingerprint(String title, String description) {
+        return IncidentFingerprint.of(TextNormalizer.normalizeTitle(title), TextNormalizer.normalizeDescription(description));
+    }
+
+    @Override
+    public long signature(String title, String description) {
+        String normalizedTitle = TextNormalizer.normalizeTitle(title);
+        String normalizedDescription = TextNormalizer.normalizeDescription(description);
+        long h = TextNormalizer.hash(normalizedTitle, 0x2545F4914F6CDD1DL);
+        return TextNormalizer.hash(normalizedDescription == null ? "\0" : normalizedDescription, h);
+    }
+
+    @Override
+    public boolean isDuplicate(Incident existing, long existingSignature, Incident candidate, long candidateSignature) {
+        return existingSignature == candidateSignature;
+    }
+}
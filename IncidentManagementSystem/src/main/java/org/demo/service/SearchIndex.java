@@ -0,0 +1,409 @@
+package org.demo.service;
+
+import org.demo.model.Incident;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index over the titles and descriptions of the incidents of one shard, for {@link IncidentService#searchIncidents}.
+ *
+ * <p>Text is split into lowercased words of letters and digits. Each word maps to a posting list of the IDs containing
+ * it, kept as a sorted {@code long[]} with a parallel {@code int[]} packing the word's weighted frequency and the
+ * incident's length, so a posting takes 12 bytes and no object. Title words count {@value #TITLE_WEIGHT} times.
+ * Removed postings are marked and dropped once they outnumber the live ones, and a word without postings is dropped
+ * from the index, so memory stays proportional to the stored text.
+ *
+ * <p>Postings are only ever changed inside a repository compute of their ID. Searches read posting lists under their
+ * read locks and may briefly miss or still see an incident whose change is in progress.
+ */
+final class SearchIndex {
+
+    // Title words count as this many occurrences, for ranking and incident length
+    static final int TITLE_WEIGHT = 3;
+    // Longer words are cut to this length, in incidents and queries alike
+    static final int MAX_TERM_LENGTH = 32;
+    // Distinct words indexed per incident, title first, so a huge description cannot flood the index
+    static final int MAX_TERMS_PER_INCIDENT = 256;
+    static final int MAX_QUERY_TERMS = 16;
+
+    // BM25 term frequency saturation and length normalization
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int MAX_PACKED = 0xFFFF;
+
+    private final ConcurrentHashMap<String, PostingList> postings = new ConcurrentHashMap<>();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder totalLength = new LongAdder();
+
+    /**
+     * Receives the matches of {@link #search}.
+     */
+    interface Collector {
+        void collect(long id, double score);
+    }
+
+    /**
+     * Adds the words of an incident.
+     *
+     * @param id The ID of the incident.
+     * @param incident The incident.
+     */
+    void add(long id, Incident incident) {
+        Document document = Document.of(incident);
+        document.frequencies.forEach((term, frequency) -> {
+            int payload = pack(frequency, document.length);
+            PostingList list = postings.get(term);
+            // Only a new word, or one whose list was just emptied and dropped, needs the map's lock
+            if (list == null || !list.add(id, payload)) {
+                postings.compute(term, (key, current) -> {
+                    PostingList target = current == null ? new PostingList() : current;
+                    target.add(id, payload);
+                    return target;
+                });
+            }
+        });
+        documents.increment();
+        totalLength.add(document.length);
+    }
+
+    /**
+     * Removes the words of an incident, as they were added.
+     *
+     * @param id The ID of the incident.
+     * @param incident The incident as it was added.
+     */
+    void remove(long id, Incident incident) {
+        Document document = Document.of(incident);
+        for (String term : document.frequencies.keySet()) {
+            postings.computeIfPresent(term, (key, list) -> list.remove(id) ? null : list);
+        }
+        documents.decrement();
+        totalLength.add(-document.length);
+    }
+
+    /**
+     * @return The number of indexed incidents.
+     */
+    long documentCount() {
+        return documents.sum();
+    }
+
+    /**
+     * @return The summed length of the indexed incidents, in weighted words.
+     */
+    long totalLength() {
+        return totalLength.sum();
+    }
+
+    /**
+     * @param term A word as returned by {@link #queryTerms}.
+     * @return The number of indexed incidents containing it.
+     */
+    int documentFrequency(String term) {
+        PostingList list = postings.get(term);
+        return list == null ? 0 : list.live();
+    }
+
+    /**
+     * Finds the incidents containing all given words and scores them with BM25.
+     * The shortest posting list is walked from its largest ID down, and the others are probed with a galloping search
+     * from their last position, so an intersection costs about the length of the rarest word's list.
+     *
+     * @param terms The words, as returned by {@link #queryTerms}.
+     * @param weights The inverse document frequency of every word, across all shards.
+     * @param averageLength The average incident length across all shards.
+     * @param collector Receives every match with its score, newest first, so equally good older matches can be
+     *                  dismissed without displacing the ones already collected.
+     */
+    void search(List<String> terms, double[] weights, double averageLength, Collector collector) {
+        int count = terms.size();
+        PostingList[] lists = new PostingList[count];
+        for (int i = 0; i < count; i++) {
+            lists[i] = postings.get(terms.get(i));
+            if (lists[i] == null) {
+                return;
+            }
+        }
+        long[] stamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            stamps[i] = lists[i].lock.readLock();
+        }
+        try {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> lists[i].size));
+            PostingList lead = lists[order[0]];
+            int[] cursors = new int[count];
+            for (int k = 1; k < count; k++) {
+                cursors[k] = lists[order[k]].size - 1;
+            }
+            for (int p = lead.size - 1; p >= 0; p--) {
+                int payload = lead.payloads[p];
+                if (payload == 0) {
+                    continue;
+                }
+                long id = lead.ids[p];
+                double score = score(payload, weights[order[0]], averageLength);
+                for (int k = 1; k < count && score >= 0; k++) {
+                    PostingList list = lists[order[k]];
+                    int position = list.seekDown(id, cursors[k]);
+                    cursors[k] = position;
+                    if (position < 0 || list.ids[position] != id || list.payloads[position] == 0) {
+                        score = -1;
+                    } else {
+                        score += score(list.payloads[position], weights[order[k]], averageLength);
+                    }
+                }
+                if (score >= 0) {
+                    collector.collect(id, score);
+                }
+            }
+        } finally {
+            for (int i = 0; i < count; i++) {
+                lists[i].lock.unlockRead(stamps[i]);
+            }
+        }
+    }
+
+    /**
+     * Splits a query into the distinct words it is searched by.
+     *
+     * @param query The query text.
+     * @return Up to {@value #MAX_QUERY_TERMS} distinct words, in query order.
+     */
+    static List<String> queryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        forEachTerm(query, term -> {
+            if (terms.size() < MAX_QUERY_TERMS) {
+                terms.add(term);
+            }
+        });
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * BM25 inverse document frequency, which is always positive.
+     *
+     * @param documents The number of indexed incidents.
+     * @param frequency The number of them containing the word.
+     * @return The weight of the word.
+     */
+    static double inverseDocumentFrequency(long documents, long frequency) {
+        return Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    private static double score(int payload, double weight, double averageLength) {
+        int frequency = payload >>> 16;
+        int length = payload & MAX_PACKED;
+        return weight * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    // Never 0, which marks removed postings, as every indexed word occurs at least once
+    private static int pack(int frequency, int length) {
+        return Math.min(frequency, MAX_PACKED) << 16 | Math.min(length, MAX_PACKED);
+    }
+
+    private static void forEachTerm(String text, Consumer<String> consumer) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                consumer.accept(text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * The weighted word frequencies and length of an incident.
+     */
+    private record Document(Map<String, Integer> frequencies, int length) {
+
+        static Document of(Incident incident) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            int[] length = new int[1];
+            forEachTerm(incident.getTitle(), term -> length[0] += count(frequencies, term, TITLE_WEIGHT));
+            forEachTerm(incident.getDescription(), term -> length[0] += count(frequencies, term, 1));
+            return new Document(frequencies, Math.min(Math.max(length[0], 1), MAX_PACKED));
+        }
+
+        private static int count(Map<String, Integer> frequencies, String term, int weight) {
+            if (frequencies.size() >= MAX_TERMS_PER_INCIDENT && !frequencies.containsKey(term)) {
+                return 0;
+            }
+            frequencies.merge(term, weight, Integer::sum);
+            return weight;
+        }
+    }
+
+    /**
+     * IDs containing a word in ascending order, with their packed frequency and length, 0 marking removed ones.
+     * Changed under the write lock so searches see whole changes. A list is dropped from the index inside the index's
+     * compute of the word when its last posting is removed, and refuses later adds so they go to a new list.
+     */
+    private static final class PostingList {
+
+        final StampedLock lock = new StampedLock();
+        long[] ids = new long[2];
+        int[] payloads = new int[2];
+        int size;
+        private int live;
+        private boolean dropped;
+
+        int live() {
+            long stamp = lock.tryOptimisticRead();
+            int result = live;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    result = live;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param id The ID to add.
+         * @param payload Its packed frequency and length.
+         * @return False if the list was dropped from the index and the posting was not added.
+         */
+        boolean add(long id, int payload) {
+            long stamp = lock.writeLock();
+            try {
+                if (dropped) {
+                    return false;
+                }
+                // New IDs are the largest, so almost every add appends
+                int position = size > 0 && ids[size - 1] < id ? size : seek(id, 0);
+                if (position < size && ids[position] == id) {
+                    if (payloads[position] == 0) {
+                        live++;
+                    }
+                    payloads[position] = payload;
+                    return true;
+                }
+                if (size == ids.length) {
+                    int capacity = size + (size >> 1) + 1;
+                    ids = Arrays.copyOf(ids, capacity);
+                    payloads = Arrays.copyOf(payloads, capacity);
+                }
+                System.arraycopy(ids, position, ids, position + 1, size - position);
+                System.arraycopy(payloads, position, payloads, position + 1, size - position);
+                ids[position] = id;
+                payloads[position] = payload;
+                size++;
+                live++;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @param id The ID to remove.
+         * @return True if no posting is left, and the list has to be dropped from the index.
+         */
+        boolean remove(long id) {
+            long stamp = lock.writeLock();
+            try {
+                int position = seek(id, 0);
+                if (position < size && ids[position] == id && payloads[position] != 0) {
+                    payloads[position] = 0;
+                    live--;
+                    if (size - live > live) {
+                        compact();
+                    }
+                }
+                dropped = live == 0;
+                return dropped;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // Drops removed postings and gives back the memory they took
+        private void compact() {
+            int capacity = Math.max(2, live + (live >> 1));
+            long[] compactIds = new long[capacity];
+            int[] compactPayloads = new int[capacity];
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                if (payloads[i] != 0) {
+                    compactIds[next] = ids[i];
+                    compactPayloads[next] = payloads[i];
+                    next++;
+                }
+            }
+            ids = compactIds;
+            payloads = compactPayloads;
+            size = next;
+        }
+
+        /**
+         * Gallops down from a position to the last posting with an ID of at most the given one.
+         *
+         * @param id The ID to find.
+         * @param from A position after which all IDs are larger.
+         * @return The position, or -1 if all IDs are larger.
+         */
+        int seekDown(long id, int from) {
+            int low = from;
+            int step = 1;
+            int high = from;
+            while (low >= 0 && ids[low] > id) {
+                high = low - 1;
+                low = from - step;
+                step <<= 1;
+            }
+            low = Math.max(low, 0);
+            int position = Arrays.binarySearch(ids, low, high + 1, id);
+            return position >= 0 ? position : -position - 2;
+        }
+
+        /**
+         * Gallops from a position to the first posting with an ID of at least the given one.
+         *
+         * @param id The ID to find.
+         * @param from A position before which all IDs are smaller.
+         * @return The position, or {@link #size} if all IDs are smaller.
+         */
+        int seek(long id, int from) {
+            int low = from;
+            int step = 1;
+            int high = from;
+            while (high < size && ids[high] < id) {
+                low = high + 1;
+                high = from + step;
+                step <<= 1;
+            }
+            high = Math.min(high, size);
+            int position = Arrays.binarySearch(ids, low, high, id);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.demo.service;
+
+import org.demo.model.Incident;
+
+/**
+ * Incidents are duplicates when their normalized titles are identical and their descriptions are similar:
+ * the 64-bit SimHashes of the word shingles of the normalized descriptions differ in at most
+ * {@code maxDistance} bits.
+ *
+ * <p>Every word and every shingle of {@code shingleSize} consecutive words votes on each bit of the SimHash with
+ * the corresponding bit of its own hash. Descriptions sharing most shingles therefore end up with SimHashes that only
+ * differ in a few bits, while unrelated descriptions differ in about half of them.
+ */
+public final class SimHashDeduplication implements DeduplicationStrategy {
+
+    private final int maxDistance;
+    private final int shingleSize;
+
+    /**
+     * @param maxDistance Largest number of differing SimHash bits of duplicates, out of 64.
+     * @param shingleSize Number of words per shingle, 1 for single words only.
+     */
+    public SimHashDeduplication(int maxDistance, int shingleSize) {
+        if (maxDistance < 0 || maxDistance > 64) {
+            throw new IllegalArgumentException("Max distance must be between 0 and 64");
+        }
+        if (shingleSize < 1) {
+            throw new IllegalArgumentException("Shingle size must be at least 1");
+        }
+        this.maxDistance = maxDistance;
+        this.shingleSize = shingleSize;
+    }
+
+    @Override
+    public IncidentFingerprint fingerprint(String title, String description) {
+        return IncidentFingerprint.of(TextNormalizer.normalizeTitle(title), null);
+    }
+
+    @Override
+    public long signature(String title, String description) {
+        String normalized = TextNormalizer.normalizeDescription(description);
+        if (normalized == null || normalized.isEmpty()) {
+            return 0;
+        }
+        String[] words = normalized.split(" ");
+        int[] votes = new int[Long.SIZE];
+        // Single words as well as shingles, so one changed word in a short description moves few of the votes
+        for (int start = 0; start < words.length; start++) {
+            long h = TextNormalizer.hash(words[start], 0xCBF29CE484222325L);
+            vote(votes, h);
+            if (shingleSize > 1 && start + shingleSize <= words.length) {
+                for (int i = start + 1; i < start + shingleSize; i++) {
+                    h = TextNormalizer.hash(words[i], h);
+                }
+                vote(votes, h);
+            }
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (votes[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+    private static void vote(int[] votes, long hash) {
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            votes[bit] += (hash >>> bit & 1) == 0 ? -1 : 1;
+        }
+    }
+
+    @Override
+    public boolean isDuplicate(Incident existing, long existingSignature, Incident candidate, long candidateSignature) {
+        return Long.bitCount(existingSignature ^ candidateSignature) <= maxDistance;
+    }
+}
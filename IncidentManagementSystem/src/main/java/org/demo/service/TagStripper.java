@@ -0,0 +1,68 @@
+package org.demo.service;
+
+/**
+ * Single-pass replacement for {@code input.replaceAll("<[^>]*>", "").trim()}.
+ * Produces exactly the same output as the regex, without compiling a pattern or allocating a matcher per call.
+ *
+ * <p>Input without a {@code <} is only trimmed, which returns the input itself when there is nothing to trim.
+ * Otherwise the text between tags is copied into a per-thread buffer that is reused across calls.
+ */
+final class TagStripper {
+
+    // Larger buffers are dropped after use so one huge description does not stay reachable per thread
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private TagStripper() {
+    }
+
+    /**
+     * Removes everything from a {@code <} up to and including the next {@code >}, then trims the result.
+     * An unclosed {@code <} is kept along with the rest of the text, as the regex does.
+     *
+     * @param input The string to strip.
+     * @return The stripped and trimmed string.
+     */
+    static String strip(String input) {
+        int open = input.indexOf('<');
+        if (open < 0) {
+            return input.trim();
+        }
+        int close = input.indexOf('>', open + 1);
+        if (close < 0) {
+            return input.trim();
+        }
+
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        int copyFrom = 0;
+        do {
+            buffer.append(input, copyFrom, open);
+            copyFrom = close + 1;
+            open = input.indexOf('<', copyFrom);
+            // No '>' after the first unclosed '<' means no later '<' is closed either
+            close = open < 0 ? -1 : input.indexOf('>', open + 1);
+        } while (close >= 0);
+        buffer.append(input, copyFrom, input.length());
+
+        String result = trim(buffer);
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    // Same definition of whitespace as String.trim()
+    private static String trim(StringBuilder buffer) {
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && buffer.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && buffer.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return buffer.substring(start, end);
+    }
+}
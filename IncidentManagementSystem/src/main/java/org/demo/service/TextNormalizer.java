@@ -0,0 +1,98 @@
+package org.demo.service;
+
+/**
+ * Reduces incident text to what stays the same between reports of the same problem, for
+ * {@link NormalizedDeduplication} and {@link SimHashDeduplication}.
+ *
+ * <p>Text is split into words of letters, digits and the characters {@code - _ . : / +} inside them, so timestamps,
+ * UUIDs, IP addresses and paths are single words. Words are lowercased and joined by single spaces, and everything
+ * else is dropped. Volatile words are replaced by {@code #}: in descriptions every word containing a digit, in titles
+ * only identifiers of at least 8 characters with at least 4 digits, such as timestamps and UUIDs, so
+ * "Disk full on web-12" and "Disk full on web-13" stay different incidents.
+ */
+final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * @param title The sanitized title.
+     * @return The normalized title.
+     */
+    static String normalizeTitle(String title) {
+        return normalize(title, 8, 4);
+    }
+
+    /**
+     * @param description The sanitized description, may be null.
+     * @return The normalized description, or null for none.
+     */
+    static String normalizeDescription(String description) {
+        return normalize(description, 1, 1);
+    }
+
+    private static String normalize(String text, int minMaskedLength, int minMaskedDigits) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            int end = i;
+            int digits = 0;
+            while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || isInnerSeparator(text.charAt(i)))) {
+                char c = text.charAt(i);
+                digits += Character.isDigit(c) ? 1 : 0;
+                i++;
+                if (Character.isLetterOrDigit(c)) {
+                    end = i; // Words do not end with a separator
+                }
+            }
+            if (!normalized.isEmpty()) {
+                normalized.append(' ');
+            }
+            if (digits >= minMaskedDigits && end - start >= minMaskedLength) {
+                normalized.append('#');
+            } else {
+                for (int j = start; j < end; j++) {
+                    normalized.append(Character.toLowerCase(text.charAt(j)));
+                }
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isInnerSeparator(char c) {
+        return c == '-' || c == '_' || c == '.' || c == ':' || c == '/' || c == '+';
+    }
+
+    /**
+     * Continues a 64-bit FNV-1a hash over a string, finished with an avalanche so every bit depends on every char.
+     *
+     * @param value The string to hash.
+     * @param seed The hash so far, or any seed to start from.
+     * @return The hash including the string.
+     */
+    static long hash(String value, long seed) {
+        long h = seed;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= (long) value.length() << 48;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,321 @@
+package org.demo.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.demo.IncidentManagementApplication;
+import org.demo.controller.IncidentSmile;
+import org.demo.model.Incident;
+import org.demo.service.IncidentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a cluster of several nodes on localhost, each a full application on its own port.
+ */
+class ClusterIntegrationTest {
+
+    private static final int SHARDS = 16;
+    private static final int INCIDENTS = 60;
+    private static final String SECRET = "cluster-test-secret";
+
+    @TempDir
+    Path directory;
+
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private String startNode(String seed, String... properties) {
+        List<String> args = new ArrayList<>(List.of("--server.port=0", "--incident.cluster.enabled=true",
+                "--incident.store.shards=" + SHARDS, "--incident.cluster.secret=" + SECRET,
+                "--management.endpoints.web.exposure.include=health"));
+        args.addAll(List.of(properties));
+        if (seed != null) {
+            args.add("--incident.cluster.seed=" + seed);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(IncidentManagementApplication.class)
+                .run(args.toArray(String[]::new));
+        nodes.add(context);
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private HttpResponse<String> send(String node, String method, String path, String body, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + path))
+                .header("Content-Type", "application/json")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String incidentJson(int i) {
+        return "{\"title\":\"Title " + i + "\",\"description\":\"Description " + i + "\"}";
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(20);
+        }
+    }
+
+    // The nodes storing an incident, owner and followers alike
+    private int copiesOf(long id) {
+        return (int) nodes.stream()
+                .filter(node -> node.getBean(IncidentService.class).getIncidentById(id).isPresent())
+                .count();
+    }
+
+    @Test
+    void testStaticClusterWithMoreMembersThanShardsFailsToStart() {
+        Exception exception = assertThrows(Exception.class, () -> new SpringApplicationBuilder(IncidentManagementApplication.class)
+                .run("--server.port=0", "--incident.cluster.enabled=true", "--incident.store.shards=1",
+                        "--incident.cluster.secret=" + SECRET,
+                        "--incident.cluster.members=http://localhost:1,http://localhost:2"));
+        Throwable cause = exception;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        assertTrue(cause.getMessage().contains("incident.store.shards"), cause.getMessage());
+    }
+
+    @Test
+    void testNodesPartitionForwardAndReplicateIncidents() throws Exception {
+        String first = startNode(null);
+        List<String> urls = new ArrayList<>(List.of(first, startNode(first), startNode(first)));
+
+        HttpResponse<String> members = send(urls.get(2), "GET", "/internal/cluster/members", null,
+                ClusterClient.SECRET_HEADER, SECRET);
+        assertEquals(Set.copyOf(urls), Set.copyOf(objectMapper.readValue(members.body(), new TypeReference<List<String>>() {
+        })));
+
+        // Only nodes presenting the shared secret may change the cluster or skip routing
+        assertEquals(401, send(urls.get(0), "POST", "/internal/cluster/join?node=http://localhost:1", null).statusCode());
+        assertEquals(401, send(urls.get(0), "PUT", "/internal/cluster/members", "[\"http://localhost:1\"]",
+                ClusterClient.SECRET_HEADER, "guess").statusCode());
+        assertEquals(401, send(urls.get(0), "GET", "/api/incidents", null, ClusterClient.FORWARDED_HEADER, "true").statusCode());
+        assertEquals(Set.copyOf(urls), Set.copyOf(nodes.get(0).getBean(ClusterMembership.class).getRing().getMembers()));
+
+        // Created through any node, each incident lands on the owner of its shard and one follower
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < INCIDENTS; i++) {
+            HttpResponse<String> created = send(urls.get(i % urls.size()), "POST", "/api/incidents", incidentJson(i));
+            assertEquals(201, created.statusCode());
+            ids.add(objectMapper.readTree(created.body()).get("id").asLong());
+        }
+        assertEquals(INCIDENTS, new HashSet<>(ids).size());
+        for (long id : ids) {
+            await(() -> copiesOf(id) == 2, "Incident " + id + " is stored by its owner and one follower");
+        }
+
+        // Duplicates are found whichever node they are sent to
+        for (String url : urls) {
+            HttpResponse<String> duplicate = send(url, "POST", "/api/incidents", incidentJson(7));
+            assertEquals(ids.get(7), objectMapper.readTree(duplicate.body()).get("id").asLong());
+        }
+
+        // Every node serves every incident and the merged list
+        for (String url : urls) {
+            for (long id : ids.subList(0, 10)) {
+                assertEquals(200, send(url, "GET", "/api/incidents/" + id, null).statusCode());
+            }
+            List<Incident> all = objectMapper.readValue(send(url, "GET", "/api/incidents", null).body(),
+                    new TypeReference<List<Incident>>() {
+                    });
+            assertEquals(ids.stream().sorted().toList(), all.stream().map(Incident::getId).toList());
+            HttpResponse<String> page = send(url, "GET", "/api/incidents?limit=25", null);
+            assertEquals(25, objectMapper.readTree(page.body()).size());
+            assertEquals(String.valueOf(ids.stream().sorted().toList().get(24)), page.headers().firstValue("X-Next-After").orElseThrow());
+            Map<String, Long> stats = objectMapper.readValue(send(url, "GET", "/api/incidents/stats", null).body(),
+                    new TypeReference<Map<String, Long>>() {
+                    });
+            assertEquals(INCIDENTS, stats.get("OPEN"));
+
+            JsonNode hits = objectMapper.readTree(send(url, "GET", "/api/incidents/search?q=Description+7", null).body());
+            assertEquals(1, hits.size());
+            assertEquals(ids.get(7), hits.get(0).get("incident").get("id").asLong());
+            Set<Long> found = new HashSet<>();
+            for (int offset = 0; offset < INCIDENTS; offset += 20) {
+                for (JsonNode hit : objectMapper.readTree(send(url, "GET", "/api/incidents/search?q=title&limit=20&offset=" + offset, null).body())) {
+                    found.add(hit.get("incident").get("id").asLong());
+                }
+            }
+            assertEquals(Set.copyOf(ids), found);
+        }
+
+        // Updates and deletes go to the owner and reach the follower
+        long updatedId = ids.get(3);
+        HttpResponse<String> updated = send(urls.get(1), "PUT", "/api/incidents/" + updatedId,
+                "{\"title\":\"Updated\",\"description\":\"Updated\",\"status\":\"CLOSED\"}");
+        assertEquals(200, updated.statusCode());
+        await(() -> nodes.stream().filter(node -> node.getBean(IncidentService.class).getIncidentById(updatedId)
+                .map(incident -> incident.getStatus() == Incident.Status.CLOSED).orElse(false)).count() == 2,
+                "The update is replicated");
+        // Pages are read from the owners, so each incident appears once in its current state
+        for (String url : urls) {
+            List<Incident> closed = objectMapper.readValue(send(url, "GET", "/api/incidents?status=CLOSED", null).body(),
+                    new TypeReference<List<Incident>>() {
+                    });
+            assertEquals(List.of(updatedId), closed.stream().map(Incident::getId).toList());
+        }
+        long deletedId = ids.get(4);
+        assertEquals(204, send(urls.get(2), "DELETE", "/api/incidents/" + deletedId, null).statusCode());
+        await(() -> copiesOf(deletedId) == 0, "The deletion is replicated");
+
+        // Batches are split by owner and answered in their original order
+        HttpResponse<String> batch = send(urls.get(0), "POST", "/api/incidents/batch",
+                "[" + incidentJson(100) + "," + incidentJson(5) + ",{\"title\":\"\"}," + incidentJson(101) + "]");
+        assertEquals(200, batch.statusCode());
+        JsonNode results = objectMapper.readTree(batch.body());
+        assertEquals(List.of("CREATED", "DUPLICATE", "INVALID", "CREATED"),
+                List.of(results.get(0).get("outcome").asText(), results.get(1).get("outcome").asText(),
+                        results.get(2).get("outcome").asText(), results.get(3).get("outcome").asText()));
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+        }
+        assertEquals(ids.get(5), results.get(1).get("id").asLong());
+
+        // A Smile stream longer than a batch is split a batch at a time, each item created on its owner
+        ObjectMapper smile = IncidentSmile.createMapper();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (SequenceWriter writer = smile.writer().writeValues(stream)) {
+            writer.write(new Incident(null, "Title 6", "Description 6", null));
+            for (int i = 0; i < IncidentService.MAX_BATCH_SIZE + 200; i++) {
+                writer.write(new Incident(null, "Streamed " + i, "Description " + i, null));
+            }
+        }
+        HttpResponse<byte[]> streamed = httpClient.send(HttpRequest.newBuilder(URI.create(urls.get(1) + "/api/incidents/batch"))
+                .header("Content-Type", IncidentSmile.MEDIA_TYPE_VALUE)
+                .header("Accept", IncidentSmile.MEDIA_TYPE_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(stream.toByteArray()))
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, streamed.statusCode());
+        JsonNode streamedResults = smile.readTree(streamed.body());
+        assertEquals(IncidentService.MAX_BATCH_SIZE + 201, streamedResults.size());
+        assertEquals(ids.get(6), streamedResults.get(0).get("id").asLong());
+        for (int i = 1; i < streamedResults.size(); i++) {
+            assertEquals(i, streamedResults.get(i).get("index").asInt());
+            long id = streamedResults.get(i).get("id").asLong();
+            if (i % 100 == 0) {
+                await(() -> copiesOf(id) == 2, "Streamed incident " + id + " is stored by its owner and one follower");
+            }
+        }
+    }
+
+    @Test
+    void testJoiningNodeTakesOverShards() throws Exception {
+        String first = startNode(null);
+        List<String> urls = new ArrayList<>(List.of(first, startNode(first), startNode(first)));
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < INCIDENTS; i++) {
+            ids.add(objectMapper.readTree(send(urls.get(0), "POST", "/api/incidents", incidentJson(i)).body()).get("id").asLong());
+        }
+        for (long id : ids) {
+            await(() -> copiesOf(id) == 2, "Incident " + id + " is replicated");
+        }
+
+        urls.add(startNode(urls.get(1)));
+
+        // The shards moved before the join completed, and nodes dropped the shards they no longer hold
+        IncidentService joined = nodes.get(3).getBean(IncidentService.class);
+        assertTrue(ids.stream().anyMatch(id -> joined.getIncidentById(id).isPresent()), "The new node holds some shards");
+        for (long id : ids) {
+            assertEquals(2, copiesOf(id), "Incident " + id + " is stored by its owner and one follower");
+        }
+        for (String url : urls) {
+            List<Incident> all = objectMapper.readValue(send(url, "GET", "/api/incidents", null).body(),
+                    new TypeReference<List<Incident>>() {
+                    });
+            assertEquals(INCIDENTS, all.size());
+        }
+
+        // New incidents of moved shards get fresh IDs from their new owner
+        Set<Long> newIds = new HashSet<>(ids);
+        for (int i = INCIDENTS; i < INCIDENTS + 20; i++) {
+            HttpResponse<String> created = send(urls.get(3), "POST", "/api/incidents", incidentJson(i));
+            assertEquals(201, created.statusCode());
+            assertTrue(newIds.add(objectMapper.readTree(created.body()).get("id").asLong()), "IDs are not reused");
+        }
+    }
+
+    @Test
+    void testArchivedIncidentsAreRoutedAndGathered() throws Exception {
+        String first = startNode(null, archiveOf(0));
+        List<String> urls = List.of(first, startNode(first, archiveOf(1)), startNode(first, archiveOf(2)));
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < INCIDENTS; i++) {
+            ids.add(objectMapper.readTree(send(urls.get(0), "POST", "/api/incidents", incidentJson(i)).body()).get("id").asLong());
+        }
+        for (long id : ids) {
+            assertEquals(200, send(urls.get(1), "PUT", "/api/incidents/" + id,
+                    "{\"title\":\"Closed\",\"description\":\"Closed\",\"status\":\"CLOSED\"}").statusCode());
+        }
+        for (long id : ids) {
+            await(() -> nodes.stream().filter(node -> node.getBean(IncidentService.class).getIncidentById(id)
+                    .map(incident -> incident.getStatus() == Incident.Status.CLOSED).orElse(false)).count() == 2,
+                    "Incident " + id + " is closed on its owner and its follower");
+        }
+
+        // Every node archives the incidents it holds; each shard is held by two of the three, so some node lacks some
+        for (ConfigurableApplicationContext node : nodes) {
+            IncidentService service = node.getBean(IncidentService.class);
+            await(() -> {
+                service.archiveClosedIncidents(null, Duration.ZERO, IncidentService.MAX_BATCH_SIZE);
+                return service.countIncidents(Incident.Status.CLOSED) == 0;
+            }, "The node archives its closed incidents");
+        }
+        assertTrue(nodes.stream().anyMatch(node -> node.getBean(IncidentService.class)
+                .getArchivedIncidents(null, INCIDENTS).size() < INCIDENTS));
+
+        List<Long> sorted = ids.stream().sorted().toList();
+        for (String url : urls) {
+            for (long id : ids) {
+                assertEquals(200, send(url, "GET", "/api/incidents/archive/" + id, null).statusCode());
+            }
+            HttpResponse<String> page = send(url, "GET", "/api/incidents/archive?after=" + sorted.get(9) + "&limit=10", null);
+            assertEquals(sorted.subList(10, 20), objectMapper.readValue(page.body(), new TypeReference<List<Incident>>() {
+            }).stream().map(Incident::getId).toList());
+            assertEquals(String.valueOf(sorted.get(19)), page.headers().firstValue("X-Next-After").orElseThrow());
+            List<Incident> all = objectMapper.readValue(send(url, "GET", "/api/incidents/archive?limit=" + INCIDENTS, null).body(),
+                    new TypeReference<List<Incident>>() {
+                    });
+            assertEquals(sorted, all.stream().map(Incident::getId).toList());
+        }
+    }
+
+    private String[] archiveOf(int node) {
+        return new String[]{"--incident.retention.enabled=true", "--incident.retention.directory=" + directory.resolve("node-" + node)};
+    }
+}
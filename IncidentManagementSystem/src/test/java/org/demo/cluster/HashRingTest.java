@@ -0,0 +1,59 @@
+package org.demo.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashRingTest {
+
+    private static final int SHARDS = 1024;
+
+    @Test
+    void testReplicasAreDistinctMembers() {
+        HashRing ring = new HashRing(List.of("http://a", "http://b", "http://c"), 64);
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            List<String> replicas = ring.replicasOf(shard, 2);
+            assertEquals(2, replicas.size());
+            assertTrue(!replicas.get(0).equals(replicas.get(1)));
+            assertTrue(ring.getMembers().containsAll(replicas));
+        }
+        assertEquals(3, ring.replicasOf(0, 5).size());
+        assertTrue(new HashRing(List.of(), 64).replicasOf(0, 2).isEmpty());
+    }
+
+    @Test
+    void testSpreadsShardsEvenly() {
+        HashRing ring = new HashRing(List.of("http://a", "http://b", "http://c", "http://d"), 64);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            owned.merge(ring.replicasOf(shard, 1).get(0), 1, Integer::sum);
+        }
+        assertEquals(4, owned.size());
+        owned.values().forEach(count -> assertTrue(count > SHARDS / 8, "Uneven ownership " + owned));
+    }
+
+    @Test
+    void testJoiningNodeOnlyTakesOverItsShare() {
+        HashRing before = new HashRing(List.of("http://a", "http://b", "http://c"), 64);
+        HashRing after = new HashRing(List.of("http://a", "http://b", "http://c", "http://d"), 64);
+
+        int moved = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            String previousOwner = before.replicasOf(shard, 1).get(0);
+            String owner = after.replicasOf(shard, 1).get(0);
+            if (!owner.equals(previousOwner)) {
+                assertEquals("http://d", owner, "Shards only move to the new node");
+                moved++;
+            }
+        }
+        // About a quarter of the shards move, instead of most of them as with hashing modulo the node count
+        assertTrue(moved > SHARDS / 8 && moved < SHARDS * 3 / 8, moved + " shards moved");
+    }
+}
@@ -1,24 +1,53 @@
 package org.demo.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.demo.config.ResponseCacheConfig;
+import org.demo.config.SmileConfig;
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.exception.VersionConflictException;
+import org.demo.model.BatchItemResult;
 import org.demo.model.Incident;
+import org.demo.model.SearchHit;
 import org.demo.service.IncidentService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(IncidentController.class)
+@Import({ResponseCacheConfig.class, SmileConfig.class})
 class IncidentControllerTest {
 
     @Autowired
@@ -47,13 +76,271 @@ class IncidentControllerTest {
         Incident incident1 = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN);
         Incident incident2 = new Incident(2L, "Title 2", "Description 2", Incident.Status.CLOSED);
 
-        Mockito.when(incidentService.getAllIncidents()).thenReturn(Arrays.asList(incident1, incident2));
+        Mockito.when(incidentService.streamIncidents(null, null)).thenReturn(Stream.of(incident1, incident2));
 
         mockMvc.perform(get("/api/incidents"))
                 .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.length()").value(2))
                 .andExpect(jsonPath("$[0].title").value("Title 1"))
                 .andExpect(jsonPath("$[1].title").value("Title 2"));
+        Mockito.verify(incidentService, Mockito.never()).getAllIncidents();
+    }
+
+    @Test
+    void testGetAllIncidentsGzippedWhileStreamingOnEveryRead() throws Exception {
+        List<Incident> incidents = IntStream.rangeClosed(1, 100)
+                .mapToObj(i -> new Incident((long) i, "Title " + i, "Description ".repeat(10) + i, Incident.Status.OPEN, 1L))
+                .toList();
+        Mockito.when(incidentService.streamIncidents(null, null)).thenAnswer(invocation -> incidents.stream());
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mockMvc.perform(get("/api/incidents").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                    .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                    .andReturn();
+            String json = new String(new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())).readAllBytes(),
+                    StandardCharsets.UTF_8);
+            assertThat(json).startsWith("[{\"id\":1,").endsWith("\"Title 100\",\"description\":\"" + "Description ".repeat(10) + "100\",\"status\":\"OPEN\",\"version\":1}]");
+        }
+        Mockito.verify(incidentService, Mockito.times(2)).streamIncidents(null, null);
+        Mockito.verify(incidentService, Mockito.never()).getAllIncidents();
+    }
+
+    @Test
+    void testGetIncidentsPage() throws Exception {
+        Incident incident1 = new Incident(3L, "Title 3", "Description 3", Incident.Status.OPEN);
+        Incident incident2 = new Incident(4L, "Title 4", "Description 4", Incident.Status.OPEN);
+
+        Mockito.when(incidentService.getIncidents(2L, 2, Incident.Status.OPEN)).thenReturn(List.of(incident1, incident2));
+
+        mockMvc.perform(get("/api/incidents").param("after", "2").param("limit", "2").param("status", "OPEN"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IncidentController.NEXT_CURSOR_HEADER, "4"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(3));
+    }
+
+    @Test
+    void testGetIncidentsCreatedInTimeRange() throws Exception {
+        Instant since = Instant.parse("2024-05-01T10:00:00Z");
+        Instant until = Instant.parse("2024-05-01T10:15:00Z");
+        Instant createdAt = Instant.parse("2024-05-01T10:05:00.250Z");
+        List<Incident> page = List.of(
+                Incident.builder().id(2002L).title("Title 2002").description("Description 2002").status(Incident.Status.OPEN)
+                        .version(1L).createdAt(since).build(),
+                Incident.builder().id(2001L).title("Title 2001").description("Description 2001").status(Incident.Status.OPEN)
+                        .version(1L).createdAt(createdAt).build());
+        Mockito.when(incidentService.getIncidentsCreatedBetween(since, until, null, 2, null)).thenReturn(page);
+
+        mockMvc.perform(get("/api/incidents").param("since", "2024-05-01T10:00:00Z").param("until", "2024-05-01T10:15:00Z")
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IncidentController.NEXT_CURSOR_HEADER, "2001"))
+                .andExpect(header().string(IncidentController.NEXT_SINCE_HEADER, "2024-05-01T10:05:00.250Z"))
+                .andExpect(jsonPath("$[0].id").value(2002))
+                .andExpect(jsonPath("$[1].createdAt").value("2024-05-01T10:05:00.250Z"));
+        Mockito.verify(incidentService, Mockito.never()).getIncidents(any(), anyInt(), any());
+    }
+
+    @Test
+    void testGetIncidentsCreatedInReversedTimeRange() throws Exception {
+        Instant since = Instant.parse("2024-05-01T10:15:00Z");
+        Instant until = Instant.parse("2024-05-01T10:00:00Z");
+        Mockito.when(incidentService.getIncidentsCreatedBetween(since, until, null, 100, null))
+                .thenThrow(new IllegalArgumentException("Until must not be before since"));
+
+        mockMvc.perform(get("/api/incidents").param("since", since.toString()).param("until", until.toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Until must not be before since"));
+    }
+
+    @Test
+    void testLargePageIsSentGzippedFromCacheUntilTheStoreChanges() throws Exception {
+        List<Incident> page = IntStream.rangeClosed(1001, 1100)
+                .mapToObj(i -> new Incident((long) i, "Title " + i, "Description ".repeat(10) + i, Incident.Status.OPEN, 1L))
+                .toList();
+        Mockito.when(incidentService.getIncidents(null, 100, null)).thenReturn(page);
+        Mockito.when(incidentService.changeCount()).thenReturn(7L);
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mockMvc.perform(get("/api/incidents").param("limit", "100").header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                    .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                    .andExpect(header().string(IncidentController.NEXT_CURSOR_HEADER, "1100"))
+                    .andReturn();
+            String json = new String(new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())).readAllBytes(),
+                    StandardCharsets.UTF_8);
+            assertThat(json).startsWith("[{\"id\":1001,\"title\":\"Title 1001\"").endsWith("\"version\":1}]");
+        }
+        Mockito.verify(incidentService, Mockito.times(1)).getIncidents(null, 100, null);
+
+        Mockito.when(incidentService.changeCount()).thenReturn(8L);
+        mockMvc.perform(get("/api/incidents").param("limit", "100").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+        mockMvc.perform(get("/api/incidents").param("limit", "100").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(jsonPath("$.length()").value(100));
+        Mockito.verify(incidentService, Mockito.times(3)).getIncidents(null, 100, null);
+    }
+
+    @Test
+    void testGetIncidentsWithInvalidLimit() throws Exception {
+        for (int limit : new int[]{0, IncidentService.MAX_PAGE_SIZE + 1}) {
+            Mockito.when(incidentService.getIncidents(null, limit, null))
+                    .thenThrow(new IllegalArgumentException("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE));
+
+            mockMvc.perform(get("/api/incidents").param("limit", String.valueOf(limit)))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(content().string("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE));
+            mockMvc.perform(get("/api/incidents").param("limit", String.valueOf(limit)).accept(IncidentSmile.MEDIA_TYPE))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    void testSearchIncidents() throws Exception {
+        Incident incident1 = new Incident(7L, "Database down", "Description 7", Incident.Status.OPEN);
+        Incident incident2 = new Incident(3L, "Checkout errors", "Database timeouts", Incident.Status.OPEN);
+
+        Mockito.when(incidentService.searchIncidents("database", 10, 2))
+                .thenReturn(List.of(new SearchHit(2.5, incident1), new SearchHit(0.8, incident2)));
+        Mockito.when(incidentService.searchIncidents("database", 0, 100)).thenReturn(List.of(new SearchHit(2.5, incident1)));
+
+        mockMvc.perform(get("/api/incidents/search").param("q", "database").param("offset", "10").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IncidentController.NEXT_OFFSET_HEADER, "12"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].score").value(2.5))
+                .andExpect(jsonPath("$[0].incident.id").value(7))
+                .andExpect(jsonPath("$[1].incident.id").value(3));
+        mockMvc.perform(get("/api/incidents/search").param("q", "database"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(IncidentController.NEXT_OFFSET_HEADER))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void testSearchIncidentsWithBlankQuery() throws Exception {
+        Mockito.when(incidentService.searchIncidents(" ", 0, 100))
+                .thenThrow(new IllegalArgumentException("Query must contain at least one word"));
+
+        mockMvc.perform(get("/api/incidents/search").param("q", " "))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Query must contain at least one word"));
+    }
+
+    @Test
+    void testGetIncidentsLastPageHasNoCursor() throws Exception {
+        Incident incident = new Incident(3L, "Title 3", "Description 3", Incident.Status.OPEN);
+
+        Mockito.when(incidentService.getIncidents(2L, 100, null)).thenReturn(List.of(incident));
+
+        mockMvc.perform(get("/api/incidents").param("after", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(IncidentController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void testGetArchivedIncidents() throws Exception {
+        Incident incident1 = new Incident(4L, "Title 4", "Description 4", Incident.Status.CLOSED);
+        Incident incident2 = new Incident(9L, "Title 9", "Description 9", Incident.Status.CLOSED);
+
+        Mockito.when(incidentService.getArchivedIncidents(2L, 2)).thenReturn(List.of(incident1, incident2));
+        Mockito.when(incidentService.getArchivedIncident(9L)).thenReturn(Optional.of(incident2));
+
+        mockMvc.perform(get("/api/incidents/archive").param("after", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IncidentController.NEXT_CURSOR_HEADER, "9"))
+                .andExpect(jsonPath("$[0].id").value(4))
+                .andExpect(jsonPath("$[1].status").value("CLOSED"));
+        mockMvc.perform(get("/api/incidents/archive/9"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Title 9"));
+        mockMvc.perform(get("/api/incidents/archive/5"))
+                .andExpect(status().isNotFound());
+        Mockito.verify(incidentService, Mockito.never()).getIncidentById(any());
+    }
+
+    @Test
+    void testGetArchivedIncidentsWithInvalidArguments() throws Exception {
+        Mockito.when(incidentService.getArchivedIncidents(null, 0))
+                .thenThrow(new IllegalArgumentException("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE));
+        Mockito.when(incidentService.getArchivedIncident(0L))
+                .thenThrow(new IllegalArgumentException("ID must be a positive non-null value"));
+
+        mockMvc.perform(get("/api/incidents/archive").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE));
+        mockMvc.perform(get("/api/incidents/archive/0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("ID must be a positive non-null value"));
+    }
+
+    @Test
+    void testStreamIncidentsAsNdjson() throws Exception {
+        Incident incident1 = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN);
+        Incident incident2 = new Incident(2L, "Title 2", "Description 2", Incident.Status.CLOSED);
+
+        Mockito.when(incidentService.streamIncidents(null, null)).thenReturn(Stream.of(incident1, incident2));
+
+        MvcResult result = mockMvc.perform(get("/api/incidents").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"id\":1,\"title\":\"Title 1\",\"description\":\"Description 1\",\"status\":\"OPEN\"}\n"
+                                + "{\"id\":2,\"title\":\"Title 2\",\"description\":\"Description 2\",\"status\":\"CLOSED\"}\n"));
+    }
+
+    @Test
+    void testStreamIncidentsWithInvalidLimit() throws Exception {
+        for (String limit : new String[]{"0", "-1", String.valueOf(IncidentService.MAX_PAGE_SIZE + 1)}) {
+            mockMvc.perform(get("/api/incidents").param("limit", limit).accept(MediaType.APPLICATION_NDJSON))
+                    .andExpect(status().isBadRequest());
+        }
+        Mockito.verify(incidentService, Mockito.never()).streamIncidents(any(), any());
+    }
+
+    @Test
+    void testStreamEvents() throws Exception {
+        Incident incident = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN, 1L);
+        Mockito.when(incidentService.subscribeToChanges(eq(4L), any())).thenAnswer(invocation -> {
+            IncidentEventBus.Listener listener = invocation.getArgument(1);
+            listener.onEvent(new IncidentEvent(5, IncidentEvent.Type.CREATED, 1L, incident));
+            listener.onEvent(new IncidentEvent(6, IncidentEvent.Type.DELETED, 1L, null));
+            listener.onClose();
+            return Mockito.mock(IncidentEventBus.Subscription.class);
+        });
+
+        MvcResult result = mockMvc.perform(get("/api/incidents/events").header("Last-Event-ID", "4"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "id:5\nevent:created\ndata:{\"sequence\":5,\"type\":\"CREATED\",\"incidentId\":1,\"incident\":"
+                                + "{\"id\":1,\"title\":\"Title 1\",\"description\":\"Description 1\",\"status\":\"OPEN\",\"version\":1}}\n\n"
+                                + "id:6\nevent:deleted\ndata:{\"sequence\":6,\"type\":\"DELETED\",\"incidentId\":1}\n\n"));
+    }
+
+    @Test
+    void testGetIncidentStats() throws Exception {
+        Mockito.when(incidentService.getStatusCounts()).thenReturn(
+                Map.of(Incident.Status.OPEN, 3L, Incident.Status.IN_PROGRESS, 1L, Incident.Status.CLOSED, 0L));
+
+        mockMvc.perform(get("/api/incidents/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.OPEN").value(3))
+                .andExpect(jsonPath("$.IN_PROGRESS").value(1))
+                .andExpect(jsonPath("$.CLOSED").value(0));
     }
 
     @Test
@@ -67,20 +354,94 @@ class IncidentControllerTest {
                 .andExpect(jsonPath("$.title").value("Title 1"));
     }
 
+    @Test
+    void testGetIncidentByIdSerializesEachVersionOnce() throws Exception {
+        Incident version1 = new Incident(42L, "Title 1", "Description 1", Incident.Status.OPEN, 1L);
+        Mockito.when(incidentService.getIncidentById(42L)).thenReturn(Optional.of(version1));
+        mockMvc.perform(get("/api/incidents/42"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.title").value("Title 1"));
+
+        // The JSON cached for version 1 is sent again, whatever the object holds
+        Mockito.when(incidentService.getIncidentById(42L)).thenReturn(Optional.of(version1.withTitle("Changed")));
+        mockMvc.perform(get("/api/incidents/42"))
+                .andExpect(jsonPath("$.title").value("Title 1"));
+
+        Mockito.when(incidentService.getIncidentById(42L)).thenReturn(Optional.of(version1.withTitle("Title 2").withVersion(2L)));
+        mockMvc.perform(get("/api/incidents/42"))
+                .andExpect(header().string("ETag", "\"2\""))
+                .andExpect(jsonPath("$.title").value("Title 2"));
+    }
+
+    @Test
+    void testGetIncidentByIdNotModified() throws Exception {
+        Incident incident = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN, 3L);
+        Mockito.when(incidentService.getIncidentById(1L)).thenReturn(Optional.of(incident));
+
+        mockMvc.perform(get("/api/incidents/1").header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(content().string(""));
+
+        // The Smile encoding of the same version is a different representation
+        mockMvc.perform(get("/api/incidents/1").header("If-None-Match", "\"3\"").accept(IncidentSmile.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3-smile\""));
+        mockMvc.perform(get("/api/incidents/1").header("If-None-Match", "\"3-smile\"").accept(IncidentSmile.MEDIA_TYPE))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/api/incidents/1").header("If-None-Match", "\"2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().stringValues("ETag", "\"3\""))
+                .andExpect(jsonPath("$.version").value(3));
+    }
+
     @Test
     void testUpdateIncident() throws Exception {
-        Incident incident = new Incident(1L, "Updated Title", "Updated Description", Incident.Status.CLOSED);
-        Mockito.when(incidentService.updateIncident(eq(1L), any(Incident.class))).thenReturn(Optional.of(incident));
+        Incident incident = new Incident(1L, "Updated Title", "Updated Description", Incident.Status.CLOSED, 2L);
+        Mockito.when(incidentService.updateIncident(eq(1L), any(Incident.class), isNull())).thenReturn(Optional.of(incident));
 
         mockMvc.perform(put("/api/incidents/1")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"title\":\"Updated Title\", \"description\":\"Updated Description\", \"status\":\"CLOSED\"}"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""))
                 .andExpect(jsonPath("$.title").value("Updated Title"))
                 .andExpect(jsonPath("$.description").value("Updated Description"))
                 .andExpect(jsonPath("$.status").value("CLOSED"));
     }
 
+    @Test
+    void testUpdateIncidentWithIfMatch() throws Exception {
+        Incident incident = new Incident(1L, "Updated Title", "Updated Description", Incident.Status.CLOSED, 4L);
+        Mockito.when(incidentService.updateIncident(eq(1L), any(Incident.class), eq(3L))).thenReturn(Optional.of(incident));
+        Mockito.when(incidentService.updateIncident(eq(1L), any(Incident.class), eq(2L)))
+                .thenThrow(new VersionConflictException(1L, 2L, 3L));
+
+        mockMvc.perform(put("/api/incidents/1")
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Updated Title\", \"description\":\"Updated Description\", \"status\":\"CLOSED\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+
+        // A tag of the Smile encoding names the same version
+        mockMvc.perform(put("/api/incidents/1")
+                        .header("If-Match", "\"3-smile\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Updated Title\", \"description\":\"Updated Description\", \"status\":\"CLOSED\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(put("/api/incidents/1")
+                        .header("If-Match", "\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Updated Title\", \"description\":\"Updated Description\", \"status\":\"CLOSED\"}"))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().string("ETag", "\"3\""));
+    }
+
     @Test
     void testDeleteIncident() throws Exception {
         Mockito.when(incidentService.deleteIncident(1L)).thenReturn(true);
@@ -88,4 +449,155 @@ class IncidentControllerTest {
         mockMvc.perform(delete("/api/incidents/1"))
                 .andExpect(status().isNoContent());
     }
+
+    @Test
+    void testCreateIncidents() throws Exception {
+        Incident incident = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN);
+        Mockito.when(incidentService.createIncidents(anyList())).thenReturn(List.of(
+                new BatchItemResult(0, BatchItemResult.Outcome.CREATED, 1L, incident, null),
+                BatchItemResult.invalid(1, "Title is mandatory")));
+
+        mockMvc.perform(post("/api/incidents/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"title\":\"Title 1\", \"description\":\"Description 1\"}, {\"description\":\"Description 2\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[0].incident.title").value("Title 1"))
+                .andExpect(jsonPath("$[1].outcome").value("INVALID"))
+                .andExpect(jsonPath("$[1].error").value("Title is mandatory"))
+                .andExpect(jsonPath("$[1].incident").doesNotExist());
+    }
+
+    @Test
+    void testCreateEmptyBatch() throws Exception {
+        Mockito.when(incidentService.createIncidents(List.<Incident>of()))
+                .thenThrow(new IllegalArgumentException("Batch must contain between 1 and " + IncidentService.MAX_BATCH_SIZE + " items"));
+
+        mockMvc.perform(post("/api/incidents/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Batch must contain between 1 and " + IncidentService.MAX_BATCH_SIZE + " items"));
+    }
+
+    @Test
+    void testCreateIncidentEncodedAsSmile() throws Exception {
+        ObjectMapper smile = IncidentSmile.createMapper();
+        Instant occurredAt = Instant.parse("2024-05-01T10:15:30.123Z");
+        Incident created = Incident.builder().id(1L).title("Title 1").description("Description 1")
+                .status(Incident.Status.OPEN).version(1L).occurrences(1L).lastOccurredAt(occurredAt)
+                .createdAt(occurredAt).updatedAt(occurredAt).build();
+        Mockito.when(incidentService.createIncident(any(Incident.class))).thenReturn(created);
+
+        MvcResult result = mockMvc.perform(post("/api/incidents")
+                        .contentType(IncidentSmile.MEDIA_TYPE)
+                        .accept(IncidentSmile.MEDIA_TYPE)
+                        .content(smile.writeValueAsBytes(new Incident(null, "Title 1", "Description 1", Incident.Status.OPEN))))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(IncidentSmile.MEDIA_TYPE))
+                .andReturn();
+
+        JsonNode body = smile.readTree(result.getResponse().getContentAsByteArray());
+        assertThat(body.get("status").isInt()).isTrue();
+        assertThat(body.get("status").intValue()).isEqualTo(Incident.Status.OPEN.ordinal());
+        assertThat(body.get("lastOccurredAt").longValue()).isEqualTo(occurredAt.toEpochMilli());
+        assertThat(smile.treeToValue(body, Incident.class)).isEqualTo(created);
+    }
+
+    @Test
+    void testCreateIncidentsFromSmileSequence() throws Exception {
+        ObjectMapper smile = IncidentSmile.createMapper();
+        List<String> titles = new ArrayList<>();
+        Mockito.when(incidentService.createIncidents(Mockito.<Iterator<Incident>>any())).thenAnswer(invocation -> {
+            Iterator<Incident> incidents = invocation.getArgument(0);
+            List<BatchItemResult> results = new ArrayList<>();
+            while (incidents.hasNext()) {
+                Incident incident = incidents.next();
+                titles.add(incident.getTitle());
+                results.add(new BatchItemResult(results.size(), BatchItemResult.Outcome.CREATED, results.size() + 1L,
+                        incident.withId(results.size() + 1L), null));
+            }
+            return results;
+        });
+
+        // Root-level values one after the other, as a producer writes them without knowing how many will follow
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        try (SequenceWriter writer = smile.writer().writeValues(sequence)) {
+            writer.write(new Incident(null, "Title 1", "Description 1", Incident.Status.OPEN));
+            writer.write(new Incident(null, "Title 2", "Description 2", null));
+        }
+        MvcResult result = mockMvc.perform(post("/api/incidents/batch")
+                        .contentType(IncidentSmile.MEDIA_TYPE)
+                        .accept(IncidentSmile.MEDIA_TYPE)
+                        .content(sequence.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(titles).containsExactly("Title 1", "Title 2");
+        JsonNode results = smile.readTree(result.getResponse().getContentAsByteArray());
+        assertThat(results.size()).isEqualTo(2);
+        assertThat(results.get(1).get("outcome").intValue()).isEqualTo(BatchItemResult.Outcome.CREATED.ordinal());
+        assertThat(results.get(1).get("incident").get("title").textValue()).isEqualTo("Title 2");
+    }
+
+    @Test
+    void testGetIncidentByIdAsSmile() throws Exception {
+        Incident incident = new Incident(5L, "Title 5", "Description 5", Incident.Status.CLOSED, 2L);
+        Mockito.when(incidentService.getIncidentById(5L)).thenReturn(Optional.of(incident));
+
+        MvcResult result = mockMvc.perform(get("/api/incidents/5").accept(IncidentSmile.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2-smile\""))
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(content().contentType(IncidentSmile.MEDIA_TYPE))
+                .andReturn();
+
+        assertThat(IncidentSmile.createMapper().readValue(result.getResponse().getContentAsByteArray(), Incident.class))
+                .isEqualTo(incident);
+    }
+
+    @Test
+    void testGetAllIncidentsAsSmileStreamsFromTheStore() throws Exception {
+        Incident incident1 = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN, 1L);
+        Incident incident2 = new Incident(2L, "Title 2", "Description 2", Incident.Status.CLOSED, 3L);
+        Mockito.when(incidentService.streamIncidents(null, null)).thenReturn(Stream.of(incident1, incident2));
+
+        MvcResult result = mockMvc.perform(get("/api/incidents").accept(IncidentSmile.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                .andExpect(content().contentType(IncidentSmile.MEDIA_TYPE))
+                .andReturn();
+
+        assertThat(IncidentSmile.createMapper().readValue(result.getResponse().getContentAsByteArray(), Incident[].class))
+                .containsExactly(incident1, incident2);
+        Mockito.verify(incidentService, Mockito.never()).getAllIncidents();
+    }
+
+    @Test
+    void testDeleteIncidents() throws Exception {
+        Mockito.when(incidentService.deleteIncidents(List.of(1L, 2L))).thenReturn(List.of(
+                new BatchItemResult(0, BatchItemResult.Outcome.DELETED, 1L, null, null),
+                new BatchItemResult(1, BatchItemResult.Outcome.NOT_FOUND, 2L, null, null)));
+
+        mockMvc.perform(delete("/api/incidents/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value("DELETED"))
+                .andExpect(jsonPath("$[1].outcome").value("NOT_FOUND"));
+    }
+
+    @Test
+    void testDeleteIncidentsWithNullId() throws Exception {
+        Mockito.when(incidentService.deleteIncidents(Arrays.asList(1L, null))).thenReturn(List.of(
+                new BatchItemResult(0, BatchItemResult.Outcome.DELETED, 1L, null, null),
+                BatchItemResult.invalid(1, "ID must be a positive non-null value")));
+
+        mockMvc.perform(delete("/api/incidents/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, null]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value("DELETED"))
+                .andExpect(jsonPath("$[1].outcome").value("INVALID"));
+    }
 }
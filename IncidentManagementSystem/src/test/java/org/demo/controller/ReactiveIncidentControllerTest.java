@@ -0,0 +1,429 @@
+package org.demo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.config.ResponseCacheConfig;
+import org.demo.config.SmileConfig;
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.exception.VersionConflictException;
+import org.demo.model.BatchItemResult;
+import org.demo.model.Incident;
+import org.demo.model.SearchHit;
+import org.demo.service.IncidentService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+@WebFluxTest(ReactiveIncidentController.class)
+@Import({ResponseCacheConfig.class, SmileConfig.class})
+class ReactiveIncidentControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private IncidentService incidentService;
+
+    @Test
+    void testCreateIncident() {
+        Incident incident = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN).withVersion(1L);
+        Mockito.when(incidentService.createIncident(any(Incident.class))).thenReturn(incident);
+
+        webTestClient.post().uri("/api/incidents")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Title 1\", \"description\":\"Description 1\", \"status\":\"OPEN\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("ETag", "\"1\"")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1)
+                .jsonPath("$.title").isEqualTo("Title 1");
+    }
+
+    @Test
+    void testCreateInvalidIncident() {
+        webTestClient.post().uri("/api/incidents")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"\", \"description\":\"Description 1\"}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.title").exists();
+    }
+
+    @Test
+    void testCreateEmptyBatch() {
+        Mockito.when(incidentService.createIncidents(List.<Incident>of()))
+                .thenThrow(new IllegalArgumentException("Batch must contain between 1 and " + IncidentService.MAX_BATCH_SIZE + " items"));
+
+        webTestClient.post().uri("/api/incidents/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[]")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Batch must contain between 1 and " + IncidentService.MAX_BATCH_SIZE + " items");
+    }
+
+    @Test
+    void testGetAllIncidentsStreamsFromTheStore() {
+        Incident incident1 = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN);
+        Incident incident2 = new Incident(2L, "Title 2", "Description 2", Incident.Status.CLOSED);
+        Mockito.when(incidentService.streamIncidents(null, null)).thenReturn(Stream.of(incident1, incident2));
+
+        webTestClient.get().uri("/api/incidents")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Encoding")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].title").isEqualTo("Title 1")
+                .jsonPath("$[1].title").isEqualTo("Title 2");
+        Mockito.verify(incidentService, Mockito.never()).getAllIncidents();
+    }
+
+    @Test
+    void testGetAllIncidentsGzippedWhileStreamingOnEveryRead() throws IOException {
+        List<Incident> incidents = IntStream.rangeClosed(1, 1000)
+                .mapToObj(i -> new Incident((long) i, "Title " + i, "Description ".repeat(10) + i, Incident.Status.OPEN, 1L))
+                .toList();
+        Mockito.when(incidentService.streamIncidents(null, null)).thenAnswer(invocation -> incidents.stream());
+
+        for (int i = 0; i < 2; i++) {
+            byte[] body = webTestClient.get().uri("/api/incidents")
+                    .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .expectBody(byte[].class)
+                    .returnResult().getResponseBody();
+            String json = new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(json).startsWith("[{\"id\":1,").endsWith("\"Title 1000\",\"description\":\"" + "Description ".repeat(10) + "1000\",\"status\":\"OPEN\",\"version\":1}]");
+            assertThat(new ObjectMapper().readTree(json).size()).isEqualTo(1000);
+        }
+        Mockito.verify(incidentService, Mockito.times(2)).streamIncidents(null, null);
+        Mockito.verify(incidentService, Mockito.never()).getAllIncidents();
+    }
+
+    @Test
+    void testCreateIncidentsFromSmileArrayAndGetAsSmile() throws IOException {
+        ObjectMapper smile = IncidentSmile.createMapper();
+        Mockito.when(incidentService.createIncidents(Mockito.<Iterator<Incident>>any())).thenAnswer(invocation -> {
+            Iterator<Incident> incidents = invocation.getArgument(0);
+            List<BatchItemResult> results = new ArrayList<>();
+            while (incidents.hasNext()) {
+                Incident incident = incidents.next().withId(results.size() + 1L);
+                results.add(new BatchItemResult(results.size(), BatchItemResult.Outcome.CREATED, incident.getId(), incident, null));
+            }
+            return results;
+        });
+
+        byte[] body = webTestClient.post().uri("/api/incidents/batch")
+                .contentType(IncidentSmile.MEDIA_TYPE)
+                .accept(IncidentSmile.MEDIA_TYPE)
+                .bodyValue(smile.writeValueAsBytes(List.of(
+                        new Incident(null, "Title 1", "Description 1", Incident.Status.OPEN),
+                        new Incident(null, "Title 2", "Description 2", Incident.Status.OPEN))))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+        JsonNode results = smile.readTree(body);
+        assertThat(results.size()).isEqualTo(2);
+        assertThat(results.get(1).get("id").longValue()).isEqualTo(2L);
+
+        Incident incident = new Incident(2L, "Title 2", "Description 2", Incident.Status.IN_PROGRESS, 3L);
+        Mockito.when(incidentService.getIncidentById(2L)).thenReturn(Optional.of(incident));
+        byte[] encoded = webTestClient.get().uri("/api/incidents/2")
+                .accept(IncidentSmile.MEDIA_TYPE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"3-smile\"")
+                .expectHeader().valueEquals("Vary", "Accept")
+                .expectHeader().contentType(IncidentSmile.MEDIA_TYPE)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+        assertThat(smile.readTree(encoded).get("status").intValue()).isEqualTo(Incident.Status.IN_PROGRESS.ordinal());
+        assertThat(smile.readValue(encoded, Incident.class)).isEqualTo(incident);
+    }
+
+    @Test
+    void testGetIncidentsPage() {
+        Incident incident1 = new Incident(3L, "Title 3", "Description 3", Incident.Status.OPEN);
+        Incident incident2 = new Incident(4L, "Title 4", "Description 4", Incident.Status.OPEN);
+        Mockito.when(incidentService.getIncidents(2L, 2, Incident.Status.OPEN)).thenReturn(List.of(incident1, incident2));
+
+        webTestClient.get().uri("/api/incidents?after=2&limit=2&status=OPEN")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(IncidentController.NEXT_CURSOR_HEADER, "4")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").isEqualTo(3);
+    }
+
+    @Test
+    void testGetIncidentsWithInvalidLimit() {
+        for (int limit : new int[]{0, IncidentService.MAX_PAGE_SIZE + 1}) {
+            Mockito.when(incidentService.getIncidents(null, limit, null))
+                    .thenThrow(new IllegalArgumentException("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE));
+
+            webTestClient.get().uri("/api/incidents?limit=" + limit)
+                    .exchange()
+                    .expectStatus().isBadRequest()
+                    .expectBody(String.class).isEqualTo("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE);
+            webTestClient.get().uri("/api/incidents?limit=" + limit)
+                    .accept(IncidentSmile.MEDIA_TYPE)
+                    .exchange()
+                    .expectStatus().isBadRequest();
+        }
+    }
+
+    @Test
+    void testGetIncidentsCreatedInReversedTimeRange() {
+        Instant since = Instant.parse("2024-05-01T10:15:00Z");
+        Instant until = Instant.parse("2024-05-01T10:00:00Z");
+        Mockito.when(incidentService.getIncidentsCreatedBetween(since, until, null, 100, null))
+                .thenThrow(new IllegalArgumentException("Until must not be before since"));
+
+        webTestClient.get().uri("/api/incidents?since=" + since + "&until=" + until)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Until must not be before since");
+    }
+
+    @Test
+    void testSearchIncidents() {
+        Incident incident = new Incident(7L, "Database down", "Description 7", Incident.Status.OPEN);
+        Mockito.when(incidentService.searchIncidents("database", 0, 1)).thenReturn(List.of(new SearchHit(2.5, incident)));
+
+        webTestClient.get().uri("/api/incidents/search?q=database&limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(IncidentController.NEXT_OFFSET_HEADER, "1")
+                .expectBody()
+                .jsonPath("$[0].score").isEqualTo(2.5)
+                .jsonPath("$[0].incident.title").isEqualTo("Database down");
+    }
+
+    @Test
+    void testSearchIncidentsWithBlankQuery() {
+        Mockito.when(incidentService.searchIncidents(" ", 0, 100))
+                .thenThrow(new IllegalArgumentException("Query must contain at least one word"));
+
+        webTestClient.get().uri(uri -> uri.path("/api/incidents/search").queryParam("q", " ").build())
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Query must contain at least one word");
+    }
+
+    @Test
+    void testGetArchivedIncidents() {
+        Incident incident = new Incident(9L, "Title 9", "Description 9", Incident.Status.CLOSED);
+        Mockito.when(incidentService.getArchivedIncidents(null, 100)).thenReturn(List.of(incident));
+        Mockito.when(incidentService.getArchivedIncident(9L)).thenReturn(Optional.of(incident));
+
+        webTestClient.get().uri("/api/incidents/archive")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(IncidentController.NEXT_CURSOR_HEADER)
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo(9);
+        webTestClient.get().uri("/api/incidents/archive/9")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("CLOSED");
+        webTestClient.get().uri("/api/incidents/archive/5")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testGetArchivedIncidentsWithInvalidArguments() {
+        Mockito.when(incidentService.getArchivedIncidents(null, 0))
+                .thenThrow(new IllegalArgumentException("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE));
+        Mockito.when(incidentService.getArchivedIncident(0L))
+                .thenThrow(new IllegalArgumentException("ID must be a positive non-null value"));
+
+        webTestClient.get().uri("/api/incidents/archive?limit=0")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Limit must be between 1 and " + IncidentService.MAX_PAGE_SIZE);
+        webTestClient.get().uri("/api/incidents/archive/0")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("ID must be a positive non-null value");
+    }
+
+    @Test
+    void testStreamIncidentsAsNdjson() {
+        Incident incident1 = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN);
+        Incident incident2 = new Incident(2L, "Title 2", "Description 2", Incident.Status.OPEN);
+        Mockito.when(incidentService.streamIncidents(null, null)).thenReturn(Stream.of(incident1, incident2));
+
+        String body = webTestClient.get().uri("/api/incidents?limit=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        assertThat(body).isEqualTo("{\"id\":1,\"title\":\"Title 1\",\"description\":\"Description 1\",\"status\":\"OPEN\"}\n");
+    }
+
+    @Test
+    void testStreamIncidentsWithInvalidLimit() {
+        for (int limit : new int[]{0, -1, IncidentService.MAX_PAGE_SIZE + 1}) {
+            webTestClient.get().uri("/api/incidents?limit=" + limit)
+                    .accept(MediaType.APPLICATION_NDJSON)
+                    .exchange()
+                    .expectStatus().isBadRequest();
+        }
+        Mockito.verify(incidentService, Mockito.never()).streamIncidents(any(), any());
+    }
+
+    @Test
+    void testStreamEvents() {
+        Incident incident = new Incident(7L, "Title 7", "Description 7", Incident.Status.OPEN).withVersion(1L);
+        IncidentEventBus.Subscription subscription = Mockito.mock(IncidentEventBus.Subscription.class);
+        Mockito.when(incidentService.subscribeToChanges(eq(3L), any())).thenAnswer(invocation -> {
+            IncidentEventBus.Listener listener = invocation.getArgument(1);
+            new Thread(() -> {
+                try {
+                    listener.onEvent(new IncidentEvent(4, IncidentEvent.Type.CREATED, 7, incident));
+                    listener.onResync(9);
+                    listener.onClose();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).start();
+            return subscription;
+        });
+
+        Flux<ServerSentEvent<String>> events = webTestClient.get().uri("/api/incidents/events")
+                .header("Last-Event-ID", "3")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                })
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertThat(event.id()).isEqualTo("4");
+                    assertThat(event.event()).isEqualTo("created");
+                    assertThat(event.data()).contains("\"incidentId\":7").contains("\"type\":\"CREATED\"");
+                })
+                .assertNext(event -> {
+                    assertThat(event.event()).isEqualTo("resync");
+                    assertThat(event.data()).isEqualTo("9");
+                })
+                .verifyComplete();
+        Mockito.verify(subscription, Mockito.timeout(1000)).close();
+    }
+
+    @Test
+    void testGetIncidentById() {
+        Incident incident = new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN).withVersion(2L);
+        Mockito.when(incidentService.getIncidentById(1L)).thenReturn(Optional.of(incident));
+        Mockito.when(incidentService.getIncidentById(2L)).thenReturn(Optional.empty());
+
+        webTestClient.get().uri("/api/incidents/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"2\"")
+                .expectBody()
+                .jsonPath("$.title").isEqualTo("Title 1");
+        webTestClient.get().uri("/api/incidents/1")
+                .header("If-None-Match", "\"2\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals("Vary", "Accept")
+                .expectBody().isEmpty();
+        webTestClient.get().uri("/api/incidents/1")
+                .header("If-None-Match", "\"2\"")
+                .accept(IncidentSmile.MEDIA_TYPE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"2-smile\"");
+        webTestClient.get().uri("/api/incidents/2")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testUpdateIncidentWithIfMatch() {
+        Incident updated = new Incident(1L, "Title 1", "Description 1", Incident.Status.CLOSED).withVersion(3L);
+        Mockito.when(incidentService.updateIncident(eq(1L), any(), eq(2L))).thenReturn(Optional.of(updated));
+        Mockito.when(incidentService.updateIncident(eq(1L), any(), eq(1L))).thenThrow(new VersionConflictException(1L, 1L, 3L));
+
+        webTestClient.put().uri("/api/incidents/1")
+                .header("If-Match", "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Title 1\", \"description\":\"Description 1\", \"status\":\"CLOSED\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"3\"");
+        webTestClient.put().uri("/api/incidents/1")
+                .header("If-Match", "\"1\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Title 1\", \"description\":\"Description 1\", \"status\":\"CLOSED\"}")
+                .exchange()
+                .expectStatus().isEqualTo(412);
+    }
+
+    @Test
+    void testDeleteIncident() {
+        Mockito.when(incidentService.deleteIncident(1L)).thenReturn(true);
+        Mockito.when(incidentService.deleteIncident(2L)).thenReturn(false);
+
+        webTestClient.delete().uri("/api/incidents/1").exchange().expectStatus().isNoContent();
+        webTestClient.delete().uri("/api/incidents/2").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void testDeleteIncidentsWithNullId() {
+        Mockito.when(incidentService.deleteIncidents(Arrays.asList(1L, null))).thenReturn(List.of(
+                new BatchItemResult(0, BatchItemResult.Outcome.DELETED, 1L, null, null),
+                BatchItemResult.invalid(1, "ID must be a positive non-null value")));
+
+        webTestClient.method(HttpMethod.DELETE).uri("/api/incidents/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[1, null]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].outcome").isEqualTo("DELETED")
+                .jsonPath("$[1].outcome").isEqualTo("INVALID");
+    }
+}
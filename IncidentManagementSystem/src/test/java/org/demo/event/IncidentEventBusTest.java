@@ -0,0 +1,163 @@
+package org.demo.event;
+
+import org.demo.model.Incident;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncidentEventBusTest {
+
+    private final IncidentEventBus bus = new IncidentEventBus(16, 8, false);
+
+    @AfterEach
+    void tearDown() {
+        bus.close();
+    }
+
+    /**
+     * Records what a subscriber receives: event sequences, resyncs as negative numbers and 0 for close.
+     */
+    private static class RecordingListener implements IncidentEventBus.Listener {
+
+        final BlockingQueue<Long> received = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onEvent(IncidentEvent event) {
+            received.add(event.sequence());
+        }
+
+        @Override
+        public void onResync(long sequence) {
+            received.add(-sequence);
+        }
+
+        @Override
+        public void onClose() {
+            received.add(0L);
+        }
+
+        Long next() throws InterruptedException {
+            return received.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private void publish(long id) {
+        bus.publish(IncidentEvent.Type.CREATED, id, new Incident(id, "Title " + id, "Description " + id, Incident.Status.OPEN));
+    }
+
+    @Test
+    void testDeliversEventsPublishedAfterSubscribingInOrder() throws InterruptedException {
+        publish(1);
+        RecordingListener listener = new RecordingListener();
+        bus.subscribe(null, listener);
+        publish(2);
+        publish(3);
+
+        assertEquals(2L, listener.next());
+        assertEquals(3L, listener.next());
+    }
+
+    @Test
+    void testResumesAfterLastEventId() throws InterruptedException {
+        for (long id = 1; id <= 5; id++) {
+            publish(id);
+        }
+        RecordingListener listener = new RecordingListener();
+        bus.subscribe(3L, listener);
+
+        assertEquals(4L, listener.next());
+        assertEquals(5L, listener.next());
+    }
+
+    @Test
+    void testResyncsWhenLastEventIdIsNoLongerBuffered() throws InterruptedException {
+        for (long id = 1; id <= 20; id++) {
+            publish(id);
+        }
+        RecordingListener tooOld = new RecordingListener();
+        bus.subscribe(2L, tooOld);
+        RecordingListener fromBeforeRestart = new RecordingListener();
+        bus.subscribe(100L, fromBeforeRestart);
+        publish(21);
+
+        assertEquals(-20L, tooOld.next());
+        assertEquals(21L, tooOld.next());
+        assertEquals(-20L, fromBeforeRestart.next());
+        assertEquals(21L, fromBeforeRestart.next());
+    }
+
+    @Test
+    void testSlowSubscriberIsToldToResyncWithoutBlockingPublishers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> slowReceived = new CopyOnWriteArrayList<>();
+        RecordingListener slow = new RecordingListener() {
+            @Override
+            public void onEvent(IncidentEvent event) {
+                slowReceived.add(event.sequence());
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RecordingListener fast = new RecordingListener();
+        bus.subscribe(null, slow);
+        bus.subscribe(null, fast);
+
+        // Far more events than the slow subscriber may lag behind; publishing must not wait for it
+        for (long id = 1; id <= 100; id++) {
+            publish(id);
+            assertEquals(id, fast.next());
+        }
+        release.countDown();
+
+        assertEquals(-100L, slow.next());
+        assertEquals(0L, slow.next());
+        assertEquals(List.of(1L), slowReceived);
+        publish(101);
+        assertEquals(101L, fast.next());
+        assertNull(slow.received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testReservedEventsAreDeliveredInSequenceOrderAndCancelledOnesSkipped() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        bus.subscribe(null, listener);
+        long first = bus.reserve();
+        long second = bus.reserve();
+        long third = bus.reserve();
+        bus.publish(third, IncidentEvent.Type.UPDATED, 1, new Incident(1L, "Title", "Description", Incident.Status.CLOSED));
+        bus.cancel(second);
+
+        // Delivery waits for the first, still being published
+        assertNull(listener.received.poll(100, TimeUnit.MILLISECONDS));
+        bus.publish(first, IncidentEvent.Type.CREATED, 1, new Incident(1L, "Title", "Description", Incident.Status.OPEN));
+
+        assertEquals(first, listener.next());
+        assertEquals(third, listener.next());
+        publish(2);
+        assertEquals(4L, listener.next());
+    }
+
+    @Test
+    void testClosedSubscriptionReceivesNothing() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        IncidentEventBus.Subscription subscription = bus.subscribe(null, listener);
+        subscription.close();
+        publish(1);
+
+        assertEquals(0L, listener.next());
+        assertTrue(listener.received.isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+package org.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimitingTurboFilterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final LoggerContext context = new LoggerContext();
+    private final Logger serviceLogger = context.getLogger("org.demo.service.IncidentService");
+    private final Logger otherLogger = context.getLogger("org.demo.persistence.WriteAheadLog");
+    private RateLimitingTurboFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.INFO);
+        filter = new RateLimitingTurboFilter();
+        filter.setLoggerPrefix("org.demo.service");
+        filter.setMessagesPerSecond(2);
+        filter.setClock(now::get);
+    }
+
+    @Test
+    void testLimitsEachTemplatePerSecond() {
+        assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.INFO, "Created {}"));
+        assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.INFO, "Created {}"));
+        assertEquals(FilterReply.DENY, decide(serviceLogger, Level.INFO, "Created {}"));
+        assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.WARN, "Not found {}"));
+        assertEquals(1, filter.getSuppressed());
+
+        now.addAndGet(1000);
+        assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.INFO, "Created {}"));
+    }
+
+    @Test
+    void testLeavesErrorsOtherLoggersAndDisabledLevelsAlone() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.ERROR, "Failed {}"));
+            assertEquals(FilterReply.NEUTRAL, decide(otherLogger, Level.INFO, "Replayed {}"));
+            assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.DEBUG, "Created incident: {}"));
+            assertEquals(FilterReply.NEUTRAL, decide(serviceLogger, Level.INFO, null));
+        }
+        assertEquals(0, filter.getSuppressed());
+    }
+
+    private FilterReply decide(Logger logger, Level level, String format) {
+        return filter.decide(null, logger, level, format, new Object[]{1L}, null);
+    }
+}
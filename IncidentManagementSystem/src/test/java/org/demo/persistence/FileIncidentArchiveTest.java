@@ -0,0 +1,109 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileIncidentArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testArchivedIncidentsAreReadBackAfterReopening() {
+        List<Incident> first = closed(1, 50);
+        List<Incident> second = closed(51, 60);
+        try (FileIncidentArchive archive = new FileIncidentArchive(directory, 1 << 20)) {
+            archive.append(first);
+            archive.append(second);
+            archive.forget(List.of(7L));
+            assertEquals(first.get(2), archive.get(3).orElseThrow());
+        }
+
+        try (FileIncidentArchive archive = new FileIncidentArchive(directory, 1 << 20)) {
+            assertEquals(second.get(4), archive.get(55).orElseThrow());
+            assertFalse(archive.contains(7));
+            assertTrue(archive.get(7).isEmpty());
+            assertEquals(60, archive.lastId());
+
+            // Pages span blocks and skip forgotten incidents
+            List<Incident> page = archive.list(45L, 10);
+            assertEquals(LongStream.rangeClosed(46, 55).boxed().toList(), page.stream().map(Incident::getId).toList());
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 8L), archive.list(null, 7).stream().map(Incident::getId).toList());
+
+            // Appends after a restart go to a new segment, and a copy archived again replaces the earlier one
+            Incident reclosed = first.get(0).withVersion(5L);
+            archive.append(List.of(reclosed));
+            assertEquals(reclosed, archive.get(1).orElseThrow());
+        }
+        assertEquals(2, segments().size());
+    }
+
+    @Test
+    void testBlocksAreCompressedAndSegmentsRollOver() throws IOException {
+        try (FileIncidentArchive archive = new FileIncidentArchive(directory, 4096)) {
+            for (int i = 0; i < 10; i++) {
+                archive.append(closed(i * 100 + 1, i * 100 + 100));
+            }
+        }
+
+        List<Path> segments = segments();
+        long archived = 0;
+        for (Path segment : segments) {
+            archived += Files.size(segment);
+        }
+        long encoded = closed(1, 1000).stream().mapToLong(incident -> IncidentCodec.encode(incident).length).sum();
+        assertTrue(segments.size() > 1);
+        assertTrue(archived * 3 < encoded, archived + " bytes archived for " + encoded + " bytes of records");
+    }
+
+    @Test
+    void testTornBlockAtEndOfSegmentIsIgnored() throws IOException {
+        try (FileIncidentArchive archive = new FileIncidentArchive(directory, 1 << 20)) {
+            archive.append(closed(1, 10));
+            archive.append(closed(11, 20));
+        }
+        Path segment = segments().get(0);
+        byte[] content = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(content, content.length - 3), StandardOpenOption.TRUNCATE_EXISTING);
+
+        try (FileIncidentArchive archive = new FileIncidentArchive(directory, 1 << 20)) {
+            assertTrue(archive.contains(10));
+            assertFalse(archive.contains(11));
+            assertEquals(closed(1, 10), archive.list(null, 100));
+        }
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<Incident> closed(long firstId, long lastId) {
+        Instant createdAt = Instant.parse("2024-05-01T10:00:00Z");
+        return LongStream.rangeClosed(firstId, lastId)
+                .mapToObj(id -> Incident.builder().id(id).title("Disk usage above threshold on db-" + id % 10)
+                        .description("Disk usage on db-" + id % 10 + " has been above 90% for 15 minutes")
+                        .status(Incident.Status.CLOSED).version(2L).occurrences(1L).lastOccurredAt(createdAt)
+                        .createdAt(createdAt).updatedAt(createdAt.plusSeconds(id)).closedAt(createdAt.plusSeconds(id))
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,184 @@
+package org.demo.persistence;
+
+import org.demo.model.Incident;
+import org.demo.repository.InMemoryIncidentRepository;
+import org.demo.service.IncidentService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testServiceRecoversIncidentsAfterRestart() {
+        WriteAheadLog journal = new WriteAheadLog(directory, true, Duration.ZERO);
+        IncidentService incidentService = new IncidentService(new InMemoryIncidentRepository(), journal);
+        Incident first = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        Incident open = incidentService.createIncident(new Incident(null, "Title 0", "Description 0", null));
+        Incident second = incidentService.createIncident(new Incident(null, "Title 2", "Description 2", null));
+        incidentService.updateIncident(first.getId(), new Incident(null, "Title 1", "Updated", Incident.Status.CLOSED));
+        incidentService.deleteIncident(second.getId());
+        journal.close();
+
+        IncidentService recovered = new IncidentService(new InMemoryIncidentRepository(), new WriteAheadLog(directory, true, Duration.ZERO));
+
+        assertEquals(2, recovered.getAllIncidents().size());
+        Incident incident = recovered.getIncidentById(first.getId()).orElseThrow();
+        assertEquals("Updated", incident.getDescription());
+        assertEquals(Incident.Status.CLOSED, incident.getStatus());
+        assertEquals(1, recovered.countIncidents(Incident.Status.CLOSED));
+        // Lifecycle times are recovered and indexed by creation time
+        assertEquals(first.getCreatedAt(), incident.getCreatedAt());
+        assertEquals(incident.getUpdatedAt(), incident.getClosedAt());
+        assertEquals(2, recovered.getIncidentsCreatedBetween(first.getCreatedAt(), null, null, 10, null).size());
+        // The ID generator continues after the highest ID ever handed out
+        Incident third = recovered.createIncident(new Incident(null, "Title 3", "Description 3", null));
+        assertEquals(second.getId() + 1, third.getId());
+        // Occurrences and deduplication state are rebuilt as well, and closed incidents absorb no duplicates
+        assertEquals(open, recovered.getIncidentById(open.getId()).orElseThrow());
+        Incident duplicate = recovered.createIncident(new Incident(null, "Title 0", "Description 0", null));
+        assertEquals(open.getId(), duplicate.getId());
+        assertEquals(2L, duplicate.getOccurrences());
+        assertNotEquals(first.getId(), recovered.createIncident(new Incident(null, "Title 1", "Updated", null)).getId());
+    }
+
+    @Test
+    void testWritesWithoutFsyncAreInTheFileOnceAcknowledged() throws IOException {
+        WriteAheadLog journal = new WriteAheadLog(directory, false, Duration.ZERO);
+        journal.recover(listener(new TreeMap<>()));
+        Path segment = directory.resolve("wal-1.log");
+
+        // Each acknowledged record is in the file, which outlives the process, rather than only in the log's buffer
+        long size = Files.size(segment);
+        for (long id = 1; id <= 200; id++) {
+            journal.awaitDurable(journal.recordPut(new Incident(id, "Title " + id, "Description " + id, Incident.Status.OPEN)));
+            long written = Files.size(segment);
+            assertTrue(written > size, "Record " + id + " is written once acknowledged");
+            size = written;
+        }
+
+        // Read back without closing the log, as after the process died
+        Map<Long, Incident> recovered = new TreeMap<>();
+        WriteAheadLog reopened = new WriteAheadLog(directory, false, Duration.ZERO);
+        reopened.recover(listener(recovered));
+        reopened.close();
+        journal.close();
+
+        assertEquals(200, recovered.size());
+    }
+
+    @Test
+    void testSnapshotReplacesOlderSegments() throws IOException {
+        Map<Long, Incident> store = new TreeMap<>();
+        WriteAheadLog journal = new WriteAheadLog(directory, false, Duration.ZERO);
+        journal.recover(listener(store));
+        for (long id = 1; id <= 3; id++) {
+            Incident incident = new Incident(id, "Title " + id, "Description " + id, Incident.Status.OPEN);
+            store.put(id, incident);
+            journal.recordPut(incident);
+        }
+        journal.writeSnapshot(source(store, 5));
+        store.remove(2L);
+        journal.recordDelete(2L);
+        journal.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count()); // One snapshot and the segment started with it
+        }
+
+        Map<Long, Incident> recovered = new TreeMap<>();
+        long[] lastId = new long[1];
+        WriteAheadLog reopened = new WriteAheadLog(directory, false, Duration.ZERO);
+        reopened.recover(new IncidentJournal.RecoveryListener() {
+            @Override
+            public void onPut(Incident incident) {
+                recovered.put(incident.getId(), incident);
+            }
+
+            @Override
+            public void onDelete(long id) {
+                recovered.remove(id);
+            }
+
+            @Override
+            public void onLastId(long id) {
+                lastId[0] = id;
+            }
+        });
+        reopened.close();
+
+        assertEquals(store.keySet(), recovered.keySet());
+        assertEquals(5, lastId[0]);
+    }
+
+    @Test
+    void testTornRecordAtEndOfLogIsIgnored() throws IOException {
+        WriteAheadLog journal = new WriteAheadLog(directory, true, Duration.ZERO);
+        journal.recover(listener(new TreeMap<>()));
+        journal.awaitDurable(journal.recordPut(new Incident(1L, "Title 1", "Description 1", Incident.Status.OPEN)));
+        journal.awaitDurable(journal.recordPut(new Incident(2L, "Title 2", "Description 2", Incident.Status.OPEN)));
+        journal.close();
+
+        Path segment = directory.resolve("wal-1.log");
+        byte[] content = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(content, content.length - 3), StandardOpenOption.TRUNCATE_EXISTING);
+
+        Map<Long, Incident> recovered = new TreeMap<>();
+        WriteAheadLog reopened = new WriteAheadLog(directory, true, Duration.ZERO);
+        reopened.recover(listener(recovered));
+        reopened.close();
+
+        assertTrue(recovered.containsKey(1L));
+        assertFalse(recovered.containsKey(2L));
+    }
+
+    private static IncidentJournal.RecoveryListener listener(Map<Long, Incident> store) {
+        return new IncidentJournal.RecoveryListener() {
+            @Override
+            public void onPut(Incident incident) {
+                store.put(incident.getId(), incident);
+            }
+
+            @Override
+            public void onDelete(long id) {
+                store.remove(id);
+            }
+
+            @Override
+            public void onLastId(long lastId) {
+            }
+        };
+    }
+
+    private static IncidentJournal.SnapshotSource source(Map<Long, Incident> store, long lastId) {
+        return new IncidentJournal.SnapshotSource() {
+            @Override
+            public long lastId() {
+                return lastId;
+            }
+
+            @Override
+            public void forEachIncident(Consumer<Incident> consumer) {
+                store.values().forEach(consumer);
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package org.demo.repository;
+
+import org.demo.model.Incident;
+import org.demo.persistence.IncidentJournal;
+import org.demo.service.IncidentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncidentRepositoryTest {
+
+    private static final int SLAB_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private IncidentRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    private IncidentRepository create(String engine) {
+        repository = switch (engine) {
+            case "heap" -> new InMemoryIncidentRepository();
+            case "off-heap" -> new OffHeapIncidentRepository(SLAB_SIZE);
+            default -> new FileIncidentRepository(directory.resolve("incidents.dat"), SLAB_SIZE);
+        };
+        return repository;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "off-heap", "file"})
+    void testComputeGetAndRemove(String engine) {
+        IncidentRepository incidents = create(engine);
+
+        incidents.computeIfAbsent(1L, id -> new Incident(id, "Title 1", "Description 1", Incident.Status.OPEN));
+        assertEquals("Title 1", incidents.get(1L).getTitle());
+        assertNull(incidents.computeIfPresent(2L, (id, existing) -> existing));
+
+        // Grows into a larger block, then shrinks back
+        incidents.compute(1L, (id, existing) -> new Incident(id, "Title 1", "x".repeat(500), Incident.Status.CLOSED));
+        assertEquals(500, incidents.get(1L).getDescription().length());
+        assertEquals(Incident.Status.CLOSED, incidents.get(1L).getStatus());
+        incidents.compute(1L, (id, existing) -> new Incident(id, "Title 1", "short", Incident.Status.CLOSED));
+        assertEquals("short", incidents.get(1L).getDescription());
+        assertEquals(1, incidents.size());
+
+        incidents.computeIfPresent(1L, (id, existing) -> null);
+        assertNull(incidents.get(1L));
+        assertEquals(0, incidents.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "off-heap", "file"})
+    void testComputeReturningSameIncidentKeepsIt(String engine) {
+        IncidentRepository incidents = create(engine);
+        incidents.computeIfAbsent(1L, id -> new Incident(id, "Title 1", "Description 1", Incident.Status.OPEN));
+
+        Incident current = incidents.get(1L);
+        assertSame(current, incidents.computeIfPresent(1L, (id, existing) -> current == existing ? existing : current));
+        assertEquals("Description 1", incidents.get(1L).getDescription());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "off-heap", "file"})
+    void testConcurrentWritesAndReadsAcrossManySlabs(String engine) throws Exception {
+        IncidentRepository incidents = create(engine);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            long id = i;
+            results.add(executor.submit(() -> {
+                incidents.computeIfAbsent(id, key -> new Incident(key, "Title " + key, "Description " + key, Incident.Status.OPEN));
+                incidents.compute(id, (key, existing) -> new Incident(key, existing.getTitle(), "Updated " + key, Incident.Status.IN_PROGRESS));
+                Incident read = incidents.get(id - 1 > 0 ? id - 1 : id);
+                if (read != null) {
+                    assertTrue(read.getDescription().endsWith(String.valueOf(read.getId())));
+                }
+                if (id % 2 == 0) {
+                    incidents.computeIfPresent(id, (key, existing) -> null);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(1, TimeUnit.MINUTES); // Rethrows assertion failures from the workers
+        }
+        executor.shutdown();
+
+        assertEquals(1000, incidents.size());
+        assertEquals("Updated 1999", incidents.get(1999L).getDescription());
+        assertNull(incidents.get(2000L));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"off-heap", "file"})
+    void testServiceRunsOnSlabEngines(String engine) {
+        IncidentService incidentService = new IncidentService(create(engine), IncidentJournal.NONE);
+
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertEquals(created.getId(), incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null)).getId());
+        incidentService.updateIncident(created.getId(), new Incident(null, "Title 1", "Description 2", Incident.Status.CLOSED));
+
+        assertEquals("Description 2", incidentService.getIncidentById(created.getId()).orElseThrow().getDescription());
+        assertEquals(1, incidentService.getIncidents(null, 10, Incident.Status.CLOSED).size());
+        assertTrue(incidentService.deleteIncident(created.getId()));
+        assertTrue(incidentService.getAllIncidents().isEmpty());
+    }
+}
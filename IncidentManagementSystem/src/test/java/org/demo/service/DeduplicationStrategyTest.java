@@ -0,0 +1,54 @@
+package org.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeduplicationStrategyTest {
+
+    @Test
+    void testNormalizerMasksVolatileWords() {
+        assertEquals("disk full on # at # id #",
+                TextNormalizer.normalizeDescription("Disk FULL on db-01.prod  at 2024-05-01T10:00:00.123Z (id 42)."));
+        assertEquals("error from # on web-12", TextNormalizer.normalizeTitle(
+                "Error from 3f2b9c4e-1a7d-4e2b-9f3a-0c5d6e7f8a9b on web-12"));
+        // Short numbers in titles tell incidents apart
+        assertNotEquals(TextNormalizer.normalizeTitle("Disk full on host 12"), TextNormalizer.normalizeTitle("Disk full on host 13"));
+        assertEquals("", TextNormalizer.normalizeDescription(" -- "));
+        assertNull(TextNormalizer.normalizeDescription(null));
+    }
+
+    @Test
+    void testNormalizedFingerprintAndSignatureIgnoreVolatileWords() {
+        NormalizedDeduplication strategy = new NormalizedDeduplication();
+
+        assertEquals(strategy.fingerprint("Queue backlog", "Backlog 1200 messages at 10:00"),
+                strategy.fingerprint("queue  backlog", "backlog 1350 messages at 10:05"));
+        assertEquals(strategy.signature("Queue backlog", "Backlog 1200 messages at 10:00"),
+                strategy.signature("queue  backlog", "backlog 1350 messages at 10:05"));
+        assertNotEquals(strategy.fingerprint("Queue backlog", "Backlog growing"), strategy.fingerprint("Queue backlog", "Consumer down"));
+        // The title and description stay apart
+        assertNotEquals(strategy.fingerprint("a b", "c"), strategy.fingerprint("a", "b c"));
+    }
+
+    @Test
+    void testSimHashDistanceFollowsSimilarity() {
+        SimHashDeduplication strategy = new SimHashDeduplication(10, 2);
+        String description = "p99 latency of the checkout service exceeded the threshold for five minutes in region "
+                + "eu-west-1, upstream inventory calls slow";
+
+        long original = strategy.signature("Checkout latency", description);
+        long similar = strategy.signature("Checkout latency", description.replace("five", "ten"));
+        long unrelated = strategy.signature("Checkout latency",
+                "Database connection pool exhausted, all requests to the orders database time out after thirty seconds");
+
+        assertEquals(original, strategy.signature("Checkout latency", description.toUpperCase()));
+        assertTrue(Long.bitCount(original ^ similar) <= 10, "Distance " + Long.bitCount(original ^ similar));
+        assertTrue(Long.bitCount(original ^ unrelated) > 10, "Distance " + Long.bitCount(original ^ unrelated));
+        // Only the title is part of the fingerprint
+        assertEquals(strategy.fingerprint("Checkout latency", description), strategy.fingerprint("checkout latency", "other"));
+    }
+}
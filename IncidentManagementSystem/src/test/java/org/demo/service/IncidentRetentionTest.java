@@ -0,0 +1,208 @@
+package org.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.model.Incident;
+import org.demo.persistence.FileIncidentArchive;
+import org.demo.persistence.IncidentArchive;
+import org.demo.persistence.IncidentJournal;
+import org.demo.persistence.WriteAheadLog;
+import org.demo.repository.InMemoryIncidentRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncidentRetentionTest {
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void testSweepArchivesIncidentsClosedLongerThanTheMaximumAge() throws InterruptedException {
+        IncidentService service = service(IncidentJournal.NONE, new FileIncidentArchive(directory, 1 << 20), 2);
+        List<Long> closedEarly = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            closedEarly.add(close(service, service.createIncident(incident(i)).getId()));
+        }
+        Incident open = service.createIncident(incident(100));
+        clock.advance(Duration.ofDays(20));
+        long closedLate = close(service, service.createIncident(incident(101)).getId());
+        clock.advance(Duration.ofDays(15));
+
+        // Batches of 10 take three passes over the 26 closed incidents of both shards
+        IncidentRetention retention = new IncidentRetention(service, Duration.ofDays(30), Duration.ofMinutes(1), 10, Duration.ZERO);
+        assertEquals(25, retention.sweep());
+
+        assertEquals(2, service.getAllIncidents().size());
+        assertEquals(1, service.countIncidents(Incident.Status.CLOSED));
+        assertTrue(service.getIncidentById(closedEarly.get(3)).isEmpty());
+        Incident archived = service.getArchivedIncident(closedEarly.get(3)).orElseThrow();
+        assertEquals(Incident.Status.CLOSED, archived.getStatus());
+        assertEquals("Title 3", archived.getTitle());
+        List<Long> archivedIds = closedEarly.stream().sorted().toList();
+        assertEquals(archivedIds.subList(10, 20), service.getArchivedIncidents(archivedIds.get(9), 10).stream()
+                .map(Incident::getId).toList());
+        assertTrue(service.getArchivedIncident(closedLate).isEmpty());
+        assertTrue(service.getIncidentById(open.getId()).isPresent());
+
+        // Archived IDs are never handed out again, and nothing is left to archive
+        assertFalse(closedEarly.contains(service.createIncident(incident(102)).getId()));
+        assertEquals(0, retention.sweep());
+    }
+
+    @Test
+    void testRestartCompletesInterruptedMovesAndDropsStaleCopies() throws InterruptedException {
+        Path journalDirectory = directory.resolve("journal");
+        Path archiveDirectory = directory.resolve("archive");
+        WriteAheadLog journal = new WriteAheadLog(journalDirectory, true, Duration.ZERO);
+        FileIncidentArchive archive = new FileIncidentArchive(archiveDirectory, 1 << 20);
+        IncidentService service = service(journal, archive, 1);
+        long archivedId = close(service, service.createIncident(incident(1)).getId());
+        clock.advance(Duration.ofDays(31));
+        assertEquals(1, new IncidentRetention(service, Duration.ofDays(30), Duration.ofMinutes(1), 100, Duration.ZERO).sweep());
+
+        // Archived but still stored, as when the process stops before removing them; the second is reopened meanwhile
+        long interruptedId = close(service, service.createIncident(incident(2)).getId());
+        long reopenedId = close(service, service.createIncident(incident(3)).getId());
+        archive.append(List.of(service.getIncidentById(interruptedId).orElseThrow(), service.getIncidentById(reopenedId).orElseThrow()));
+        service.updateIncident(reopenedId, new Incident(null, "Title 3", "Description 3", Incident.Status.OPEN));
+        journal.close();
+        archive.close();
+
+        IncidentService recovered = service(new WriteAheadLog(journalDirectory, true, Duration.ZERO),
+                new FileIncidentArchive(archiveDirectory, 1 << 20), 1);
+
+        assertTrue(recovered.getIncidentById(archivedId).isEmpty());
+        assertEquals(archivedId, recovered.getArchivedIncident(archivedId).orElseThrow().getId());
+        assertTrue(recovered.getIncidentById(interruptedId).isEmpty());
+        assertTrue(recovered.getArchivedIncident(interruptedId).isPresent());
+        assertEquals(Incident.Status.OPEN, recovered.getIncidentById(reopenedId).orElseThrow().getStatus());
+        assertTrue(recovered.getArchivedIncident(reopenedId).isEmpty());
+        assertEquals(List.of(reopenedId), recovered.getAllIncidents().stream().map(Incident::getId).toList());
+    }
+
+    @Test
+    void testArchivedIncidentsArePublishedAndReported() throws InterruptedException {
+        IncidentService service = service(IncidentJournal.NONE, new FileIncidentArchive(directory, 1 << 20), 1);
+        long id = close(service, service.createIncident(incident(1)).getId());
+        BlockingQueue<IncidentEvent> received = new LinkedBlockingQueue<>();
+        service.subscribeToChanges(null, new IncidentEventBus.Listener() {
+            @Override
+            public void onEvent(IncidentEvent event) {
+                received.add(event);
+            }
+
+            @Override
+            public void onResync(long sequence) {
+            }
+
+            @Override
+            public void onClose() {
+            }
+        });
+        clock.advance(Duration.ofDays(31));
+        List<Long> reported = new ArrayList<>();
+
+        assertEquals(1, new IncidentRetention(service, Duration.ofDays(30), Duration.ofMinutes(1), 10, Duration.ZERO,
+                reported::add).sweep());
+
+        assertEquals(List.of(id), reported);
+        IncidentEvent event = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(IncidentEvent.Type.ARCHIVED, event.type());
+        assertEquals(id, event.incidentId());
+        assertEquals(Incident.Status.CLOSED, event.incident().getStatus());
+    }
+
+    @Test
+    void testReplicaArchivalMovesTheCopyUnlessANewerVersionIsStored() {
+        IncidentService owner = service(IncidentJournal.NONE, new FileIncidentArchive(directory.resolve("owner"), 1 << 20), 1);
+        IncidentService follower = service(IncidentJournal.NONE, new FileIncidentArchive(directory.resolve("follower"), 1 << 20), 1);
+        Incident archived = owner.getIncidentById(close(owner, owner.createIncident(incident(1)).getId())).orElseThrow();
+        Incident reopened = owner.updateIncident(owner.createIncident(incident(2)).getId(),
+                new Incident(null, "Title 2", "Description 2", Incident.Status.OPEN)).orElseThrow();
+        follower.applyReplica(archived);
+        follower.applyReplica(reopened);
+
+        follower.applyReplicaArchival(archived);
+        follower.applyReplicaArchival(reopened.toBuilder().version(1L).status(Incident.Status.CLOSED).build());
+
+        assertTrue(follower.getIncidentById(archived.getId()).isEmpty());
+        assertEquals(archived.getVersion(), follower.getArchivedIncident(archived.getId()).orElseThrow().getVersion());
+        assertEquals(reopened, follower.getIncidentById(reopened.getId()).orElseThrow());
+        assertTrue(follower.getArchivedIncident(reopened.getId()).isEmpty());
+    }
+
+    @Test
+    void testArchivingWithoutAnArchiveOrWithInvalidLimitFails() {
+        IncidentService service = service(IncidentJournal.NONE, IncidentArchive.NONE, 1);
+        close(service, service.createIncident(incident(1)).getId());
+        clock.advance(Duration.ofDays(31));
+
+        assertThrows(IllegalStateException.class, () -> service.archiveClosedIncidents(null, Duration.ofDays(30), 10));
+        assertEquals(1, service.getAllIncidents().size());
+        assertThrows(IllegalArgumentException.class, () -> service.archiveClosedIncidents(null, Duration.ofDays(30), 0));
+        assertThrows(IllegalArgumentException.class, () -> new IncidentRetention(service, Duration.ofDays(30),
+                Duration.ofMinutes(1), IncidentService.MAX_BATCH_SIZE + 1, Duration.ZERO));
+    }
+
+    private IncidentService service(IncidentJournal journal, IncidentArchive archive, int shards) {
+        return new IncidentService(new InMemoryIncidentRepository(), journal, new SimpleMeterRegistry(), new IncidentEventBus(),
+                shards, new DeduplicationPolicy(new ExactDeduplication(), Duration.ofMinutes(10), 8, clock),
+                CachePolicy.DEFAULT, archive);
+    }
+
+    private static long close(IncidentService service, long id) {
+        Incident incident = service.getIncidentById(id).orElseThrow();
+        return service.updateIncident(id, incident.withStatus(Incident.Status.CLOSED)).orElseThrow().getId();
+    }
+
+    private static Incident incident(int i) {
+        return new Incident(null, "Title " + i, "Description " + i, null);
+    }
+
+    /**
+     * A clock moved forward by the test.
+     */
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-05-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -1,15 +1,48 @@
 package org.demo.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.demo.event.IncidentEvent;
+import org.demo.event.IncidentEventBus;
+import org.demo.exception.VersionConflictException;
+import org.demo.model.BatchItemResult;
 import org.demo.model.Incident;
+import org.demo.model.SearchHit;
+import org.demo.persistence.IncidentJournal;
+import org.demo.repository.InMemoryIncidentRepository;
+import org.demo.repository.OffHeapIncidentRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -44,6 +77,429 @@ class IncidentServiceTest {
         assertEquals(Incident.Status.OPEN, createdIncident.getStatus());
     }
 
+    @Test
+    void testCreateDuplicateIncidentReturnsExisting() {
+        Incident first = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        Incident duplicate = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+
+        assertEquals(first.getId(), duplicate.getId());
+        assertEquals(1, incidentService.getAllIncidents().size());
+        assertEquals(2L, duplicate.getOccurrences());
+        assertEquals(2L, duplicate.getVersion());
+    }
+
+    @Test
+    void testDefaultDeduplicationOnlyMergesIdenticalIncidents() {
+        Incident first = incidentService.createIncident(new Incident(null, "Disk usage high", "Disk at 90% on db-01", null));
+        Incident other = incidentService.createIncident(new Incident(null, "Disk usage high", "Disk at 95% on db-01", null));
+
+        assertNotEquals(first.getId(), other.getId());
+        assertEquals(1L, other.getOccurrences());
+    }
+
+    @Test
+    void testNormalizedDuplicateWithDifferentTimestampCountsOccurrence() {
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE,
+                new SimpleMeterRegistry(), new IncidentEventBus(), 1,
+                new DeduplicationPolicy(new NormalizedDeduplication(), Duration.ofHours(1), 8, Clock.systemUTC()));
+
+        Incident first = service.createIncident(new Incident(null, "Payment API errors",
+                "5xx rate 12% at 2024-05-01T10:00:00Z on pay-01", null));
+        Incident duplicate = service.createIncident(new Incident(null, "payment api errors!",
+                "5xx rate 15% at 2024-05-01T10:05:00Z on pay-02", null));
+        Incident other = service.createIncident(new Incident(null, "Payment API errors",
+                "Certificate expired", null));
+
+        assertEquals(first.getId(), duplicate.getId());
+        assertEquals(2L, duplicate.getOccurrences());
+        assertEquals(first.getDescription(), duplicate.getDescription());
+        assertNotEquals(first.getId(), other.getId());
+    }
+
+    @Test
+    void testDuplicatesOutsideWindowOrOfClosedIncidentsOpenNewIncidents() {
+        MutableClock clock = new MutableClock();
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE,
+                new SimpleMeterRegistry(), new IncidentEventBus(), 1,
+                new DeduplicationPolicy(new ExactDeduplication(), Duration.ofMinutes(10), 8, clock));
+
+        Incident first = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        clock.advance(Duration.ofMinutes(9));
+        assertEquals(first.getId(), service.createIncident(new Incident(null, "Title 1", "Description 1", null)).getId());
+        // Every occurrence restarts the window
+        clock.advance(Duration.ofMinutes(9));
+        Incident third = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertEquals(first.getId(), third.getId());
+        assertEquals(3L, third.getOccurrences());
+        assertEquals(clock.instant(), third.getLastOccurredAt());
+
+        clock.advance(Duration.ofMinutes(11));
+        Incident recurring = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertNotEquals(first.getId(), recurring.getId());
+        assertEquals(1L, recurring.getOccurrences());
+
+        service.updateIncident(recurring.getId(), new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED));
+        Incident afterClose = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertNotEquals(recurring.getId(), afterClose.getId());
+        assertEquals(afterClose.getId(), service.createIncident(new Incident(null, "Title 1", "Description 1", null)).getId());
+        assertEquals(3, service.getAllIncidents().size());
+    }
+
+    @Test
+    void testSimHashMergesSimilarDescriptionsOfTheSameTitle() {
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE,
+                new SimpleMeterRegistry(), new IncidentEventBus(), 4,
+                new DeduplicationPolicy(new SimHashDeduplication(10, 2), Duration.ofHours(1), 8, Clock.systemUTC()));
+
+        Incident first = service.createIncident(new Incident(null, "Checkout latency", "p99 latency of the checkout "
+                + "service exceeded the threshold for five minutes in region eu-west-1, upstream inventory calls slow", null));
+        Incident similar = service.createIncident(new Incident(null, "Checkout latency", "p99 latency of the checkout "
+                + "service exceeded the threshold for ten minutes in region eu-west-1, upstream inventory calls slow", null));
+        Incident different = service.createIncident(new Incident(null, "Checkout latency", "Database connection pool "
+                + "exhausted, all requests to the orders database time out after thirty seconds", null));
+
+        assertEquals(first.getId(), similar.getId());
+        assertEquals(2L, similar.getOccurrences());
+        assertNotEquals(first.getId(), different.getId());
+        assertEquals(different.getId(), service.createIncident(new Incident(null, "Checkout latency", "Database "
+                + "connection pool exhausted, all requests to the orders database time out after 30 seconds", null)).getId());
+    }
+
+    @Test
+    void testCreateIncidentWithSeparatorInTitleIsNotDuplicate() {
+        Incident first = incidentService.createIncident(new Incident(null, "a:b", "c", null));
+        Incident second = incidentService.createIncident(new Incident(null, "a", "b:c", null));
+
+        assertNotEquals(first.getId(), second.getId());
+    }
+
+    @Test
+    void testDeduplicationFollowsUpdateAndDelete() {
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        incidentService.updateIncident(created.getId(), new Incident(null, "Title 2", "Description 2", Incident.Status.OPEN));
+
+        // The old key is released and the new key points at the updated incident
+        Incident recreated = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        Incident duplicateOfUpdated = incidentService.createIncident(new Incident(null, "Title 2", "Description 2", null));
+        assertNotEquals(created.getId(), recreated.getId());
+        assertEquals(created.getId(), duplicateOfUpdated.getId());
+
+        incidentService.deleteIncident(created.getId());
+        Incident afterDelete = incidentService.createIncident(new Incident(null, "Title 2", "Description 2", null));
+        assertNotEquals(created.getId(), afterDelete.getId());
+    }
+
+    @Test
+    void testConcurrentDuplicateCreatesYieldSingleIncident() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 1000; i++) {
+            int n = i % 10;
+            executor.submit(() -> ids.add(incidentService.createIncident(
+                    new Incident(null, "Title " + n, "Description " + n, null)).getId()));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(10, ids.size());
+        assertEquals(10, incidentService.getAllIncidents().size());
+    }
+
+    @Test
+    void testShardedServiceMergesShardsInIdOrder() {
+        IncidentService service = shardedService(4, IncidentJournal.NONE);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(service.createIncident(new Incident(null, "Title " + i, "Description " + i, null)).getId());
+        }
+        for (int i = 0; i < 50; i += 5) {
+            service.updateIncident(ids.get(i), new Incident(null, "Title " + i, "Description " + i, Incident.Status.CLOSED));
+        }
+
+        List<Long> sorted = ids.stream().sorted().toList();
+        assertEquals(50, Set.copyOf(ids).size());
+        assertEquals(sorted, service.getAllIncidents().stream().map(Incident::getId).toList());
+        List<Long> paged = new ArrayList<>();
+        Long after = null;
+        List<Incident> page;
+        while (!(page = service.getIncidents(after, 7, null)).isEmpty()) {
+            page.forEach(incident -> paged.add(incident.getId()));
+            after = page.get(page.size() - 1).getId();
+        }
+        assertEquals(sorted, paged);
+        List<Incident> closed = service.getIncidents(null, 100, Incident.Status.CLOSED);
+        assertEquals(10, closed.size());
+        assertEquals(closed.stream().map(Incident::getId).sorted().toList(), closed.stream().map(Incident::getId).toList());
+        assertEquals(10, service.countIncidents(Incident.Status.CLOSED));
+        ids.forEach(id -> assertEquals(id, service.getIncidentById(id).orElseThrow().getId()));
+    }
+
+    @Test
+    void testShardedDeduplicationFollowsUpdate() {
+        IncidentService service = shardedService(8, IncidentJournal.NONE);
+        Incident created = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertEquals(created.getId(), service.createIncident(new Incident(null, "Title 1", "Description 1", null)).getId());
+
+        // The new key is likely owned by another shard than the old one
+        service.updateIncident(created.getId(), new Incident(null, "Title 2", "Description 2", Incident.Status.OPEN));
+        assertNotEquals(created.getId(), service.createIncident(new Incident(null, "Title 1", "Description 1", null)).getId());
+        assertEquals(created.getId(), service.createIncident(new Incident(null, "Title 2", "Description 2", null)).getId());
+    }
+
+    @Test
+    void testShardedIdsContinueAfterRecovery() {
+        IncidentJournal journal = new IncidentJournal() {
+            @Override
+            public void recover(RecoveryListener listener) {
+                listener.onPut(new Incident(4L, "Title 4", "Description 4", Incident.Status.OPEN).withVersion(1L));
+                listener.onPut(new Incident(7L, "Title 7", "Description 7", Incident.Status.OPEN).withVersion(1L));
+                listener.onLastId(9);
+            }
+        };
+        IncidentService service = shardedService(3, journal);
+
+        assertEquals(List.of(4L, 7L), service.getAllIncidents().stream().map(Incident::getId).toList());
+        assertEquals(7L, service.createIncident(new Incident(null, "Title 7", "Description 7", null)).getId());
+        for (int i = 0; i < 10; i++) {
+            long id = service.createIncident(new Incident(null, "New " + i, "Description " + i, null)).getId();
+            assertTrue(id > 9, "ID " + id + " was handed out before the restart");
+        }
+        assertEquals(12, service.getAllIncidents().size());
+    }
+
+    @Test
+    void testCreateIncidentsReportsOutcomePerItem() {
+        Incident existing = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+
+        List<BatchItemResult> results = incidentService.createIncidents(Arrays.asList(
+                new Incident(null, "Title 2", "Description 2", null),
+                new Incident(null, "Title 1", "Description 1", null),
+                new Incident(null, "Title 2", "Description 2", null),
+                new Incident(null, "", "Description 3", null),
+                null));
+
+        assertEquals(5, results.size());
+        assertEquals(BatchItemResult.Outcome.CREATED, results.get(0).getOutcome());
+        assertEquals(BatchItemResult.Outcome.DUPLICATE, results.get(1).getOutcome());
+        assertEquals(existing.getId(), results.get(1).getId());
+        assertEquals(BatchItemResult.Outcome.DUPLICATE, results.get(2).getOutcome());
+        assertEquals(results.get(0).getId(), results.get(2).getId());
+        assertEquals(BatchItemResult.Outcome.INVALID, results.get(3).getOutcome());
+        assertEquals("Title is mandatory", results.get(3).getError());
+        assertEquals(BatchItemResult.Outcome.INVALID, results.get(4).getOutcome());
+        assertEquals(2, incidentService.getAllIncidents().size());
+    }
+
+    @Test
+    void testCreateIncidentsFromStreamLongerThanABatch() {
+        int count = IncidentService.MAX_BATCH_SIZE * 2 + 500;
+        Iterator<Incident> stream = IntStream.range(0, count)
+                .mapToObj(i -> i == 1500 ? new Incident(null, "", "Invalid", null)
+                        : new Incident(null, "Streamed " + i, "Description " + i, null))
+                .iterator();
+
+        List<BatchItemResult> results = incidentService.createIncidents(stream);
+
+        assertEquals(count, results.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, results.get(i).getIndex());
+        }
+        assertEquals(BatchItemResult.Outcome.INVALID, results.get(1500).getOutcome());
+        assertEquals("Streamed 2499", results.get(count - 1).getIncident().getTitle());
+        assertEquals(count - 1, incidentService.getAllIncidents().size());
+        assertThrows(IllegalArgumentException.class, () -> incidentService.createIncidents(Collections.emptyIterator()));
+    }
+
+    @Test
+    void testUpdateAndDeleteIncidentsReportOutcomePerItem() {
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+
+        List<BatchItemResult> updates = incidentService.updateIncidents(List.of(
+                new Incident(created.getId(), "Title 1", "Description 1", Incident.Status.CLOSED),
+                new Incident(999L, "Title 2", "Description 2", null),
+                new Incident(null, "Title 3", "Description 3", null)));
+
+        assertEquals(BatchItemResult.Outcome.UPDATED, updates.get(0).getOutcome());
+        assertEquals(BatchItemResult.Outcome.NOT_FOUND, updates.get(1).getOutcome());
+        assertEquals(BatchItemResult.Outcome.INVALID, updates.get(2).getOutcome());
+        assertEquals(Incident.Status.CLOSED, incidentService.getIncidentById(created.getId()).get().getStatus());
+        assertEquals(1, incidentService.countIncidents(Incident.Status.CLOSED));
+
+        List<BatchItemResult> deletes = incidentService.deleteIncidents(Arrays.asList(created.getId(), created.getId(), -1L));
+
+        assertEquals(BatchItemResult.Outcome.DELETED, deletes.get(0).getOutcome());
+        assertEquals(BatchItemResult.Outcome.NOT_FOUND, deletes.get(1).getOutcome());
+        assertEquals(BatchItemResult.Outcome.INVALID, deletes.get(2).getOutcome());
+        assertTrue(incidentService.getAllIncidents().isEmpty());
+    }
+
+    @Test
+    void testBatchWithInvalidSize() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> incidentService.createIncidents(List.of()));
+        assertEquals("Batch must contain between 1 and 1000 items", exception.getMessage());
+    }
+
+    @Test
+    void testMetricsRecordCallsDuplicatesCacheAndStoreSize() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE, registry, new IncidentEventBus());
+
+        Incident created = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        service.getIncidentById(created.getId());
+
+        assertEquals(2, registry.get("incident.service.calls").tag("method", "createIncident").timer().count());
+        assertEquals(1, registry.get("incident.service.calls").tag("method", "getIncidentById").timer().count());
+        assertEquals(1, registry.get("incident.duplicates").counter().count());
+        assertEquals(1, registry.get("cache.gets").tag("cache", "incidents").tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("incident.store.size").gauge().value());
+        assertEquals(1, registry.get("incident.store.status").tag("status", "OPEN").gauge().value());
+    }
+
+    @Test
+    void testCacheServesReadsOfOffHeapStoreAndFollowsWrites() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IncidentService service = new IncidentService(new OffHeapIncidentRepository(1 << 20), IncidentJournal.NONE, registry,
+                new IncidentEventBus(), 1, DeduplicationPolicy.DEFAULT, new CachePolicy(1 << 20, Duration.ZERO));
+
+        Incident created = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertSame(service.getIncidentById(created.getId()).orElseThrow(), service.getIncidentById(created.getId()).orElseThrow());
+        service.updateIncident(created.getId(), new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED));
+        assertEquals(Incident.Status.CLOSED, service.getIncidentById(created.getId()).orElseThrow().getStatus());
+        service.deleteIncident(created.getId());
+        assertTrue(service.getIncidentById(created.getId()).isEmpty());
+
+        // The read after the delete hits the tombstone the delete cached
+        assertEquals(4, registry.get("cache.gets").tag("cache", "incidents").tag("result", "hit").functionCounter().count());
+        assertEquals(0, registry.get("cache.gets").tag("cache", "incidents").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testConcurrentUpdatesAndDeletesLeaveNoStaleIncidentCached() throws Exception {
+        OffHeapIncidentRepository repository = new OffHeapIncidentRepository(1 << 20);
+        IncidentService service = new IncidentService(repository, IncidentJournal.NONE, new SimpleMeterRegistry(),
+                new IncidentEventBus(), 1, DeduplicationPolicy.DEFAULT, new CachePolicy(1 << 20, Duration.ZERO));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 1000; round++) {
+                long id = service.createIncident(new Incident(null, "Title " + round, "Description " + round, null)).getId();
+                boolean delete = round % 2 == 0;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int writer = 0; writer < 6; writer++) {
+                    int title = writer;
+                    tasks.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 20; i++) {
+                            service.updateIncident(id, new Incident(null, "Title " + title + "." + i, "Description", null));
+                            service.getIncidentById(id);
+                        }
+                        return null;
+                    }));
+                }
+                if (delete) {
+                    tasks.add(executor.submit(() -> {
+                        start.await();
+                        Thread.onSpinWait();
+                        return service.deleteIncident(id);
+                    }));
+                }
+                start.countDown();
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+
+                assertEquals(Optional.ofNullable(repository.get(id)), service.getIncidentById(id), "Incident " + id);
+                if (delete) {
+                    assertTrue(service.getIncidentById(id).isEmpty());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testDisabledCacheReadsFromRepository() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE, registry,
+                new IncidentEventBus(), 1, DeduplicationPolicy.DEFAULT, CachePolicy.DISABLED);
+
+        Incident created = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        service.updateIncident(created.getId(), new Incident(null, "Title 2", "Description 2", null));
+
+        assertEquals("Title 2", service.getIncidentById(created.getId()).orElseThrow().getTitle());
+        assertNull(registry.find("cache.gets").functionCounter());
+        assertNull(registry.find("incident.cache.weight").gauge());
+    }
+
+    @Test
+    void testChangesArePublishedToSubscribers() throws InterruptedException {
+        BlockingQueue<IncidentEvent> received = new LinkedBlockingQueue<>();
+        incidentService.subscribeToChanges(null, new IncidentEventBus.Listener() {
+            @Override
+            public void onEvent(IncidentEvent event) {
+                received.add(event);
+            }
+
+            @Override
+            public void onResync(long sequence) {
+            }
+
+            @Override
+            public void onClose() {
+            }
+        });
+
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        incidentService.updateIncident(created.getId(), new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED));
+        incidentService.deleteIncident(created.getId());
+
+        IncidentEvent createdEvent = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(IncidentEvent.Type.CREATED, createdEvent.type());
+        assertEquals(created, createdEvent.incident());
+        // The duplicate create counted another occurrence
+        IncidentEvent occurrenceEvent = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(IncidentEvent.Type.UPDATED, occurrenceEvent.type());
+        assertEquals(2L, occurrenceEvent.incident().getOccurrences());
+        IncidentEvent updatedEvent = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(IncidentEvent.Type.UPDATED, updatedEvent.type());
+        assertEquals(3L, updatedEvent.incident().getVersion());
+        assertEquals(2L, updatedEvent.incident().getOccurrences());
+        IncidentEvent deletedEvent = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(IncidentEvent.Type.DELETED, deletedEvent.type());
+        assertEquals(created.getId(), deletedEvent.incidentId());
+        assertEquals(4, deletedEvent.sequence());
+    }
+
+    @Test
+    void testChangesArePublishedOnceTheyCanBeRead() throws InterruptedException {
+        BlockingQueue<Optional<Incident>> read = new LinkedBlockingQueue<>();
+        incidentService.subscribeToChanges(null, new IncidentEventBus.Listener() {
+            @Override
+            public void onEvent(IncidentEvent event) {
+                read.add(incidentService.getIncidentById(event.incidentId()));
+            }
+
+            @Override
+            public void onResync(long sequence) {
+            }
+
+            @Override
+            public void onClose() {
+            }
+        });
+
+        // Each change is only made after the event of the one before it was read, so a read sees exactly its version
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertEquals(1L, read.poll(5, TimeUnit.SECONDS).orElseThrow().getVersion());
+        incidentService.updateIncident(created.getId(), new Incident(null, "Title 2", "Description 1", Incident.Status.CLOSED));
+        assertEquals("Title 2", read.poll(5, TimeUnit.SECONDS).orElseThrow().getTitle());
+        incidentService.deleteIncident(created.getId());
+        assertTrue(read.poll(5, TimeUnit.SECONDS).isEmpty());
+    }
+
     @Test
     void testGetAllIncidents() {
         Incident incident1 = new Incident(null, "Title 1", "Description 1", Incident.Status.OPEN);
@@ -57,6 +513,212 @@ class IncidentServiceTest {
         assertEquals(2, allIncidents.size());
     }
 
+    @Test
+    void testGetIncidentsPagesInIdOrder() {
+        for (int i = 1; i <= 5; i++) {
+            incidentService.createIncident(new Incident(null, "Title " + i, "Description " + i, null));
+        }
+
+        List<Incident> firstPage = incidentService.getIncidents(null, 2, null);
+        List<Incident> secondPage = incidentService.getIncidents(firstPage.get(1).getId(), 2, null);
+        List<Incident> lastPage = incidentService.getIncidents(secondPage.get(1).getId(), 2, null);
+
+        assertEquals(List.of(1L, 2L), firstPage.stream().map(Incident::getId).toList());
+        assertEquals(List.of(3L, 4L), secondPage.stream().map(Incident::getId).toList());
+        assertEquals(List.of(5L), lastPage.stream().map(Incident::getId).toList());
+    }
+
+    @Test
+    void testGetIncidentsFiltersByStatus() {
+        Incident first = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        incidentService.createIncident(new Incident(null, "Title 2", "Description 2", null));
+        incidentService.updateIncident(first.getId(), new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED));
+
+        List<Incident> closed = incidentService.getIncidents(null, 10, Incident.Status.CLOSED);
+
+        assertEquals(1, closed.size());
+        assertEquals(first.getId(), closed.get(0).getId());
+        assertEquals(1, incidentService.streamIncidents(null, Incident.Status.OPEN).count());
+    }
+
+    @Test
+    void testLifecycleTimesFollowStatusTransitions() {
+        MutableClock clock = new MutableClock();
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE,
+                new SimpleMeterRegistry(), new IncidentEventBus(), 1,
+                new DeduplicationPolicy(new ExactDeduplication(), Duration.ofMinutes(10), 8, clock));
+        Instant createdAt = clock.instant();
+
+        // Times sent by the client are ignored
+        Incident created = service.createIncident(new Incident(null, "Title 1", "Description 1", null).toBuilder()
+                .createdAt(Instant.EPOCH).closedAt(Instant.EPOCH).build());
+        assertEquals(createdAt, created.getCreatedAt());
+        assertEquals(createdAt, created.getUpdatedAt());
+        assertNull(created.getClosedAt());
+
+        clock.advance(Duration.ofMinutes(1));
+        Incident duplicate = service.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertEquals(createdAt, duplicate.getCreatedAt());
+        assertEquals(clock.instant(), duplicate.getUpdatedAt());
+
+        clock.advance(Duration.ofMinutes(5));
+        Instant startedAt = clock.instant();
+        Incident inProgress = service.updateIncident(created.getId(),
+                new Incident(null, "Title 1", "Description 1", Incident.Status.IN_PROGRESS)).orElseThrow();
+        assertEquals(createdAt, inProgress.getCreatedAt());
+        assertEquals(startedAt, inProgress.getInProgressAt());
+        assertEquals(startedAt, inProgress.getUpdatedAt());
+
+        clock.advance(Duration.ofMinutes(30));
+        Instant closedAt = clock.instant();
+        Incident closed = service.updateIncident(created.getId(),
+                new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED)).orElseThrow();
+        assertEquals(startedAt, closed.getInProgressAt());
+        assertEquals(closedAt, closed.getClosedAt());
+        assertEquals(Duration.ofMinutes(36), Duration.between(closed.getCreatedAt(), closed.getClosedAt()));
+
+        // Editing a closed incident keeps its closing time, reopening it clears it
+        clock.advance(Duration.ofMinutes(1));
+        assertEquals(closedAt, service.updateIncident(created.getId(),
+                new Incident(null, "Title 1", "Resolved", Incident.Status.CLOSED)).orElseThrow().getClosedAt());
+        Incident reopened = service.updateIncident(created.getId(),
+                new Incident(null, "Title 1", "Resolved", Incident.Status.OPEN)).orElseThrow();
+        assertNull(reopened.getClosedAt());
+        assertEquals(startedAt, reopened.getInProgressAt());
+        assertEquals(createdAt, reopened.getCreatedAt());
+    }
+
+    @Test
+    void testGetIncidentsCreatedBetweenPagesInCreationOrderAcrossShards() {
+        MutableClock clock = new MutableClock();
+        IncidentService service = new IncidentService(new InMemoryIncidentRepository(), IncidentJournal.NONE,
+                new SimpleMeterRegistry(), new IncidentEventBus(), 4,
+                new DeduplicationPolicy(new ExactDeduplication(), Duration.ofMinutes(10), 8, clock));
+        Instant start = clock.instant();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // Two incidents a minute, so pages continue within a millisecond as well as across them
+            clock.advance(Duration.ofSeconds(i % 2 == 0 ? 60 : 0));
+            ids.add(service.createIncident(new Incident(null, "Title " + i, "Description " + i, null)).getId());
+        }
+
+        Instant since = start.plus(Duration.ofMinutes(2));
+        Instant until = start.plus(Duration.ofMinutes(5));
+        List<Long> paged = new ArrayList<>();
+        List<Incident> page = service.getIncidentsCreatedBetween(since, until, null, 4, null);
+        paged.addAll(page.stream().map(Incident::getId).toList());
+        Incident last = page.get(page.size() - 1);
+        page = service.getIncidentsCreatedBetween(last.getCreatedAt(), until, last.getId(), 4, null);
+        paged.addAll(page.stream().map(Incident::getId).toList());
+
+        // Incidents created in the same millisecond are ordered by ID, which is not creation order across shards
+        List<Long> expected = service.getAllIncidents().stream()
+                .filter(incident -> !incident.getCreatedAt().isBefore(since) && incident.getCreatedAt().isBefore(until))
+                .sorted(Comparator.comparing(Incident::getCreatedAt).thenComparing(Incident::getId))
+                .map(Incident::getId)
+                .toList();
+        assertEquals(6, expected.size());
+        assertEquals(expected, paged);
+        assertEquals(ids.subList(8, 10).stream().sorted().toList(), service.getIncidentsCreatedBetween(start.plus(Duration.ofMinutes(5)), null, null, 10, null)
+                .stream().map(Incident::getId).toList());
+        assertTrue(service.getIncidentsCreatedBetween(since, since, null, 10, null).isEmpty());
+
+        service.updateIncident(ids.get(3), new Incident(null, "Title 3", "Description 3", Incident.Status.CLOSED));
+        service.deleteIncident(ids.get(4));
+        assertEquals(List.of(ids.get(3)), service.getIncidentsCreatedBetween(since, until, null, 10, Incident.Status.CLOSED)
+                .stream().map(Incident::getId).toList());
+        assertEquals(5, service.getIncidentsCreatedBetween(since, until, null, 10, null).size());
+        assertThrows(IllegalArgumentException.class, () -> service.getIncidentsCreatedBetween(until, since, null, 10, null));
+        assertThrows(IllegalArgumentException.class, () -> service.getIncidentsCreatedBetween(since, until, null, 0, null));
+    }
+
+    @Test
+    void testStatusCountsFollowCreateUpdateAndDelete() {
+        Incident first = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        Incident second = incidentService.createIncident(new Incident(null, "Title 2", "Description 2", null));
+        incidentService.createIncident(new Incident(null, "Title 2", "Description 2", null)); // Duplicate
+        assertEquals(2, incidentService.countIncidents(Incident.Status.OPEN));
+
+        incidentService.updateIncident(first.getId(), new Incident(null, "Title 1", "Description 1", Incident.Status.IN_PROGRESS));
+        incidentService.updateIncident(second.getId(), new Incident(null, "Title 2", "Description 2", Incident.Status.CLOSED));
+        incidentService.deleteIncident(second.getId());
+
+        assertEquals(Map.of(Incident.Status.OPEN, 0L, Incident.Status.IN_PROGRESS, 1L, Incident.Status.CLOSED, 0L),
+                incidentService.getStatusCounts());
+        assertEquals(List.of(first.getId()),
+                incidentService.getIncidents(null, 10, Incident.Status.IN_PROGRESS).stream().map(Incident::getId).toList());
+        assertTrue(incidentService.getIncidents(null, 10, Incident.Status.CLOSED).isEmpty());
+    }
+
+    @Test
+    void testGetIncidentsWithInvalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> incidentService.getIncidents(null, 0, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> incidentService.getIncidents(null, IncidentService.MAX_PAGE_SIZE + 1, null));
+    }
+
+    @Test
+    void testSearchRanksTitleMatchesFirstAndRequiresAllWords() {
+        Incident inDescription = incidentService.createIncident(new Incident(null, "Checkout errors", "Database connection pool exhausted", Incident.Status.OPEN));
+        Incident inTitle = incidentService.createIncident(new Incident(null, "Database connection timeouts", "Orders fail at checkout", Incident.Status.OPEN));
+        incidentService.createIncident(new Incident(null, "Disk full", "Database volume at 100%", Incident.Status.OPEN));
+
+        List<SearchHit> hits = incidentService.searchIncidents("DATABASE, connection!", 0, 10);
+
+        assertEquals(List.of(inTitle.getId(), inDescription.getId()), hits.stream().map(hit -> hit.getIncident().getId()).toList());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+        assertTrue(incidentService.searchIncidents("database printer", 0, 10).isEmpty());
+    }
+
+    @Test
+    void testSearchFollowsUpdateAndDelete() {
+        Incident incident = incidentService.createIncident(new Incident(null, "Login page down", "Returns 502", Incident.Status.OPEN));
+        incidentService.updateIncident(incident.getId(), new Incident(null, "Signup page down", "Returns 502", Incident.Status.IN_PROGRESS));
+
+        assertTrue(incidentService.searchIncidents("login", 0, 10).isEmpty());
+        List<SearchHit> hits = incidentService.searchIncidents("signup 502", 0, 10);
+        assertEquals(1, hits.size());
+        assertEquals(Incident.Status.IN_PROGRESS, hits.get(0).getIncident().getStatus());
+
+        incidentService.deleteIncident(incident.getId());
+        assertTrue(incidentService.searchIncidents("signup", 0, 10).isEmpty());
+    }
+
+    @Test
+    void testShardedSearchPagesThroughEqualMatchesByDescendingId() {
+        IncidentService sharded = shardedService(4, IncidentJournal.NONE);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            ids.add(sharded.createIncident(new Incident(null, "Queue backlog " + i, "Consumer lag on queue", Incident.Status.OPEN)).getId());
+        }
+        for (int i = 0; i < 25; i += 2) {
+            sharded.deleteIncident(ids.get(i));
+        }
+
+        List<Long> found = new ArrayList<>();
+        for (int offset = 0; offset < 20; offset += 5) {
+            sharded.searchIncidents("queue backlog", offset, 5).forEach(hit -> found.add(hit.getIncident().getId()));
+        }
+
+        // Equally good matches, so the largest IDs come first
+        List<Long> expected = new ArrayList<>();
+        for (int i = 1; i < 25; i += 2) {
+            expected.add(ids.get(i));
+        }
+        expected.sort(Comparator.reverseOrder());
+        assertEquals(expected, found);
+    }
+
+    @Test
+    void testSearchWithInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> incidentService.searchIncidents(" ?! ", 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> incidentService.searchIncidents(null, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> incidentService.searchIncidents("disk", -1, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> incidentService.searchIncidents("disk", IncidentService.MAX_SEARCH_OFFSET + 1, 10));
+        assertThrows(IllegalArgumentException.class, () -> incidentService.searchIncidents("disk", 0, 0));
+    }
+
     @Test
     void testGetIncidentById() {
         Incident incident = new Incident(null, "Title 1", "Description 1", Incident.Status.OPEN);
@@ -97,6 +759,78 @@ class IncidentServiceTest {
         assertEquals(Incident.Status.CLOSED, result.get().getStatus());
     }
 
+    @Test
+    void testUpdateIncidentSanitizesDescription() {
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "<b>Description 1</b>", null));
+        assertEquals("Description 1", created.getDescription());
+
+        Incident updated = incidentService.updateIncident(created.getId(),
+                new Incident(null, "Title 1", " <script>alert(1)</script>Description 2 ", Incident.Status.OPEN)).get();
+
+        assertEquals("alert(1)Description 2", updated.getDescription());
+    }
+
+    @Test
+    void testUpdatePublishesNewVersionWithoutChangingEarlierOnes() {
+        Incident request = new Incident(null, "Title 1", "<b>Description 1</b>", null);
+        Incident created = incidentService.createIncident(request);
+        Incident read = incidentService.getIncidentById(created.getId()).get();
+
+        Incident updated = incidentService.updateIncident(created.getId(),
+                new Incident(null, "Title 1", "Description 2", Incident.Status.CLOSED)).get();
+
+        // Neither the request nor versions handed out earlier are modified
+        assertNull(request.getId());
+        assertEquals("<b>Description 1</b>", request.getDescription());
+        assertEquals(Incident.Status.OPEN, read.getStatus());
+        assertEquals("Description 1", read.getDescription());
+        assertEquals(Incident.Status.CLOSED, updated.getStatus());
+        assertEquals(updated, incidentService.getIncidentById(created.getId()).get());
+    }
+
+    @Test
+    void testConditionalUpdateComparesAndIncrementsVersion() {
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        assertEquals(1L, created.getVersion());
+
+        Incident updated = incidentService.updateIncident(created.getId(),
+                new Incident(null, "Title 1", "Description 1", Incident.Status.IN_PROGRESS), 1L).get();
+        assertEquals(2L, updated.getVersion());
+
+        // A second responder still working from version 1 is rejected instead of overwriting the change
+        VersionConflictException conflict = assertThrows(VersionConflictException.class, () -> incidentService.updateIncident(
+                created.getId(), new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED), 1L));
+        assertEquals(2L, conflict.getCurrentVersion());
+        assertEquals(Incident.Status.IN_PROGRESS, incidentService.getIncidentById(created.getId()).get().getStatus());
+        assertEquals(0, incidentService.countIncidents(Incident.Status.CLOSED));
+    }
+
+    @Test
+    void testConcurrentConditionalUpdatesApplyOncePerVersion() throws Exception {
+        Incident created = incidentService.createIncident(new Incident(null, "Title 1", "Description 1", null));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            attempts.add(executor.submit(() -> {
+                try {
+                    incidentService.updateIncident(created.getId(),
+                            new Incident(null, "Title 1", "Description 1", Incident.Status.CLOSED), 1L);
+                    return true;
+                } catch (VersionConflictException e) {
+                    return false;
+                }
+            }));
+        }
+        int applied = 0;
+        for (Future<Boolean> attempt : attempts) {
+            applied += attempt.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, applied);
+        assertEquals(2L, incidentService.getIncidentById(created.getId()).get().getVersion());
+    }
+
     @Test
     void testUpdateIncidentNotFound() {
         Incident updatedIncident = new Incident(null, "Updated Title", "Updated Description", Incident.Status.CLOSED);
@@ -130,4 +864,35 @@ class IncidentServiceTest {
         });
         assertEquals("ID must be a positive non-null value", exception.getMessage());
     }
+
+    private static IncidentService shardedService(int shards, IncidentJournal journal) {
+        return new IncidentService(new InMemoryIncidentRepository(), journal, new SimpleMeterRegistry(), new IncidentEventBus(), shards);
+    }
+
+    /**
+     * A clock moved forward by the test.
+     */
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-05-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
 }
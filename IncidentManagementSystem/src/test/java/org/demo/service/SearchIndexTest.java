@@ -0,0 +1,54 @@
+package org.demo.service;
+
+import org.demo.model.Incident;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexTest {
+
+    @Test
+    void testQueryTermsAreLowercasedDistinctWords() {
+        assertEquals(List.of("db", "01", "down"), SearchIndex.queryTerms("DB-01 down, db-01 DOWN"));
+        assertEquals(SearchIndex.MAX_TERM_LENGTH, SearchIndex.queryTerms("x".repeat(100)).get(0).length());
+        assertTrue(SearchIndex.queryTerms("-- !!").isEmpty());
+    }
+
+    @Test
+    void testIntersectionSkipsRemovedPostingsAndDropsEmptyWords() {
+        SearchIndex index = new SearchIndex();
+        for (long id = 1; id <= 1000; id++) {
+            index.add(id, incident(id % 100 == 0 ? "common rare" : "common"));
+        }
+        for (long id = 1; id <= 1000; id += 3) {
+            index.remove(id, incident(id % 100 == 0 ? "common rare" : "common"));
+        }
+
+        assertEquals(666, index.documentFrequency("common"));
+        assertEquals(List.of(900L, 800L, 600L, 500L, 300L, 200L), search(index, "rare", "common"));
+
+        for (long id : search(index, "rare")) {
+            index.remove(id, incident("common rare"));
+        }
+        assertEquals(0, index.documentFrequency("rare"));
+        assertTrue(search(index, "rare").isEmpty());
+        assertEquals(660, index.documentCount());
+    }
+
+    private static List<Long> search(SearchIndex index, String... terms) {
+        List<Long> ids = new ArrayList<>();
+        double[] weights = new double[terms.length];
+        Arrays.fill(weights, 1.0);
+        index.search(List.of(terms), weights, 1.0, (id, score) -> ids.add(id));
+        return ids;
+    }
+
+    private static Incident incident(String title) {
+        return new Incident(null, title, "Description", Incident.Status.OPEN);
+    }
+}
@@ -0,0 +1,48 @@
+package org.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TagStripperTest {
+
+    private static String regex(String input) {
+        return input.replaceAll("<[^>]*>", "").trim();
+    }
+
+    @Test
+    void testStripsTags() {
+        assertEquals("Disk full on db-1", TagStripper.strip("<b>Disk full</b> on <i>db-1</i>"));
+        assertEquals("a c", TagStripper.strip(" a <br/>c\n"));
+        assertEquals("", TagStripper.strip("<p></p>"));
+    }
+
+    @Test
+    void testKeepsUnclosedTag() {
+        assertEquals("x  y < z", TagStripper.strip("x <b> y < z"));
+        assertEquals("a < b", TagStripper.strip("a < b"));
+    }
+
+    @Test
+    void testReturnsInputWithoutTags() {
+        String input = "No tags here";
+        assertSame(input, TagStripper.strip(input));
+    }
+
+    @Test
+    void testMatchesRegexOnRandomInput() {
+        Random random = new Random(42);
+        char[] alphabet = {'<', '>', 'a', 'b', ' ', '\n', '/', '\t'};
+        for (int i = 0; i < 10_000; i++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String input = new String(chars);
+            assertEquals(regex(input), TagStripper.strip(input), input);
+        }
+    }
+}
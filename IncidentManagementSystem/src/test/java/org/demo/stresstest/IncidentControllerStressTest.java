@@ -1,207 +1,183 @@
 package org.demo.stresstest;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.service.IncidentService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.web.client.RestTemplate;
-
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
-
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives a mixed read/write workload against the application started on a random port and fails when the
+ * configured throughput or latency budgets are missed. Runs with {@code mvn -P loadtest test}.
+ *
+ * <p>All settings are system properties with the {@code load.} prefix, see the defaults below.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class IncidentControllerStressTest {
 
-    private static final String BASE_URL = "http://localhost:8080/api/incidents";
-    private final RestTemplate restTemplate = new RestTemplate();
-
-    @Test
-    void stressTestCreateIncident() {
-        int threadCount = 1000;
-        int requestCount = 100000;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        AtomicInteger successCount = new AtomicInteger();
-        AtomicInteger failureCount = new AtomicInteger();
-        long startTime = System.currentTimeMillis();
-
-        for (int i = 0; i < requestCount; i++) {
-            executor.submit(() -> {
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.APPLICATION_JSON);
-
-                String incidentJson = "{" +
-                        "\"title\":\"Stress Test Incident\"," +
-                        "\"description\":\"Created during stress testing\"," +
-                        "\"status\":\"OPEN\"}";
-                HttpEntity<String> request = new HttpEntity<>(incidentJson, headers);
-
-                try {
-                    restTemplate.postForEntity(BASE_URL, request, String.class);
-                    successCount.incrementAndGet();
-                } catch (Exception e) {
-                    failureCount.incrementAndGet();
-                }
-            });
-        }
+    private static final double RATE = doubleProperty("load.rate", 300);
+    private static final long WARMUP_SECONDS = longProperty("load.warmupSeconds", 15);
+    private static final long DURATION_SECONDS = longProperty("load.durationSeconds", 20);
+    private static final int SEED_INCIDENTS = (int) longProperty("load.seedIncidents", 1000);
+    private static final int MAX_IN_FLIGHT = (int) longProperty("load.maxInFlight", 2000);
+    // Weights of the operations, in percent
+    private static final String MIX = System.getProperty("load.mix", "GET=60,PAGE=10,CREATE=15,UPDATE=10,DELETE=5");
+
+    private static final double MIN_THROUGHPUT_RATIO = doubleProperty("load.minThroughputRatio", 0.95);
+    private static final double P50_BUDGET_MILLIS = doubleProperty("load.p50Millis", 10);
+    private static final double P99_BUDGET_MILLIS = doubleProperty("load.p99Millis", 100);
+    private static final double P999_BUDGET_MILLIS = doubleProperty("load.p999Millis", 250);
+    private static final long MAX_ERRORS = longProperty("load.maxErrors", 0);
+
+    enum Operation {
+        GET,
+        PAGE,
+        CREATE,
+        UPDATE,
+        DELETE
+    }
 
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
-                executor.shutdownNow();
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final AtomicLong uniqueSequence = new AtomicLong();
+    private URI baseUri;
+    private long maxSeededId;
+
+    @BeforeEach
+    void setUp() throws IOException, InterruptedException {
+        baseUri = URI.create("http://localhost:" + port + "/api/incidents");
+        // Batches are capped, so larger seeds are sent a batch at a time
+        for (int from = 0; from < SEED_INCIDENTS; from += IncidentService.MAX_BATCH_SIZE) {
+            StringBuilder batch = new StringBuilder("[");
+            for (int i = from; i < Math.min(SEED_INCIDENTS, from + IncidentService.MAX_BATCH_SIZE); i++) {
+                batch.append(i == from ? "" : ",").append(incidentJson("Seed incident " + i, "OPEN"));
+            }
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUri + "/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(batch.append(']').toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode(), response.body());
+            for (JsonNode result : objectMapper.readTree(response.body())) {
+                maxSeededId = Math.max(maxSeededId, result.get("id").asLong());
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
         }
-
-        long endTime = System.currentTimeMillis();
-        logPerformanceMetrics(requestCount, successCount.get(), failureCount.get(), startTime, endTime);
     }
 
     @Test
-    void stressTestGetAllIncidents() {
-        int threadCount = 50;
-        int requestCount = 500;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        AtomicInteger successCount = new AtomicInteger();
-        AtomicInteger failureCount = new AtomicInteger();
-        long startTime = System.currentTimeMillis();
-
-        for (int i = 0; i < requestCount; i++) {
-            executor.submit(() -> {
-                try {
-                    restTemplate.getForEntity(BASE_URL, String.class);
-                    successCount.incrementAndGet();
-                } catch (Exception e) {
-                    failureCount.incrementAndGet();
-                }
-            });
-        }
+    void mixedWorkloadMeetsBudgets() throws InterruptedException {
+        Operation[] schedule = weightedSchedule();
+        OpenLoopLoadGenerator<Operation> generator = new OpenLoopLoadGenerator<>(client, Operation.class,
+                n -> schedule[(int) (n % schedule.length)], this::call, MAX_IN_FLIGHT);
+
+        generator.run(RATE, TimeUnit.SECONDS.toNanos(WARMUP_SECONDS));
+        OpenLoopLoadGenerator.Result<Operation> result = generator.run(RATE, TimeUnit.SECONDS.toNanos(DURATION_SECONDS));
+
+        System.out.printf("Load test at %.0f req/s for %d s (mix %s):%n%s", RATE, DURATION_SECONDS, MIX, result.report());
+        assertAll(
+                () -> assertTrue(result.throughput() >= RATE * MIN_THROUGHPUT_RATIO,
+                        String.format("Throughput %.1f req/s below %.1f req/s", result.throughput(), RATE * MIN_THROUGHPUT_RATIO)),
+                () -> assertTrue(result.totalErrors.get() <= MAX_ERRORS,
+                        result.totalErrors.get() + " failed requests, at most " + MAX_ERRORS + " allowed"),
+                () -> assertBudget("p50", result.percentileMillis(result.total, 50), P50_BUDGET_MILLIS),
+                () -> assertBudget("p99", result.percentileMillis(result.total, 99), P99_BUDGET_MILLIS),
+                () -> assertBudget("p99.9", result.percentileMillis(result.total, 99.9), P999_BUDGET_MILLIS));
+    }
 
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
-                executor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-        }
+    private static void assertBudget(String percentile, double actualMillis, double budgetMillis) {
+        assertTrue(actualMillis <= budgetMillis,
+                String.format("%s latency %.2f ms above budget of %.2f ms", percentile, actualMillis, budgetMillis));
+    }
 
-        long endTime = System.currentTimeMillis();
-        logPerformanceMetrics(requestCount, successCount.get(), failureCount.get(), startTime, endTime);
+    private OpenLoopLoadGenerator.Call call(Operation operation) {
+        // Incidents may already be deleted by an earlier request, so by-ID operations also accept 404
+        Function<HttpResponse<String>, Boolean> okOrNotFound = response -> response.statusCode() / 100 == 2 || response.statusCode() == 404;
+        Function<HttpResponse<String>, Boolean> ok = response -> response.statusCode() / 100 == 2;
+        return switch (operation) {
+            case GET -> new OpenLoopLoadGenerator.Call(request(baseUri + "/" + randomSeededId()).GET().build(), okOrNotFound);
+            case PAGE -> new OpenLoopLoadGenerator.Call(
+                    request(baseUri + "?limit=20&after=" + ThreadLocalRandom.current().nextLong(maxSeededId)).GET().build(), ok);
+            case CREATE -> new OpenLoopLoadGenerator.Call(request(baseUri.toString())
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(incidentJson("Load incident " + uniqueSequence.incrementAndGet(), "OPEN")))
+                    .build(), response -> response.statusCode() == 201);
+            case UPDATE -> {
+                long id = randomSeededId();
+                yield new OpenLoopLoadGenerator.Call(request(baseUri + "/" + id)
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(incidentJson("Seed incident " + id, "IN_PROGRESS")))
+                        .build(), okOrNotFound);
+            }
+            case DELETE -> new OpenLoopLoadGenerator.Call(request(baseUri + "/" + randomSeededId()).DELETE().build(), okOrNotFound);
+        };
     }
 
-    @Test
-    void stressTestUpdateIncident() {
-        // Pre-create an incident to update
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        String initialIncidentJson = "{" +
-                "\"title\":\"Initial Incident\"," +
-                "\"description\":\"For update testing\"," +
-                "\"status\":\"OPEN\"}";
-        HttpEntity<String> initialRequest = new HttpEntity<>(initialIncidentJson, headers);
-        String incidentId = restTemplate.postForObject(BASE_URL, initialRequest, String.class);
-
-        int threadCount = 50;
-        int requestCount = 500;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        AtomicInteger successCount = new AtomicInteger();
-        AtomicInteger failureCount = new AtomicInteger();
-        long startTime = System.currentTimeMillis();
-
-        for (int i = 0; i < requestCount; i++) {
-            executor.submit(() -> {
-                String updateIncidentJson = "{" +
-                        "\"title\":\"Updated Incident\"," +
-                        "\"description\":\"Updated during stress testing\"," +
-                        "\"status\":\"CLOSED\"}";
-                HttpEntity<String> updateRequest = new HttpEntity<>(updateIncidentJson, headers);
-
-                try {
-                    restTemplate.put(BASE_URL + "/" + incidentId, updateRequest);
-                    successCount.incrementAndGet();
-                } catch (Exception e) {
-                    failureCount.incrementAndGet();
-                }
-            });
-        }
+    private HttpRequest.Builder request(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).timeout(Duration.ofSeconds(30));
+    }
 
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
-                executor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-        }
+    private long randomSeededId() {
+        return ThreadLocalRandom.current().nextLong(1, maxSeededId + 1);
+    }
 
-        long endTime = System.currentTimeMillis();
-        logPerformanceMetrics(requestCount, successCount.get(), failureCount.get(), startTime, endTime);
+    private static String incidentJson(String title, String status) {
+        return "{\"title\":\"" + title + "\",\"description\":\"Created by the load test\",\"status\":\"" + status + "\"}";
     }
 
-    @Test
-    void stressTestDeleteIncident() {
-        // Pre-create an incident to delete
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        String initialIncidentJson = "{" +
-                "\"title\":\"Incident to Delete\"," +
-                "\"description\":\"Created for delete testing\"," +
-                "\"status\":\"OPEN\"}";
-        HttpEntity<String> initialRequest = new HttpEntity<>(initialIncidentJson, headers);
-        String incidentId = restTemplate.postForObject(BASE_URL, initialRequest, String.class);
-
-        int threadCount = 50;
-        int requestCount = 500;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        AtomicInteger successCount = new AtomicInteger();
-        AtomicInteger failureCount = new AtomicInteger();
-        long startTime = System.currentTimeMillis();
-
-        for (int i = 0; i < requestCount; i++) {
-            executor.submit(() -> {
-                try {
-                    restTemplate.delete(BASE_URL + "/" + incidentId);
-                    successCount.incrementAndGet();
-                } catch (Exception e) {
-                    failureCount.incrementAndGet();
+    // Spreads the operations evenly over a cycle as long as the sum of their weights
+    private static Operation[] weightedSchedule() {
+        Map<Operation, Integer> weights = Arrays.stream(MIX.split(","))
+                .map(entry -> entry.split("="))
+                .collect(Collectors.toMap(entry -> Operation.valueOf(entry[0].trim()), entry -> Integer.parseInt(entry[1].trim())));
+        int totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        Operation[] schedule = new Operation[totalWeight];
+        double[] credit = new double[Operation.values().length];
+        for (int slot = 0; slot < totalWeight; slot++) {
+            Operation next = null;
+            for (Operation operation : weights.keySet()) {
+                credit[operation.ordinal()] += (double) weights.get(operation) / totalWeight;
+                if (next == null || credit[operation.ordinal()] > credit[next.ordinal()]) {
+                    next = operation;
                 }
-            });
-        }
-
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
-                executor.shutdownNow();
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
+            credit[next.ordinal()] -= 1;
+            schedule[slot] = next;
         }
+        return schedule;
+    }
 
-        long endTime = System.currentTimeMillis();
-        logPerformanceMetrics(requestCount, successCount.get(), failureCount.get(), startTime, endTime);
+    private static double doubleProperty(String name, double defaultValue) {
+        return Double.parseDouble(System.getProperty(name, String.valueOf(defaultValue)));
     }
 
-    private void logPerformanceMetrics(int requestCount, int successCount, int failureCount, long startTime, long endTime) {
-        long duration = endTime - startTime;
-        double avgLatency = (double) duration / requestCount;
-        double throughput = (double) requestCount / (duration / 1000.0);
-
-        System.out.println("Stress Test Results:");
-        System.out.println("Total Requests: " + requestCount);
-        System.out.println("Successful Requests: " + successCount);
-        System.out.println("Failed Requests: " + failureCount);
-        System.out.println("Total Time (ms): " + duration);
-        System.out.println("Average Latency (ms): " + avgLatency);
-        System.out.println("Throughput (requests/sec): " + throughput);
+    private static long longProperty(String name, long defaultValue) {
+        return Long.parseLong(System.getProperty(name, String.valueOf(defaultValue)));
     }
 }
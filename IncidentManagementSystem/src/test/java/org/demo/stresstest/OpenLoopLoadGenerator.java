@@ -0,0 +1,154 @@
+package org.demo.stresstest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Sends requests at a constant arrival rate regardless of how fast the server answers.
+ *
+ * <p>Every request has an intended start time on a fixed schedule, and its latency is measured from that time
+ * rather than from when it was actually sent. A server that stalls therefore shows up in the percentiles
+ * instead of silently slowing the generator down (coordinated omission).
+ */
+class OpenLoopLoadGenerator<O extends Enum<O>> {
+
+    private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * A request to send and the check of its response.
+     */
+    record Call(HttpRequest request, Function<HttpResponse<String>, Boolean> isSuccess) {
+    }
+
+    /**
+     * Latencies and outcome counts of one run, per operation.
+     */
+    static final class Result<O extends Enum<O>> {
+
+        final Map<O, Histogram> latencies;
+        final Map<O, AtomicLong> errors;
+        final Histogram total = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3);
+        final AtomicLong totalErrors = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        long elapsedNanos;
+
+        Result(Class<O> operations) {
+            latencies = new EnumMap<>(operations);
+            errors = new EnumMap<>(operations);
+            for (O operation : operations.getEnumConstants()) {
+                latencies.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3));
+                errors.put(operation, new AtomicLong());
+            }
+        }
+
+        long completed() {
+            return total.getTotalCount();
+        }
+
+        double throughput() {
+            return completed() / (elapsedNanos / 1e9);
+        }
+
+        double percentileMillis(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1e6;
+        }
+
+        String report() {
+            StringBuilder report = new StringBuilder(String.format("%-10s %9s %7s %9s %9s %9s %9s%n",
+                    "operation", "count", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+            latencies.forEach((operation, histogram) -> appendRow(report, operation.name(), histogram, errors.get(operation).get()));
+            appendRow(report, "total", total, totalErrors.get());
+            report.append(String.format("throughput %.1f req/s, rejected %d%n", throughput(), rejected.get()));
+            return report.toString();
+        }
+
+        private void appendRow(StringBuilder report, String name, Histogram histogram, long errorCount) {
+            report.append(String.format("%-10s %9d %7d %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(), errorCount,
+                    percentileMillis(histogram, 50), percentileMillis(histogram, 99), percentileMillis(histogram, 99.9),
+                    histogram.getMaxValue() / 1e6));
+        }
+    }
+
+    private final HttpClient client;
+    private final Class<O> operations;
+    private final Function<O, Call> calls;
+    private final Function<Long, O> schedule;
+    private final int maxInFlight;
+
+    /**
+     * @param client The client sending the requests.
+     * @param operations The operation type, used to split the results.
+     * @param schedule Picks the operation of the n-th request.
+     * @param calls Builds the request for an operation.
+     * @param maxInFlight Requests due while this many are outstanding are rejected instead of queued without bound.
+     */
+    OpenLoopLoadGenerator(HttpClient client, Class<O> operations, Function<Long, O> schedule, Function<O, Call> calls, int maxInFlight) {
+        this.client = client;
+        this.operations = operations;
+        this.schedule = schedule;
+        this.calls = calls;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sends requests at the given rate for the given duration and waits for the outstanding ones.
+     *
+     * @param requestsPerSecond The arrival rate.
+     * @param durationNanos How long to send requests for.
+     * @return The recorded latencies and errors.
+     */
+    Result<O> run(double requestsPerSecond, long durationNanos) throws InterruptedException {
+        Result<O> result = new Result<>(operations);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        long requestCount = durationNanos / intervalNanos;
+        long start = System.nanoTime();
+
+        for (long n = 0; n < requestCount; n++) {
+            long intendedStart = start + n * intervalNanos;
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            O operation = schedule.apply(n);
+            if (!inFlight.tryAcquire()) {
+                result.rejected.incrementAndGet();
+                result.errors.get(operation).incrementAndGet();
+                result.totalErrors.incrementAndGet();
+                continue;
+            }
+            Call call = calls.apply(operation);
+            CompletableFuture<HttpResponse<String>> response = client.sendAsync(call.request(), HttpResponse.BodyHandlers.ofString());
+            response.whenComplete((value, failure) -> {
+                long latency = Math.min(System.nanoTime() - intendedStart, HIGHEST_TRACKABLE_LATENCY);
+                result.latencies.get(operation).recordValue(latency);
+                result.total.recordValue(latency);
+                if (failure != null || !call.isSuccess().apply(value)) {
+                    result.errors.get(operation).incrementAndGet();
+                    result.totalErrors.incrementAndGet();
+                }
+                inFlight.release();
+            });
+        }
+
+        // Wait for the responses still on their way
+        if (!inFlight.tryAcquire(maxInFlight, 1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Requests still outstanding a minute after the run ended");
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+}
@@ -2,7 +2,7 @@ import React, { useState, useEffect } from 'react';
 import IncidentList from './components/IncidentList';
 import IncidentForm from './components/IncidentForm';
 import IncidentDetails from './components/IncidentDetails';
-import { getAllIncidents, deleteIncident, updateIncident } from './services/api';
+import { getAllIncidents, deleteIncident, updateIncident, subscribeToIncidentChanges } from './services/api';
 
 const App = () => {
   const [selectedIncident, setSelectedIncident] = useState(null);
@@ -11,8 +11,20 @@ const App = () => {
 
   useEffect(() => {
     fetchIncidents();
+    // Apply changes as they happen instead of reloading the whole list
+    return subscribeToIncidentChanges(applyChange, fetchIncidents);
   }, []);
 
+  const applyChange = (event) => {
+    setIncidents((current) => {
+      const others = current.filter((incident) => incident.id !== event.incidentId);
+      if (event.type === 'DELETED') {
+        return others;
+      }
+      return [...others, event.incident].sort((a, b) => a.id - b.id);
+    });
+  };
+
   const fetchIncidents = async () => {
     try {
       const data = await getAllIncidents();
@@ -27,7 +39,6 @@ const App = () => {
       if (incident.id) {
         await updateIncident(incident.id, incident);
       }
-      fetchIncidents();
       setShowDetails(false);
     } catch (error) {
       console.error('Error saving incident:', error);
@@ -37,7 +48,6 @@ const App = () => {
   const handleIncidentDelete = async (id) => {
     try {
       await deleteIncident(id);
-      fetchIncidents();
       setShowDetails(false);
     } catch (error) {
       console.error('Error deleting incident:', error);
@@ -61,7 +71,7 @@ const App = () => {
             />
         ) : (
             <>
-              <IncidentForm onSuccess={fetchIncidents} />
+              <IncidentForm />
               <IncidentList incidents={incidents} onSelectIncident={handleIncidentSelection} />
             </>
         )}
@@ -24,6 +24,9 @@ const IncidentDetails = ({ incident, onClose, onSave, onDelete }) => {
                     <p><strong>Title:</strong> {incident.title}</p>
                     <p><strong>Description:</strong> {incident.description}</p>
                     <p><strong>Status:</strong> {incident.status}</p>
+                    {incident.occurrences > 1 && (
+                        <p><strong>Occurrences:</strong> {incident.occurrences} (last {incident.lastOccurredAt})</p>
+                    )}
                     <button onClick={() => setIsEditing(true)}>Edit</button>
                 </>
             ) : (
@@ -16,7 +16,7 @@ const IncidentForm = ({ selectedIncident, onSuccess }) => {
             } else {
                 await createIncident(incident);
             }
-            onSuccess(); // Notify parent component
+            onSuccess?.(); // Notify parent component
         } catch (error) {
             console.error('Error creating/updating incident:', error);
         }
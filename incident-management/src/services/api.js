@@ -25,3 +25,14 @@ export const updateIncident = async (id, updatedIncident) => {
 export const deleteIncident = async (id) => {
     await axios.delete(`${API_BASE_URL}/${id}`);
 };
+
+// Streams created, updated and deleted incidents. The browser reconnects on its own and resumes
+// after the last received event; onResync is called when changes were missed and the list must be reloaded.
+export const subscribeToIncidentChanges = (onChange, onResync) => {
+    const source = new EventSource(`${API_BASE_URL}/events`);
+    ['created', 'updated', 'deleted'].forEach((type) =>
+        source.addEventListener(type, (message) => onChange(JSON.parse(message.data)))
+    );
+    source.addEventListener('resync', onResync);
+    return () => source.close();
+};